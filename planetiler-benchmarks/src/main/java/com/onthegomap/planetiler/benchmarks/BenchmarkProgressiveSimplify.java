@@ -0,0 +1,74 @@
+package com.onthegomap.planetiler.benchmarks;
+
+import com.onthegomap.planetiler.FeatureCollector;
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.reader.SimpleFeature;
+import com.onthegomap.planetiler.render.FeatureRenderer;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.Format;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Compares rendering a long, detailed line from z14 down to z0 when every zoom gets simplified from the original
+ * geometry against {@code --simplify-progressive} where each zoom gets simplified from the zoom above it.
+ */
+public class BenchmarkProgressiveSimplify {
+
+  public static void main(String[] args) throws GeometryException {
+    Arguments arguments = Arguments.fromArgs(args);
+    int points = arguments.getInteger("points", "number of vertices in the test line", 500_000);
+    int iters = arguments.getInteger("iters", "number of times to render the line in each mode", 10);
+    Geometry line = makeCoastline(points);
+    var format = Format.defaultInstance();
+    for (int i = 0; i < iters; i++) {
+      for (boolean progressive : new boolean[]{false, true}) {
+        var config = PlanetilerConfig.from(Arguments.of(
+          "simplify_progressive", Boolean.toString(progressive)
+        ));
+        var feature = new FeatureCollector.Factory(config, Stats.inMemory())
+          .get(SimpleFeature.create(line, Map.of()))
+          .line("layer")
+          .setZoomRange(0, 14);
+        List<VectorTile.VectorGeometry> rendered = new ArrayList<>();
+        long start = System.nanoTime();
+        new FeatureRenderer(config, f -> rendered.add(f.vectorTileFeature().geometry()), Stats.inMemory())
+          .accept(feature);
+        long nanos = System.nanoTime() - start;
+        long vertices = 0;
+        for (var geometry : rendered) {
+          vertices += geometry.decode().getNumPoints();
+        }
+        System.err.println(String.join("\t",
+          progressive ? "progressive" : "    default",
+          format.duration(Duration.ofNanos(nanos)),
+          format.integer(rendered.size()) + " features",
+          format.integer(vertices) + " vertices"
+        ));
+      }
+    }
+  }
+
+  /** Returns a random walk heading east along the equator in lat/lon coordinates, like a very detailed coastline. */
+  private static Geometry makeCoastline(int points) {
+    Random random = new Random(0);
+    Coordinate[] coords = new Coordinate[points];
+    double x = 0, y = 0, angle = 0;
+    for (int i = 0; i < points; i++) {
+      coords[i] = new Coordinate(x, y);
+      angle = Math.clamp(angle + random.nextGaussian() * 0.3, -Math.PI / 2, Math.PI / 2);
+      x += Math.cos(angle) * 1e-4;
+      y += Math.sin(angle) * 1e-4;
+    }
+    return GeoUtils.JTS_FACTORY.createLineString(coords);
+  }
+}
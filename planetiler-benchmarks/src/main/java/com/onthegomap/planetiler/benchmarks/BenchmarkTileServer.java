@@ -0,0 +1,118 @@
+package com.onthegomap.planetiler.benchmarks;
+
+import com.onthegomap.planetiler.archive.TileArchiveConfig;
+import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.stats.Timer;
+import com.onthegomap.planetiler.util.Format;
+import com.onthegomap.planetiler.util.TileServer;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load-tests {@link TileServer} against a local archive and reports request latency percentiles.
+ * <p>
+ * To run:
+ *
+ * <pre>{@code
+ * java -cp planetiler-benchmarks.jar com.onthegomap.planetiler.benchmarks.BenchmarkTileServer \
+ *   --input=data/output.pmtiles [--requests=200000] [--concurrency=64] [--cache_mb=256]
+ * }</pre>
+ */
+public class BenchmarkTileServer {
+
+  public static void main(String[] args) throws Exception {
+    var arguments = Arguments.fromArgs(args);
+    var config = PlanetilerConfig.from(arguments);
+    var input = TileArchiveConfig.from(arguments.getString("input", "archive to serve"));
+    int requests = arguments.getInteger("requests", "number of requests to send per repetition", 200_000);
+    int concurrency = arguments.getInteger("concurrency", "number of concurrent clients", 64);
+    int repetitions = arguments.getInteger("repetitions", "number of times to repeat the test", 3);
+    int maxTiles = arguments.getInteger("tiles", "number of distinct tiles to sample requests from", 100_000);
+    long cacheBytes = arguments.getLong("cache_mb", "megabytes of tile data to cache in the server", 256) << 20;
+
+    try (
+      var archive = TileArchives.newReader(input, config);
+      var server = new TileServer(archive, new InetSocketAddress("localhost", 0), cacheBytes).start();
+      var client = HttpClient.newBuilder()
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .connectTimeout(Duration.ofSeconds(10))
+        .build()
+    ) {
+      List<TileCoord> coords = new ArrayList<>();
+      try (var iter = archive.getAllTileCoords()) {
+        while (iter.hasNext() && coords.size() < maxTiles) {
+          coords.add(iter.next());
+        }
+      }
+      if (coords.isEmpty()) {
+        throw new IllegalArgumentException("No tiles in " + input.uri());
+      }
+      Collections.shuffle(coords, new Random(0));
+      String base = "http://localhost:" + server.port();
+      System.err.println("Sampling " + requests + " requests from " + coords.size() + " tiles with " + concurrency +
+        " concurrent clients");
+
+      for (int rep = 0; rep < repetitions; rep++) {
+        long[] latencies = new long[requests];
+        var next = new AtomicInteger(0);
+        var timer = Timer.start();
+        List<Future<?>> clients = new ArrayList<>();
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+          for (int c = 0; c < concurrency; c++) {
+            clients.add(executor.submit(() -> {
+              int i;
+              while ((i = next.getAndIncrement()) < requests) {
+                var coord = coords.get(i % coords.size());
+                var request = HttpRequest.newBuilder(
+                  URI.create(base + "/" + coord.z() + "/" + coord.x() + "/" + coord.y() + ".pbf")).build();
+                long start = System.nanoTime();
+                var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                latencies[i] = System.nanoTime() - start;
+                if (response.statusCode() != 200) {
+                  throw new IllegalStateException("Got " + response.statusCode() + " for " + coord);
+                }
+              }
+              return null;
+            }));
+          }
+        }
+        for (var future : clients) {
+          // surface any request failures
+          future.get();
+        }
+        timer.stop();
+        Arrays.sort(latencies);
+        var format = Format.defaultInstance();
+        System.err.println(
+          "requests: " + format.integer(requests) +
+            " took: " + format.duration(timer.elapsed().wall()) +
+            " (" + format.numeric(requests / (timer.elapsed().wall().toNanos() / 1e9)) + "/s)" +
+            " p50: " + percentileMillis(latencies, 0.5) + "ms" +
+            " p90: " + percentileMillis(latencies, 0.9) + "ms" +
+            " p99: " + percentileMillis(latencies, 0.99) + "ms" +
+            " max: " + percentileMillis(latencies, 1) + "ms"
+        );
+      }
+    }
+  }
+
+  private static String percentileMillis(long[] sorted, double percentile) {
+    int idx = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+    return "%.3f".formatted(sorted[Math.max(0, idx)] / 1e6);
+  }
+}
@@ -0,0 +1,103 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.Profile;
+import com.onthegomap.planetiler.archive.TileArchiveMetadata;
+import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.archive.TileEncodingResult;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.FileUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes a batch of encoded tiles to a new PMTiles or MBTiles archive on disk, including finalizing the archive.
+ * <p>
+ * About a tenth of the tiles are small repeated ones (like ocean or land tiles) that archives which deduplicate store
+ * once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveWriteBenchmark {
+
+  private static final int TILES = 100_000;
+
+  @Param({"pmtiles", "mbtiles"})
+  String format;
+
+  private final List<TileEncodingResult> tiles = new ArrayList<>(TILES);
+  private PlanetilerConfig config;
+  private Path dir;
+  private Path output;
+
+  @Setup
+  public void setup() throws IOException {
+    config = PlanetilerConfig.defaults();
+    dir = Files.createTempDirectory("archive");
+    Random random = new Random(0);
+    byte[][] repeated = new byte[10][];
+    for (int i = 0; i < repeated.length; i++) {
+      repeated[i] = Fixtures.tileData(random, 50 + random.nextInt(50));
+    }
+    for (TileCoord coord : Fixtures.tileCoords(TILES)) {
+      byte[] data;
+      if (random.nextInt(10) == 0) {
+        data = repeated[random.nextInt(repeated.length)];
+      } else {
+        data = Fixtures.tileData(random, 200 + random.nextInt(1_000));
+      }
+      tiles.add(new TileEncodingResult(coord, data, OptionalLong.of(Arrays.hashCode(data))));
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteOutput() {
+    FileUtils.delete(output);
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtils.delete(dir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(TILES)
+  public long write() throws IOException {
+    output = dir.resolve("output." + format);
+    try (var archive = TileArchives.newWriter(output, config)) {
+      archive.initialize();
+      try (var writer = archive.newTileWriter()) {
+        for (var tile : tiles) {
+          writer.write(tile);
+        }
+      }
+      archive.finish(new TileArchiveMetadata(new Profile.NullProfile(), config));
+      return archive.bytesWritten();
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.Profile;
+import com.onthegomap.planetiler.VectorTile;
+import com.onthegomap.planetiler.collection.FeatureGroup;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileOrder;
+import com.onthegomap.planetiler.render.RenderedFeature;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encodes rendered features into the sortable key and value that {@link FeatureGroup} writes to temporary storage.
+ * <p>
+ * A tenth of the features have a group, like label grid or limit-per-tile features.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FeatureGroupEncodeBenchmark {
+
+  private static final int FEATURES = 10_000;
+
+  private FeatureGroup.RenderedFeatureEncoder encoder;
+  private final List<RenderedFeature> features = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    var featureGroup = FeatureGroup.newInMemoryFeatureGroup(TileOrder.HILBERT, new Profile.NullProfile(),
+      PlanetilerConfig.defaults(), Stats.inMemory());
+    encoder = featureGroup.newRenderedFeatureEncoder();
+    Random random = new Random(0);
+    var tiles = Fixtures.tileCoords(100);
+    for (int i = 0; i < FEATURES; i++) {
+      var geometry = Fixtures.randomWalk(random, 128, 128, 2 + random.nextInt(30), 32);
+      var feature = new VectorTile.Feature("layer" + random.nextInt(5), i, VectorTile.encodeGeometry(geometry),
+        Fixtures.attrs(random));
+      features.add(new RenderedFeature(
+        tiles.get(random.nextInt(tiles.size())),
+        feature,
+        random.nextInt(100),
+        random.nextInt(10) == 0 ? Optional.of(new RenderedFeature.Group(random.nextInt(100), 10)) : Optional.empty()
+      ));
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    encoder.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(FEATURES)
+  public void encode(Blackhole blackhole) {
+    for (var feature : features) {
+      blackhole.consume(encoder.apply(feature));
+    }
+  }
+}
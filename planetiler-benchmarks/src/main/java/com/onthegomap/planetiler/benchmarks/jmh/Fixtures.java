@@ -0,0 +1,201 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.google.protobuf.ByteString;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.TileCoord;
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.Deflater;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateXY;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Deterministic synthetic inputs for the JMH benchmarks so they can run offline without any downloaded data.
+ * <p>
+ * Every method takes a seed so that the same fixture is generated on every run and results can be compared between
+ * commits.
+ */
+final class Fixtures {
+
+  private static final String[] KEYS = {"highway", "name", "building", "surface", "oneway", "ref", "layer"};
+  private static final String[] VALUES = {"residential", "primary", "yes", "asphalt", "no", "Main Street", "1"};
+
+  private Fixtures() {}
+
+  /**
+   * Returns a zlib-compressed OSM PBF blob with {@code numNodes} dense nodes and {@code numWays} ways like the ones
+   * {@link com.onthegomap.planetiler.reader.osm.PbfDecoder} reads from a planet file.
+   */
+  static byte[] osmBlob(int numNodes, int numWays, long seed) {
+    Random random = new Random(seed);
+    var strings = Osmformat.StringTable.newBuilder().addS(ByteString.EMPTY);
+    for (String key : KEYS) {
+      strings.addS(ByteString.copyFrom(key, StandardCharsets.UTF_8));
+    }
+    for (String value : VALUES) {
+      strings.addS(ByteString.copyFrom(value, StandardCharsets.UTF_8));
+    }
+
+    var dense = Osmformat.DenseNodes.newBuilder();
+    long lastId = 0, lastLat = 0, lastLon = 0;
+    long id = 1_000_000;
+    for (int i = 0; i < numNodes; i++) {
+      id += 1 + random.nextInt(3);
+      long lat = 470_000_000L + random.nextInt(10_000_000);
+      long lon = 80_000_000L + random.nextInt(10_000_000);
+      dense.addId(id - lastId).addLat(lat - lastLat).addLon(lon - lastLon);
+      lastId = id;
+      lastLat = lat;
+      lastLon = lon;
+      // most nodes are untagged
+      if (random.nextInt(10) == 0) {
+        dense.addKeysVals(1 + random.nextInt(KEYS.length))
+          .addKeysVals(1 + KEYS.length + random.nextInt(VALUES.length));
+      }
+      dense.addKeysVals(0);
+    }
+
+    var ways = Osmformat.PrimitiveGroup.newBuilder();
+    for (int i = 0; i < numWays; i++) {
+      var way = Osmformat.Way.newBuilder().setId(100_000L + i);
+      int numTags = 1 + random.nextInt(4);
+      for (int t = 0; t < numTags; t++) {
+        way.addKeys(1 + random.nextInt(KEYS.length)).addVals(1 + KEYS.length + random.nextInt(VALUES.length));
+      }
+      long lastRef = 0;
+      int numRefs = 2 + random.nextInt(20);
+      for (int r = 0; r < numRefs; r++) {
+        long ref = 1_000_000L + random.nextInt(Math.max(1, numNodes * 2));
+        way.addRefs(ref - lastRef);
+        lastRef = ref;
+      }
+      ways.addWays(way);
+    }
+
+    byte[] raw = Osmformat.PrimitiveBlock.newBuilder()
+      .setStringtable(strings)
+      .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(dense).build().toByteString())
+      .addPrimitivegroup(ways.build().toByteString())
+      .build()
+      .toByteArray();
+
+    Deflater deflater = new Deflater();
+    deflater.setInput(raw);
+    deflater.finish();
+    byte[] buffer = new byte[raw.length + 1024];
+    int length = deflater.deflate(buffer);
+    deflater.end();
+    return Fileformat.Blob.newBuilder()
+      .setRawSize(raw.length)
+      .setZlibData(ByteString.copyFrom(buffer, 0, length))
+      .build()
+      .toByteArray();
+  }
+
+  /** Returns a random walk with {@code numPoints} points in world web mercator coordinates around {@code (x, y)}. */
+  static LineString randomWalk(Random random, double x, double y, int numPoints, double step) {
+    Coordinate[] coords = new Coordinate[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      coords[i] = new CoordinateXY(x, y);
+      x += (random.nextDouble() - 0.5) * step;
+      y += (random.nextDouble() - 0.5) * step;
+    }
+    return GeoUtils.JTS_FACTORY.createLineString(coords);
+  }
+
+  /**
+   * Returns a star-shaped polygon with {@code numPoints} vertices, every few of which are jittered enough to create
+   * self-intersections so that snapping has invalid geometries to fix.
+   */
+  static Polygon jaggedPolygon(Random random, double x, double y, double radius, int numPoints) {
+    Coordinate[] coords = new Coordinate[numPoints + 1];
+    for (int i = 0; i < numPoints; i++) {
+      double angle = 2 * Math.PI * i / numPoints;
+      double r = radius * (0.5 + random.nextDouble() * 0.5);
+      if (i % 7 == 0) {
+        angle += 4 * Math.PI / numPoints;
+      }
+      coords[i] = new CoordinateXY(x + Math.cos(angle) * r, y + Math.sin(angle) * r);
+    }
+    coords[numPoints] = coords[0];
+    return GeoUtils.JTS_FACTORY.createPolygon(coords);
+  }
+
+  /**
+   * Returns the closed rings of a multipolygon relation like a large lake complex: one outer ring containing a grid of
+   * {@code numRings / 2} holes that each have an island inside of them.
+   */
+  static List<CoordinateSequence> nestedRings(Random random, int numRings) {
+    int perSide = (int) Math.ceil(Math.sqrt(numRings / 2d));
+    double cell = 0.75 / perSide;
+    List<CoordinateSequence> result = new ArrayList<>(numRings);
+    result.add(octagon(random, 0.5, 0.5, 0.75, 0));
+    for (int i = 0; result.size() < numRings; i++) {
+      double x = 0.125 + (i % perSide + 0.5) * cell;
+      double y = 0.125 + (i / perSide + 0.5) * cell;
+      result.add(octagon(random, x, y, cell * 0.3, cell * 0.05));
+      result.add(octagon(random, x, y, cell * 0.1, cell * 0.02));
+    }
+    return result;
+  }
+
+  private static CoordinateSequence octagon(Random random, double x, double y, double radius, double jitter) {
+    Coordinate[] coords = new Coordinate[9];
+    for (int i = 0; i < 8; i++) {
+      double angle = 2 * Math.PI * i / 8;
+      double r = radius + random.nextDouble() * jitter;
+      coords[i] = new CoordinateXY(x + Math.cos(angle) * r, y + Math.sin(angle) * r);
+    }
+    coords[8] = coords[0];
+    return GeoUtils.JTS_FACTORY.getCoordinateSequenceFactory().create(coords);
+  }
+
+  /**
+   * Returns {@code count} random lines in tile pixel coordinates that share endpoints often enough for line merging to
+   * have something to do.
+   */
+  static List<Geometry> tileLines(Random random, int count) {
+    List<Geometry> result = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      double x = random.nextInt(16) * 16;
+      double y = random.nextInt(16) * 16;
+      result.add(randomWalk(random, x, y, 2 + random.nextInt(6), 16));
+    }
+    return result;
+  }
+
+  /** Returns a small attribute map like the ones profiles attach to features. */
+  static Map<String, Object> attrs(Random random) {
+    return Map.of(
+      "class", VALUES[random.nextInt(3)],
+      "name", VALUES[random.nextInt(VALUES.length)],
+      "layer", random.nextInt(3)
+    );
+  }
+
+  /** Returns {@code count} tile coordinates at zoom 14 in hilbert order, like the tiles a small extract produces. */
+  static List<TileCoord> tileCoords(int count) {
+    List<TileCoord> result = new ArrayList<>(count);
+    int start = TileCoord.ofXYZ(0, 0, 14).hilbertEncoded();
+    for (int i = 0; i < count; i++) {
+      result.add(TileCoord.hilbertDecode(start + i));
+    }
+    return result;
+  }
+
+  /** Returns {@code size} bytes of pseudo-random tile data. */
+  static byte[] tileData(Random random, int size) {
+    byte[] result = new byte[size];
+    random.nextBytes(result);
+    return result;
+  }
+}
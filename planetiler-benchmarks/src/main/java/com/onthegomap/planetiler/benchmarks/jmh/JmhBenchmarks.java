@@ -0,0 +1,43 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH microbenchmarks in this package with the GC profiler enabled and writes results to
+ * {@code jmh-result.json} so they can be compared between commits.
+ * <p>
+ * Accepts any standard JMH command-line option, which take precedence over these defaults. To run:
+ *
+ * <pre>{@code
+ * java -cp planetiler-benchmarks.jar com.onthegomap.planetiler.benchmarks.jmh.JmhBenchmarks [regex] [jmh options]
+ * }</pre>
+ *
+ * For example {@code JmhBenchmarks PbfDecode -f 1 -rff before.json} then compare {@code before.json} to the output from
+ * another commit with <a href="https://jmh.morethan.net/">JMH visualizer</a> or {@code jq}.
+ */
+public class JmhBenchmarks {
+
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    var commandLine = new CommandLineOptions(args);
+    var options = new OptionsBuilder().parent(commandLine);
+    if (commandLine.getIncludes().isEmpty()) {
+      options.include(JmhBenchmarks.class.getPackageName() + ".*");
+    }
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!commandLine.getResult().hasValue()) {
+      options.result("jmh-result.json");
+    }
+    if (commandLine.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    }
+    new Runner(options.build()).run();
+  }
+}
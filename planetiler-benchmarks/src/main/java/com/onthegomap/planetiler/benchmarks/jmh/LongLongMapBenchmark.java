@@ -0,0 +1,118 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.collection.LongLongMap;
+import com.onthegomap.planetiler.collection.Storage;
+import com.onthegomap.planetiler.util.FileUtils;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sequential writes and random reads against each {@link LongLongMap} implementation, the node location cache used
+ * during pass 1 and 2 of OSM processing.
+ * <p>
+ * Keys are sparse like OSM node IDs in an extract, values are encoded lat/lon pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongLongMapBenchmark {
+
+  private static final int ENTRIES = 1_000_000;
+  private static final int READS = 10_000;
+
+  @Param({"sortedtable", "sparsearray", "deltablock", "array"})
+  String type;
+  @Param({"ram", "mmap"})
+  String storage;
+
+  private Path dir;
+  private long[] keys;
+  private long[] readKeys;
+  private LongLongMap readMap;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("longlongmap");
+    SplittableRandom random = new SplittableRandom(0);
+    keys = new long[ENTRIES];
+    long key = 1_000_000;
+    for (int i = 0; i < ENTRIES; i++) {
+      key += 1 + random.nextInt(10);
+      keys[i] = key;
+    }
+    readKeys = new long[READS];
+    for (int i = 0; i < READS; i++) {
+      readKeys[i] = keys[random.nextInt(ENTRIES)];
+    }
+    readMap = fill(dir.resolve("read"));
+  }
+
+  private LongLongMap fill(Path path) {
+    var map = LongLongMap.from(LongLongMap.Type.from(type), Storage.from(storage), new Storage.Params(path, false));
+    try (var writer = map.newWriter()) {
+      for (long k : keys) {
+        writer.put(k, k + 1);
+      }
+    }
+    return map;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    readMap.close();
+    FileUtils.delete(dir);
+  }
+
+  @State(Scope.Thread)
+  public static class WriteState {
+
+    private LongLongMap map;
+    private Path path;
+
+    @TearDown(Level.Invocation)
+    public void closeMap() throws IOException {
+      if (map != null) {
+        map.close();
+        map = null;
+      }
+      FileUtils.delete(path);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ENTRIES)
+  public void write(WriteState state) {
+    state.path = dir.resolve("write");
+    state.map = fill(state.path);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(READS)
+  public long randomRead() {
+    long sum = 0;
+    for (long key : readKeys) {
+      sum += readMap.get(key);
+    }
+    return sum;
+  }
+}
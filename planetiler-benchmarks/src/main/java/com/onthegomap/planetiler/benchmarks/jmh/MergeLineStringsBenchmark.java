@@ -0,0 +1,55 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.FeatureMerge;
+import com.onthegomap.planetiler.VectorTile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges line features in a tile that share attributes with
+ * {@link FeatureMerge#mergeLineStrings(List, double, double, double)}, like profiles do for roads and rivers in
+ * post-processing.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeLineStringsBenchmark {
+
+  @Param({"100", "5000"})
+  int lines;
+
+  private final List<VectorTile.Feature> features = new ArrayList<>();
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    int id = 0;
+    for (var line : Fixtures.tileLines(random, lines)) {
+      // only a few distinct attribute combinations so most lines end up merged with others
+      features.add(new VectorTile.Feature("transportation", id++, VectorTile.encodeGeometry(line),
+        Map.of("class", random.nextBoolean() ? "primary" : "secondary")));
+    }
+  }
+
+  @Benchmark
+  public List<VectorTile.Feature> merge() {
+    return FeatureMerge.mergeLineStrings(features, 0.5, 0.1, 4);
+  }
+}
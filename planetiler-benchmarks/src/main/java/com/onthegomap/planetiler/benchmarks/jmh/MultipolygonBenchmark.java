@@ -0,0 +1,48 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.reader.osm.OsmMultipolygon;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reconstructs a multipolygon relation with thousands of rings nested inside each other using
+ * {@link OsmMultipolygon#build(List)}, like the long-tail relations at the end of pass 2.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MultipolygonBenchmark {
+
+  @Param({"100", "10000", "40000"})
+  int rings;
+
+  private List<CoordinateSequence> input;
+
+  @Setup
+  public void setup() {
+    input = Fixtures.nestedRings(new Random(0), rings);
+  }
+
+  @Benchmark
+  public Geometry build() throws GeometryException {
+    return OsmMultipolygon.build(input);
+  }
+}
@@ -0,0 +1,51 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.reader.osm.OsmElement;
+import com.onthegomap.planetiler.reader.osm.PbfDecoder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Decompresses and iterates through every element in a synthetic OSM PBF block with {@link PbfDecoder}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PbfDecodeBenchmark {
+
+  /** Planet blocks hold 8,000 elements, but ways are much larger than nodes. */
+  @Param({"8000"})
+  int nodes;
+  @Param({"1000"})
+  int ways;
+
+  private byte[] blob;
+
+  @Setup
+  public void setup() {
+    blob = Fixtures.osmBlob(nodes, ways, 0);
+  }
+
+  @Benchmark
+  public long decode() {
+    long sum = 0;
+    for (OsmElement element : PbfDecoder.decode(blob)) {
+      sum += element.id();
+      if (element instanceof OsmElement.Way way) {
+        sum += way.nodes().size();
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,61 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.geo.TileExtents;
+import com.onthegomap.planetiler.render.TiledGeometry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Slices a line or polygon that spans many tiles at z14 into per-tile pieces with
+ * {@link TiledGeometry#sliceIntoTiles(Geometry, double, double, int, TileExtents.ForZoom)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SliceIntoTilesBenchmark {
+
+  private static final int ZOOM = 14;
+
+  @Param({"line", "polygon"})
+  String geometryType;
+  /** Approximate width of the geometry in tiles. */
+  @Param({"4", "64"})
+  int tiles;
+
+  private Geometry geometry;
+  private TileExtents.ForZoom extents;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    double center = 1 << (ZOOM - 1);
+    geometry = switch (geometryType) {
+      case "line" -> Fixtures.randomWalk(random, center, center, 1_000, tiles / 16d);
+      case "polygon" -> Fixtures.jaggedPolygon(random, center, center, tiles / 2d, 1_000).buffer(0);
+      default -> throw new IllegalArgumentException("Unknown geometry type: " + geometryType);
+    };
+    extents = TileExtents.computeFromWorldBounds(ZOOM, GeoUtils.WORLD_BOUNDS).getForZoom(ZOOM);
+  }
+
+  @Benchmark
+  public TiledGeometry slice() throws GeometryException {
+    return TiledGeometry.sliceIntoTiles(geometry, 0, 4d / 256, ZOOM, extents);
+  }
+}
@@ -0,0 +1,55 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.stats.Stats;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.locationtech.jts.geom.Geometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Snaps polygons in tile pixel coordinates to the vector tile grid and repairs them with
+ * {@link GeoUtils#snapAndFixPolygon(Geometry, Stats, String)}.
+ * <p>
+ * {@code valid} polygons take the common path, {@code invalid} ones self-intersect so they need to be fixed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapAndFixPolygonBenchmark {
+
+  @Param({"valid", "invalid"})
+  String shape;
+  @Param({"50", "1000"})
+  int points;
+
+  private Geometry geometry;
+  private Stats stats;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    var polygon = Fixtures.jaggedPolygon(random, 128, 128, 100, points);
+    geometry = "valid".equals(shape) ? polygon.buffer(0) : polygon;
+    stats = Stats.inMemory();
+  }
+
+  @Benchmark
+  public Geometry snapAndFix() throws GeometryException {
+    return GeoUtils.snapAndFixPolygon(geometry, stats, "benchmark");
+  }
+}
@@ -0,0 +1,64 @@
+package com.onthegomap.planetiler.benchmarks.jmh;
+
+import com.onthegomap.planetiler.VectorTile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializes a populated {@link VectorTile} to protobuf bytes, both through the {@link VectorTile#toProto()} object
+ * graph and by writing wire format directly with {@link VectorTile#encode()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorTileEncodeBenchmark {
+
+  @Param({"100", "5000"})
+  int features;
+
+  private VectorTile tile;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(0);
+    tile = new VectorTile();
+    for (int layer = 0; layer < 5; layer++) {
+      List<VectorTile.Feature> layerFeatures = new ArrayList<>();
+      for (int i = 0; i < features / 5; i++) {
+        var geometry = random.nextBoolean() ?
+          Fixtures.randomWalk(random, 128, 128, 2 + random.nextInt(50), 16) :
+          Fixtures.jaggedPolygon(random, random.nextInt(256), random.nextInt(256), 4 + random.nextInt(32),
+            4 + random.nextInt(50)).buffer(0);
+        layerFeatures.add(new VectorTile.Feature("layer" + layer, i, VectorTile.encodeGeometry(geometry),
+          Fixtures.attrs(random)));
+      }
+      tile.addLayerFeatures("layer" + layer, layerFeatures);
+    }
+  }
+
+  @Benchmark
+  public byte[] toProto() {
+    return tile.toProto().toByteArray();
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return tile.encode();
+  }
+}
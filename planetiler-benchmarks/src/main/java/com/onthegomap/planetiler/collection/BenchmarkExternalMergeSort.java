@@ -76,7 +76,8 @@ public class BenchmarkExternalMergeSort {
     int sortWorkers = Runtime.getRuntime().availableProcessors();
     FileUtils.delete(tmpDir);
     var sorter =
-      new ExternalMergeSort(tmpDir, sortWorkers, (int) chunkSizeLimit, gzip, mmap, parallelSort, madvise, config,
+      new ExternalMergeSort(tmpDir, sortWorkers, (int) chunkSizeLimit, gzip, mmap, parallelSort, madvise,
+        config.sortOffHeap(), config,
         Stats.inMemory());
 
     var writeTimer = Timer.start();
@@ -109,10 +110,15 @@ public class BenchmarkExternalMergeSort {
 
   private static void doReads(int threads, long items, ExternalMergeSort sorter) {
     var counters = Counter.newMultiThreadCounter();
-    Iterable<SortableFeature> q = threads > 1 ? sorter.parallelIterator(Stats.inMemory(), threads) : sorter;
-    var reader = new Worker("read", Stats.inMemory(), 1, () -> {
+    // read disjoint key ranges from each thread, the same way tiles get encoded
+    long[] splitKeys = sorter.splitKeys(threads);
+    var reader = new Worker("read", Stats.inMemory(), splitKeys.length + 1, range -> {
+      long fromKey = range == 0 ? Long.MIN_VALUE : splitKeys[range - 1];
+      long toKey = range == splitKeys.length ? Long.MAX_VALUE : splitKeys[range];
       var counter = counters.counterForThread();
-      for (var ignored : q) {
+      var iterator = sorter.iterator(fromKey, toKey);
+      while (iterator.hasNext()) {
+        iterator.next();
         counter.inc();
       }
     });
@@ -121,14 +127,8 @@ public class BenchmarkExternalMergeSort {
       .addFileSize(sorter)
       .newLine()
       .addProcessStats()
-      .newLine();
-    if (q instanceof FeatureSort.ParallelIterator pi) {
-      loggers
-        .addThreadPoolStats("read", pi.reader())
-        .addThreadPoolStats("merge", reader);
-    } else {
-      loggers.addThreadPoolStats("read", reader);
-    }
+      .newLine()
+      .addThreadPoolStats("read", reader);
     reader.awaitAndLog(loggers, Duration.ofSeconds(1));
   }
 
@@ -15,8 +15,12 @@ import com.onthegomap.planetiler.reader.NaturalEarthReader;
 import com.onthegomap.planetiler.reader.ShapefileReader;
 import com.onthegomap.planetiler.reader.SourceFeature;
 import com.onthegomap.planetiler.reader.geojson.GeoJsonReader;
+import com.onthegomap.planetiler.reader.osm.OsmChangeFile;
+import com.onthegomap.planetiler.reader.osm.OsmDirtyTiles;
+import com.onthegomap.planetiler.reader.osm.OsmElementStore;
 import com.onthegomap.planetiler.reader.osm.OsmInputFile;
 import com.onthegomap.planetiler.reader.osm.OsmNodeBoundsProvider;
+import com.onthegomap.planetiler.reader.osm.OsmPass1Snapshot;
 import com.onthegomap.planetiler.reader.osm.OsmReader;
 import com.onthegomap.planetiler.reader.parquet.ParquetReader;
 import com.onthegomap.planetiler.stats.ProcessInfo;
@@ -25,6 +29,7 @@ import com.onthegomap.planetiler.stats.Timers;
 import com.onthegomap.planetiler.util.AnsiColors;
 import com.onthegomap.planetiler.util.BuildInfo;
 import com.onthegomap.planetiler.util.ByteBufferUtil;
+import com.onthegomap.planetiler.util.CompactWikidataTranslations;
 import com.onthegomap.planetiler.util.Downloader;
 import com.onthegomap.planetiler.util.FileUtils;
 import com.onthegomap.planetiler.util.Format;
@@ -90,6 +95,8 @@ public class Planetiler {
   private final Path tmpDir;
   private final Path nodeDbPath;
   private final Path multipolygonPath;
+  private final Path osmPass1Snapshot;
+  private final Path osmStore;
   private final Path featureDbPath;
   private final Path onlyRunTests;
   private boolean downloadSources;
@@ -116,8 +123,12 @@ public class Planetiler {
   private boolean fetchWikidata = false;
   private Duration wikidataMaxAge = Duration.ZERO;
   private int wikidataUpdateLimit = 0;
+  private boolean compactWikidata = true;
   private final boolean fetchOsmTileStats;
   private TileArchiveMetadata tileArchiveMetadata;
+  private final Path osmChanges;
+  private OsmElementStore osmElementStore;
+  private OsmDirtyTiles osmDirtyTiles;
 
   private Planetiler(Arguments arguments) {
     this.arguments = arguments;
@@ -141,6 +152,17 @@ public class Planetiler {
     featureDbPath = arguments.file("temp_features", "temp feature db location", tmpDir.resolve("feature.db"));
     parseNodeBounds =
       arguments.getBoolean("osm_parse_node_bounds", "parse bounds from OSM nodes instead of header", false);
+    osmPass1Snapshot = arguments.file("osm_pass1_snapshot",
+      "directory to save OSM node locations to after pass 1, and reuse them from on later runs with the same input",
+      null);
+    osmStore = arguments.file("osm_store",
+      "directory to save every OSM element to, so that later runs can apply osm_changes to it instead of reading " +
+        "the OSM input again",
+      null);
+    osmChanges = arguments.file("osm_changes",
+      "apply this .osc or .osc.gz file to osm_store and only rewrite the tiles it touches when appending to an " +
+        "existing archive",
+      null);
   }
 
   /** Returns a new empty runner that will get configuration from {@code arguments}. */
@@ -192,7 +214,7 @@ public class Planetiler {
       throw new IllegalArgumentException("Currently only one OSM input file is supported");
     }
     Path path = getPath(name, "OSM input file", defaultPath, defaultUrl);
-    var thisInputFile = new OsmInputFile(path, config.osmLazyReads());
+    var thisInputFile = new OsmInputFile(path, config.osmLazyReads(), config.osmBlockIndex());
     osmInputFile = thisInputFile;
     // fail fast if there is some issue with madvise on this system
     if (config.nodeMapMadvise() || config.multipolygonGeometryMadvise()) {
@@ -211,15 +233,45 @@ public class Planetiler {
           header.osmosisReplicationSequenceNumber());
         tileArchiveMetadata.setExtraMetadata("planetiler:" + name + ":osmosisreplicationurl",
           header.osmosisReplicationBaseUrl());
+        if (osmElementStore != null) {
+          processOsmChanges(name);
+          return;
+        }
+        var storeBuilder = osmStore == null ? null : OsmElementStore.newBuilder(osmStore, path, config, stats);
+        var snapshot = storeBuilder != null ? storeBuilder.nodeSnapshot() :
+          osmPass1Snapshot == null ? null : OsmPass1Snapshot.forInput(osmPass1Snapshot, path);
+        boolean fromSnapshot = snapshot != null && snapshot.isComplete();
         try (
-          var nodeLocations =
-            LongLongMap.from(config.nodeMapType(), config.nodeMapStorage(), nodeDbPath, config.nodeMapMadvise());
+          var nodeLocations = snapshot == null ?
+            LongLongMap.from(config.nodeMapType(), config.nodeMapStorage(), nodeDbPath, config.nodeMapMadvise()) :
+            fromSnapshot ? snapshot.openNodeLocations(config.nodeMapMadvise()) :
+            snapshot.createNodeLocations(config.nodeMapMadvise());
           var multipolygonGeometries = LongLongMultimap.newReplaceableMultimap(
             config.multipolygonGeometryStorage(), multipolygonPath, config.multipolygonGeometryMadvise());
           var osmReader = new OsmReader(name, thisInputFile, nodeLocations, multipolygonGeometries, profile(), stats)
         ) {
-          osmReader.pass1(config);
-          osmReader.pass2(featureGroup, config);
+          if (fromSnapshot) {
+            LOGGER.info("Reusing node locations from OSM pass1 snapshot in {}", snapshot.dir());
+            osmReader.pass1FromSnapshot(config);
+          } else {
+            // a snapshot needs every node location so that it still works after the profile changes
+            if (config.osmFilterNodes() && snapshot == null) {
+              osmReader.prefilterNodes(config);
+            }
+            osmReader.pass1(config);
+            if (snapshot != null) {
+              snapshot.save(nodeLocations);
+            }
+          }
+          if (storeBuilder != null) {
+            try (var source = thisInputFile.get()) {
+              storeBuilder.writeElements(source);
+            }
+            osmReader.pass2(featureGroup, config, element -> true, storeBuilder);
+            storeBuilder.finish();
+          } else {
+            osmReader.pass2(featureGroup, config);
+          }
         } finally {
           FileUtils.delete(nodeDbPath);
           FileUtils.delete(multipolygonPath);
@@ -613,6 +665,8 @@ public class Planetiler {
         "Maximum age of Wikidata translations (in ISO-8601 duration format PnDTnHnMn.nS; 0S = disabled)", "0s");
     wikidataUpdateLimit = arguments.getInteger("wikidata_update_limit",
       "Limit on how many old translations to update during one download (0 = disabled)", 0);
+    compactWikidata = arguments.getBoolean("wikidata_compact",
+      "convert wikidata translations to a compact memory-mapped file instead of loading them onto the heap", true);
     return this;
   }
 
@@ -770,6 +824,10 @@ public class Planetiler {
       System.exit(success ? 0 : 1);
     } else if (onlyDownloadSources) {
       // don't check files if not generating map
+    } else if (osmChanges != null && !config.append()) {
+      throw new IllegalArgumentException("osm_changes requires --append to an existing archive");
+    } else if (osmChanges != null && osmStore == null) {
+      throw new IllegalArgumentException("osm_changes requires an osm_store to apply them to");
     } else if (config.append()) {
       if (!output.format().supportsAppend()) {
         throw new IllegalArgumentException("cannot append to " + output.format().id());
@@ -847,7 +905,9 @@ public class Planetiler {
         wikidataUpdateLimit);
     }
     if (useWikidata) {
-      translations().addFallbackTranslationProvider(Wikidata.load(wikidataNamesFile));
+      translations().addFallbackTranslationProvider(compactWikidata ?
+        CompactWikidataTranslations.load(wikidataNamesFile, translations()::careAboutLanguage) :
+        Wikidata.load(wikidataNamesFile));
     }
     if (onlyDownloadSources || onlyFetchWikidata) {
       return; // exit only if just fetching wikidata or downloading sources
@@ -862,10 +922,25 @@ public class Planetiler {
       }
       bounds.addFallbackProvider(new OsmNodeBoundsProvider(osmInputFile, config, stats));
     }
+    if (osmChanges != null && osmInputFile == null) {
+      throw new IllegalArgumentException("osm_changes requires an OSM source");
+    }
     // must construct this after bounds providers are added in order to infer bounds from the input source if not provided
     tileArchiveMetadata = new TileArchiveMetadata(profile, config);
 
     try (WriteableTileArchive archive = TileArchives.newWriter(output, config)) {
+      OsmDirtyTiles dirtyTiles = null;
+      if (osmChanges != null) {
+        if (!archive.supportsDelete()) {
+          throw new IllegalArgumentException("osm_changes cannot remove tiles from " + output.format().id());
+        }
+        osmElementStore = OsmElementStore.open(osmStore, osmInputFile.getPath(), config);
+        var changes = OsmChangeFile.read(osmChanges);
+        dirtyTiles = OsmDirtyTiles.compute(changes, osmElementStore, config, stats);
+        osmElementStore.apply(changes);
+        osmDirtyTiles = dirtyTiles;
+        config.bounds().setTileFilter(dirtyTiles);
+      }
       featureGroup =
         FeatureGroup.newDiskBackedFeatureGroup(archive.tileOrder(), featureDbPath, profile, config, stats);
       stats.monitorFile("nodes", nodeDbPath);
@@ -873,6 +948,12 @@ public class Planetiler {
       stats.monitorFile("multipolygons", multipolygonPath);
       stats.monitorFile("archive", output.getLocalPath(), archive::bytesWritten);
 
+      if (dirtyTiles != null) {
+        // tiles that no longer have any features will not get re-rendered, so clear out everything that will
+        LOGGER.info("Deleting {} dirty tiles from {}", dirtyTiles.numTiles(), output.uri());
+        dirtyTiles.forEachTile(archive::deleteTile);
+      }
+
       for (Stage stage : stages) {
         try {
           stage.task.run();
@@ -908,6 +989,29 @@ public class Planetiler {
     }
   }
 
+  /**
+   * Re-renders the elements in {@link #osmElementStore} that touch a dirty tile after applying {@link #osmChanges} to
+   * it, then saves the changes to the store.
+   */
+  private void processOsmChanges(String name) throws IOException {
+    try (
+      var store = osmElementStore;
+      var multipolygonGeometries = LongLongMultimap.newReplaceableMultimap(
+        config.multipolygonGeometryStorage(), multipolygonPath, config.multipolygonGeometryMadvise())
+    ) {
+      var rerender = store.rerender(osmDirtyTiles, stats);
+      try (
+        var osmReader = new OsmReader(name, rerender, store.nodeLocations(), multipolygonGeometries, profile(), stats)
+      ) {
+        osmReader.pass1FromSnapshot(config);
+        osmReader.pass2(featureGroup, config, rerender, rerender);
+      }
+      store.commit(osmChanges, rerender);
+    } finally {
+      FileUtils.delete(multipolygonPath);
+    }
+  }
+
   private void checkDiskSpace() {
     ResourceUsage readPhase = new ResourceUsage("read phase disk");
     ResourceUsage writePhase = new ResourceUsage("write phase disk");
@@ -5,6 +5,7 @@ import com.onthegomap.planetiler.geo.GeometryException;
 import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.mbtiles.Mbtiles;
 import com.onthegomap.planetiler.reader.SourceFeature;
+import com.onthegomap.planetiler.reader.osm.OsmBlockIndex;
 import com.onthegomap.planetiler.reader.osm.OsmElement;
 import com.onthegomap.planetiler.reader.osm.OsmRelationInfo;
 import com.onthegomap.planetiler.util.Wikidata;
@@ -65,6 +66,36 @@ public interface Profile extends FeatureProcessor<SourceFeature> {
    */
   default void preprocessOsmWay(OsmElement.Way way) {}
 
+  /**
+   * Returns false if this profile will never emit a feature for {@code way} by itself, so that the OSM reader can skip
+   * storing locations of its nodes when {@code --osm_filter_nodes} is set.
+   * <p>
+   * This gets called before the first pass, so it can only look at the way's own tags. Ways that belong to a relation
+   * where {@link #caresAboutOsmRelation(OsmElement.Relation)} returns true keep their node locations regardless.
+   * <p>
+   * The default implementation returns true.
+   *
+   * @param way the OSM way
+   * @return {@code false} if it is safe to drop locations of nodes that only this way references
+   */
+  default boolean caresAboutOsmWay(OsmElement.Way way) {
+    return true;
+  }
+
+  /**
+   * Returns false if this profile will never use {@code relation}, either to build a multipolygon or to attach
+   * information to its member ways, so that the OSM reader can skip storing locations of nodes in its member ways when
+   * {@code --osm_filter_nodes} is set.
+   * <p>
+   * The default implementation returns true.
+   *
+   * @param relation the OSM relation
+   * @return {@code false} if member ways of this relation don't need geometries on account of the relation
+   */
+  default boolean caresAboutOsmRelation(OsmElement.Relation relation) {
+    return true;
+  }
+
   /**
    * Extracts information from <a href="https://wiki.openstreetmap.org/wiki/Relation">OSM relations</a> that will be
    * passed along to {@link #processFeature(SourceFeature, FeatureCollector)} for any OSM element in that relation.
@@ -223,6 +254,16 @@ public interface Profile extends FeatureProcessor<SourceFeature> {
     return true;
   }
 
+  /**
+   * Returns true if this profile may emit features for OSM nodes without any tags.
+   * <p>
+   * Returning false lets the OSM reader skip blocks that only contain untagged nodes in its second pass when a
+   * {@link OsmBlockIndex} is available. The default implementation returns true.
+   */
+  default boolean caresAboutUntaggedOsmNodes() {
+    return true;
+  }
+
   /**
    * Returns an estimate for how many bytes of disk this profile will use for intermediate feature storage to warn when
    * running with insufficient disk space.
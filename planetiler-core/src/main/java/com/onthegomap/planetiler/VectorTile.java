@@ -29,6 +29,7 @@ import com.onthegomap.planetiler.geo.MutableCoordinateSequence;
 import com.onthegomap.planetiler.reader.WithTags;
 import com.onthegomap.planetiler.util.Hilbert;
 import com.onthegomap.planetiler.util.LayerAttrStats;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -92,6 +93,7 @@ public class VectorTile {
   // TODO make these configurable
   private static final int EXTENT = 4096;
   private static final double SIZE = 256d;
+  private static final ThreadLocal<ProtoWriter> PROTO_WRITER = ThreadLocal.withInitial(ProtoWriter::new);
   // use a treemap to ensure that layers are encoded in a consistent order
   private final Map<String, Layer> layers = new TreeMap<>();
   private LayerAttrStats.Updater.ForZoom layerStatsTracker = LayerAttrStats.Updater.ForZoom.NOOP;
@@ -200,6 +202,10 @@ public class VectorTile {
     return (n << 1) ^ (n >> 31);
   }
 
+  private static long zigZagEncode(long n) {
+    return (n << 1) ^ (n >> 63);
+  }
+
   private static int zigZagDecode(int n) {
     // https://developers.google.com/protocol-buffers/docs/encoding#types
     return ((n >> 1) ^ (-(n & 1)));
@@ -576,12 +582,107 @@ public class VectorTile {
   }
 
   /**
-   * Creates a vector tile protobuf with all features in this tile and serializes it as a byte array.
+   * Serializes all features in this tile to a byte array in vector tile protobuf format.
+   * <p>
+   * This writes protobuf wire format directly into a reusable thread-local buffer and produces the same bytes as
+   * {@code toProto().toByteArray()} without building the intermediate {@link VectorTileProto.Tile} object graph.
    * <p>
    * Does not compress the result.
    */
   public byte[] encode() {
-    return toProto().toByteArray();
+    ProtoWriter out = PROTO_WRITER.get();
+    try {
+      for (Map.Entry<String, Layer> e : layers.entrySet()) {
+        writeLayer(out, e.getKey(), e.getValue());
+      }
+      return out.toByteArray();
+    } finally {
+      out.reset();
+    }
+  }
+
+  private static void writeLayer(ProtoWriter out, String layerName, Layer layer) {
+    out.writeTag(ProtoWriter.TILE_LAYERS, ProtoWriter.WIRE_TYPE_LENGTH_DELIMITED);
+    int layerStart = out.startLengthDelimited();
+    out.writeString(ProtoWriter.LAYER_NAME, layerName);
+
+    for (EncodedFeature feature : layer.encodedFeatures) {
+      int[] tags = feature.tags.buffer;
+      int tagCount = feature.tags.size();
+      int[] commands = feature.geometry.commands();
+      int typeNumber = feature.geometry.geomType().asProtobufType().getNumber();
+      int tagsSize = ProtoWriter.packedUInt32Size(tags, tagCount);
+      int geometrySize = ProtoWriter.packedUInt32Size(commands, commands.length);
+      int featureSize = 1 + ProtoWriter.int32Size(typeNumber);
+      if (feature.id != NO_FEATURE_ID) {
+        featureSize += 1 + ProtoWriter.varint64Size(feature.id);
+      }
+      if (tagCount > 0) {
+        featureSize += 1 + ProtoWriter.varint32Size(tagsSize) + tagsSize;
+      }
+      if (commands.length > 0) {
+        featureSize += 1 + ProtoWriter.varint32Size(geometrySize) + geometrySize;
+      }
+
+      out.writeTag(ProtoWriter.LAYER_FEATURES, ProtoWriter.WIRE_TYPE_LENGTH_DELIMITED);
+      out.writeVarint32(featureSize);
+      if (feature.id != NO_FEATURE_ID) {
+        out.writeTag(ProtoWriter.FEATURE_ID, ProtoWriter.WIRE_TYPE_VARINT);
+        out.writeVarint64(feature.id);
+      }
+      if (tagCount > 0) {
+        out.writeTag(ProtoWriter.FEATURE_TAGS, ProtoWriter.WIRE_TYPE_LENGTH_DELIMITED);
+        out.writeVarint32(tagsSize);
+        out.writePackedUInt32(tags, tagCount);
+      }
+      out.writeTag(ProtoWriter.FEATURE_TYPE, ProtoWriter.WIRE_TYPE_VARINT);
+      out.writeInt32(typeNumber);
+      if (commands.length > 0) {
+        out.writeTag(ProtoWriter.FEATURE_GEOMETRY, ProtoWriter.WIRE_TYPE_LENGTH_DELIMITED);
+        out.writeVarint32(geometrySize);
+        out.writePackedUInt32(commands, commands.length);
+      }
+    }
+
+    for (String key : layer.keys.keySet()) {
+      out.writeString(ProtoWriter.LAYER_KEYS, key);
+    }
+
+    for (Object value : layer.values.keySet()) {
+      out.writeTag(ProtoWriter.LAYER_VALUES, ProtoWriter.WIRE_TYPE_LENGTH_DELIMITED);
+      int valueStart = out.startLengthDelimited();
+      switch (value) {
+        case String stringValue -> out.writeString(ProtoWriter.VALUE_STRING, stringValue);
+        case Integer intValue -> {
+          out.writeTag(ProtoWriter.VALUE_SINT, ProtoWriter.WIRE_TYPE_VARINT);
+          out.writeVarint64(zigZagEncode((long) intValue));
+        }
+        case Long longValue -> {
+          out.writeTag(ProtoWriter.VALUE_SINT, ProtoWriter.WIRE_TYPE_VARINT);
+          out.writeVarint64(zigZagEncode((long) longValue));
+        }
+        case Float floatValue -> {
+          out.writeTag(ProtoWriter.VALUE_FLOAT, ProtoWriter.WIRE_TYPE_FIXED32);
+          out.writeFixed32(Float.floatToRawIntBits(floatValue));
+        }
+        case Double doubleValue -> {
+          out.writeTag(ProtoWriter.VALUE_DOUBLE, ProtoWriter.WIRE_TYPE_FIXED64);
+          out.writeFixed64(Double.doubleToRawLongBits(doubleValue));
+        }
+        case Boolean booleanValue -> {
+          out.writeTag(ProtoWriter.VALUE_BOOL, ProtoWriter.WIRE_TYPE_VARINT);
+          out.writeVarint32(booleanValue ? 1 : 0);
+        }
+        case Object other -> out.writeString(ProtoWriter.VALUE_STRING, other.toString());
+      }
+      out.endLengthDelimited(valueStart);
+    }
+
+    out.writeTag(ProtoWriter.LAYER_EXTENT, ProtoWriter.WIRE_TYPE_VARINT);
+    out.writeVarint32(EXTENT);
+    out.writeTag(ProtoWriter.LAYER_VERSION, ProtoWriter.WIRE_TYPE_VARINT);
+    out.writeVarint32(2);
+    out.endLengthDelimited(layerStart);
   }
 
   /**
@@ -1243,6 +1344,182 @@ public class VectorTile {
     }
   }
 
+  /**
+   * Minimal protobuf wire-format writer that serializes into a growable byte array that gets reused across tiles.
+   * <p>
+   * Fields need to be written in field number order to produce the same output as the generated protobuf classes.
+   */
+  private static final class ProtoWriter {
+
+    static final int WIRE_TYPE_VARINT = 0;
+    static final int WIRE_TYPE_FIXED64 = 1;
+    static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+    static final int WIRE_TYPE_FIXED32 = 5;
+
+    static final int TILE_LAYERS = 3;
+    static final int LAYER_NAME = 1;
+    static final int LAYER_FEATURES = 2;
+    static final int LAYER_KEYS = 3;
+    static final int LAYER_VALUES = 4;
+    static final int LAYER_EXTENT = 5;
+    static final int LAYER_VERSION = 15;
+    static final int FEATURE_ID = 1;
+    static final int FEATURE_TAGS = 2;
+    static final int FEATURE_TYPE = 3;
+    static final int FEATURE_GEOMETRY = 4;
+    static final int VALUE_STRING = 1;
+    static final int VALUE_FLOAT = 2;
+    static final int VALUE_DOUBLE = 3;
+    static final int VALUE_SINT = 6;
+    static final int VALUE_BOOL = 7;
+
+    private static final int INITIAL_SIZE = 64 * 1024;
+    // don't hold onto buffers from huge tiles after they are encoded
+    private static final int MAX_RETAINED_SIZE = 4 * 1024 * 1024;
+    // space to reserve for the length prefix of a nested message before its size is known
+    private static final int MAX_VARINT32_SIZE = 5;
+
+    private byte[] buf = new byte[INITIAL_SIZE];
+    private int pos = 0;
+
+    static int varint32Size(int value) {
+      return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    static int varint64Size(long value) {
+      return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    /** Size of a varint-encoded int32 or enum, where negative values get sign-extended to 10 bytes. */
+    static int int32Size(int value) {
+      return value >= 0 ? varint32Size(value) : 10;
+    }
+
+    static int packedUInt32Size(int[] values, int count) {
+      int size = 0;
+      for (int i = 0; i < count; i++) {
+        size += varint32Size(values[i]);
+      }
+      return size;
+    }
+
+    void reset() {
+      pos = 0;
+      if (buf.length > MAX_RETAINED_SIZE) {
+        buf = new byte[INITIAL_SIZE];
+      }
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, pos);
+    }
+
+    private void ensureCapacity(int bytes) {
+      if (pos + bytes > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(pos + bytes, buf.length * 2));
+      }
+    }
+
+    void writeTag(int fieldNumber, int wireType) {
+      writeVarint32((fieldNumber << 3) | wireType);
+    }
+
+    void writeVarint32(int value) {
+      ensureCapacity(MAX_VARINT32_SIZE);
+      while ((value & ~0x7F) != 0) {
+        buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[pos++] = (byte) value;
+    }
+
+    void writeVarint64(long value) {
+      ensureCapacity(10);
+      while ((value & ~0x7FL) != 0) {
+        buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      buf[pos++] = (byte) value;
+    }
+
+    void writeInt32(int value) {
+      if (value >= 0) {
+        writeVarint32(value);
+      } else {
+        writeVarint64(value);
+      }
+    }
+
+    void writePackedUInt32(int[] values, int count) {
+      for (int i = 0; i < count; i++) {
+        writeVarint32(values[i]);
+      }
+    }
+
+    void writeFixed32(int value) {
+      ensureCapacity(4);
+      buf[pos++] = (byte) value;
+      buf[pos++] = (byte) (value >> 8);
+      buf[pos++] = (byte) (value >> 16);
+      buf[pos++] = (byte) (value >> 24);
+    }
+
+    void writeFixed64(long value) {
+      writeFixed32((int) value);
+      writeFixed32((int) (value >> 32));
+    }
+
+    void writeString(int fieldNumber, String value) {
+      writeTag(fieldNumber, WIRE_TYPE_LENGTH_DELIMITED);
+      int length = value.length();
+      boolean ascii = true;
+      for (int i = 0; i < length; i++) {
+        if (value.charAt(i) >= 0x80) {
+          ascii = false;
+          break;
+        }
+      }
+      if (ascii) {
+        writeVarint32(length);
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+          buf[pos++] = (byte) value.charAt(i);
+        }
+      } else {
+        // same fallback protobuf uses, which replaces unpaired surrogates with '?'
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint32(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+      }
+    }
+
+    /**
+     * Reserves space for the length prefix of a nested message whose size is not known yet, and returns the position to
+     * pass to {@link #endLengthDelimited(int)} once the message has been written.
+     */
+    int startLengthDelimited() {
+      ensureCapacity(MAX_VARINT32_SIZE);
+      int start = pos;
+      pos += MAX_VARINT32_SIZE;
+      return start;
+    }
+
+    /** Fills in the length prefix reserved at {@code start} and shifts the message body back to follow it directly. */
+    void endLengthDelimited(int start) {
+      int bodyStart = start + MAX_VARINT32_SIZE;
+      int length = pos - bodyStart;
+      int lengthSize = varint32Size(length);
+      if (lengthSize < MAX_VARINT32_SIZE) {
+        System.arraycopy(buf, bodyStart, buf, start + lengthSize, length);
+      }
+      pos = start;
+      writeVarint32(length);
+      pos += length;
+    }
+  }
+
   private record EncodedFeature(IntArrayList tags, long id, VectorGeometry geometry) {
 
     EncodedFeature(Feature in) {
@@ -230,9 +230,7 @@ public record TileArchiveConfig(
   }
 
   public enum Format {
-    MBTILES("mbtiles",
-      false /* TODO mbtiles could support append in the future by using insert statements with an "on conflict"-clause (i.e. upsert) and by creating tables only if they don't exist, yet */,
-      false, TileOrder.TMS),
+    MBTILES("mbtiles", true, false, TileOrder.TMS),
     PMTILES("pmtiles", false, false, TileOrder.HILBERT),
 
     // should be before PBF in order to avoid collisions
@@ -1,12 +1,13 @@
 package com.onthegomap.planetiler.archive;
 
-import static com.onthegomap.planetiler.util.Gzip.gzip;
 import static com.onthegomap.planetiler.worker.Worker.joinFutures;
 
 import com.onthegomap.planetiler.VectorTile;
 import com.onthegomap.planetiler.collection.FeatureGroup;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.geo.TileExtents;
+import com.onthegomap.planetiler.geo.TileOrder;
 import com.onthegomap.planetiler.stats.Counter;
 import com.onthegomap.planetiler.stats.ProcessInfo;
 import com.onthegomap.planetiler.stats.ProgressLoggers;
@@ -26,12 +27,15 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.OptionalLong;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -51,26 +55,37 @@ public class TileArchiveWriter {
   private static final Logger LOGGER = LoggerFactory.getLogger(TileArchiveWriter.class);
   private static final long MAX_FEATURES_PER_BATCH = 10_000;
   private static final long MAX_TILES_PER_BATCH = 1_000;
+  // split the tiles into at least this many ranges per read thread so threads finish at about the same time
+  private static final int MIN_RANGES_PER_READ_THREAD = 16;
+  private static final int MAX_RANGES = 100_000;
+  // marks the end of one tile range in the queue of batches from a read thread
+  private static final TileBatch END_OF_RANGE = new TileBatch();
+  // train the zstd dictionary from the first few tiles just after positions spread evenly over the bounds
+  private static final int DICTIONARY_SAMPLE_POSITIONS = 2_000;
+  private static final int DICTIONARY_SAMPLE_TILES_PER_POSITION = 5;
+  private static final int DICTIONARY_SAMPLE_SPAN = 64;
   private final Counter.Readable featuresProcessed;
   private final Counter memoizedTiles;
   private final WriteableTileArchive archive;
   private final PlanetilerConfig config;
   private final Stats stats;
   private final Counter.Readable[] tilesByZoom;
-  private final Iterable<FeatureGroup.TileFeatures> inputTiles;
   private final AtomicReference<TileCoord> lastTileWritten = new AtomicReference<>();
   private final TileArchiveMetadata tileArchiveMetadata;
   private final TilesetSummaryStatistics tileStats;
   private final LayerAttrStats layerAttrStats = new LayerAttrStats();
+  private final TileCompressor tileCompressor;
+  private final boolean outOfOrder;
 
-  private TileArchiveWriter(Iterable<FeatureGroup.TileFeatures> inputTiles, WriteableTileArchive archive,
-    PlanetilerConfig config, TileArchiveMetadata tileArchiveMetadata, Stats stats) {
+  private TileArchiveWriter(WriteableTileArchive archive, PlanetilerConfig config,
+    TileArchiveMetadata tileArchiveMetadata, Stats stats) {
     this.tileStats = new TilesetSummaryStatistics(TileWeights.readFromFile(config.tileWeights()));
-    this.inputTiles = inputTiles;
     this.archive = archive;
     this.config = config;
     this.tileArchiveMetadata = tileArchiveMetadata;
     this.stats = stats;
+    this.tileCompressor = TileCompressor.fromConfig(config);
+    this.outOfOrder = config.tileWriteOutOfOrder() && archive.acceptsTilesOutOfOrder();
     tilesByZoom = IntStream.rangeClosed(0, config.maxzoom())
       .mapToObj(i -> Counter.newSingleThreadCounter())
       .toArray(Counter.Readable[]::new);
@@ -94,23 +109,11 @@ public class TileArchiveWriter {
     int processThreads = threads < 8 ? threads : (threads - readThreads);
     int tileWriteThreads = config.tileWriteThreads();
 
-    // when using more than 1 read thread: (N read threads) -> (1 merge thread) -> ...
-    // when using 1 read thread we just have: (1 read & merge thread) -> ...
-    Worker readWorker = null;
-    Iterable<FeatureGroup.TileFeatures> inputTiles;
-    String secondStageName;
-    if (readThreads == 1) {
-      secondStageName = "read";
-      inputTiles = features;
-    } else {
-      secondStageName = "merge";
-      var reader = features.parallelIterator(readThreads);
-      inputTiles = reader.result();
-      readWorker = reader.readWorker();
+    TileArchiveWriter writer = new TileArchiveWriter(output, config, tileArchiveMetadata, stats);
+    if (writer.tileCompressor.trainsDictionary()) {
+      writer.trainDictionary(features);
     }
 
-    TileArchiveWriter writer = new TileArchiveWriter(inputTiles, output, config, tileArchiveMetadata, stats);
-
     var pipeline = WorkerPipeline.start("archive", stats);
 
     // a larger tile queue size helps keep cores busy, but needs a lot of RAM
@@ -121,35 +124,98 @@ public class TileArchiveWriter {
       (int) (5_000d * ProcessInfo.getMaxMemoryBytes() / 100_000_000_000d)
     );
 
+    /*
+     * When using 1 read thread we just have: (1 read & merge thread) -> ...
+     *
+     * When using more than 1 read thread, split the sorted features into ranges of whole tiles using keys sampled
+     * while sorting, and have each thread do an independent k-way merge over every N-th range:
+     * (N range read & merge threads) -> (1 thread stitching ranges back together in order) -> ...
+     * Each read thread can only work ahead of the range being stitched by as many batches as fit in its queue, so use
+     * ranges small enough to fit and interleave them between threads to keep them all busy.
+     */
+    Worker readWorker = null;
+    Consumer<Consumer<TileBatch>> readBatches;
+    String secondStageName;
+    if (readThreads == 1) {
+      secondStageName = "read";
+      readBatches = next -> writer.readFeaturesAndBatch(features, next);
+    } else {
+      secondStageName = "merge";
+      int rangeQueueSize = Math.max(100, queueSize / readThreads);
+      long featuresPerRange = (long) rangeQueueSize * MAX_TILES_PER_BATCH;
+      int numRanges = (int) Math.clamp(features.numFeaturesWritten() / featuresPerRange,
+        (long) readThreads * MIN_RANGES_PER_READ_THREAD, MAX_RANGES);
+      List<Iterable<FeatureGroup.TileFeatures>> ranges = features.tileRanges(numRanges);
+      LOGGER.info("Reading {} tile ranges with {} threads", ranges.size(), readThreads);
+      List<WorkQueue<TileBatch>> rangeQueues = IntStream.range(0, readThreads)
+        .mapToObj(i -> new WorkQueue<TileBatch>("archive_read_queue_" + i, rangeQueueSize, 1, stats))
+        .toList();
+      readWorker = new Worker("archive_read", stats, readThreads, thread -> {
+        var queue = rangeQueues.get(thread);
+        try (queue) {
+          for (int i = thread; i < ranges.size(); i += readThreads) {
+            writer.readFeaturesAndBatch(ranges.get(i), queue);
+            queue.accept(END_OF_RANGE);
+          }
+        }
+      });
+      readBatches = next -> {
+        for (int i = 0; i < ranges.size(); i++) {
+          var queue = rangeQueues.get(i % readThreads);
+          TileBatch batch;
+          while ((batch = queue.get()) != END_OF_RANGE) {
+            if (batch == null) {
+              throw new IllegalStateException("Read thread finished before the end of tile range " + i);
+            }
+            next.accept(batch);
+          }
+        }
+      };
+    }
+
     /*
      * To emit tiles in order, fork the input queue and send features to both the encoder and writer. The writer
      * waits on them to be encoded in the order they were received, and the encoder processes them in parallel.
      * One batch might take a long time to process, so make the queues very big to avoid idle encoding CPUs.
      *
-     * Note:
-     * In the future emitting tiles out order might be especially interesting when tileWriteThreads>1,
-     * since when multiple threads/files are included there's no order that needs to be preserved.
-     * So some of the restrictions could be lifted then.
+     * When the archive accepts tiles out of order, encoders hand each batch to the writer as soon as it is done instead
+     * so that one slow batch does not stall writes while the others pile up behind it.
      */
+    boolean outOfOrder = writer.outOfOrder;
+    if (outOfOrder) {
+      LOGGER.info("Writing tiles out of order, archive will restore {} order when finished", output.tileOrder());
+    }
     WorkQueue<TileBatch> writerQueue = new WorkQueue<>("archive_writer_queue", queueSize, 1, stats);
     WorkQueue<TileBatch> layerStatsQueue = new WorkQueue<>("archive_layerstats_queue", queueSize, 1, stats);
     WorkerPipeline<TileBatch> encodeBranch = pipeline
       .<TileBatch>fromGenerator(secondStageName, next -> {
-        try (writerQueue; layerStatsQueue) {
+        try (layerStatsQueue) {
           var writerEnqueuer = writerQueue.threadLocalWriter();
           var statsEnqueuer = layerStatsQueue.threadLocalWriter();
-          writer.readFeaturesAndBatch(batch -> {
+          readBatches.accept(batch -> {
             next.accept(batch);
-            writerEnqueuer.accept(batch); // also send immediately to writer
+            if (!outOfOrder) {
+              writerEnqueuer.accept(batch); // also send immediately to writer
+            }
             if (config.outputLayerStats()) {
               statsEnqueuer.accept(batch);
             }
           });
+        } finally {
+          if (!outOfOrder) {
+            writerQueue.close();
+          }
         }
-        // use only 1 thread since readFeaturesAndBatch needs to be single-threaded
+        // use only 1 thread since batches need to be emitted in order
       }, 1)
       .addBuffer("reader_queue", queueSize)
-      .sinkTo("encode", processThreads, writer::tileEncoderSink);
+      .sinkTo("encode", processThreads, prev -> writer.tileEncoderSink(prev,
+        outOfOrder ? writerQueue.threadLocalWriter() : batch -> {
+        }));
+    if (outOfOrder) {
+      // encoders are the ones sending batches to the writer, so the queue is done when they are
+      encodeBranch.done().whenComplete((result, error) -> writerQueue.close());
+    }
 
     // ensure to initialize the archive BEFORE starting to write any tiles
     output.initialize();
@@ -227,7 +293,100 @@ public class TileArchiveWriter {
     return "last tile: " + blurb;
   }
 
-  private void readFeaturesAndBatch(Consumer<TileBatch> next) {
+  /**
+   * Trains the zstd tile dictionary before any tiles get compressed, from the first few tiles after a grid of positions
+   * spread evenly over the bounds at each zoom level.
+   * <p>
+   * Which tiles get sampled only depends on the input, so the dictionary and every tile compressed with it come out the
+   * same on each run no matter which encoder threads finish first. The tiles near every position get read in one pass
+   * over the sorted features, and encoded in parallel.
+   */
+  private void trainDictionary(FeatureGroup features) {
+    TileOrder order = archive.tileOrder();
+    TileExtents extents = config.bounds().tileExtents();
+    long totalTiles = 0;
+    for (int z = config.minzoom(); z <= config.maxzoom(); z++) {
+      var forZoom = extents.getForZoom(z);
+      totalTiles += (long) (forZoom.maxX() - forZoom.minX()) * (forZoom.maxY() - forZoom.minY());
+    }
+    List<Long> positions = new ArrayList<>();
+    for (int z = config.minzoom(); z <= config.maxzoom() && totalTiles > 0; z++) {
+      var forZoom = extents.getForZoom(z);
+      long tiles = (long) (forZoom.maxX() - forZoom.minX()) * (forZoom.maxY() - forZoom.minY());
+      // give each zoom a share of the positions by how many tiles it has
+      double share = Math.max(1d, (double) DICTIONARY_SAMPLE_POSITIONS * tiles / totalTiles);
+      int step = (int) Math.max(1, Math.ceil(Math.sqrt(tiles / share)));
+      for (int x = forZoom.minX() + step / 2; x < forZoom.maxX(); x += step) {
+        for (int y = forZoom.minY() + step / 2; y < forZoom.maxY(); y += step) {
+          positions.add(order.encodeLong(TileCoord.ofXYZ(x, y, z)));
+        }
+      }
+    }
+    LOGGER.info("Sampling tiles at {} positions to train zstd tile dictionary", positions.size());
+
+    // each position samples tiles up to the next position, so sorted positions give sorted, non-overlapping ranges
+    long[] sorted = positions.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    long[] ranges = new long[sorted.length * 2];
+    for (int i = 0; i < sorted.length; i++) {
+      ranges[i * 2] = sorted[i];
+      ranges[i * 2 + 1] = i + 1 < sorted.length ? Math.min(sorted[i + 1], sorted[i] + DICTIONARY_SAMPLE_SPAN) :
+        sorted[i] + DICTIONARY_SAMPLE_SPAN;
+    }
+    Map<Long, List<byte[]>> samples = new ConcurrentHashMap<>();
+    WorkerPipeline.start("archive_dictionary", stats)
+      .<SampleSpan>fromGenerator("read", next -> {
+        SampleSpan span = null;
+        int index = 0;
+        for (var tile : features.tiles(ranges)) {
+          long id = order.encodeLong(tile.tileCoord());
+          while (ranges[index * 2 + 1] <= id) {
+            index++;
+          }
+          if (span == null || span.position != ranges[index * 2]) {
+            if (span != null) {
+              next.accept(span);
+            }
+            span = new SampleSpan(ranges[index * 2], new ArrayList<>());
+          }
+          span.tiles.add(tile);
+        }
+        if (span != null) {
+          next.accept(span);
+        }
+      })
+      .addBuffer("sample_queue", config.threads() * 2)
+      .sinkTo("encode", config.threads(), prev -> {
+        for (var span : prev) {
+          samples.put(span.position, encodeSampleTiles(span.tiles));
+        }
+      })
+      .await();
+
+    // the trainer stops once it has enough bytes, so visit positions in a fixed random order to spread the samples out
+    Collections.shuffle(positions, new Random(0));
+    tileCompressor.trainDictionary(positions.stream()
+      .flatMap(position -> samples.getOrDefault(position, List.of()).stream())
+      .iterator());
+  }
+
+  /** Tiles read from the span of tile IDs that starts at one sample {@code position}. */
+  private record SampleSpan(long position, List<FeatureGroup.TileFeatures> tiles) {}
+
+  private List<byte[]> encodeSampleTiles(List<FeatureGroup.TileFeatures> tiles) {
+    List<byte[]> result = new ArrayList<>();
+    for (var tileFeatures : tiles) {
+      if (result.size() >= DICTIONARY_SAMPLE_TILES_PER_POSITION) {
+        break;
+      }
+      VectorTile tile = tileFeatures.getVectorTile();
+      if (!config.skipFilledTiles() || !tile.containsOnlyFills()) {
+        result.add(tile.encode());
+      }
+    }
+    return result;
+  }
+
+  private void readFeaturesAndBatch(Iterable<FeatureGroup.TileFeatures> inputTiles, Consumer<TileBatch> next) {
     int currentZoom = Integer.MIN_VALUE;
     TileBatch batch = new TileBatch();
     long featuresInThisBatch = 0;
@@ -256,7 +415,7 @@ public class TileArchiveWriter {
     }
   }
 
-  private void tileEncoderSink(Iterable<TileBatch> prev) throws IOException {
+  private void tileEncoderSink(Iterable<TileBatch> prev, Consumer<TileBatch> onEncoded) throws IOException {
     /*
      * To optimize emitting many identical consecutive tiles (like large ocean areas), memoize output to avoid
      * recomputing if the input hasn't changed.
@@ -276,7 +435,8 @@ public class TileArchiveWriter {
       // each batch contains tile ordered by tile-order ID ascending
       for (int i = 0; i < batch.in.size(); i++) {
         FeatureGroup.TileFeatures tileFeatures = batch.in.get(i);
-        featuresProcessed.incBy(tileFeatures.getNumFeaturesProcessed());
+        // count stored records rather than expanded features so progress matches numFeaturesWritten
+        featuresProcessed.incBy(tileFeatures.getNumRecordsRead());
         byte[] bytes, encoded;
         List<TileSizeStats.LayerStats> layerStats;
         Long tileDataHash;
@@ -293,14 +453,9 @@ public class TileArchiveWriter {
             layerStats = null;
             bytes = null;
           } else {
-            var proto = tile.toProto();
-            encoded = proto.toByteArray();
-            bytes = switch (config.tileCompression()) {
-              case GZIP -> gzip(encoded);
-              case NONE -> encoded;
-              case UNKNOWN -> throw new IllegalArgumentException("cannot compress \"UNKNOWN\"");
-            };
-            layerStats = TileSizeStats.computeTileStats(proto);
+            encoded = tile.encode();
+            bytes = tileCompressor.compress(encoded);
+            layerStats = TileSizeStats.computeTileStats(encoded);
             if (encoded.length > config.tileWarningSizeBytes()) {
               LOGGER.warn("{} {}kb uncompressed",
                 tileFeatures.tileCoord(),
@@ -336,6 +491,7 @@ public class TileArchiveWriter {
       }
       // hand result off to writer
       batch.out.complete(result);
+      onEncoded.accept(batch);
     }
   }
 
@@ -357,12 +513,13 @@ public class TileArchiveWriter {
       for (TileBatch batch : tileBatches) {
         for (var encodedTile : batch.out.get()) {
           TileCoord tileCoord = encodedTile.coord();
-          assert lastTile == null ||
-            order.encode(tileCoord) > order.encode(lastTile) : "Tiles out of order %s before %s"
+          assert outOfOrder || lastTile == null ||
+            order.encodeLong(tileCoord) > order.encodeLong(lastTile) : "Tiles out of order %s before %s"
               .formatted(lastTile, tileCoord);
           lastTile = encodedTile.coord();
           int z = tileCoord.z();
-          if (z != currentZ) {
+          // when writing out of order, a few tiles from the previous zoom may still trickle in after the next one starts
+          if (z > currentZ) {
             // for multiple writers the starting/finish log message of the _first_ tilewriter
             // is not 100% accurate in terms of overall "zoom-progress",
             // but it should be a "good-enough" indicator for "zoom-progress"-logging
@@ -403,7 +560,7 @@ public class TileArchiveWriter {
   }
 
   private void finishArchive() {
-    archive.finish(tileArchiveMetadata.withLayerStats(layerAttrStats.getTileStats()));
+    archive.finish(tileCompressor.addToMetadata(tileArchiveMetadata.withLayerStats(layerAttrStats.getTileStats())));
   }
 
   /**
@@ -1,5 +1,6 @@
 package com.onthegomap.planetiler.archive;
 
+import com.onthegomap.planetiler.collection.Storage;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.files.ReadableFilesArchive;
 import com.onthegomap.planetiler.files.WriteableFilesArchive;
@@ -48,10 +49,12 @@ public class TileArchives {
     var format = archive.format();
     return switch (format) {
       case MBTILES ->
-        // pass-through legacy arguments for fallback
+        // pass-through legacy and global arguments for fallback
         Mbtiles.newWriteToFileDatabase(archive.getLocalPath(), options.orElse(config.arguments()
-          .subset(Mbtiles.LEGACY_VACUUM_ANALYZE, Mbtiles.LEGACY_COMPACT_DB, Mbtiles.LEGACY_SKIP_INDEX_CREATION)));
-      case PMTILES -> WriteablePmtiles.newWriteToFile(archive.getLocalPath());
+          .subset(Mbtiles.LEGACY_VACUUM_ANALYZE, Mbtiles.LEGACY_COMPACT_DB, Mbtiles.LEGACY_SKIP_INDEX_CREATION,
+            Mbtiles.TILE_WRITE_OUT_OF_ORDER)));
+      case PMTILES -> WriteablePmtiles.newWriteToFile(archive.getLocalPath(), Storage.MMAP,
+        config.tmpDir().resolve("pmtiles_entries"));
       case CSV, TSV -> WriteableCsvArchive.newWriteToFile(format, archive.getLocalPath(),
         new StreamArchiveConfig(config, options));
       case PROTO, PBF -> WriteableProtoStreamArchive.newWriteToFile(archive.getLocalPath(),
@@ -19,6 +19,10 @@ public enum TileCompression {
   NONE("none"),
   @JsonProperty("gzip")
   GZIP("gzip"),
+  @JsonProperty("zstd")
+  ZSTD("zstd"),
+  @JsonProperty("brotli")
+  BROTLI("brotli"),
   @JsonProperty("unknown")
   UNKNOWN("unknown");
 
@@ -0,0 +1,179 @@
+package com.onthegomap.planetiler.archive;
+
+import com.aayushatharva.brotli4j.Brotli4jLoader;
+import com.aayushatharva.brotli4j.decoder.BrotliInputStream;
+import com.aayushatharva.brotli4j.encoder.Encoder;
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.github.luben.zstd.ZstdException;
+import com.github.luben.zstd.ZstdInputStream;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.util.Gzip;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses encoded vector tiles using a {@link TileCompression} scheme and level, and decompresses tiles read back
+ * from an archive.
+ * <p>
+ * When {@code trainDictionary} is set for {@link TileCompression#ZSTD}, {@link #trainDictionary(Iterator)} trains a
+ * zstd dictionary from sample tiles before compressing the rest. The dictionary is used for all tiles compressed after
+ * that and stored base64-encoded in the archive metadata under {@link #ZSTD_DICTIONARY_KEY} so that readers can
+ * decompress them. Clients need to support the dictionary to read these archives, so it should only be used for tiles
+ * served to clients under your control.
+ */
+@ThreadSafe
+public class TileCompressor {
+
+  /** Metadata key that holds the base64-encoded zstd dictionary used to compress tiles. */
+  public static final String ZSTD_DICTIONARY_KEY = "planetiler:zstd_dictionary";
+  /** Use the default compression level for the selected compression scheme. */
+  public static final int DEFAULT_LEVEL = -1;
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileCompressor.class);
+  private static final int DEFAULT_ZSTD_LEVEL = 3;
+  private static final int DEFAULT_BROTLI_LEVEL = 6;
+  private static final int ZSTD_DICTIONARY_SIZE = 112_640;
+  // zstd recommends ~100x as many bytes of samples as the dictionary size
+  private static final int ZSTD_DICTIONARY_SAMPLE_BYTES = 100 * ZSTD_DICTIONARY_SIZE;
+  private static final int ZSTD_DICTIONARY_MAX_SAMPLES = 10_000;
+
+  private final TileCompression compression;
+  private final int level;
+  private final Encoder.Parameters brotliParameters;
+  private final boolean trainDictionary;
+  private volatile ZstdDictCompress zstdDictionary;
+  private volatile byte[] zstdDictionaryBytes;
+
+  public TileCompressor(TileCompression compression, int level, boolean trainDictionary) {
+    this.compression = compression;
+    this.level = level == DEFAULT_LEVEL ? switch (compression) {
+      case GZIP -> Deflater.DEFAULT_COMPRESSION;
+      case ZSTD -> DEFAULT_ZSTD_LEVEL;
+      case BROTLI -> DEFAULT_BROTLI_LEVEL;
+      case NONE, UNKNOWN -> level;
+    } : level;
+    if (compression == TileCompression.BROTLI) {
+      Brotli4jLoader.ensureAvailability();
+      this.brotliParameters = new Encoder.Parameters().setQuality(this.level);
+    } else {
+      this.brotliParameters = null;
+    }
+    if (trainDictionary && compression != TileCompression.ZSTD) {
+      LOGGER.warn("Dictionary training only supported with --tile-compression=zstd, ignoring");
+    }
+    this.trainDictionary = trainDictionary && compression == TileCompression.ZSTD;
+  }
+
+  /** Returns a compressor using the {@code --tile-compression} options from {@code config}. */
+  public static TileCompressor fromConfig(PlanetilerConfig config) {
+    return new TileCompressor(config.tileCompression(), config.tileCompressionLevel(),
+      config.tileCompressionDictionary());
+  }
+
+  /** Returns {@code encoded} compressed using this compressor's scheme and level. */
+  public byte[] compress(byte[] encoded) throws IOException {
+    return switch (compression) {
+      case GZIP -> Gzip.gzip(encoded, level);
+      case NONE -> encoded;
+      case ZSTD -> {
+        var dictionary = zstdDictionary;
+        yield dictionary == null ? Zstd.compress(encoded, level) : Zstd.compress(encoded, dictionary);
+      }
+      case BROTLI -> Encoder.compress(encoded, brotliParameters);
+      case UNKNOWN -> throw new IllegalArgumentException("cannot compress \"UNKNOWN\"");
+    };
+  }
+
+  /** Returns true if {@link #trainDictionary(Iterator)} should be called with sample tiles before compressing any. */
+  public boolean trainsDictionary() {
+    return trainDictionary;
+  }
+
+  /**
+   * Trains a zstd dictionary from encoded tiles taken from {@code samples} in order until there are enough, and uses it
+   * to compress all tiles after this.
+   * <p>
+   * The dictionary only depends on the samples, so passing the same samples in the same order always produces the same
+   * dictionary.
+   */
+  public void trainDictionary(Iterator<byte[]> samples) {
+    var trainer = new ZstdDictTrainer(ZSTD_DICTIONARY_SAMPLE_BYTES, ZSTD_DICTIONARY_SIZE);
+    int count = 0;
+    while (count < ZSTD_DICTIONARY_MAX_SAMPLES && samples.hasNext() && trainer.addSample(samples.next())) {
+      count++;
+    }
+    if (count == 0) {
+      LOGGER.warn("No tiles to train zstd tile dictionary from, compressing without one");
+      return;
+    }
+    LOGGER.info("Training zstd tile dictionary from {} samples...", count);
+    byte[] dictionary;
+    try {
+      dictionary = trainer.trainSamples();
+    } catch (ZstdException e) {
+      LOGGER.warn("Unable to train zstd tile dictionary, compressing without one: {}", e.getMessage());
+      return;
+    }
+    zstdDictionaryBytes = dictionary;
+    zstdDictionary = new ZstdDictCompress(dictionary, level);
+    LOGGER.info("Trained {}B zstd tile dictionary", dictionary.length);
+  }
+
+  /** Returns the trained zstd dictionary, or {@code null} if none was trained. */
+  public byte[] dictionary() {
+    return zstdDictionaryBytes;
+  }
+
+  /** Returns {@code metadata} with the trained dictionary stored in it, if there is one. */
+  public TileArchiveMetadata addToMetadata(TileArchiveMetadata metadata) {
+    byte[] dictionary = dictionary();
+    return dictionary == null ? metadata :
+      metadata.setExtraMetadata(ZSTD_DICTIONARY_KEY, Base64.getEncoder().encodeToString(dictionary));
+  }
+
+  /** Returns the zstd dictionary stored in {@code metadata}, or {@code null} if there is none. */
+  public static byte[] dictionary(TileArchiveMetadata metadata) {
+    String encoded = metadata == null || metadata.others() == null ? null : metadata.others().get(ZSTD_DICTIONARY_KEY);
+    return encoded == null ? null : Base64.getDecoder().decode(encoded);
+  }
+
+  /** Returns {@code compressed} tile data decompressed using {@code compression}. */
+  public static byte[] decompress(byte[] compressed, TileCompression compression) throws IOException {
+    return decompress(compressed, compression, null);
+  }
+
+  /**
+   * Returns {@code compressed} tile data decompressed using {@code compression} and an optional zstd
+   * {@code dictionary}.
+   */
+  public static byte[] decompress(byte[] compressed, TileCompression compression, byte[] dictionary)
+    throws IOException {
+    return switch (compression) {
+      case GZIP -> Gzip.gunzip(compressed);
+      case NONE -> compressed;
+      case ZSTD -> {
+        try (var in = new ZstdInputStream(new ByteArrayInputStream(compressed))) {
+          if (dictionary != null) {
+            in.setDict(dictionary);
+          }
+          yield in.readAllBytes();
+        }
+      }
+      case BROTLI -> {
+        Brotli4jLoader.ensureAvailability();
+        try (InputStream in = new BrotliInputStream(new ByteArrayInputStream(compressed))) {
+          yield in.readAllBytes();
+        }
+      }
+      case UNKNOWN -> throw new IllegalArgumentException("cannot decompress \"UNKNOWN\"");
+    };
+  }
+}
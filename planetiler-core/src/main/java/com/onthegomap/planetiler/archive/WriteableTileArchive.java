@@ -1,6 +1,7 @@
 package com.onthegomap.planetiler.archive;
 
 import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
 import com.onthegomap.planetiler.geo.TileOrder;
 import java.io.Closeable;
 import javax.annotation.concurrent.NotThreadSafe;
@@ -26,12 +27,37 @@ public interface WriteableTileArchive extends Closeable {
    */
   TileOrder tileOrder();
 
+  /**
+   * Returns true if this archive can accept tiles in any order from {@link TileWriter} and restore {@link #tileOrder()}
+   * in its index when {@link #finish(TileArchiveMetadata)} is called.
+   * <p>
+   * If true, tiles can be written as soon as they are encoded instead of waiting on slower tiles that precede them.
+   */
+  default boolean acceptsTilesOutOfOrder() {
+    return false;
+  }
+
   /**
    * Called before any tiles are written into {@link TileWriter}. Implementations of TileArchive should set up any
    * required state here.
    */
   default void initialize() {}
 
+  /**
+   * Returns true if {@link #deleteTile(TileCoord)} can remove tiles from an archive that is being appended to.
+   * <p>
+   * If false, then only re-rendering a subset of tiles is not supported for this archive.
+   */
+  default boolean supportsDelete() {
+    return false;
+  }
+
+  /**
+   * Removes {@code coord} from an archive that is being appended to, so that tiles which are not re-rendered do not
+   * leave stale data behind. Does nothing if the tile does not exist, or if {@link #supportsDelete()} is false.
+   */
+  default void deleteTile(TileCoord coord) {}
+
   /**
    * Implementations should return a object that implements {@link TileWriter} The specific TileWriter returned might
    * depend on {@link PlanetilerConfig}.
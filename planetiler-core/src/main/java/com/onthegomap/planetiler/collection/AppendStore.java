@@ -13,7 +13,7 @@ import java.util.stream.Stream;
  * {@link AppendStoreRam} stores all data in {@link java.nio.ByteBuffer ByteBuffers} in RAM and {@link AppendStoreMmap}
  * stores all data in a memory-mapped file.
  */
-interface AppendStore extends Closeable, MemoryEstimator.HasEstimate, DiskBacked {
+public interface AppendStore extends Closeable, MemoryEstimator.HasEstimate, DiskBacked {
 
   /** Returns the number of elements in the array */
   long size();
@@ -24,6 +24,12 @@ interface AppendStore extends Closeable, MemoryEstimator.HasEstimate, DiskBacked
     }
   }
 
+  /**
+   * Hints that the elements at the first {@code count} {@code indexes} will be read soon, so disk-backed
+   * implementations can start loading them in the background. Negative indexes are ignored.
+   */
+  default void prefetch(long[] indexes, int count) {}
+
   @Override
   default long estimateMemoryUsageBytes() {
     return 0;
@@ -110,6 +116,29 @@ interface AppendStore extends Closeable, MemoryEstimator.HasEstimate, DiskBacked
       return numWritten;
     }
 
+    @Override
+    public void prefetch(long[] indexes, int count) {
+      long[] slabIndexes = new long[count];
+      long slabStart = 0;
+      for (Ints slab : ints) {
+        long size = slab.size();
+        if (size == 0) {
+          continue;
+        }
+        int num = 0;
+        for (int i = 0; i < count; i++) {
+          long index = indexes[i] - slabStart;
+          if (index >= 0 && index < size) {
+            slabIndexes[num++] = index;
+          }
+        }
+        if (num > 0) {
+          slab.prefetch(slabIndexes, num);
+        }
+        slabStart += size;
+      }
+    }
+
     @Override
     public void close() throws IOException {
       for (var child : ints) {
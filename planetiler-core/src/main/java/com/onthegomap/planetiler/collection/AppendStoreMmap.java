@@ -5,6 +5,7 @@ import com.onthegomap.planetiler.util.FileUtils;
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
@@ -29,6 +30,7 @@ abstract class AppendStoreMmap implements AppendStore {
   final long segmentBytes;
   private final Path path;
   private final boolean madvise;
+  private volatile boolean prefetchFailed = false;
   long outIdx = 0;
   private volatile MappedByteBuffer[] segments; // NOSONAR - array is not thread-safe, but it's immutable after creation
   private volatile FileChannel channel; // NOSONAR - channel is not thread-safe, but we only map over it once then close
@@ -38,6 +40,14 @@ abstract class AppendStoreMmap implements AppendStore {
   }
 
   AppendStoreMmap(Path path, long segmentSizeBytes, boolean madvise) {
+    this(path, segmentSizeBytes, madvise, false);
+  }
+
+  /**
+   * Creates a store that writes to {@code path}, or if {@code existing} is true then a read-only store over the values
+   * a previous store already wrote to {@code path}.
+   */
+  AppendStoreMmap(Path path, long segmentSizeBytes, boolean madvise, boolean existing) {
     FileUtils.createParentDirectories(path);
     this.madvise = madvise;
     segmentBits = (int) (Math.log(segmentSizeBytes) / Math.log(2));
@@ -48,7 +58,12 @@ abstract class AppendStoreMmap implements AppendStore {
     }
     this.path = path;
     try {
-      this.outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 50_000));
+      if (existing) {
+        this.outputStream = new DataOutputStream(OutputStream.nullOutputStream());
+        this.outIdx = Files.size(path);
+      } else {
+        this.outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 50_000));
+      }
     } catch (IOException e) {
       throw new IllegalStateException("Could not create SequentialWriteRandomReadFile output stream", e);
     }
@@ -72,6 +87,22 @@ abstract class AppendStoreMmap implements AppendStore {
     return segments;
   }
 
+  void prefetch(long[] indexes, int count, int shift) {
+    if (!madvise || prefetchFailed) {
+      return;
+    }
+    long[] byteOffsets = new long[count];
+    for (int i = 0; i < count; i++) {
+      byteOffsets[i] = indexes[i] < 0 ? -1 : (indexes[i] << shift);
+    }
+    try {
+      ByteBufferUtil.willNeed(getSegments(), segmentBits, byteOffsets, count, 1 << shift);
+    } catch (IOException e) {
+      LOGGER.debug("Unable to prefetch {} {}", path, e);
+      prefetchFailed = true;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     outputStream.close();
@@ -133,6 +164,11 @@ abstract class AppendStoreMmap implements AppendStore {
     public long size() {
       return outIdx >>> 2;
     }
+
+    @Override
+    public void prefetch(long[] indexes, int count) {
+      prefetch(indexes, count, 2);
+    }
   }
 
   static class Longs extends AppendStoreMmap implements AppendStore.Longs {
@@ -149,6 +185,15 @@ abstract class AppendStoreMmap implements AppendStore {
       super(path, segmentSizeBytes, madvise);
     }
 
+    private Longs(Path path, boolean madvise, boolean existing) {
+      super(path, 1 << 30, madvise, existing);
+    }
+
+    /** Returns a read-only store over the longs that a previous store wrote to {@code path}. */
+    static AppendStoreMmap.Longs openExisting(Path path, boolean madvise) {
+      return new AppendStoreMmap.Longs(path, madvise, true);
+    }
+
     @Override
     public void appendLong(long value) {
       try {
@@ -173,5 +218,10 @@ abstract class AppendStoreMmap implements AppendStore {
     public long size() {
       return outIdx >>> 3;
     }
+
+    @Override
+    public void prefetch(long[] indexes, int count) {
+      prefetch(indexes, count, 3);
+    }
   }
 }
@@ -63,6 +63,7 @@ class ArrayLongLongMapMmap implements LongLongMap.ParallelWrites {
   private FileChannel readChannel = null;
   private volatile int tail = 0;
   private volatile boolean initialized = false;
+  private volatile boolean prefetchFailed = false;
 
   ArrayLongLongMapMmap(Path path, boolean madvise) {
     this(
@@ -150,6 +151,27 @@ class ArrayLongLongMapMmap implements LongLongMap.ParallelWrites {
     return result == 0 ? LongLongMap.MISSING_VALUE : result;
   }
 
+  @Override
+  public long[] multiGet(long[] key) {
+    initOnce();
+    if (madvise && !prefetchFailed) {
+      long[] byteOffsets = new long[key.length];
+      for (int i = 0; i < key.length; i++) {
+        byteOffsets[i] = key[i] < 0 ? -1 : key[i] << 3;
+      }
+      try {
+        ByteBufferUtil.willNeed(segmentsArray, segmentBits, byteOffsets, byteOffsets.length, Long.BYTES);
+      } catch (IOException e) {
+        prefetchFailed = true;
+      }
+    }
+    long[] result = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      result[i] = get(key[i]);
+    }
+    return result;
+  }
+
   @Override
   public long diskUsageBytes() {
     return FileUtils.size(path);
@@ -0,0 +1,344 @@
+package com.onthegomap.planetiler.collection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A longlong map that groups consecutive entries into blocks of {@value #BLOCK_SIZE}, and stores each block with keys
+ * and values delta-encoded as varints.
+ * <p>
+ * Node IDs within a block are usually sequential, and node locations encoded with
+ * {@link com.onthegomap.planetiler.geo.GeoUtils#encodeFlatLocation(double, double)} are close to each other, so the
+ * upper and lower 32 bits of each value are delta-encoded separately against the previous value in the block. Reads
+ * binary search an in-memory index of the first key in each block, then decode the whole block into a small per-thread
+ * cache so that looking up nearby nodes - like the other nodes in the same way - does not need to decode it again.
+ */
+public class DeltaBlockLongLongMap implements LongLongMap, LongLongMap.SequentialWrites {
+
+  static final int BLOCK_SIZE = 256;
+  private static final int CACHE_SIZE = 16;
+  // count + (key delta + 2 value half deltas) per entry, at most 10 bytes per varint
+  private static final int MAX_BLOCK_BYTES = 5 + BLOCK_SIZE * 30 + Long.BYTES;
+
+  private final AppendStore.Longs firstKeys = new AppendStoreRam.Longs(false);
+  private final AppendStore.Longs blockOffsets = new AppendStoreRam.Longs(false);
+  private final AppendStore.Longs data;
+  private final ThreadLocal<BlockCache> caches = ThreadLocal.withInitial(BlockCache::new);
+
+  // pending entries for the block being written
+  private final long[] pendingKeys = new long[BLOCK_SIZE];
+  private final long[] pendingValues = new long[BLOCK_SIZE];
+  private final byte[] encodeBuffer = new byte[MAX_BLOCK_BYTES];
+  private int pending = 0;
+  private long lastKey = -1;
+  private volatile boolean readable = false;
+
+  public DeltaBlockLongLongMap(AppendStore.Longs data) {
+    this.data = data;
+  }
+
+  /**
+   * Returns a read-only map over the blocks that a map created with {@link Storage#MMAP} storage at {@code dataPath}
+   * wrote, using the block index that {@link #saveIndex(Path)} wrote to {@code indexPath}.
+   *
+   * @throws IOException if the index can't be read or does not match the data file
+   */
+  public static DeltaBlockLongLongMap open(Path dataPath, Path indexPath, boolean madvise) throws IOException {
+    var result = new DeltaBlockLongLongMap(AppendStoreMmap.Longs.openExisting(dataPath, madvise));
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+      long dataSize = in.readLong();
+      long blocks = in.readLong();
+      if (dataSize != result.data.size()) {
+        throw new IOException("Expected " + dataSize + " longs in " + dataPath + " but found " + result.data.size());
+      }
+      for (long i = 0; i < blocks; i++) {
+        result.firstKeys.appendLong(in.readLong());
+        result.blockOffsets.appendLong(in.readLong());
+      }
+    } catch (IOException e) {
+      result.close();
+      throw e;
+    }
+    result.readable = true;
+    return result;
+  }
+
+  /**
+   * Finishes writing and saves the in-memory index of blocks to {@code indexPath} so that {@link #open(Path, Path,
+   * boolean)} can read the map back later.
+   */
+  public void saveIndex(Path indexPath) throws IOException {
+    finishWrites();
+    if (data.size() > 0) {
+      // the first read from the data switches it from writing to reading, which flushes everything written so far
+      data.getLong(0);
+    }
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+      out.writeLong(data.size());
+      out.writeLong(firstKeys.size());
+      for (long i = 0; i < firstKeys.size(); i++) {
+        out.writeLong(firstKeys.getLong(i));
+        out.writeLong(blockOffsets.getLong(i));
+      }
+    }
+  }
+
+  @Override
+  public void put(long key, long value) {
+    if (readable) {
+      throw new IllegalStateException("Cannot write after the first read");
+    }
+    if (key <= lastKey) {
+      throw new IllegalArgumentException("Nodes must be sorted ascending by ID, " + key + " came after " + lastKey);
+    }
+    lastKey = key;
+    pendingKeys[pending] = key;
+    pendingValues[pending] = value;
+    if (++pending == BLOCK_SIZE) {
+      flushBlock();
+    }
+  }
+
+  private void flushBlock() {
+    if (pending == 0) {
+      return;
+    }
+    firstKeys.appendLong(pendingKeys[0]);
+    blockOffsets.appendLong(data.size());
+    int pos = writeVarint(encodeBuffer, 0, pending);
+    long prevKey = pendingKeys[0];
+    long prevValue = pendingValues[0];
+    pos = writeVarint(encodeBuffer, pos, prevValue >>> 32);
+    pos = writeVarint(encodeBuffer, pos, prevValue & 0xFFFFFFFFL);
+    for (int i = 1; i < pending; i++) {
+      long key = pendingKeys[i];
+      long value = pendingValues[i];
+      pos = writeVarint(encodeBuffer, pos, key - prevKey);
+      pos = writeVarint(encodeBuffer, pos, zigzag((int) (value >>> 32) - (int) (prevValue >>> 32)));
+      pos = writeVarint(encodeBuffer, pos, zigzag((int) value - (int) prevValue));
+      prevKey = key;
+      prevValue = value;
+    }
+    // pack bytes into longs, little-endian
+    for (int i = 0; i < pos; i += Long.BYTES) {
+      long packed = 0;
+      for (int j = 0; j < Long.BYTES && i + j < pos; j++) {
+        packed |= (encodeBuffer[i + j] & 0xFFL) << (j * 8);
+      }
+      data.appendLong(packed);
+    }
+    pending = 0;
+  }
+
+  private synchronized void finishWrites() {
+    if (!readable) {
+      flushBlock();
+      readable = true;
+    }
+  }
+
+  @Override
+  public long get(long key) {
+    if (!readable) {
+      finishWrites();
+    }
+    long block = blockFor(key);
+    return block < 0 ? MISSING_VALUE : getFromBlock(block, key);
+  }
+
+  @Override
+  public long[] multiGet(long[] key) {
+    if (!readable) {
+      finishWrites();
+    }
+    long[] blocks = new long[key.length];
+    // start and end of the data for each distinct block, so the whole block gets loaded
+    long[] dataIndexes = new long[key.length * 2];
+    int numDataIndexes = 0;
+    long lastBlock = -1;
+    for (int i = 0; i < key.length; i++) {
+      long block = blocks[i] = blockFor(key[i]);
+      if (block >= 0 && block != lastBlock) {
+        dataIndexes[numDataIndexes++] = blockOffsets.getLong(block);
+        dataIndexes[numDataIndexes++] = block + 1 < blockOffsets.size() ? blockOffsets.getLong(block + 1) - 1 :
+          data.size() - 1;
+        lastBlock = block;
+      }
+    }
+    data.prefetch(dataIndexes, numDataIndexes);
+    long[] result = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      result[i] = blocks[i] < 0 ? MISSING_VALUE : getFromBlock(blocks[i], key[i]);
+    }
+    return result;
+  }
+
+  /** Returns the index of the last block that starts at or before {@code key}, or -1 if there is none. */
+  private long blockFor(long key) {
+    long lo = 0;
+    long hi = firstKeys.size() - 1;
+    long block = -1;
+    while (lo <= hi) {
+      long mid = (lo + hi) >>> 1;
+      if (firstKeys.getLong(mid) <= key) {
+        block = mid;
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return block;
+  }
+
+  private long getFromBlock(long block, long key) {
+    DecodedBlock decoded = caches.get().get(block);
+    int idx = Arrays.binarySearch(decoded.keys, 0, decoded.size, key);
+    return idx < 0 ? MISSING_VALUE : decoded.values[idx];
+  }
+
+  private DecodedBlock decode(long block, DecodedBlock result) {
+    long offset = blockOffsets.getLong(block);
+    var reader = new LongReader(data, offset);
+    int size = (int) reader.readVarint();
+    long key = firstKeys.getLong(block);
+    long hiBits = reader.readVarint();
+    long loBits = reader.readVarint();
+    result.block = block;
+    result.size = size;
+    result.keys[0] = key;
+    result.values[0] = (hiBits << 32) | loBits;
+    int x = (int) hiBits;
+    int y = (int) loBits;
+    for (int i = 1; i < size; i++) {
+      key += reader.readVarint();
+      x += unzigzag(reader.readVarint());
+      y += unzigzag(reader.readVarint());
+      result.keys[i] = key;
+      result.values[i] = ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+    return result;
+  }
+
+  private static long zigzag(int value) {
+    return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+  }
+
+  private static int unzigzag(long value) {
+    int v = (int) value;
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private static int writeVarint(byte[] buffer, int pos, long value) {
+    while ((value & ~0x7FL) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+    return pos;
+  }
+
+  @Override
+  public long diskUsageBytes() {
+    return data.diskUsageBytes();
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return data.estimateMemoryUsageBytes() + firstKeys.estimateMemoryUsageBytes() +
+      blockOffsets.estimateMemoryUsageBytes();
+  }
+
+  @Override
+  public void close() throws IOException {
+    data.close();
+    firstKeys.close();
+    blockOffsets.close();
+  }
+
+  /** Reads varints from bytes packed little-endian into a sequence of longs. */
+  private static class LongReader {
+
+    private final AppendStore.Longs longs;
+    private long index;
+    private long current;
+    private int remaining = 0;
+
+    LongReader(AppendStore.Longs longs, long index) {
+      this.longs = longs;
+      this.index = index;
+    }
+
+    private int readByte() {
+      if (remaining == 0) {
+        current = longs.getLong(index++);
+        remaining = Long.BYTES;
+      }
+      int result = (int) (current & 0xFF);
+      current >>>= 8;
+      remaining--;
+      return result;
+    }
+
+    long readVarint() {
+      long result = 0;
+      for (int shift = 0; ; shift += 7) {
+        int b = readByte();
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+    }
+  }
+
+  private static class DecodedBlock {
+
+    final long[] keys = new long[BLOCK_SIZE];
+    final long[] values = new long[BLOCK_SIZE];
+    long block = -1;
+    int size = 0;
+  }
+
+  /** Least-recently-used cache of decoded blocks for a single reader thread. */
+  @NotThreadSafe
+  private class BlockCache {
+
+    // most recently used first
+    private final DecodedBlock[] entries = new DecodedBlock[CACHE_SIZE];
+    private int size = 0;
+
+    DecodedBlock get(long block) {
+      for (int i = 0; i < size; i++) {
+        DecodedBlock entry = entries[i];
+        if (entry.block == block) {
+          moveToFront(i);
+          return entry;
+        }
+      }
+      DecodedBlock entry;
+      if (size < CACHE_SIZE) {
+        entry = new DecodedBlock();
+        entries[size] = entry;
+        moveToFront(size++);
+      } else {
+        // reuse the least recently used entry
+        entry = entries[CACHE_SIZE - 1];
+        moveToFront(CACHE_SIZE - 1);
+      }
+      return decode(block, entry);
+    }
+
+    private void moveToFront(int i) {
+      DecodedBlock entry = entries[i];
+      System.arraycopy(entries, 0, entries, 1, i);
+      entries[0] = entry;
+    }
+  }
+}
@@ -18,11 +18,11 @@ import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -36,16 +36,21 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import javax.annotation.concurrent.NotThreadSafe;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xerial.snappy.SnappyInputStream;
-import org.xerial.snappy.SnappyOutputStream;
 
 /**
  * A utility that writes {@link SortableFeature SortableFeatures} to disk and uses merge sort to efficiently sort much
@@ -55,6 +60,21 @@ import org.xerial.snappy.SnappyOutputStream;
  * chunk. The sort process sorts the chunks, limiting the number of parallel threads by CPU cores and available RAM.
  * Reads do a k-way merge of the sorted chunks using a priority queue of minimum values from each.
  * <p>
+ * When {@code offHeapSort} is enabled, the sort step reads each chunk into a single direct byte buffer and sorts a
+ * primitive {@code long[]} index of (key, offset) pairs into it instead of materializing a {@link SortableFeature} per
+ * entry, so that sorting is bound by memory bandwidth instead of garbage collection.
+ * <p>
+ * While flushing each sorted chunk, the key and file offset of every {@value #SAMPLE_INTERVAL}th entry is recorded.
+ * Those samples give split points that divide the key space into ranges with roughly the same number of features, and
+ * let a reader seek close to the start of a range in each chunk so that ranges can be merged independently in
+ * parallel.
+ * <p>
+ * When {@code compress} is enabled, chunk files are made of independently LZ4-compressed blocks of
+ * {@value #SAMPLE_INTERVAL} entries, each starting at a sample so a reader can seek straight to it. Within a block,
+ * keys are stored as varint deltas from the previous key and value lengths as varints, so sorted chunks where
+ * neighboring keys differ by tiny amounts shrink well beyond what compressing the raw entries would give. Blocks can be
+ * read through either a buffered stream or a memory-mapped file.
+ * <p>
  * Only supports single-threaded writes and reads.
  */
 @NotThreadSafe
@@ -62,6 +82,18 @@ class ExternalMergeSort implements FeatureSort {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(ExternalMergeSort.class);
   private static final long MAX_CHUNK_SIZE = 2_000_000_000; // 2GB
+  // long key + int length prefix of each entry in a chunk file
+  private static final int ENTRY_HEADER_BYTES = SortableFeatureBlock.ENTRY_HEADER_BYTES;
+  // below this many entries, sort a range of the off-heap index with insertion sort
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  // below this many entries, don't fork a new task to sort a range of the off-heap index in parallel
+  private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+  // record the key and offset of every Nth entry in a sorted chunk to split and seek into key ranges
+  private static final int SAMPLE_INTERVAL = 4096;
+  // compressed length, uncompressed length, and entry count before each compressed block
+  private static final int BLOCK_HEADER_BYTES = 3 * Integer.BYTES;
+  private static final LZ4Compressor LZ4_COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+  private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
   private final Path dir;
   private final Stats stats;
   private final int chunkSizeLimit;
@@ -76,6 +108,7 @@ class ExternalMergeSort implements FeatureSort {
   private final boolean mmapIO;
   private final boolean parallelSort;
   private final boolean madvise;
+  private final boolean offHeapSort;
   private final AtomicBoolean madviseFailed = new AtomicBoolean(false);
   private volatile boolean sorted = false;
 
@@ -91,23 +124,21 @@ class ExternalMergeSort implements FeatureSort {
       config.mmapTempStorage(),
       true,
       true,
+      config.sortOffHeap(),
       config,
       stats
     );
   }
 
   ExternalMergeSort(Path dir, int workers, int chunkSizeLimit, boolean compress, boolean mmap, boolean parallelSort,
-    boolean madvise, PlanetilerConfig config, Stats stats) {
+    boolean madvise, boolean offHeapSort, PlanetilerConfig config, Stats stats) {
     this.config = config;
     this.madvise = madvise;
+    this.offHeapSort = offHeapSort;
     this.dir = dir;
     this.stats = stats;
     this.parallelSort = parallelSort;
     this.chunkSizeLimit = chunkSizeLimit;
-    if (compress && mmap) {
-      LOGGER.warn("--compress-temp option not supported with --mmap-temp, falling back to --mmap-temp=false");
-      mmap = false;
-    }
     this.compress = compress;
     this.mmapIO = mmap;
     long memLimit = ProcessInfo.getMaxMemoryBytes() / 3;
@@ -118,7 +149,8 @@ class ExternalMergeSort implements FeatureSort {
     this.workers = Math.min(workers, maxWorkersBasedOnMemory);
     this.readerLimit = Math.max(1, config.sortMaxReaders());
     this.writerLimit = Math.max(1, config.sortMaxWriters());
-    LOGGER.info("Using merge sort feature map, chunk size={}mb max workers={}", chunkSizeLimit / 1_000_000, workers);
+    LOGGER.info("Using merge sort feature map, chunk size={}mb max workers={} off-heap sort={} compress={}",
+      chunkSizeLimit / 1_000_000, workers, offHeapSort, compress);
     try {
       FileUtils.deleteDirectory(dir);
       Files.createDirectories(dir);
@@ -141,6 +173,22 @@ class ExternalMergeSort implements FeatureSort {
     return new ThreadLocalWriter();
   }
 
+  @Override
+  public CloseableConsumer<SortableFeatureBlock> blockWriterForThread() {
+    var writer = new ThreadLocalWriter();
+    return new CloseableConsumer<>() {
+      @Override
+      public void accept(SortableFeatureBlock block) {
+        writer.acceptBlock(block);
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    };
+  }
+
   @Override
   public long diskUsageBytes() {
     return FileUtils.directorySize(dir);
@@ -234,20 +282,15 @@ class ExternalMergeSort implements FeatureSort {
   }
 
   @Override
-  public Iterator<SortableFeature> iterator(int shard, int shards) {
+  public Iterator<SortableFeature> iterator() {
     assert sorted;
-    if (shard < 0 || shard >= shards) {
-      throw new IllegalArgumentException("Bad shard params: shard=%d shards=%d".formatted(shard, shards));
-    }
-
     if (chunks.isEmpty()) {
       return Collections.emptyIterator();
     }
 
     // k-way merge to interleave all the sorted chunks
     List<Reader> iterators = new ArrayList<>();
-    for (int i = shard; i < chunks.size(); i += shards) {
-      var chunk = chunks.get(i);
+    for (var chunk : chunks) {
       if (chunk.itemCount > 0) {
         iterators.add(chunk.newReader());
       }
@@ -256,6 +299,52 @@ class ExternalMergeSort implements FeatureSort {
     return LongMerger.mergeIterators(iterators, SortableFeature.COMPARE_BYTES);
   }
 
+  @Override
+  public Iterator<SortableFeature> iterator(long fromKey, long toKey) {
+    assert sorted;
+    List<Reader> iterators = new ArrayList<>();
+    for (var chunk : chunks) {
+      var reader = chunk.newReader(fromKey, toKey);
+      if (reader != null) {
+        iterators.add(reader);
+      }
+    }
+    return LongMerger.mergeIterators(iterators, SortableFeature.COMPARE_BYTES);
+  }
+
+  @Override
+  public Iterator<SortableFeature> iterator(long[] ranges) {
+    assert sorted;
+    List<Reader> iterators = new ArrayList<>();
+    for (var chunk : chunks) {
+      if (chunk.itemCount > 0) {
+        var reader = new ReaderRanges(chunk, ranges);
+        if (reader.hasNext()) {
+          iterators.add(reader);
+        }
+      }
+    }
+    return LongMerger.mergeIterators(iterators, SortableFeature.COMPARE_BYTES);
+  }
+
+  @Override
+  public long[] splitKeys(int partitions) {
+    assert sorted;
+    int count = 0;
+    for (var chunk : chunks) {
+      count += chunk.sampleKeys.length;
+    }
+    long[] samples = new long[count];
+    int i = 0;
+    for (var chunk : chunks) {
+      System.arraycopy(chunk.sampleKeys, 0, samples, i, chunk.sampleKeys.length);
+      i += chunk.sampleKeys.length;
+    }
+    Arrays.sort(samples);
+    // every sample stands in for the same number of entries, so quantiles of the samples split features evenly
+    return FeatureSort.quantiles(samples, partitions);
+  }
+
   @Override
   public int chunksToRead() {
     return chunks.size();
@@ -278,6 +367,15 @@ class ExternalMergeSort implements FeatureSort {
   private interface Writer extends Closeable {
 
     void write(SortableFeature feature) throws IOException;
+
+    /** Writes {@code length} bytes of an already-encoded entry starting at {@code offset} in {@code src}. */
+    void writeRaw(ByteBuffer src, int offset, int length) throws IOException;
+
+    /**
+     * Returns the file offset that a reader can start from to read the next entry, only called before entries that
+     * start a new sample.
+     */
+    long offset();
   }
 
   private interface Reader extends Closeable, Iterator<SortableFeature> {
@@ -286,6 +384,13 @@ class ExternalMergeSort implements FeatureSort {
     void close();
   }
 
+  /** Opens a reader over {@code count} entries from byte {@code offset} up to {@code end} of a chunk file. */
+  @FunctionalInterface
+  private interface SpanReader {
+
+    Reader read(long offset, long end, int count);
+  }
+
   /** Read all features from a chunk file using a {@link BufferedInputStream}. */
   private static class ReaderBuffered extends BaseReader {
 
@@ -293,14 +398,10 @@ class ExternalMergeSort implements FeatureSort {
     private final DataInputStream input;
     private int read = 0;
 
-    ReaderBuffered(Path path, int count, boolean compress) {
+    ReaderBuffered(Path path, long offset, int count) {
       this.count = count;
       try {
-        InputStream inputStream = new BufferedInputStream(Files.newInputStream(path));
-        if (compress) {
-          inputStream = new SnappyInputStream(inputStream);
-        }
-        input = new DataInputStream(inputStream);
+        input = openBuffered(path, offset);
         next = readNextFeature();
       } catch (IOException e) {
         throw new UncheckedIOException(e);
@@ -334,18 +435,21 @@ class ExternalMergeSort implements FeatureSort {
     }
   }
 
+  private static DataInputStream openBuffered(Path path, long offset) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    channel.position(offset);
+    return new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+  }
+
   /** Write features to the chunk file using a {@link BufferedOutputStream}. */
   private static class WriterBuffered implements Writer {
 
     private final DataOutputStream out;
+    private byte[] scratch = new byte[0];
 
-    WriterBuffered(Path path, boolean compress) {
+    WriterBuffered(Path path) {
       try {
-        OutputStream rawOutputStream = new BufferedOutputStream(Files.newOutputStream(path));
-        if (compress) {
-          rawOutputStream = new SnappyOutputStream(rawOutputStream);
-        }
-        this.out = new DataOutputStream(rawOutputStream);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -362,6 +466,245 @@ class ExternalMergeSort implements FeatureSort {
       out.writeInt(feature.value().length);
       out.write(feature.value());
     }
+
+    @Override
+    public void writeRaw(ByteBuffer src, int offset, int length) throws IOException {
+      if (scratch.length < length) {
+        scratch = new byte[Math.max(length, scratch.length * 2)];
+      }
+      src.get(offset, scratch, 0, length);
+      out.write(scratch, 0, length);
+    }
+
+    @Override
+    public long offset() {
+      return out.size();
+    }
+  }
+
+  /**
+   * Write features to the chunk file in LZ4-compressed blocks of {@value #SAMPLE_INTERVAL} entries, storing each key as
+   * a zigzag varint delta from the previous key in the block.
+   */
+  private static class WriterBlocks implements Writer {
+
+    private final DataOutputStream out;
+    private byte[] block = new byte[64 * 1024];
+    private byte[] compressed = new byte[0];
+    private int blockSize = 0;
+    private int blockCount = 0;
+    private long lastKey = 0;
+    private long written = 0;
+
+    WriterBlocks(Path path) {
+      try {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private static int putVarLong(byte[] dest, int pos, long value) {
+      while ((value & ~0x7fL) != 0) {
+        dest[pos++] = (byte) ((value & 0x7f) | 0x80);
+        value >>>= 7;
+      }
+      dest[pos++] = (byte) value;
+      return pos;
+    }
+
+    /** Writes the key and length of the next entry and returns the position in {@link #block} to put its value. */
+    private int startEntry(long key, int valueLength) {
+      // 10 bytes for the key delta and 5 for the length, at most
+      int needed = blockSize + 15 + valueLength;
+      if (needed > block.length) {
+        block = Arrays.copyOf(block, Math.max(needed, block.length * 2));
+      }
+      long delta = key - lastKey;
+      blockSize = putVarLong(block, blockSize, (delta << 1) ^ (delta >> 63));
+      blockSize = putVarLong(block, blockSize, valueLength);
+      lastKey = key;
+      int valueStart = blockSize;
+      blockSize += valueLength;
+      return valueStart;
+    }
+
+    private void finishEntry() throws IOException {
+      if (++blockCount >= SAMPLE_INTERVAL) {
+        flushBlock();
+      }
+    }
+
+    private void flushBlock() throws IOException {
+      if (blockCount == 0) {
+        return;
+      }
+      int maxLength = LZ4_COMPRESSOR.maxCompressedLength(blockSize);
+      if (compressed.length < maxLength) {
+        compressed = new byte[maxLength];
+      }
+      int compressedLength = LZ4_COMPRESSOR.compress(block, 0, blockSize, compressed, 0, compressed.length);
+      out.writeInt(compressedLength);
+      out.writeInt(blockSize);
+      out.writeInt(blockCount);
+      out.write(compressed, 0, compressedLength);
+      written += BLOCK_HEADER_BYTES + compressedLength;
+      blockSize = 0;
+      blockCount = 0;
+      lastKey = 0;
+    }
+
+    @Override
+    public void write(SortableFeature feature) throws IOException {
+      byte[] value = feature.value();
+      int valueStart = startEntry(feature.key(), value.length);
+      System.arraycopy(value, 0, block, valueStart, value.length);
+      finishEntry();
+    }
+
+    @Override
+    public void writeRaw(ByteBuffer src, int offset, int length) throws IOException {
+      int valueLength = length - ENTRY_HEADER_BYTES;
+      int valueStart = startEntry(src.getLong(offset), valueLength);
+      src.get(offset + ENTRY_HEADER_BYTES, block, valueStart, valueLength);
+      finishEntry();
+    }
+
+    @Override
+    public long offset() {
+      // samples always start a new block
+      return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+      flushBlock();
+      out.close();
+    }
+  }
+
+  /** Reads features from a chunk file written by {@link WriterBlocks} one block at a time. */
+  private abstract static class ReaderBlocks extends BaseReader {
+
+    private final int count;
+    private int read = 0;
+    byte[] block = new byte[0];
+    private int blockEnd = 0;
+    private int pos = 0;
+    private long key = 0;
+    private int valueStart;
+    private int valueLength;
+
+    ReaderBlocks(int count) {
+      this.count = count;
+    }
+
+    /** Decompresses the next block into {@link #block} and returns its uncompressed length. */
+    abstract int readBlock() throws IOException;
+
+    void ensureBlockCapacity(int length) {
+      if (block.length < length) {
+        block = new byte[Math.max(length, block.length * 2)];
+      }
+    }
+
+    private long getVarLong() {
+      long result = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = block[pos++];
+        result |= (long) (b & 0x7f) << shift;
+        shift += 7;
+      } while (b < 0);
+      return result;
+    }
+
+    /** Decodes the key and value location of the next entry, or returns false if there are no more. */
+    private boolean advance() {
+      if (read >= count) {
+        return false;
+      }
+      if (pos >= blockEnd) {
+        try {
+          blockEnd = readBlock();
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        } catch (LZ4Exception e) {
+          throw new IllegalStateException("Corrupt temp feature block", e);
+        }
+        pos = 0;
+        key = 0;
+      }
+      long delta = getVarLong();
+      key += (delta >>> 1) ^ -(delta & 1);
+      valueLength = (int) getVarLong();
+      valueStart = pos;
+      pos += valueLength;
+      read++;
+      return true;
+    }
+
+    @Override
+    SortableFeature readNextFeature() {
+      return advance() ? new SortableFeature(key, Arrays.copyOfRange(block, valueStart, valueStart + valueLength)) :
+        null;
+    }
+
+    /**
+     * Copies every remaining entry into {@code dest} using the uncompressed chunk layout, without allocating a
+     * {@link SortableFeature} for each one.
+     */
+    void readAllInto(ByteBuffer dest) {
+      if (next != null) {
+        dest.putLong(next.key()).putInt(next.value().length).put(next.value());
+        next = null;
+      }
+      while (advance()) {
+        dest.putLong(key).putInt(valueLength).put(block, valueStart, valueLength);
+      }
+      close();
+    }
+  }
+
+  /** Reads compressed blocks from a chunk file using a {@link BufferedInputStream}. */
+  private static class ReaderBlocksBuffered extends ReaderBlocks {
+
+    private final DataInputStream input;
+    private byte[] compressed = new byte[0];
+
+    ReaderBlocksBuffered(Path path, long offset, int count) {
+      super(count);
+      try {
+        input = openBuffered(path, offset);
+        next = readNextFeature();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    int readBlock() throws IOException {
+      int compressedLength = input.readInt();
+      int length = input.readInt();
+      input.readInt(); // entry count
+      if (compressed.length < compressedLength) {
+        compressed = new byte[compressedLength];
+      }
+      input.readFully(compressed, 0, compressedLength);
+      ensureBlockCapacity(length);
+      LZ4_DECOMPRESSOR.decompress(compressed, 0, block, 0, length);
+      return length;
+    }
+
+    @Override
+    public void close() {
+      try {
+        input.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing chunk", e);
+      }
+    }
   }
 
   /** Common functionality between {@link ReaderMmap} and {@link ReaderBuffered}. */
@@ -389,6 +732,51 @@ class ExternalMergeSort implements FeatureSort {
     abstract SortableFeature readNextFeature();
   }
 
+  /** Reads features from another reader, skipping ones before {@code fromKey} and stopping at {@code toKey}. */
+  private static class KeyRangeReader extends BaseReader {
+
+    private final Reader reader;
+    private final long toKey;
+    private boolean closed = false;
+
+    KeyRangeReader(Reader reader, long fromKey, long toKey) {
+      this.reader = reader;
+      this.toKey = toKey;
+      SortableFeature first = null;
+      while (first == null && reader.hasNext()) {
+        first = reader.next();
+        if (first.key() < fromKey) {
+          first = null;
+        }
+      }
+      if (first != null && first.key() < toKey) {
+        next = first;
+      } else {
+        close();
+      }
+    }
+
+    @Override
+    SortableFeature readNextFeature() {
+      if (reader.hasNext()) {
+        SortableFeature feature = reader.next();
+        if (feature.key() < toKey) {
+          return feature;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public void close() {
+      // the underlying reader closes itself once it runs out of features
+      if (!closed && reader.hasNext()) {
+        reader.close();
+      }
+      closed = true;
+    }
+  }
+
   /** Writer that a single thread can use to write features independent of writers used in other threads. */
   @NotThreadSafe
   private class ThreadLocalWriter implements CloseableConsumer<SortableFeature> {
@@ -417,6 +805,25 @@ class ExternalMergeSort implements FeatureSort {
       }
     }
 
+    /** Copies each encoded entry in {@code block} into the current chunk without decoding it. */
+    private void acceptBlock(SortableFeatureBlock block) {
+      assert !sorted;
+      try {
+        features.addAndGet(block.size());
+        ByteBuffer buffer = block.buffer();
+        for (int offset = 0, end = block.bytes(); offset < end; ) {
+          int length = block.entryLength(offset);
+          currentChunk.addRaw(buffer, offset, length);
+          offset += length;
+          if (currentChunk.bytesInMemory > chunkSizeLimit) {
+            newChunk();
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
     private void newChunk() throws IOException {
       Path chunkPath = dir.resolve("chunk" + chunkNum.incrementAndGet());
       FileUtils.deleteOnExit(chunkPath);
@@ -468,6 +875,18 @@ class ExternalMergeSort implements FeatureSort {
       buffer.putInt(feature.value().length);
       buffer.put(feature.value());
     }
+
+    @Override
+    public void writeRaw(ByteBuffer src, int offset, int length) {
+      int position = buffer.position();
+      buffer.put(position, src, offset, length);
+      buffer.position(position + length);
+    }
+
+    @Override
+    public long offset() {
+      return buffer.position();
+    }
   }
 
   /**
@@ -479,7 +898,13 @@ class ExternalMergeSort implements FeatureSort {
     private final Writer writer;
     // estimate how much RAM it would take to sort this chunk
     private int bytesInMemory = 0;
+    // exact number of bytes written to the chunk file, before compression
+    private int bytesOnDisk = 0;
     private int itemCount = 0;
+    // key and file offset of every SAMPLE_INTERVAL-th entry, recorded when the sorted chunk gets flushed
+    private long[] sampleKeys = new long[0];
+    private long[] sampleOffsets = new long[0];
+    private long lastKey;
 
     private Chunk(Path path) {
       this.path = path;
@@ -488,17 +913,38 @@ class ExternalMergeSort implements FeatureSort {
 
     public void add(SortableFeature entry) throws IOException {
       writer.write(entry);
-      bytesInMemory +=
-        // pointer to feature
-        8 +
-          // Feature class overhead
-          16 +
-          // long sort member of feature
-          8 +
-          // byte array pointer
+      added(entry.value().length);
+    }
+
+    /** Adds the already-encoded entry of {@code length} bytes starting at {@code offset} in {@code src}. */
+    public void addRaw(ByteBuffer src, int offset, int length) throws IOException {
+      writer.writeRaw(src, offset, length);
+      added(length - ENTRY_HEADER_BYTES);
+    }
+
+    private void added(int length) {
+      bytesOnDisk += ENTRY_HEADER_BYTES + length;
+      if (offHeapSort) {
+        bytesInMemory +=
+          // entry copied verbatim into the off-heap buffer
+          ENTRY_HEADER_BYTES + length +
+          // (key, offset) pair in the index
+            2 * Long.BYTES +
+            // (key, offset) pair in the scratch index used by merge sort
+            2 * Long.BYTES;
+      } else {
+        bytesInMemory +=
+          // pointer to feature
           8 +
-          // byte array size
-          24 + entry.value().length;
+          // Feature class overhead
+            16 +
+            // long sort member of feature
+            8 +
+            // byte array pointer
+            8 +
+            // byte array size
+            24 + length;
+      }
       itemCount++;
     }
 
@@ -506,6 +952,7 @@ class ExternalMergeSort implements FeatureSort {
       // first, grow this chunk
       int newItems = itemCount;
       int newBytes = bytesInMemory;
+      int newBytesOnDisk = bytesOnDisk;
       for (var other : others) {
         if (Integer.MAX_VALUE - newItems < other.itemCount) {
           throw new IllegalStateException("Too many items in merged chunk: " + itemCount + "+" +
@@ -517,27 +964,91 @@ class ExternalMergeSort implements FeatureSort {
         }
         newItems += other.itemCount;
         newBytes += other.bytesInMemory;
+        newBytesOnDisk += other.bytesOnDisk;
       }
       // then read items from all chunks into memory
-      SortableChunk result = new SortableChunk(newItems);
+      SortableChunk result = offHeapSort ? new OffHeapSortableChunk(newItems, newBytesOnDisk) :
+        new ObjectSortableChunk(newItems);
       result.readAll(this);
       itemCount = newItems;
       bytesInMemory = newBytes;
+      bytesOnDisk = newBytesOnDisk;
       for (var other : others) {
         result.readAll(other);
       }
-      if (result.i != itemCount) {
-        throw new IllegalStateException("Expected " + itemCount + " features in " + path + " got " + result.i);
+      if (result.count() != itemCount) {
+        throw new IllegalStateException("Expected " + itemCount + " features in " + path + " got " + result.count());
       }
       return result;
     }
 
     private Writer newWriter(Path path) {
-      return mmapIO ? new WriterMmap(path) : new WriterBuffered(path, compress);
+      if (compress) {
+        return new WriterBlocks(path);
+      }
+      return mmapIO ? new WriterMmap(path) : new WriterBuffered(path);
     }
 
     private Reader newReader() {
-      return mmapIO ? new ReaderMmap(path, itemCount) : new ReaderBuffered(path, itemCount, compress);
+      return newReader(0, Long.MAX_VALUE, itemCount);
+    }
+
+    /** Returns a reader over {@code count} entries from byte {@code offset} up to {@code end} of the chunk file. */
+    private Reader newReader(long offset, long end, int count) {
+      if (compress) {
+        return mmapIO ? new ReaderBlocksMmap(path, offset, end, count) : new ReaderBlocksBuffered(path, offset, count);
+      }
+      return mmapIO ? new ReaderMmap(path, offset, end, count) : new ReaderBuffered(path, offset, count);
+    }
+
+    /**
+     * Returns a reader over entries with keys in {@code [fromKey, toKey)} that only reads from the closest sample
+     * before {@code fromKey} to the first sample at or after {@code toKey}, or null if there are none.
+     */
+    private Reader newReader(long fromKey, long toKey) {
+      return newReader(fromKey, toKey, this::newReader);
+    }
+
+    /** Same as {@link #newReader(long, long)} but uses {@code spanReader} to read the entries between the samples. */
+    private Reader newReader(long fromKey, long toKey, SpanReader spanReader) {
+      if (itemCount == 0 || lastKey < fromKey || sampleKeys[0] >= toKey) {
+        return null;
+      }
+      // every entry before the last sample before fromKey is also before fromKey, and every entry from the first sample
+      // at or after toKey on is also at or after toKey
+      int start = Math.max(0, firstSampleAtOrAfter(fromKey) - 1);
+      int end = firstSampleAtOrAfter(toKey);
+      long endOffset = end < sampleOffsets.length ? sampleOffsets[end] : Long.MAX_VALUE;
+      int count = (int) Math.min(itemCount, (long) end * SAMPLE_INTERVAL) - start * SAMPLE_INTERVAL;
+      var reader = new KeyRangeReader(spanReader.read(sampleOffsets[start], endOffset, count), fromKey, toKey);
+      return reader.hasNext() ? reader : null;
+    }
+
+    private int firstSampleAtOrAfter(long key) {
+      int lo = 0, hi = sampleKeys.length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (sampleKeys[mid] < key) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo;
+    }
+
+    /** Records entry {@code n} of this chunk with {@code key} before {@code out} writes it in sorted order. */
+    private void sample(int n, long key, Writer out) {
+      if (n == 0) {
+        int samples = (itemCount + SAMPLE_INTERVAL - 1) / SAMPLE_INTERVAL;
+        sampleKeys = new long[samples];
+        sampleOffsets = new long[samples];
+      }
+      if (n % SAMPLE_INTERVAL == 0) {
+        sampleKeys[n / SAMPLE_INTERVAL] = key;
+        sampleOffsets[n / SAMPLE_INTERVAL] = out.offset();
+      }
+      lastKey = key;
     }
 
     @Override
@@ -550,18 +1061,34 @@ class ExternalMergeSort implements FeatureSort {
       FileUtils.delete(path);
     }
 
-    /**
-     * A container for all features in a chunk read into memory for sorting.
-     */
-    private class SortableChunk {
+    /** A container for all features in a chunk read into memory for sorting. */
+    private interface SortableChunk {
+
+      void readAll(Chunk chunk);
+
+      int count();
+
+      SortableChunk sort();
+
+      SortableChunk flush();
+    }
+
+    /** A {@link SortableChunk} that reads every feature into a {@link SortableFeature} on the heap. */
+    private class ObjectSortableChunk implements SortableChunk {
 
       private SortableFeature[] featuresToSort;
       private int i = 0;
 
-      private SortableChunk(int itemCount) {
+      private ObjectSortableChunk(int itemCount) {
         this.featuresToSort = new SortableFeature[itemCount];
       }
 
+      @Override
+      public int count() {
+        return i;
+      }
+
+      @Override
       public SortableChunk sort() {
         if (parallelSort) {
           Arrays.parallelSort(featuresToSort);
@@ -571,9 +1098,12 @@ class ExternalMergeSort implements FeatureSort {
         return this;
       }
 
+      @Override
       public SortableChunk flush() {
         try (Writer out = newWriter(path)) {
-          for (SortableFeature feature : featuresToSort) {
+          for (int n = 0; n < featuresToSort.length; n++) {
+            SortableFeature feature = featuresToSort[n];
+            sample(n, feature.key(), out);
             out.write(feature);
           }
           featuresToSort = null;
@@ -583,7 +1113,8 @@ class ExternalMergeSort implements FeatureSort {
         }
       }
 
-      private void readAll(Chunk chunk) {
+      @Override
+      public void readAll(Chunk chunk) {
         try (var iterator = chunk.newReader()) {
           while (iterator.hasNext()) {
             featuresToSort[i++] = iterator.next();
@@ -591,29 +1122,231 @@ class ExternalMergeSort implements FeatureSort {
         }
       }
     }
+
+    /**
+     * A {@link SortableChunk} that copies the raw bytes of every entry into one direct byte buffer and sorts an index
+     * of interleaved {@code (key, offset)} pairs into that buffer, without allocating any per-feature objects.
+     */
+    private class OffHeapSortableChunk implements SortableChunk {
+
+      private ByteBuffer data;
+      private long[] index;
+      private int i = 0;
+
+      private OffHeapSortableChunk(int itemCount, int bytes) {
+        this.data = ByteBuffer.allocateDirect(bytes).order(ByteOrder.BIG_ENDIAN);
+        this.index = new long[itemCount * 2];
+      }
+
+      @Override
+      public int count() {
+        return i;
+      }
+
+      @Override
+      public void readAll(Chunk chunk) {
+        int start = data.position();
+        int end = start + chunk.bytesOnDisk;
+        try {
+          if (compress) {
+            ((ReaderBlocks) chunk.newReader()).readAllInto(data);
+          } else {
+            try (FileChannel channel = FileChannel.open(chunk.path, StandardOpenOption.READ)) {
+              data.limit(end);
+              while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading until the whole chunk is in memory
+              }
+              data.limit(data.capacity());
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        if (data.position() != end) {
+          throw new IllegalStateException(
+            "Expected " + chunk.bytesOnDisk + " bytes in " + chunk.path + " got " + (data.position() - start));
+        }
+        for (int offset = start, n = 0; n < chunk.itemCount; n++) {
+          index[i * 2] = data.getLong(offset);
+          index[i * 2 + 1] = offset;
+          i++;
+          offset += ENTRY_HEADER_BYTES + data.getInt(offset + Long.BYTES);
+        }
+      }
+
+      @Override
+      public SortableChunk sort() {
+        long[] scratch = new long[index.length];
+        var task = new SortTask(index, scratch, 0, i);
+        if (parallelSort && i > PARALLEL_SORT_THRESHOLD) {
+          ForkJoinPool.commonPool().invoke(task);
+        } else {
+          task.compute();
+        }
+        return this;
+      }
+
+      @Override
+      public SortableChunk flush() {
+        try (Writer out = newWriter(path)) {
+          for (int n = 0; n < i; n++) {
+            int offset = (int) index[n * 2 + 1];
+            int length = ENTRY_HEADER_BYTES + data.getInt(offset + Long.BYTES);
+            sample(n, index[n * 2], out);
+            out.writeRaw(data, offset, length);
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        try {
+          ByteBufferUtil.free(data);
+        } catch (IOException e) {
+          LOGGER.info("Unable to free off-heap sort buffer", e);
+        }
+        data = null;
+        index = null;
+        return this;
+      }
+
+      /** Compares entry {@code a} in {@code as} to entry {@code b} in {@code bs} by key then unsigned value bytes. */
+      private int compare(long[] as, int a, long[] bs, int b) {
+        int result = Long.compare(as[a * 2], bs[b * 2]);
+        return result != 0 ? result : compareValues((int) as[a * 2 + 1], (int) bs[b * 2 + 1]);
+      }
+
+      /** Same as {@link java.util.Arrays#compareUnsigned(byte[], byte[])} but over values in the off-heap buffer. */
+      private int compareValues(int aOffset, int bOffset) {
+        int aLength = data.getInt(aOffset + Long.BYTES);
+        int bLength = data.getInt(bOffset + Long.BYTES);
+        int a = aOffset + ENTRY_HEADER_BYTES;
+        int b = bOffset + ENTRY_HEADER_BYTES;
+        int length = Math.min(aLength, bLength);
+        int n = 0;
+        // big-endian longs compare the same as their bytes compared unsigned lexicographically
+        for (; n + Long.BYTES <= length; n += Long.BYTES) {
+          int result = Long.compareUnsigned(data.getLong(a + n), data.getLong(b + n));
+          if (result != 0) {
+            return result;
+          }
+        }
+        for (; n < length; n++) {
+          int result = Byte.compareUnsigned(data.get(a + n), data.get(b + n));
+          if (result != 0) {
+            return result;
+          }
+        }
+        return aLength - bLength;
+      }
+
+      /**
+       * Stable top-down merge sort over the range {@code [lo, hi)} of (key, offset) pairs, forking subtasks for large
+       * ranges when running in a fork-join pool.
+       */
+      private class SortTask extends RecursiveAction {
+
+        private final long[] items;
+        private final long[] scratch;
+        private final int lo;
+        private final int hi;
+
+        SortTask(long[] items, long[] scratch, int lo, int hi) {
+          this.items = items;
+          this.scratch = scratch;
+          this.lo = lo;
+          this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+          int length = hi - lo;
+          if (length <= INSERTION_SORT_THRESHOLD) {
+            insertionSort();
+            return;
+          }
+          int mid = (lo + hi) >>> 1;
+          var left = new SortTask(items, scratch, lo, mid);
+          var right = new SortTask(items, scratch, mid, hi);
+          if (length > PARALLEL_SORT_THRESHOLD && ForkJoinTask.inForkJoinPool()) {
+            invokeAll(left, right);
+          } else {
+            left.compute();
+            right.compute();
+          }
+          if (compare(items, mid - 1, items, mid) > 0) {
+            merge(mid);
+          }
+        }
+
+        private void insertionSort() {
+          for (int n = lo + 1; n < hi; n++) {
+            long key = items[n * 2];
+            long offset = items[n * 2 + 1];
+            scratch[n * 2] = key;
+            scratch[n * 2 + 1] = offset;
+            int m = n - 1;
+            while (m >= lo && compare(items, m, scratch, n) > 0) {
+              items[(m + 1) * 2] = items[m * 2];
+              items[(m + 1) * 2 + 1] = items[m * 2 + 1];
+              m--;
+            }
+            items[(m + 1) * 2] = key;
+            items[(m + 1) * 2 + 1] = offset;
+          }
+        }
+
+        private void merge(int mid) {
+          System.arraycopy(items, lo * 2, scratch, lo * 2, (hi - lo) * 2);
+          int a = lo;
+          int b = mid;
+          int out = lo;
+          while (a < mid && b < hi) {
+            int from = compare(scratch, b, scratch, a) < 0 ? b++ : a++;
+            items[out * 2] = scratch[from * 2];
+            items[out * 2 + 1] = scratch[from * 2 + 1];
+            out++;
+          }
+          if (a < mid) {
+            System.arraycopy(scratch, a * 2, items, out * 2, (mid - a) * 2);
+          }
+          // remaining items from the right half are already in place
+        }
+      }
+    }
+  }
+
+  /** Memory-map a chunk file from {@code offset} up to {@code end}, the mapping outlives the channel that made it. */
+  private MappedByteBuffer map(Path path, long offset, long end) {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(end, channel.size()) - offset);
+      if (madvise) {
+        // give the OS a hint that pages will be read sequentially so it can read-ahead and drop as soon as we're done
+        tryMadviseSequential(buffer);
+      }
+      return buffer;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      ByteBufferUtil.free(buffer);
+    } catch (IOException e) {
+      LOGGER.info("Unable to unmap chunk", e);
+    }
   }
 
-  /** Memory-map the chunk file, then iterate through all features in it. */
-  private class ReaderMmap extends BaseReader {
+  /** Iterate through features in a buffer that holds part of an uncompressed chunk file. */
+  private static class ReaderBuffer extends BaseReader {
 
     private final int count;
-    private final FileChannel channel;
-    private final MappedByteBuffer buffer;
+    final ByteBuffer buffer;
     private int read = 0;
 
-    ReaderMmap(Path path, int count) {
+    ReaderBuffer(ByteBuffer buffer, int count) {
       this.count = count;
-      try {
-        channel = FileChannel.open(path, StandardOpenOption.READ);
-        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
-        if (madvise) {
-          // give the OS a hint that pages will be read sequentially so it can read-ahead and drop as soon as we're done
-          tryMadviseSequential(buffer);
-        }
-        next = readNextFeature();
-      } catch (IOException e) {
-        throw new UncheckedIOException(e);
-      }
+      this.buffer = buffer;
+      next = readNextFeature();
     }
 
     @Override
@@ -632,11 +1365,121 @@ class ExternalMergeSort implements FeatureSort {
 
     @Override
     public void close() {
+      // nothing to release
+    }
+  }
+
+  /** Memory-map the part of the chunk file with the features to read, then iterate through them. */
+  private class ReaderMmap extends ReaderBuffer {
+
+    ReaderMmap(Path path, long offset, long end, int count) {
+      super(map(path, offset, end), count);
+    }
+
+    @Override
+    public void close() {
+      unmap((MappedByteBuffer) buffer);
+    }
+  }
+
+  /** Decompress blocks of features straight out of a buffer that holds part of a compressed chunk file. */
+  private static class ReaderBlocksBuffer extends ReaderBlocks {
+
+    final ByteBuffer buffer;
+    private ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+
+    ReaderBlocksBuffer(ByteBuffer buffer, int count) {
+      super(count);
+      this.buffer = buffer;
+      next = readNextFeature();
+    }
+
+    @Override
+    int readBlock() {
+      int compressedLength = buffer.getInt();
+      int length = buffer.getInt();
+      buffer.getInt(); // entry count
+      if (block.length < length) {
+        ensureBlockCapacity(length);
+        blockBuffer = ByteBuffer.wrap(block);
+      }
+      int position = buffer.position();
+      LZ4_DECOMPRESSOR.decompress(buffer, position, blockBuffer, 0, length);
+      buffer.position(position + compressedLength);
+      return length;
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+
+  /** Memory-map the chunk file, then decompress blocks of features straight out of the mapped buffer. */
+  private class ReaderBlocksMmap extends ReaderBlocksBuffer {
+
+    ReaderBlocksMmap(Path path, long offset, long end, int count) {
+      super(map(path, offset, end), count);
+    }
+
+    @Override
+    public void close() {
+      unmap((MappedByteBuffer) buffer);
+    }
+  }
+
+  /**
+   * Reads entries in several sorted key ranges from one chunk file, keeping the file open and only reading the span
+   * between the samples around each range into memory.
+   */
+  private class ReaderRanges extends BaseReader {
+
+    private final Chunk chunk;
+    private final long[] ranges;
+    private final FileChannel channel;
+    private int range = 0;
+    private Reader current = null;
+
+    ReaderRanges(Chunk chunk, long[] ranges) {
+      this.chunk = chunk;
+      this.ranges = ranges;
       try {
-        ByteBufferUtil.free(buffer);
+        channel = FileChannel.open(chunk.path, StandardOpenOption.READ);
       } catch (IOException e) {
-        LOGGER.info("Unable to unmap chunk", e);
+        throw new UncheckedIOException(e);
+      }
+      next = readNextFeature();
+    }
+
+    @Override
+    SortableFeature readNextFeature() {
+      while (current == null || !current.hasNext()) {
+        if (range >= ranges.length) {
+          return null;
+        }
+        current = chunk.newReader(ranges[range], ranges[range + 1], this::readSpan);
+        range += 2;
       }
+      return current.next();
+    }
+
+    private Reader readSpan(long offset, long end, int count) {
+      try {
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(Math.min(end, channel.size()) - offset));
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, offset + buffer.position()) < 0) {
+            throw new IOException("Unexpected end of " + chunk.path);
+          }
+        }
+        buffer.flip();
+        return compress ? new ReaderBlocksBuffer(buffer, count) : new ReaderBuffer(buffer, count);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
       try {
         channel.close();
       } catch (IOException e) {
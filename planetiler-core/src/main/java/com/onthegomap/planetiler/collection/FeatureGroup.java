@@ -2,7 +2,9 @@ package com.onthegomap.planetiler.collection;
 
 import static com.onthegomap.planetiler.util.MutableCollections.makeMutable;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.LongLongHashMap;
+import com.google.common.collect.Iterators;
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.VectorTile;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
@@ -16,20 +18,23 @@ import com.onthegomap.planetiler.util.CloseableConsumer;
 import com.onthegomap.planetiler.util.CommonStringEncoder;
 import com.onthegomap.planetiler.util.DiskBacked;
 import com.onthegomap.planetiler.util.LayerAttrStats;
-import com.onthegomap.planetiler.worker.Worker;
 import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.msgpack.core.MessageBufferPacker;
@@ -45,6 +50,18 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Only support single-threaded writes and reads.
  * <p>
+ * Features are sorted by a 64-bit key that packs tile ID, layer, sort key, and whether the feature has group info.
+ * Tile IDs up to z{@value #MAX_NARROW_KEY_ZOOM} fit in the upper 32 bits of that key, but deeper zooms need more bits
+ * so when rendering beyond z{@value #MAX_NARROW_KEY_ZOOM} the key only holds tile ID and layer, and the sort key and
+ * group bit move into a 3-byte big-endian prefix of the value. Since features are sorted by key then by unsigned value
+ * bytes, the effective 88-bit key sorts exactly like the narrow one.
+ * <p>
+ * Large polygons like oceans fill every interior tile with an identical feature, so
+ * {@link #newRenderedFeatureWriter(Consumer)} stores each run of consecutive tile IDs filled by the same feature as a
+ * single record keyed by the first tile in the run, and reading features back expands it into one feature per tile.
+ * Runs never cross a multiple of {@value #FILL_RUN_BLOCK_TILES} tile IDs so that {@link #tileRanges(int)} can split
+ * between runs.
+ * <p>
  * Limitation: layer name and attribute key strings get compressed into a single byte, so only 250 unique values are
  * supported (see {@link CommonStringEncoder})
  */
@@ -55,6 +72,14 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
   public static final int SORT_KEY_MAX = (1 << (SORT_KEY_BITS - 1)) - 1;
   public static final int SORT_KEY_MIN = -(1 << (SORT_KEY_BITS - 1));
   private static final int SORT_KEY_MASK = (1 << SORT_KEY_BITS) - 1;
+  /** The deepest zoom level where tile IDs fit in the upper 32 bits of the sort key. */
+  public static final int MAX_NARROW_KEY_ZOOM = TileCoord.MAX_INT_ENCODED_ZOOM;
+  private static final int WIDE_VALUE_PREFIX_BYTES = 3;
+  /** Fill runs never cross a multiple of this many tile IDs. */
+  static final int FILL_RUN_BLOCK_TILES = 1 << 12;
+  // 0xc1 is never used in msgpack, so values that start with it can't be confused with a regular feature
+  private static final byte FILL_RUN_MARKER = (byte) 0xc1;
+  private static final int FILL_RUN_HEADER_BYTES = 1 + Integer.BYTES;
   private static final Logger LOGGER = LoggerFactory.getLogger(FeatureGroup.class);
   private final FeatureSort sorter;
   private final Profile profile;
@@ -64,6 +89,7 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
   private final PlanetilerConfig config;
   private volatile boolean prepared = false;
   private final TileOrder tileOrder;
+  private final boolean wideKeys;
 
 
   FeatureGroup(FeatureSort sorter, TileOrder tileOrder, Profile profile, PlanetilerConfig config, Stats stats) {
@@ -72,6 +98,7 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     this.profile = profile;
     this.config = config;
     this.stats = stats;
+    this.wideKeys = config.maxzoomForRendering() > MAX_NARROW_KEY_ZOOM;
   }
 
   /** Returns a feature grouper that stores all feature in-memory. Only suitable for toy use-cases like unit tests. */
@@ -97,8 +124,8 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
    * Encode key by {@code tile} asc, {@code layer} asc, {@code sortKey} asc with an extra bit to indicate whether the
    * value contains grouping information.
    */
-  static long encodeKey(int tile, byte layer, int sortKey, boolean hasGroup) {
-    return ((long) tile << 32L) | ((long) (layer & 0xff) << 24L) | (((sortKey - SORT_KEY_MIN) & SORT_KEY_MASK) << 1L) |
+  static long encodeKey(long tile, byte layer, int sortKey, boolean hasGroup) {
+    return (tile << 32L) | ((long) (layer & 0xff) << 24L) | (((sortKey - SORT_KEY_MIN) & SORT_KEY_MASK) << 1L) |
       (hasGroup ? 1 : 0);
   }
 
@@ -106,8 +133,8 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return (key & 1) == 1;
   }
 
-  static int extractTileFromKey(long key) {
-    return (int) (key >> 32L);
+  static long extractTileFromKey(long key) {
+    return key >> 32L;
   }
 
   static byte extractLayerIdFromKey(long key) {
@@ -118,8 +145,113 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return ((int) ((key >> 1) & SORT_KEY_MASK)) + SORT_KEY_MIN;
   }
 
-  private static RenderedFeature.Group peekAtGroupInfo(byte[] encoded) {
-    try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(encoded)) {
+  /** Encode key by {@code tile} asc, {@code layer} asc for tile IDs past z{@value #MAX_NARROW_KEY_ZOOM}. */
+  static long encodeWideKey(long tile, byte layer) {
+    return (tile << 8L) | (layer & 0xff);
+  }
+
+  static long extractTileFromWideKey(long key) {
+    return key >>> 8L;
+  }
+
+  static byte extractLayerIdFromWideKey(long key) {
+    return (byte) key;
+  }
+
+  /**
+   * Writes {@code sortKey} and {@code hasGroup} to the first 3 bytes of {@code dest} in the same order they sort in a
+   * narrow key.
+   */
+  static void encodeWideValuePrefix(int sortKey, boolean hasGroup, byte[] dest) {
+    int prefix = (((sortKey - SORT_KEY_MIN) & SORT_KEY_MASK) << 1) | (hasGroup ? 1 : 0);
+    dest[0] = (byte) (prefix >>> 16);
+    dest[1] = (byte) (prefix >>> 8);
+    dest[2] = (byte) prefix;
+  }
+
+  static int extractSortKeyFromWideValue(byte[] value) {
+    int prefix = ((value[0] & 0xff) << 16) | ((value[1] & 0xff) << 8) | (value[2] & 0xff);
+    return ((prefix >>> 1) & SORT_KEY_MASK) + SORT_KEY_MIN;
+  }
+
+  static boolean extractHasGroupFromWideValue(byte[] value) {
+    return (value[2] & 1) == 1;
+  }
+
+  /** Returns the ID of {@code coord} using the int tile IDs up to z{@value #MAX_NARROW_KEY_ZOOM}, or long IDs past. */
+  private long encodeTile(TileCoord coord) {
+    return wideKeys ? tileOrder.encodeLong(coord) : tileOrder.encode(coord);
+  }
+
+  private TileCoord decodeTile(long id) {
+    return wideKeys ? tileOrder.decodeLong(id) : tileOrder.decode((int) id);
+  }
+
+  private long extractTile(SortableFeature feature) {
+    return wideKeys ? extractTileFromWideKey(feature.key()) : extractTileFromKey(feature.key());
+  }
+
+  private long replaceTile(long key, long tile) {
+    return wideKeys ? ((tile << 8L) | (key & 0xffL)) : ((tile << 32L) | (key & 0xffffffffL));
+  }
+
+  /** Returns the first tile ID in the block of {@value #FILL_RUN_BLOCK_TILES} IDs that {@code tile} belongs to. */
+  static long fillRunBlockStart(long tile) {
+    return tile & -FILL_RUN_BLOCK_TILES;
+  }
+
+  private int valueOffset() {
+    return wideKeys ? WIDE_VALUE_PREFIX_BYTES : 0;
+  }
+
+  private boolean isFillRun(SortableFeature feature) {
+    byte[] value = feature.value();
+    int offset = valueOffset();
+    return value.length > offset && value[offset] == FILL_RUN_MARKER;
+  }
+
+  /** Returns a copy of {@code value} with a header that marks it as filling {@code tiles} consecutive tiles. */
+  private byte[] encodeFillRunValue(byte[] value, int tiles) {
+    int offset = valueOffset();
+    byte[] result = new byte[value.length + FILL_RUN_HEADER_BYTES];
+    System.arraycopy(value, 0, result, 0, offset);
+    result[offset] = FILL_RUN_MARKER;
+    result[offset + 1] = (byte) (tiles >>> 24);
+    result[offset + 2] = (byte) (tiles >>> 16);
+    result[offset + 3] = (byte) (tiles >>> 8);
+    result[offset + 4] = (byte) tiles;
+    System.arraycopy(value, offset, result, offset + FILL_RUN_HEADER_BYTES, value.length - offset);
+    return result;
+  }
+
+  private byte extractLayerId(SortableFeature feature) {
+    return wideKeys ? extractLayerIdFromWideKey(feature.key()) : extractLayerIdFromKey(feature.key());
+  }
+
+  private boolean extractHasGroup(SortableFeature feature) {
+    return wideKeys ? extractHasGroupFromWideValue(feature.value()) : extractHasGroupFromKey(feature.key());
+  }
+
+  /** Returns true if the encoded features are the same, ignoring sort key. */
+  private boolean hasSameValue(SortableFeature a, SortableFeature b) {
+    if (!wideKeys) {
+      return Arrays.equals(a.value(), b.value());
+    }
+    byte[] valueA = a.value();
+    byte[] valueB = b.value();
+    return extractHasGroupFromWideValue(valueA) == extractHasGroupFromWideValue(valueB) &&
+      Arrays.equals(valueA, WIDE_VALUE_PREFIX_BYTES, valueA.length, valueB, WIDE_VALUE_PREFIX_BYTES, valueB.length);
+  }
+
+  private MessageUnpacker unpackValue(SortableFeature feature) {
+    byte[] value = feature.value();
+    return wideKeys ?
+      MessagePack.newDefaultUnpacker(value, WIDE_VALUE_PREFIX_BYTES, value.length - WIDE_VALUE_PREFIX_BYTES) :
+      MessagePack.newDefaultUnpacker(value);
+  }
+
+  private RenderedFeature.Group peekAtGroupInfo(SortableFeature feature) {
+    try (MessageUnpacker unpacker = unpackValue(feature)) {
       long group = unpacker.unpackLong();
       int limit = unpacker.unpackInt();
       return new RenderedFeature.Group(group, limit);
@@ -152,9 +284,11 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
       // This method gets called billions of times when generating the planet, so these optimizations make a big difference:
       // 1) Re-use the same buffer packer to avoid allocating and resizing new byte arrays for every feature.
       private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+      private final byte[] valuePrefix = wideKeys ? new byte[WIDE_VALUE_PREFIX_BYTES] : null;
       // 2) Avoid re-encoding values for identical filled geometries (i.e. ocean) by memoizing the encoded values
       // FeatureRenderer ensures that a separate VectorTileEncoder.Feature is used for each zoom level
       private VectorTile.Feature lastFeature = null;
+      private int lastSortKey = 0;
       private byte[] lastEncodedValue = null;
 
       @Override
@@ -163,12 +297,13 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
         var thisFeature = feature.vectorTileFeature();
         byte[] encodedValue;
         if (group != null) { // don't bother memoizing if group is present
-          encodedValue = encodeValue(thisFeature, group, packer);
-        } else if (lastFeature == thisFeature) {
+          encodedValue = encodeValue(feature, group, packer, valuePrefix);
+        } else if (lastFeature == thisFeature && lastSortKey == feature.sortKey()) {
           encodedValue = lastEncodedValue;
         } else { // feature changed, memoize new value
           lastFeature = thisFeature;
-          lastEncodedValue = encodedValue = encodeValue(feature.vectorTileFeature(), null, packer);
+          lastSortKey = feature.sortKey();
+          lastEncodedValue = encodedValue = encodeValue(feature, null, packer, valuePrefix);
         }
 
         return new SortableFeature(encodeKey(feature), encodedValue);
@@ -185,6 +320,9 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     var vectorTileFeature = feature.vectorTileFeature();
     byte encodedLayer = commonLayerStrings.encode(vectorTileFeature.layer());
 
+    if (wideKeys) {
+      return encodeWideKey(this.tileOrder.encodeLong(feature.tile()), encodedLayer);
+    }
     return encodeKey(
       this.tileOrder.encode(feature.tile()),
       encodedLayer,
@@ -193,10 +331,15 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     );
   }
 
-  private byte[] encodeValue(VectorTile.Feature vectorTileFeature, RenderedFeature.Group group,
-    MessageBufferPacker packer) {
+  private byte[] encodeValue(RenderedFeature feature, RenderedFeature.Group group, MessageBufferPacker packer,
+    byte[] valuePrefix) {
+    var vectorTileFeature = feature.vectorTileFeature();
     packer.clear();
     try {
+      if (valuePrefix != null) {
+        encodeWideValuePrefix(feature.sortKey(), group != null, valuePrefix);
+        packer.writePayload(valuePrefix);
+      }
       // hasGroup bit in key will tell consumers whether they need to decode group info from value
       if (group != null) {
         packer.packLong(group.group());
@@ -235,11 +378,28 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     return packer.toByteArray();
   }
 
+  /**
+   * Returns a consumer for a single thread to encode rendered features with and pass on to {@code next}, that combines
+   * consecutive tiles filled by the same {@link VectorTile.Feature} instance into fill runs.
+   * <p>
+   * {@link com.onthegomap.planetiler.render.FeatureRenderer} emits every filled tile for a feature at a zoom level
+   * together using the same instance, so this buffers their tile IDs until a different feature arrives or the writer
+   * is closed.
+   */
+  public RenderedFeatureWriter newRenderedFeatureWriter(Consumer<SortableFeature> next) {
+    return new FillRunWriter(next);
+  }
+
   /** Returns a new feature writer that can be used for a single thread. */
   public CloseableConsumer<SortableFeature> writerForThread() {
     return sorter.writerForThread();
   }
 
+  /** Returns a new writer for a single thread to write blocks of features filled by {@link SortableFeatureBlock}. */
+  public CloseableConsumer<SortableFeatureBlock> blockWriterForThread() {
+    return sorter.blockWriterForThread();
+  }
+
   @Override
   public Iterator<TileFeatures> iterator() {
     prepare();
@@ -247,16 +407,72 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
   }
 
   /**
-   * Reads temp features using {@code threads} parallel threads and merges into a sorted list.
-   *
-   * @param threads The number of parallel read threads to spawn
-   * @return a {@link Reader} with a handle to the new read threads that were spawned, and in {@link Iterable} that can
-   *         be used to iterate over the results.
+   * Splits the sorted features into up to {@code ranges} disjoint ranges of whole tiles with roughly the same number of
+   * features each, using keys sampled while sorting.
+   * <p>
+   * Each range can be read independently from a different thread, and reading them one after another returns the same
+   * tiles in the same order as {@link #iterator()}.
+   */
+  public List<Iterable<TileFeatures>> tileRanges(int ranges) {
+    prepare();
+    long[] splitKeys = sorter.splitKeys(ranges);
+    long[] bounds = new long[splitKeys.length + 2];
+    int n = 0;
+    bounds[n++] = Long.MIN_VALUE;
+    for (long splitKey : splitKeys) {
+      // move each split to the first key in its block of tiles so a tile or fill run never spans 2 ranges
+      long tile = wideKeys ? extractTileFromWideKey(splitKey) : extractTileFromKey(splitKey);
+      long tileStart = firstKey(fillRunBlockStart(tile));
+      if (tileStart > bounds[n - 1]) {
+        bounds[n++] = tileStart;
+      }
+    }
+    // no encoded key reaches Long.MAX_VALUE so the last range is unbounded
+    bounds[n++] = Long.MAX_VALUE;
+    List<Iterable<TileFeatures>> result = new ArrayList<>(n - 1);
+    for (int i = 0; i < n - 1; i++) {
+      long fromKey = bounds[i];
+      long toKey = bounds[i + 1];
+      result.add(() -> groupIntoTiles(sorter.iterator(fromKey, toKey)));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the tiles with IDs from {@code fromTile} (inclusive) to {@code toTile} (exclusive) in the same order as
+   * {@link #iterator()}, only reading the sorted features that can be in them.
+   */
+  public Iterable<TileFeatures> tiles(long fromTile, long toTile) {
+    return tiles(new long[]{fromTile, toTile});
+  }
+
+  /**
+   * Returns the tiles with IDs in any of the sorted, non-overlapping {@code [fromTile, toTile)} pairs in
+   * {@code tileRanges} in the same order as {@link #iterator()}, only reading the sorted features that can be in them
+   * with a single pass over the sorted chunks.
    */
-  public Reader parallelIterator(int threads) {
+  public Iterable<TileFeatures> tiles(long[] tileRanges) {
     prepare();
-    var parIter = sorter.parallelIterator(stats, threads);
-    return new Reader(parIter.reader(), () -> groupIntoTiles(parIter.iterator()));
+    LongArrayList keyRanges = new LongArrayList(tileRanges.length);
+    for (int i = 0; i < tileRanges.length; i += 2) {
+      // start from the beginning of the block so fill runs that started before fromTile get expanded
+      long fromKey = firstKey(fillRunBlockStart(tileRanges[i]));
+      long toKey = firstKey(tileRanges[i + 1]);
+      int n = keyRanges.size();
+      if (n > 0 && fromKey <= keyRanges.get(n - 1)) {
+        keyRanges.set(n - 1, Math.max(toKey, keyRanges.get(n - 1)));
+      } else {
+        keyRanges.add(fromKey, toKey);
+      }
+    }
+    long[] keys = keyRanges.toArray();
+    return () -> Iterators.filter(groupIntoTiles(sorter.iterator(keys)),
+      tile -> FeatureSort.inRanges(tileRanges, encodeTile(tile.tileCoord())));
+  }
+
+  /** Returns the lowest key a feature in {@code tile} can have. */
+  private long firstKey(long tile) {
+    return wideKeys ? encodeWideKey(tile, (byte) 0) : encodeKey(tile, (byte) 0, SORT_KEY_MIN, false);
   }
 
   private Iterator<TileFeatures> groupIntoTiles(Iterator<SortableFeature> entries) {
@@ -267,34 +483,59 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
 
     /*
      * Features from sorter are ordered by tile, so iterate through features as long as
-     * they are in the same tile and return that group.
+     * they are in the same tile and return that group, merged with a feature from each
+     * fill run that covers the tile.
      */
     SortableFeature firstFeature = entries.next();
     return new Iterator<>() {
+      private final PriorityQueue<FillRun> activeRuns =
+        new PriorityQueue<>(Comparator.comparingLong(FillRun::nextTile));
+      private final List<SortableFeature> tileEntries = new ArrayList<>();
       private SortableFeature lastFeature = firstFeature;
-      private int lastTileId = extractTileFromKey(firstFeature.key());
 
       @Override
       public boolean hasNext() {
-        return lastFeature != null;
+        return lastFeature != null || !activeRuns.isEmpty();
       }
 
       @Override
       public TileFeatures next() {
-        TileFeatures result = new TileFeatures(lastTileId);
-        result.add(lastFeature);
-        int lastTile = lastTileId;
-
-        while (entries.hasNext()) {
-          SortableFeature next = entries.next();
-          lastFeature = next;
-          lastTileId = extractTileFromKey(lastFeature.key());
-          if (lastTile != lastTileId) {
-            return result;
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        long tile = lastFeature != null ? extractTile(lastFeature) : Long.MAX_VALUE;
+        if (!activeRuns.isEmpty()) {
+          tile = Math.min(tile, activeRuns.peek().nextTile());
+        }
+        TileFeatures result = new TileFeatures(tile);
+        tileEntries.clear();
+
+        while (lastFeature != null && extractTile(lastFeature) == tile) {
+          result.recordsRead++;
+          if (isFillRun(lastFeature)) {
+            activeRuns.add(new FillRun(lastFeature));
+          } else {
+            tileEntries.add(lastFeature);
           }
-          result.add(next);
+          lastFeature = entries.hasNext() ? entries.next() : null;
+        }
+
+        boolean fromRuns = false;
+        while (!activeRuns.isEmpty() && activeRuns.peek().nextTile() == tile) {
+          FillRun run = activeRuns.poll();
+          tileEntries.add(run.next());
+          fromRuns = true;
+          if (run.hasNext()) {
+            activeRuns.add(run);
+          }
+        }
+        if (fromRuns) {
+          // put features from fill runs in the same order they would have been in if stored separately
+          tileEntries.sort(null);
+        }
+        for (SortableFeature entry : tileEntries) {
+          result.add(entry);
         }
-        lastFeature = null;
         return result;
       }
     };
@@ -323,7 +564,102 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
 
   public interface RenderedFeatureEncoder extends Function<RenderedFeature, SortableFeature>, Closeable {}
 
-  public record Reader(Worker readWorker, Iterable<TileFeatures> result) {}
+  /** A consumer that encodes rendered features and passes them on to be sorted. */
+  public interface RenderedFeatureWriter extends Consumer<RenderedFeature>, Closeable {}
+
+  /** Buffers the tiles that the same filled feature covers, then writes them as runs of consecutive tile IDs. */
+  @NotThreadSafe
+  private class FillRunWriter implements RenderedFeatureWriter {
+
+    private final RenderedFeatureEncoder encoder = newRenderedFeatureEncoder();
+    private final Consumer<SortableFeature> next;
+    private final LongArrayList tiles = new LongArrayList();
+    private RenderedFeature pending = null;
+
+    private FillRunWriter(Consumer<SortableFeature> next) {
+      this.next = next;
+    }
+
+    @Override
+    public void accept(RenderedFeature feature) {
+      if (pending != null && feature.vectorTileFeature() == pending.vectorTileFeature() &&
+        feature.sortKey() == pending.sortKey() && feature.group().isEmpty() && pending.group().isEmpty()) {
+        tiles.add(encodeTile(feature.tile()));
+      } else {
+        flush();
+        pending = feature;
+        tiles.add(encodeTile(feature.tile()));
+      }
+    }
+
+    private void flush() {
+      if (pending == null) {
+        return;
+      }
+      SortableFeature first = encoder.apply(pending);
+      if (tiles.size() == 1) {
+        next.accept(first);
+      } else {
+        long[] ids = tiles.buffer;
+        int size = tiles.size();
+        Arrays.sort(ids, 0, size);
+        int start = 0;
+        for (int i = 1; i <= size; i++) {
+          if (i == size || ids[i] != ids[i - 1] + 1 || fillRunBlockStart(ids[i]) != fillRunBlockStart(ids[start])) {
+            writeRun(first, ids[start], i - start);
+            start = i;
+          }
+        }
+      }
+      tiles.clear();
+      pending = null;
+    }
+
+    private void writeRun(SortableFeature first, long startTile, int length) {
+      long key = replaceTile(first.key(), startTile);
+      next.accept(new SortableFeature(key, length == 1 ? first.value() : encodeFillRunValue(first.value(), length)));
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+      encoder.close();
+    }
+  }
+
+  /** Expands a fill run record back into a feature for each tile it covers. */
+  private class FillRun {
+
+    private final long keyBits;
+    private final byte[] value;
+    private final long endTile;
+    private long nextTile;
+
+    private FillRun(SortableFeature record) {
+      byte[] runValue = record.value();
+      int offset = valueOffset();
+      int tiles = ((runValue[offset + 1] & 0xff) << 24) | ((runValue[offset + 2] & 0xff) << 16) |
+        ((runValue[offset + 3] & 0xff) << 8) | (runValue[offset + 4] & 0xff);
+      value = new byte[runValue.length - FILL_RUN_HEADER_BYTES];
+      System.arraycopy(runValue, 0, value, 0, offset);
+      System.arraycopy(runValue, offset + FILL_RUN_HEADER_BYTES, value, offset, value.length - offset);
+      keyBits = record.key();
+      nextTile = extractTile(record);
+      endTile = nextTile + tiles - 1;
+    }
+
+    long nextTile() {
+      return nextTile;
+    }
+
+    boolean hasNext() {
+      return nextTile <= endTile;
+    }
+
+    SortableFeature next() {
+      return new SortableFeature(replaceTile(keyBits, nextTile++), value);
+    }
+  }
 
   /** Features contained in a single tile. */
   public class TileFeatures {
@@ -331,11 +667,12 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
     private final TileCoord tileCoord;
     private final List<SortableFeature> entries = new ArrayList<>();
     private final AtomicLong numFeaturesProcessed = new AtomicLong(0);
+    private long recordsRead = 0;
     private LongLongHashMap counts = null;
     private byte lastLayer = Byte.MAX_VALUE;
 
-    private TileFeatures(int lastTileId) {
-      this.tileCoord = tileOrder.decode(lastTileId);
+    private TileFeatures(long lastTileId) {
+      this.tileCoord = decodeTile(lastTileId);
     }
 
     private static void unscaleAndRemovePointsOutsideBuffer(List<VectorTile.Feature> features, double maxPointBuffer) {
@@ -365,6 +702,14 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
       return numFeaturesProcessed.get();
     }
 
+    /**
+     * Returns the number of records read from the feature store for this tile, where a fill run only counts on the
+     * first tile it covers.
+     */
+    public long getNumRecordsRead() {
+      return recordsRead;
+    }
+
     /** Returns the number of features to output, excluding features discarded from being over the limit in a group. */
     public long getNumFeaturesToEmit() {
       return entries.size();
@@ -387,9 +732,9 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
       for (int i = 0; i < entries.size(); i++) {
         SortableFeature a = entries.get(i);
         SortableFeature b = other.entries.get(i);
-        long layerA = extractLayerIdFromKey(a.key());
-        long layerB = extractLayerIdFromKey(b.key());
-        if (layerA != layerB || !Arrays.equals(a.value(), b.value())) {
+        long layerA = extractLayerId(a);
+        long layerB = extractLayerId(b);
+        if (layerA != layerB || !hasSameValue(a, b)) {
           return false;
         }
       }
@@ -398,9 +743,9 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
 
 
     private VectorTile.Feature decodeVectorTileFeature(SortableFeature entry) {
-      try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(entry.value())) {
+      try (MessageUnpacker unpacker = unpackValue(entry)) {
         long group;
-        if (extractHasGroupFromKey(entry.key())) {
+        if (extractHasGroup(entry)) {
           group = unpacker.unpackLong();
           unpacker.unpackInt(); // groupLimit - features over the limit were already discarded
         } else {
@@ -430,7 +775,7 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
         for (int i = 0; i < commandSize; i++) {
           commands[i] = unpacker.unpackInt();
         }
-        String layer = commonLayerStrings.decode(extractLayerIdFromKey(entry.key()));
+        String layer = commonLayerStrings.decode(extractLayerId(entry));
         return new VectorTile.Feature(
           layer,
           id,
@@ -525,9 +870,8 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
 
     void add(SortableFeature entry) {
       numFeaturesProcessed.incrementAndGet();
-      long key = entry.key();
-      if (extractHasGroupFromKey(key)) {
-        byte thisLayer = extractLayerIdFromKey(key);
+      if (extractHasGroup(entry)) {
+        byte thisLayer = extractLayerId(entry);
         if (counts == null) {
           counts = Hppc.newLongLongHashMap();
           lastLayer = thisLayer;
@@ -535,7 +879,7 @@ public final class FeatureGroup implements Iterable<FeatureGroup.TileFeatures>,
           lastLayer = thisLayer;
           counts.clear();
         }
-        var groupInfo = peekAtGroupInfo(entry.value());
+        var groupInfo = peekAtGroupInfo(entry);
         long old = counts.getOrDefault(groupInfo.group(), 0);
         if (groupInfo.limit() > 0 && old >= groupInfo.limit()) {
           // discard if there are to many features in this group already
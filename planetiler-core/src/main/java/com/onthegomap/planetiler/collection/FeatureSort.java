@@ -1,17 +1,15 @@
 package com.onthegomap.planetiler.collection;
 
-import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.util.CloseableConsumer;
 import com.onthegomap.planetiler.util.DiskBacked;
 import com.onthegomap.planetiler.util.MemoryEstimator;
-import com.onthegomap.planetiler.worker.WeightedHandoffQueue;
-import com.onthegomap.planetiler.worker.Worker;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.IntStream;
 import javax.annotation.concurrent.NotThreadSafe;
 
 /**
@@ -65,16 +63,24 @@ interface FeatureSort extends Iterable<SortableFeature>, DiskBacked, MemoryEstim
       }
 
       @Override
-      public Iterator<SortableFeature> iterator(int shard, int shards) {
-        if (shard < 0 || shard >= shards) {
-          throw new IllegalArgumentException("Bad shard params: shard=%d shards=%d".formatted(shard, shards));
-        }
-        return IntStream.range(0, list.size())
-          .filter(d -> d % shards == shard)
-          .mapToObj(list::get)
+      public Iterator<SortableFeature> iterator(long fromKey, long toKey) {
+        return list.stream()
+          .filter(d -> d.key() >= fromKey && d.key() < toKey)
           .iterator();
       }
 
+      @Override
+      public Iterator<SortableFeature> iterator(long[] ranges) {
+        return list.stream()
+          .filter(d -> inRanges(ranges, d.key()))
+          .iterator();
+      }
+
+      @Override
+      public long[] splitKeys(int partitions) {
+        return quantiles(list.stream().mapToLong(SortableFeature::key).toArray(), partitions);
+      }
+
       @Override
       public int chunksToRead() {
         return list.size();
@@ -82,6 +88,37 @@ interface FeatureSort extends Iterable<SortableFeature>, DiskBacked, MemoryEstim
     };
   }
 
+  /**
+   * Returns up to {@code partitions - 1} distinct ascending keys from {@code sortedKeys} that split it into
+   * {@code partitions} ranges with roughly the same number of elements.
+   */
+  static long[] quantiles(long[] sortedKeys, int partitions) {
+    long[] result = new long[Math.max(0, partitions - 1)];
+    int n = 0;
+    for (int i = 1; i < partitions && sortedKeys.length > 0; i++) {
+      long key = sortedKeys[(int) ((long) i * sortedKeys.length / partitions)];
+      if (key > sortedKeys[0] && (n == 0 || key > result[n - 1])) {
+        result[n++] = key;
+      }
+    }
+    return Arrays.copyOf(result, n);
+  }
+
+  /** Returns true if {@code key} is in one of the sorted, non-overlapping {@code [from, to)} pairs in ranges. */
+  static boolean inRanges(long[] ranges, long key) {
+    int lo = 0;
+    int hi = ranges.length / 2;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ranges[mid * 2 + 1] <= key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo < ranges.length / 2 && ranges[lo * 2] <= key;
+  }
+
   void sort();
 
   long numFeaturesWritten();
@@ -101,46 +138,45 @@ interface FeatureSort extends Iterable<SortableFeature>, DiskBacked, MemoryEstim
    */
   CloseableConsumer<SortableFeature> writerForThread();
 
-  @Override
-  default Iterator<SortableFeature> iterator() {
-    return iterator(0, 1);
+  /**
+   * Returns a new writer that can be used to write whole {@link SortableFeatureBlock blocks} of features from a single
+   * thread independent of writers used from other threads.
+   */
+  default CloseableConsumer<SortableFeatureBlock> blockWriterForThread() {
+    var writer = writerForThread();
+    return new CloseableConsumer<>() {
+      @Override
+      public void accept(SortableFeatureBlock block) {
+        block.forEach(writer);
+      }
+
+      @Override
+      public void close() throws IOException {
+        writer.close();
+      }
+    };
   }
 
   /**
-   * Returns an iterator over a subset of the features.
-   *
-   * @param shard  The index of this iterator
-   * @param shards The total number of iterators that will be used
-   * @return An iterator over a subset of features that when combined with all other iterators will iterate over the
-   *         full set.
+   * Returns an iterator over features with keys from {@code fromKey} (inclusive) to {@code toKey} (exclusive) in sorted
+   * order.
+   * <p>
+   * Iterators over adjacent ranges can be read independently from different threads, and together return the same
+   * features as {@link #iterator()}.
    */
-  Iterator<SortableFeature> iterator(int shard, int shards);
+  Iterator<SortableFeature> iterator(long fromKey, long toKey);
 
   /**
-   * Reads temp features using {@code threads} parallel threads and merges into a sorted list.
-   *
-   * @param stats   Stat tracker
-   * @param threads The number of parallel read threads to spawn
-   * @return a {@link ParallelIterator} with a handle to the new read threads that were spawned, and in {@link Iterable}
-   *         that can be used to iterate over the results.
+   * Returns an iterator over features with keys in any of the sorted, non-overlapping {@code [from, to)} pairs in
+   * {@code ranges}, like concatenating {@link #iterator(long, long)} for each pair but only opening each chunk once.
    */
-  default ParallelIterator parallelIterator(Stats stats, int threads) {
-    List<WeightedHandoffQueue<SortableFeature>> queues = IntStream.range(0, threads)
-      .mapToObj(i -> new WeightedHandoffQueue<SortableFeature>(500, 10_000))
-      .toList();
-    Worker reader = new Worker("read", stats, threads, shard -> {
-      try (var next = queues.get(shard)) {
-        Iterator<SortableFeature> entries = iterator(shard, threads);
-        while (entries.hasNext()) {
-          next.accept(entries.next(), 1);
-        }
-      }
-    });
-    return new ParallelIterator(reader, LongMerger.mergeSuppliers(queues, SortableFeature.COMPARE_BYTES));
-  }
+  Iterator<SortableFeature> iterator(long[] ranges);
 
-  int chunksToRead();
+  /**
+   * Returns up to {@code partitions - 1} distinct ascending keys that split all features into ranges with roughly the
+   * same number of features for {@link #iterator(long, long)}.
+   */
+  long[] splitKeys(int partitions);
 
-  record ParallelIterator(Worker reader, @Override Iterator<SortableFeature> iterator)
-    implements Iterable<SortableFeature> {}
+  int chunksToRead();
 }
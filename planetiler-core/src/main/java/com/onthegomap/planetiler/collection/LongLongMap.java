@@ -50,6 +50,7 @@ public interface LongLongMap extends Closeable, MemoryEstimator.HasEstimate, Dis
         new AppendStore.SmallLongs(i -> AppendStore.Ints.create(storage, params.resolve("keys-" + i))),
         AppendStore.Longs.create(storage, params.resolve("values"))
       );
+      case DELTA_BLOCK -> new DeltaBlockLongLongMap(AppendStore.Longs.create(storage, params));
       case ARRAY -> switch (storage) {
           case MMAP -> new ArrayLongLongMapMmap(params.path(), params.madvise());
           case RAM -> new ArrayLongLongMapRam(false);
@@ -106,6 +107,12 @@ public interface LongLongMap extends Closeable, MemoryEstimator.HasEstimate, Dis
     return 0;
   }
 
+  /**
+   * Returns the value for each key in {@code key}, or {@link #MISSING_VALUE} for keys that are not present.
+   * <p>
+   * Implementations backed by disk override this to ask the OS to start loading every value they will read before
+   * reading any of them, which works best when {@code key} is sorted ascending without duplicates.
+   */
   default long[] multiGet(long[] key) {
     long[] result = new long[key.length];
     for (int i = 0; i < key.length; i++) {
@@ -139,6 +146,17 @@ public interface LongLongMap extends Closeable, MemoryEstimator.HasEstimate, Dis
      */
     SPARSE_ARRAY("sparsearray"),
 
+    /**
+     * Stores blocks of 256 consecutive entries with keys and values delta-encoded as varints, with an in-memory index
+     * of the first key in each block.
+     * <p>
+     * Uses around ~6 bytes per value stored when nearby node IDs have nearby locations, at the cost of decoding a block
+     * on each cache miss during reads.
+     * <p>
+     * NOTE: Requires ordered writes from a single thread.
+     */
+    DELTA_BLOCK("deltablock"),
+
     /**
      * Stores values in indexed by key, without compressing unused ranges from the key space so that writes can be done
      * from multiple threads in parallel.
@@ -184,7 +202,12 @@ public interface LongLongMap extends Closeable, MemoryEstimator.HasEstimate, Dis
     default void close() {}
   }
 
-  /** Implementations that only support sequential writes from a single thread. */
+  /**
+   * Implementations that only support sequential writes from a single thread.
+   * <p>
+   * Use {@link OrderedRunsWriter} to write from multiple threads when each thread can produce sorted runs that belong
+   * at a known position in the overall order.
+   */
   interface SequentialWrites extends LongLongMap {
 
     void put(long key, long value);
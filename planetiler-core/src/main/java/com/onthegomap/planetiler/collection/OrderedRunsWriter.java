@@ -0,0 +1,109 @@
+package com.onthegomap.planetiler.collection;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lets multiple threads write into a {@link LongLongMap.SequentialWrites} map at once by having each thread buffer a
+ * run of sorted entries tagged with a sequence number, then concatenating the runs into the map in sequence order.
+ * <p>
+ * As long as the keys in each run are sorted, and all keys in run {@code n} come before the keys in run {@code n + 1}
+ * - like the nodes in consecutive blocks of a sorted {@code .osm.pbf} file - the map sees a single sorted stream of
+ * writes. Runs that finish early wait in memory for the ones before them, and threads block once more than
+ * {@code maxPendingRuns} are waiting to limit memory usage.
+ */
+@ThreadSafe
+public class OrderedRunsWriter {
+
+  private final LongLongMap.Writer writer;
+  private final int maxPendingRuns;
+  private final LongObjectHashMap<Run> pending = Hppc.newLongObjectHashMap();
+  private long nextSequence = 0;
+
+  public OrderedRunsWriter(LongLongMap.SequentialWrites map, int maxPendingRuns) {
+    this.writer = map.newWriter();
+    this.maxPendingRuns = maxPendingRuns;
+  }
+
+  /**
+   * Returns a new {@link Run} that a single thread can write sorted entries into, then {@link Run#close()} to hand off
+   * to the map.
+   * <p>
+   * Every sequence number starting from 0 must be used exactly once, even when there is nothing to write, or later runs
+   * will never get written.
+   */
+  public Run newRun(long sequence) {
+    return new Run(sequence);
+  }
+
+  private synchronized void submit(Run run) {
+    pending.put(run.sequence, run);
+    Run next;
+    while ((next = pending.remove(nextSequence)) != null) {
+      for (int i = 0; i < next.keys.size(); i++) {
+        writer.put(next.keys.get(i), next.values.get(i));
+      }
+      nextSequence++;
+      notifyAll();
+    }
+    // the run that the next sequence is waiting for is always being written by a thread that is not blocked here, so
+    // waiting can't deadlock
+    while (pending.size() > maxPendingRuns && run.sequence > nextSequence) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  /** Returns the number of runs that have been written to the map so far. */
+  public synchronized long runsWritten() {
+    return nextSequence;
+  }
+
+  /**
+   * Verifies that every run was written to the map after all threads are done.
+   *
+   * @throws IllegalStateException if some runs are still waiting on a sequence number that was never closed
+   */
+  public synchronized void finish() {
+    if (!pending.isEmpty()) {
+      throw new IllegalStateException(
+        pending.size() + " runs were never written because run " + nextSequence + " was never closed");
+    }
+  }
+
+  /** A sorted sequence of entries from one thread that gets written to the map after all runs before it. */
+  public class Run implements LongLongMap.Writer {
+
+    private final long sequence;
+    private final LongArrayList keys = new LongArrayList();
+    private final LongArrayList values = new LongArrayList();
+    private boolean closed = false;
+
+    private Run(long sequence) {
+      this.sequence = sequence;
+    }
+
+    @Override
+    public void put(long key, long value) {
+      if (closed) {
+        throw new IllegalStateException("Run " + sequence + " already closed");
+      }
+      keys.add(key);
+      values.add(value);
+    }
+
+    /** Hands this run off to be written to the map, subsequent calls do nothing. */
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        submit(this);
+      }
+    }
+  }
+}
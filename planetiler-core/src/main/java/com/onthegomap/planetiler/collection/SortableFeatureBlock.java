@@ -0,0 +1,116 @@
+package com.onthegomap.planetiler.collection;
+
+import com.onthegomap.planetiler.util.CloseableConsumer;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A batch of {@link SortableFeature SortableFeatures} encoded back to back into a single buffer, each one as an 8-byte
+ * key, 4-byte value length, then the value bytes - the same layout {@link ExternalMergeSort} uses in chunk files.
+ * <p>
+ * Rendering threads fill blocks with {@link #writer(Consumer)} and hand them off to the thread that writes them to a
+ * {@link FeatureSort} one block at a time instead of one feature at a time, so that the queue between them only sees a
+ * handful of items per thousands of features, and {@link FeatureSort#blockWriterForThread()} can copy entries out of
+ * the block without creating a {@link SortableFeature} for each one.
+ */
+public class SortableFeatureBlock {
+
+  static final int ENTRY_HEADER_BYTES = Long.BYTES + Integer.BYTES;
+  // keep blocks well under the size where G1 would treat them as humongous objects on small heaps
+  private static final int DEFAULT_BLOCK_BYTES = 256 * 1024;
+  private final ByteBuffer buffer;
+  private int count = 0;
+
+  private SortableFeatureBlock(int capacity) {
+    this.buffer = ByteBuffer.allocate(capacity);
+  }
+
+  /**
+   * Returns a consumer for a single thread to append features into blocks of about {@code 256kb} with, that passes each
+   * block to {@code next} once it fills up and the last partial block when closed.
+   */
+  public static CloseableConsumer<SortableFeature> writer(Consumer<SortableFeatureBlock> next) {
+    return writer(DEFAULT_BLOCK_BYTES, next);
+  }
+
+  static CloseableConsumer<SortableFeature> writer(int blockBytes, Consumer<SortableFeatureBlock> next) {
+    return new Writer(blockBytes, next);
+  }
+
+  private boolean tryAppend(SortableFeature feature) {
+    byte[] value = feature.value();
+    if (buffer.remaining() < ENTRY_HEADER_BYTES + value.length) {
+      return false;
+    }
+    buffer.putLong(feature.key()).putInt(value.length).put(value);
+    count++;
+    return true;
+  }
+
+  /** Returns the number of features in this block. */
+  public int size() {
+    return count;
+  }
+
+  /** Returns the number of bytes used by features in this block. */
+  public int bytes() {
+    return buffer.position();
+  }
+
+  /** Returns the buffer holding encoded features from 0 up to {@link #bytes()}. */
+  ByteBuffer buffer() {
+    return buffer;
+  }
+
+  /** Returns the size in bytes of the entry that starts at {@code offset} in {@link #buffer()}. */
+  int entryLength(int offset) {
+    return ENTRY_HEADER_BYTES + buffer.getInt(offset + Long.BYTES);
+  }
+
+  /** Decodes each feature in this block into a new {@link SortableFeature} and passes it to {@code consumer}. */
+  public void forEach(Consumer<SortableFeature> consumer) {
+    for (int offset = 0, end = bytes(); offset < end; ) {
+      long key = buffer.getLong(offset);
+      byte[] value = new byte[buffer.getInt(offset + Long.BYTES)];
+      buffer.get(offset + ENTRY_HEADER_BYTES, value);
+      consumer.accept(new SortableFeature(key, value));
+      offset += ENTRY_HEADER_BYTES + value.length;
+    }
+  }
+
+  @NotThreadSafe
+  private static class Writer implements CloseableConsumer<SortableFeature> {
+
+    private final int blockBytes;
+    private final Consumer<SortableFeatureBlock> next;
+    private SortableFeatureBlock current = null;
+
+    private Writer(int blockBytes, Consumer<SortableFeatureBlock> next) {
+      this.blockBytes = blockBytes;
+      this.next = next;
+    }
+
+    @Override
+    public void accept(SortableFeature feature) {
+      if (current == null || !current.tryAppend(feature)) {
+        flush();
+        // give features too big for a normal block one of their own
+        current = new SortableFeatureBlock(Math.max(blockBytes, ENTRY_HEADER_BYTES + feature.value().length));
+        current.tryAppend(feature);
+      }
+    }
+
+    private void flush() {
+      if (current != null && current.size() > 0) {
+        next.accept(current);
+      }
+      current = null;
+    }
+
+    @Override
+    public void close() {
+      flush();
+    }
+  }
+}
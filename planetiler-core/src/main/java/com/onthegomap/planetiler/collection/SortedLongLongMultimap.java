@@ -0,0 +1,187 @@
+package com.onthegomap.planetiler.collection;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.procedures.LongLongProcedure;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.DiskBacked;
+import com.onthegomap.planetiler.util.FileUtils;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A read-only {@link LongLongMultimap} stored in a file of key/value pairs sorted by key, so that later runs can reopen
+ * it with {@link #open(Path, boolean)}.
+ * <p>
+ * Build one with {@link #newBuilder(Path, Path, PlanetilerConfig, Stats)}, which accepts pairs in any order from any
+ * number of threads and uses an {@link ExternalMergeSort} to sort them before writing. Lookups binary search the
+ * memory-mapped file for the first pair with a key, so they touch about {@code log2(n)} pages.
+ */
+public class SortedLongLongMultimap implements LongLongMultimap {
+
+  private final AppendStoreMmap.Longs pairs;
+  private final long size;
+
+  private SortedLongLongMultimap(AppendStoreMmap.Longs pairs) {
+    this.pairs = pairs;
+    this.size = pairs.size() / 2;
+  }
+
+  /** Returns a read-only multimap over the pairs that {@link Builder#finish(boolean)} wrote to {@code path}. */
+  public static SortedLongLongMultimap open(Path path, boolean madvise) {
+    return new SortedLongLongMultimap(AppendStoreMmap.Longs.openExisting(path, madvise));
+  }
+
+  /**
+   * Returns a builder that will write pairs to {@code path}, using {@code tempDir} to sort them.
+   *
+   * @param path    where to write the sorted pairs
+   * @param tempDir directory that gets cleared out and used to sort pairs, then deleted when the builder finishes
+   * @param config  user-provided arguments to control the number of threads and temp storage format
+   * @param stats   to keep track of counters and timings
+   */
+  public static Builder newBuilder(Path path, Path tempDir, PlanetilerConfig config, Stats stats) {
+    return new Builder(path, tempDir, config, stats);
+  }
+
+  /** Returns the number of key/value pairs in this map. */
+  public long size() {
+    return size;
+  }
+
+  private long keyAt(long index) {
+    return pairs.getLong(index << 1);
+  }
+
+  private long lowerBound(long key) {
+    long lo = 0;
+    long hi = size;
+    while (lo < hi) {
+      long mid = (lo + hi) >>> 1;
+      if (keyAt(mid) < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Override
+  public LongArrayList get(long key) {
+    LongArrayList result = new LongArrayList();
+    forEach(key, key, (k, v) -> result.add(v));
+    return result;
+  }
+
+  /** Calls {@code consumer} for each pair with {@code fromKey <= key <= toKey} ordered by key then value. */
+  public void forEach(long fromKey, long toKey, LongLongProcedure consumer) {
+    for (long i = lowerBound(fromKey); i < size; i++) {
+      long key = keyAt(i);
+      if (key > toKey) {
+        break;
+      }
+      consumer.apply(key, pairs.getLong((i << 1) + 1));
+    }
+  }
+
+  @Override
+  public long diskUsageBytes() {
+    return pairs.diskUsageBytes();
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return 0;
+  }
+
+  @Override
+  public void close() {
+    try {
+      pairs.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Accepts key/value pairs from a single thread. */
+  public interface Writer extends AutoCloseable {
+
+    void put(long key, long value);
+
+    @Override
+    void close();
+  }
+
+  /** Collects key/value pairs from many threads then writes them sorted by key to a file. */
+  public static class Builder implements DiskBacked {
+
+    private final Path path;
+    private final Path tempDir;
+    private final ExternalMergeSort sort;
+
+    private Builder(Path path, Path tempDir, PlanetilerConfig config, Stats stats) {
+      this.path = path;
+      this.tempDir = tempDir;
+      this.sort = new ExternalMergeSort(tempDir, config, stats);
+    }
+
+    /** Returns a writer that a single thread can use to add pairs in any order. */
+    public Writer writerForThread() {
+      var writer = sort.writerForThread();
+      return new Writer() {
+        @Override
+        public void put(long key, long value) {
+          writer.accept(new SortableFeature(key, ByteBuffer.allocate(Long.BYTES).putLong(value).array()));
+        }
+
+        @Override
+        public void close() {
+          try {
+            writer.close();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      };
+    }
+
+    /**
+     * Sorts the pairs that all writers added, writes them to the output file without duplicates, and returns a map
+     * that reads from it.
+     */
+    public SortedLongLongMultimap finish(boolean madvise) {
+      sort.sort();
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 50_000))) {
+        long lastKey = 0;
+        long lastValue = 0;
+        boolean first = true;
+        for (var entry : sort) {
+          long key = entry.key();
+          long value = ByteBuffer.wrap(entry.value()).getLong();
+          if (first || key != lastKey || value != lastValue) {
+            out.writeLong(key);
+            out.writeLong(value);
+          }
+          first = false;
+          lastKey = key;
+          lastValue = value;
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      FileUtils.delete(tempDir);
+      return open(path, madvise);
+    }
+
+    @Override
+    public long diskUsageBytes() {
+      return sort.diskUsageBytes();
+    }
+  }
+}
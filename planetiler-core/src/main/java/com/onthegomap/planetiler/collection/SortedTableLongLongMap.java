@@ -42,13 +42,44 @@ public class SortedTableLongLongMap implements LongLongMap, LongLongMap.Sequenti
 
   @Override
   public long get(long key) {
+    long index = indexOf(key, chunkStart(key));
+    return index < 0 ? MISSING_VALUE : values.getLong(index);
+  }
+
+  @Override
+  public long[] multiGet(long[] key) {
+    // first load the pages of keys to search, then the pages of values to read
+    long[] indexes = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      indexes[i] = chunkStart(key[i]);
+    }
+    keys.prefetch(indexes, indexes.length);
+    for (int i = 0; i < key.length; i++) {
+      indexes[i] = indexOf(key[i], indexes[i]);
+    }
+    values.prefetch(indexes, indexes.length);
+    long[] result = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      long index = indexes[i];
+      result[i] = index < 0 ? MISSING_VALUE : values.getLong(index);
+    }
+    return result;
+  }
+
+  /** Returns the index in {@code keys} of the first key in the same chunk as {@code key}, or -1 if there are none. */
+  private long chunkStart(long key) {
     long chunk = key >>> 8;
-    if (chunk >= offsets.size()) {
-      return MISSING_VALUE;
+    return chunk >= offsets.size() ? -1 : offsets.getLong(chunk);
+  }
+
+  /** Returns the index of {@code key} in {@code keys}, or -1 if it is not present. */
+  private long indexOf(long key, long lo) {
+    if (lo < 0) {
+      return -1;
     }
+    long chunk = key >>> 8;
 
     // use the "offsets" index to narrow search space to <256 values
-    long lo = offsets.getLong(chunk);
     long hi = Math.min(keys.size(), chunk >= offsets.size() - 1 ? keys.size() : offsets.getLong(chunk + 1)) - 1;
 
     while (lo <= hi) {
@@ -60,10 +91,10 @@ public class SortedTableLongLongMap implements LongLongMap, LongLongMap.Sequenti
         hi = idx - 1;
       } else {
         // found
-        return values.getLong(idx);
+        return idx;
       }
     }
-    return MISSING_VALUE;
+    return -1;
   }
 
   @Override
@@ -55,10 +55,31 @@ public class SparseArrayLongLongMap implements LongLongMap, LongLongMap.Sequenti
 
   @Override
   public long get(long key) {
+    long index = indexOf(key);
+    return index < 0 ? MISSING_VALUE : values.getLong(index);
+  }
+
+  @Override
+  public long[] multiGet(long[] key) {
+    long[] indexes = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      indexes[i] = indexOf(key[i]);
+    }
+    values.prefetch(indexes, indexes.length);
+    long[] result = new long[key.length];
+    for (int i = 0; i < key.length; i++) {
+      long index = indexes[i];
+      result[i] = index < 0 ? MISSING_VALUE : values.getLong(index);
+    }
+    return result;
+  }
+
+  /** Returns the index in {@code values} that holds the value for {@code key}, or -1 if it is not present. */
+  private long indexOf(long key) {
     int chunk = (int) (key >>> 8);
     int offset = (int) (key & 255);
     if (chunk >= offsets.size()) {
-      return MISSING_VALUE;
+      return -1;
     }
 
     long lo = offsets.getLong(chunk);
@@ -68,10 +89,10 @@ public class SparseArrayLongLongMap implements LongLongMap, LongLongMap.Sequenti
     long index = lo + offset - startPad;
 
     if (index > hi || index < lo) {
-      return MISSING_VALUE;
+      return -1;
     }
 
-    return values.getLong(index);
+    return index;
   }
 
   @Override
@@ -4,7 +4,10 @@ import static com.onthegomap.planetiler.geo.GeoUtils.envelopeToString;
 
 import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.TileExtents;
+import com.onthegomap.planetiler.geo.TilePredicate;
+import com.onthegomap.planetiler.reader.osm.OsmChangeFile;
 import com.onthegomap.planetiler.reader.osm.OsmInputFile;
+import java.util.function.IntFunction;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.slf4j.Logger;
@@ -26,6 +29,7 @@ public class Bounds {
   private TileExtents tileExtents;
 
   private Geometry shape;
+  private IntFunction<TilePredicate> tileFilter;
 
   public Bounds(Envelope latLon) {
     set(latLon);
@@ -45,7 +49,7 @@ public class Bounds {
 
   public TileExtents tileExtents() {
     if (tileExtents == null) {
-      tileExtents = TileExtents.computeFromWorldBounds(PlanetilerConfig.MAX_MAXZOOM, world(), shape);
+      tileExtents = TileExtents.computeFromWorldBounds(PlanetilerConfig.MAX_MAXZOOM, world(), shape, tileFilter);
     }
     return tileExtents;
   }
@@ -74,11 +78,21 @@ public class Bounds {
     return this;
   }
 
+  /**
+   * Planetiler will only emit tiles where the predicate that {@code tileFilter} returns for that tile's zoom level
+   * returns true, for example to only re-render tiles touched by an {@link OsmChangeFile}.
+   */
+  public Bounds setTileFilter(IntFunction<TilePredicate> tileFilter) {
+    this.tileFilter = tileFilter;
+    this.tileExtents = null;
+    return this;
+  }
+
   private void set(Envelope latLon) {
     if (latLon != null) {
       this.latLon = latLon;
       this.world = GeoUtils.toWorldBounds(latLon);
-      this.tileExtents = TileExtents.computeFromWorldBounds(PlanetilerConfig.MAX_MAXZOOM, world, shape);
+      this.tileExtents = TileExtents.computeFromWorldBounds(PlanetilerConfig.MAX_MAXZOOM, world, shape, tileFilter);
     }
   }
 
@@ -24,6 +24,7 @@ public record PlanetilerConfig(
   int featureProcessThreads,
   int featureReadThreads,
   int tileWriteThreads,
+  boolean tileWriteOutOfOrder,
   Duration logInterval,
   int minzoom,
   int maxzoom,
@@ -34,6 +35,7 @@ public record PlanetilerConfig(
   boolean mmapTempStorage,
   int sortMaxReaders,
   int sortMaxWriters,
+  boolean sortOffHeap,
   String nodeMapType,
   String nodeMapStorage,
   boolean nodeMapMadvise,
@@ -50,12 +52,17 @@ public record PlanetilerConfig(
   double minFeatureSizeBelowMaxZoom,
   double simplifyToleranceAtMaxZoom,
   double simplifyToleranceBelowMaxZoom,
+  boolean simplifyProgressive,
   boolean osmLazyReads,
+  boolean osmBlockIndex,
+  boolean osmFilterNodes,
   boolean skipFilledTiles,
   int tileWarningSizeBytes,
   Boolean color,
   boolean keepUnzippedSources,
   TileCompression tileCompression,
+  int tileCompressionLevel,
+  boolean tileCompressionDictionary,
   boolean outputLayerStats,
   String debugUrlPattern,
   Path tmpDir,
@@ -67,7 +74,7 @@ public record PlanetilerConfig(
 ) {
 
   public static final int MIN_MINZOOM = 0;
-  public static final int MAX_MAXZOOM = 15;
+  public static final int MAX_MAXZOOM = 17;
   private static final int DEFAULT_MAXZOOM = 14;
 
   public PlanetilerConfig {
@@ -142,6 +149,10 @@ public record PlanetilerConfig(
         "number of threads used to write tiles - only supported by " + Stream.of(TileArchiveConfig.Format.values())
           .filter(TileArchiveConfig.Format::supportsConcurrentWrites).map(TileArchiveConfig.Format::id).toList(),
         1),
+      arguments.getBoolean("tile_write_out_of_order",
+        "write tiles as soon as they are encoded instead of in tile order, and sort the archive index when finished - " +
+          "only supported by pmtiles and mbtiles",
+        false),
       arguments.getDuration("loginterval", "time between logs", "10s"),
       minzoom,
       maxzoom,
@@ -158,6 +169,9 @@ public record PlanetilerConfig(
         6),
       arguments.getInteger("sort_max_writers", "maximum number of concurrent write threads to use when sorting chunks",
         6),
+      arguments.getBoolean("sort_offheap",
+        "sort temp feature chunks in an off-heap buffer using a primitive index instead of allocating an object per feature",
+        false),
       arguments
         .getString("nodemap_type", "type of node location map, one of " + Stream.of(LongLongMap.Type.values()).map(
           t -> t.id()).toList(), LongLongMap.Type.SPARSE_ARRAY.id()),
@@ -190,9 +204,18 @@ public record PlanetilerConfig(
       arguments.getDouble("simplify_tolerance",
         "Default value for the tile pixel tolerance to use when simplifying features below the maximum zoom level",
         0.1d),
+      arguments.getBoolean("simplify_progressive",
+        "Simplify lines and polygons at each zoom level from the simplified geometry of the zoom level above instead of from the original geometry",
+        false),
       arguments.getBoolean("osm_lazy_reads",
         "Read OSM blocks from disk in worker threads",
         true),
+      arguments.getBoolean("osm_block_index",
+        "Store an index of OSM blocks next to the input file to skip blocks that later passes don't need",
+        true),
+      arguments.getBoolean("osm_filter_nodes",
+        "Scan relations and ways before pass 1 to only store locations of nodes in ways the profile uses",
+        false),
       arguments.getBoolean("skip_filled_tiles",
         "Skip writing tiles containing only polygon fills to the output",
         false),
@@ -207,6 +230,12 @@ public record PlanetilerConfig(
           "the tile compression, one of " +
             TileCompression.availableValues().stream().map(TileCompression::id).toList(),
           "gzip")),
+      arguments.getInteger("tile_compression_level",
+        "compression level for --tile-compression, 0-9 for gzip, 1-22 for zstd, 0-11 for brotli, or -1 for the default",
+        -1),
+      arguments.getBoolean("tile_compression_dictionary",
+        "train a zstd dictionary from a sample of tiles and store it in the archive metadata (clients need to support it)",
+        false),
       arguments.getBoolean("output_layerstats", "output a tsv.gz file for each tile/layer size", false),
       arguments.getString("debug_url", "debug url to use for displaying tiles with {z} {lat} {lon} placeholders",
         "https://onthegomap.github.io/planetiler-demo/#{z}/{lat}/{lon}"),
@@ -99,6 +99,20 @@ public class WriteableFilesArchive implements WriteableTileArchive {
     return new TileFilesWriter(basePath, tileSchemeEncoder, bytesWritten.counterForThread());
   }
 
+  @Override
+  public boolean supportsDelete() {
+    return true;
+  }
+
+  @Override
+  public void deleteTile(TileCoord coord) {
+    try {
+      Files.deleteIfExists(tileSchemeEncoder.apply(coord));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   @Override
   public void finish(TileArchiveMetadata tileArchiveMetadata) {
     if (metadataPath == null) {
@@ -0,0 +1,306 @@
+package com.onthegomap.planetiler.geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * Rounds polygon coordinates to an integer grid without going through
+ * {@link org.locationtech.jts.precision.GeometryPrecisionReducer} for the common case where rounding doesn't introduce
+ * any problems.
+ * <p>
+ * Rings are rounded to the grid, repeated vertices are dropped, and rings that collapse to zero area are removed the
+ * same way the precision reducer removes them. Then a sweep over the x-extents of every rounded segment checks that no
+ * two segments touch except for neighbors in the same ring at their shared vertex, and that holes sit inside their
+ * shell and outside of other holes and polygons. If any of those checks fail, {@link #snap(Geometry, PrecisionModel)}
+ * returns null so the caller can fall back to the full precision reducer.
+ */
+final class PolygonGridSnapper {
+
+  // keep cross products of grid coordinates within a long
+  private static final long MAX_GRID_COORD = 1L << 28;
+
+  private PolygonGridSnapper() {}
+
+  /**
+   * Returns {@code geom} rounded to {@code precision} with shells clockwise and holes counter-clockwise like
+   * {@link org.locationtech.jts.precision.GeometryPrecisionReducer} outputs, or null if rounding might have made it
+   * invalid.
+   */
+  static Geometry snap(Geometry geom, PrecisionModel precision) {
+    if (precision.getType() != PrecisionModel.FIXED || geom.isEmpty() ||
+      !(geom instanceof Polygon || geom instanceof MultiPolygon)) {
+      return null;
+    }
+    double scale = precision.getScale();
+    // rings of each polygon, shell first
+    List<List<long[]>> polygons = new ArrayList<>(geom.getNumGeometries());
+    for (int i = 0; i < geom.getNumGeometries(); i++) {
+      Polygon polygon = (Polygon) geom.getGeometryN(i);
+      long[] shell = round(polygon.getExteriorRing().getCoordinateSequence(), scale);
+      if (shell == null) {
+        return null;
+      }
+      if (shell.length == 0) {
+        // shell collapsed, so the whole polygon goes away
+        continue;
+      }
+      List<long[]> rings = new ArrayList<>(1 + polygon.getNumInteriorRing());
+      rings.add(orient(shell, false));
+      for (int j = 0; j < polygon.getNumInteriorRing(); j++) {
+        long[] hole = round(polygon.getInteriorRingN(j).getCoordinateSequence(), scale);
+        if (hole == null) {
+          return null;
+        }
+        if (hole.length > 0) {
+          rings.add(orient(hole, true));
+        }
+      }
+      polygons.add(rings);
+    }
+    if (!segmentsOnlyTouchNeighbors(polygons) || !ringsNestProperly(polygons)) {
+      return null;
+    }
+    return toGeometry(polygons, scale, geom.getFactory());
+  }
+
+  /**
+   * Returns {@code x, y} grid coordinates of the ring without repeated vertices or closing point, an empty array if it
+   * collapsed to a line or point, or null if it's too big for the grid or has zero area without collapsing.
+   */
+  private static long[] round(CoordinateSequence seq, double scale) {
+    int size = seq.size();
+    long[] result = new long[size * 2];
+    int n = 0;
+    for (int i = 0; i < size; i++) {
+      long x = Math.round(seq.getX(i) * scale);
+      long y = Math.round(seq.getY(i) * scale);
+      if (Math.abs(x) >= MAX_GRID_COORD || Math.abs(y) >= MAX_GRID_COORD) {
+        return null;
+      }
+      if (n == 0 || x != result[n - 2] || y != result[n - 1]) {
+        result[n++] = x;
+        result[n++] = y;
+      }
+    }
+    // drop closing point
+    while (n > 2 && result[n - 2] == result[0] && result[n - 1] == result[1]) {
+      n -= 2;
+    }
+    result = Arrays.copyOf(result, n);
+    if (n < 6 || (signedArea2(result) == 0 && collinear(result))) {
+      return new long[0];
+    }
+    // a ring that crosses itself like a bowtie can also have zero area
+    return signedArea2(result) == 0 ? null : result;
+  }
+
+  private static boolean collinear(long[] ring) {
+    for (int i = 4; i < ring.length; i += 2) {
+      if (cross(ring[0], ring[1], ring[2], ring[3], ring[i], ring[i + 1]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns twice the signed area of {@code ring}, positive when counter-clockwise. */
+  private static long signedArea2(long[] ring) {
+    long sum = 0;
+    int n = ring.length;
+    for (int i = 0; i < n; i += 2) {
+      int j = (i + 2) % n;
+      sum += ring[i] * ring[j + 1] - ring[j] * ring[i + 1];
+    }
+    return sum;
+  }
+
+  private static long[] orient(long[] ring, boolean ccw) {
+    if ((signedArea2(ring) > 0) != ccw) {
+      for (int i = 0, j = ring.length - 2; i < j; i += 2, j -= 2) {
+        long x = ring[i], y = ring[i + 1];
+        ring[i] = ring[j];
+        ring[i + 1] = ring[j + 1];
+        ring[j] = x;
+        ring[j + 1] = y;
+      }
+    }
+    return ring;
+  }
+
+  private static long cross(long ax, long ay, long bx, long by, long cx, long cy) {
+    return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+  }
+
+  /** Returns true if {@code (px, py)}, which is collinear with segment {@code a-b}, lies within its bounds. */
+  private static boolean onSegment(long ax, long ay, long bx, long by, long px, long py) {
+    return Math.min(ax, bx) <= px && px <= Math.max(ax, bx) && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+  }
+
+  private static boolean intersects(long[] a, long[] b) {
+    long d1 = cross(b[0], b[1], b[2], b[3], a[0], a[1]);
+    long d2 = cross(b[0], b[1], b[2], b[3], a[2], a[3]);
+    long d3 = cross(a[0], a[1], a[2], a[3], b[0], b[1]);
+    long d4 = cross(a[0], a[1], a[2], a[3], b[2], b[3]);
+    if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+      return true;
+    }
+    return (d1 == 0 && onSegment(b[0], b[1], b[2], b[3], a[0], a[1])) ||
+      (d2 == 0 && onSegment(b[0], b[1], b[2], b[3], a[2], a[3])) ||
+      (d3 == 0 && onSegment(a[0], a[1], a[2], a[3], b[0], b[1])) ||
+      (d4 == 0 && onSegment(a[0], a[1], a[2], a[3], b[2], b[3]));
+  }
+
+  /**
+   * Returns true if no two segments intersect, except for consecutive segments in a ring at their shared vertex as long
+   * as the ring doesn't double back on itself there.
+   */
+  private static boolean segmentsOnlyTouchNeighbors(List<List<long[]>> polygons) {
+    int count = 0;
+    for (var rings : polygons) {
+      for (long[] ring : rings) {
+        count += ring.length / 2;
+      }
+    }
+    // x1, y1, x2, y2, ring ID, index in ring, ring size
+    long[][] segments = new long[count][];
+    int n = 0, ringId = 0;
+    for (var rings : polygons) {
+      for (long[] ring : rings) {
+        int size = ring.length / 2;
+        for (int i = 0; i < size; i++) {
+          int j = (i + 1) % size;
+          segments[n++] = new long[]{ring[i * 2], ring[i * 2 + 1], ring[j * 2], ring[j * 2 + 1], ringId, i, size};
+        }
+        ringId++;
+      }
+    }
+    Arrays.sort(segments, (a, b) -> Long.compare(Math.min(a[0], a[2]), Math.min(b[0], b[2])));
+    List<long[]> active = new ArrayList<>();
+    for (long[] segment : segments) {
+      long minX = Math.min(segment[0], segment[2]);
+      long minY = Math.min(segment[1], segment[3]);
+      long maxY = Math.max(segment[1], segment[3]);
+      active.removeIf(other -> Math.max(other[0], other[2]) < minX);
+      for (long[] other : active) {
+        if (Math.max(other[1], other[3]) < minY || Math.min(other[1], other[3]) > maxY) {
+          continue;
+        }
+        if (segment[4] == other[4]) {
+          long diff = Math.abs(segment[5] - other[5]);
+          if (diff == 1 || diff == segment[6] - 1) {
+            long[] first = (segment[5] + 1) % segment[6] == other[5] ? segment : other;
+            long[] second = first == segment ? other : segment;
+            // neighbors share a vertex, but it's only a problem if the second goes back along the first
+            if (cross(first[0], first[1], first[2], first[3], second[2], second[3]) == 0 &&
+              (first[2] - first[0]) * (second[2] - second[0]) + (first[3] - first[1]) * (second[3] - second[1]) < 0) {
+              return false;
+            }
+            continue;
+          }
+        }
+        if (intersects(segment, other)) {
+          return false;
+        }
+      }
+      active.add(segment);
+    }
+    return true;
+  }
+
+  /** Returns true if {@code (x, y)}, which is not on the boundary of {@code ring}, is inside it. */
+  private static boolean inside(long[] ring, long x, long y) {
+    boolean inside = false;
+    int n = ring.length;
+    for (int i = 0, j = n - 2; i < n; j = i, i += 2) {
+      long xi = ring[i], yi = ring[i + 1], xj = ring[j], yj = ring[j + 1];
+      if ((yi > y) != (yj > y)) {
+        // compare x against the crossing point without dividing
+        long lhs = (x - xi) * (yj - yi);
+        long rhs = (xj - xi) * (y - yi);
+        if (yj > yi ? lhs < rhs : lhs > rhs) {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
+
+  /** Returns true if {@code (x, y)}, which is not on the boundary of any ring, is inside the polygon. */
+  private static boolean insidePolygon(List<long[]> rings, long x, long y) {
+    if (!inside(rings.getFirst(), x, y)) {
+      return false;
+    }
+    for (int i = 1; i < rings.size(); i++) {
+      if (inside(rings.get(i), x, y)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if every hole is inside its shell but outside the other holes, and no polygon starts inside of another
+   * one.
+   * <p>
+   * Since no rings touch, checking one vertex of each ring is enough.
+   */
+  private static boolean ringsNestProperly(List<List<long[]>> polygons) {
+    for (var rings : polygons) {
+      long[] shell = rings.getFirst();
+      for (int i = 1; i < rings.size(); i++) {
+        long[] hole = rings.get(i);
+        if (!inside(shell, hole[0], hole[1])) {
+          return false;
+        }
+        for (int j = 1; j < rings.size(); j++) {
+          if (i != j && inside(rings.get(j), hole[0], hole[1])) {
+            return false;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < polygons.size(); i++) {
+      long[] shell = polygons.get(i).getFirst();
+      for (int j = 0; j < polygons.size(); j++) {
+        if (i != j && insidePolygon(polygons.get(j), shell[0], shell[1])) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static LinearRing toRing(long[] ring, double scale, GeometryFactory factory) {
+    int size = ring.length / 2;
+    double[] coords = new double[(size + 1) * 2];
+    for (int i = 0; i < ring.length; i++) {
+      coords[i] = ring[i] / scale;
+    }
+    coords[size * 2] = coords[0];
+    coords[size * 2 + 1] = coords[1];
+    return factory.createLinearRing(new PackedCoordinateSequence.Double(coords, 2, 0));
+  }
+
+  private static Geometry toGeometry(List<List<long[]>> polygons, double scale, GeometryFactory factory) {
+    Polygon[] result = new Polygon[polygons.size()];
+    for (int i = 0; i < result.length; i++) {
+      var rings = polygons.get(i);
+      LinearRing[] holes = new LinearRing[rings.size() - 1];
+      for (int j = 0; j < holes.length; j++) {
+        holes[j] = toRing(rings.get(j + 1), scale, factory);
+      }
+      result[i] = factory.createPolygon(toRing(rings.getFirst(), scale, factory), holes);
+    }
+    return result.length == 0 ? factory.createPolygon() : result.length == 1 ? result[0] :
+      factory.createMultiPolygon(result);
+  }
+}
@@ -19,27 +19,37 @@ import org.locationtech.jts.geom.Envelope;
  * index.
  * <p>
  *
- * @param encoded the tile ID encoded as a 32-bit integer
+ * @param encoded the tile ID encoded as a 32-bit integer, or -1 past z{@value #MAX_INT_ENCODED_ZOOM} where it does not
+ *                fit (use {@link #encodedLong()} instead)
  * @param x       x coordinate of the tile where 0 is the western-most tile just to the east the international date line
  *                and 2^z-1 is the eastern-most tile
  * @param y       y coordinate of the tile where 0 is the northern-most tile and 2^z-1 is the southern-most tile
- * @param z       zoom level ({@code <= 15})
+ * @param z       zoom level ({@code <= }{@link com.onthegomap.planetiler.config.PlanetilerConfig#MAX_MAXZOOM})
  */
 @Immutable
 public record TileCoord(int encoded, int x, int y, int z) implements Comparable<TileCoord> {
 
-  private static final int[] ZOOM_START_INDEX = new int[MAX_MAXZOOM + 1];
+  /** The deepest zoom level where tile IDs fit in a 32-bit integer. */
+  public static final int MAX_INT_ENCODED_ZOOM = 15;
+
+  private static final int[] ZOOM_START_INDEX = new int[MAX_INT_ENCODED_ZOOM + 1];
+  private static final long[] LONG_ZOOM_START_INDEX = new long[MAX_MAXZOOM + 1];
 
   static {
     int idx = 0;
-    for (int z = 0; z <= MAX_MAXZOOM; z++) {
+    for (int z = 0; z <= MAX_INT_ENCODED_ZOOM; z++) {
       ZOOM_START_INDEX[z] = idx;
       int count = (1 << z) * (1 << z);
       if (Integer.MAX_VALUE - idx < count) {
-        throw new IllegalStateException("Too many zoom levels " + MAX_MAXZOOM);
+        throw new IllegalStateException("Too many zoom levels " + MAX_INT_ENCODED_ZOOM);
       }
       idx += count;
     }
+    long longIdx = 0;
+    for (int z = 0; z <= MAX_MAXZOOM; z++) {
+      LONG_ZOOM_START_INDEX[z] = longIdx;
+      longIdx += (1L << z) * (1L << z);
+    }
   }
 
   private static int startIndexForZoom(int z) {
@@ -47,7 +57,7 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
   }
 
   private static int zoomForIndex(int idx) {
-    for (int z = MAX_MAXZOOM; z >= 0; z--) {
+    for (int z = MAX_INT_ENCODED_ZOOM; z >= 0; z--) {
       if (ZOOM_START_INDEX[z] <= idx) {
         return z;
       }
@@ -55,12 +65,21 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
     throw new IllegalArgumentException("Bad index: " + idx);
   }
 
+  private static int zoomForLongIndex(long idx) {
+    for (int z = MAX_MAXZOOM; z >= 0; z--) {
+      if (LONG_ZOOM_START_INDEX[z] <= idx) {
+        return z;
+      }
+    }
+    throw new IllegalArgumentException("Bad index: " + idx);
+  }
+
   public TileCoord {
     assert z <= MAX_MAXZOOM;
   }
 
   public static TileCoord ofXYZ(int x, int y, int z) {
-    return new TileCoord(encode(x, y, z), x, y, z);
+    return new TileCoord(z <= MAX_INT_ENCODED_ZOOM ? encode(x, y, z) : -1, x, y, z);
   }
 
   public static TileCoord decode(int encoded) {
@@ -69,6 +88,17 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
     return new TileCoord(encoded, (int) (xy >>> 32 & 0xFFFFFFFFL), (int) (xy & 0xFFFFFFFFL), z);
   }
 
+  /** Same as {@link #decode(int)} but also accepts tile IDs past z{@value #MAX_INT_ENCODED_ZOOM}. */
+  public static TileCoord decodeLong(long encoded) {
+    if (encoded < LONG_ZOOM_START_INDEX[MAX_INT_ENCODED_ZOOM + 1]) {
+      return decode((int) encoded);
+    }
+    int z = zoomForLongIndex(encoded);
+    long pos = encoded - LONG_ZOOM_START_INDEX[z];
+    int dim = 1 << z;
+    return TileCoord.ofXYZ((int) (pos / dim), (int) (dim - 1 - (pos % dim)), z);
+  }
+
   /** Decode an integer using Hilbert ordering on a zoom level back to TMS ordering. */
   public static TileCoord hilbertDecode(int encoded) {
     int z = TileCoord.zoomForIndex(encoded);
@@ -76,6 +106,16 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
     return TileCoord.ofXYZ(Hilbert.extractX(xy), Hilbert.extractY(xy), z);
   }
 
+  /** Same as {@link #hilbertDecode(int)} but also accepts tile IDs past z{@value #MAX_INT_ENCODED_ZOOM}. */
+  public static TileCoord hilbertDecodeLong(long encoded) {
+    if (encoded < LONG_ZOOM_START_INDEX[MAX_INT_ENCODED_ZOOM + 1]) {
+      return hilbertDecode((int) encoded);
+    }
+    int z = zoomForLongIndex(encoded);
+    long xy = Hilbert.hilbertPositionToXY(z, encoded - LONG_ZOOM_START_INDEX[z]);
+    return TileCoord.ofXYZ(Hilbert.extractX(xy), Hilbert.extractY(xy), z);
+  }
+
   /** Returns the tile containing a latitude/longitude coordinate at a given zoom level. */
   public static TileCoord aroundLngLat(double lng, double lat, int zoom) {
     double factor = 1 << zoom;
@@ -85,9 +125,24 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
   }
 
   public static int encode(int x, int y, int z) {
+    assert z <= MAX_INT_ENCODED_ZOOM;
     return startIndexForZoom(z) + tmsXYToPosition(z, x, y);
   }
 
+  /** Same as {@link #encode(int, int, int)} but also supports zoom levels past z{@value #MAX_INT_ENCODED_ZOOM}. */
+  public static long encodeLong(int x, int y, int z) {
+    if (z <= MAX_INT_ENCODED_ZOOM) {
+      return encode(x, y, z);
+    }
+    long dim = 1L << z;
+    return LONG_ZOOM_START_INDEX[z] + x * dim + (dim - 1 - y);
+  }
+
+  /** Returns the tile ID in TMS order, which only fits in {@link #encoded()} up to z{@value #MAX_INT_ENCODED_ZOOM}. */
+  public long encodedLong() {
+    return encoded >= 0 ? encoded : encodeLong(x, y, z);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -99,12 +154,12 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
 
     TileCoord tileCoord = (TileCoord) o;
 
-    return encoded == tileCoord.encoded;
+    return encoded == tileCoord.encoded && (encoded >= 0 || (x == tileCoord.x && y == tileCoord.y && z == tileCoord.z));
   }
 
   @Override
   public int hashCode() {
-    return encoded;
+    return encoded >= 0 ? encoded : Long.hashCode(encodedLong());
   }
 
   @Override
@@ -119,12 +174,13 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
   }
 
   public double hilbertProgressOnLevel(TileExtents extents) {
-    return 1d * Hilbert.hilbertXYToIndex(this.z, this.x, this.y) / (1 << 2 * this.z);
+    return 1d * Hilbert.hilbertXYToLongIndex(this.z, this.x, this.y) / (1L << 2 * this.z);
   }
 
   @Override
   public int compareTo(TileCoord o) {
-    return Long.compare(encoded, o.encoded);
+    return encoded >= 0 && o.encoded >= 0 ? Integer.compare(encoded, o.encoded) :
+      Long.compare(encodedLong(), o.encodedLong());
   }
 
   /** Returns the latitude/longitude of the northwest corner of this tile. */
@@ -159,8 +215,24 @@ public record TileCoord(int encoded, int x, int y, int z) implements Comparable<
 
   /** Return the equivalent tile index using Hilbert ordering on a single level instead of TMS. */
   public int hilbertEncoded() {
-    return startIndexForZoom(this.z) +
-      Hilbert.hilbertXYToIndex(this.z, this.x, this.y);
+    return hilbertEncode(this.x, this.y, this.z);
+  }
+
+  /** Same as {@link #hilbertEncoded()} but without creating a {@link TileCoord} first. */
+  public static int hilbertEncode(int x, int y, int z) {
+    assert z <= MAX_INT_ENCODED_ZOOM;
+    return startIndexForZoom(z) + Hilbert.hilbertXYToIndex(z, x, y);
+  }
+
+  /** Same as {@link #hilbertEncoded()} but also supports zoom levels past z{@value #MAX_INT_ENCODED_ZOOM}. */
+  public long hilbertEncodedLong() {
+    return hilbertEncodeLong(this.x, this.y, this.z);
+  }
+
+  /** Same as {@link #hilbertEncodedLong()} but without creating a {@link TileCoord} first. */
+  public static long hilbertEncodeLong(int x, int y, int z) {
+    return z <= MAX_INT_ENCODED_ZOOM ? hilbertEncode(x, y, z) :
+      LONG_ZOOM_START_INDEX[z] + Hilbert.hilbertXYToLongIndex(z, x, y);
   }
 
   public static long tmsPositionToXY(int z, int pos) {
@@ -1,6 +1,8 @@
 package com.onthegomap.planetiler.geo;
 
 import com.onthegomap.planetiler.render.TiledGeometry;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
@@ -14,10 +16,19 @@ import org.slf4j.LoggerFactory;
 public class TileExtents implements Predicate<TileCoord> {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(TileExtents.class);
-  private final ForZoom[] zoomExtents;
-
-  private TileExtents(ForZoom[] zoomExtents) {
-    this.zoomExtents = zoomExtents;
+  /** Deeper zooms are rarely used and expensive to compute for a complex shape so wait until they are requested. */
+  private static final int MAX_EAGER_ZOOM = 15;
+  private final AtomicReferenceArray<ForZoom> zoomExtents;
+  private final Envelope worldBounds;
+  private final Geometry mercatorShape;
+  private final IntFunction<TilePredicate> tileFilter;
+
+  private TileExtents(int maxzoom, Envelope worldBounds, Geometry mercatorShape,
+    IntFunction<TilePredicate> tileFilter) {
+    this.zoomExtents = new AtomicReferenceArray<>(maxzoom + 1);
+    this.worldBounds = worldBounds;
+    this.mercatorShape = mercatorShape;
+    this.tileFilter = tileFilter;
   }
 
   private static int quantizeDown(double value, int levels) {
@@ -33,42 +44,69 @@ public class TileExtents implements Predicate<TileCoord> {
     return computeFromWorldBounds(maxzoom, worldBounds, null);
   }
 
-
   /** Returns a filter to tiles that intersect {@code worldBounds} (specified in world web mercator coordinates). */
   public static TileExtents computeFromWorldBounds(int maxzoom, Envelope worldBounds, Geometry shape) {
-    ForZoom[] zoomExtents = new ForZoom[maxzoom + 1];
+    return computeFromWorldBounds(maxzoom, worldBounds, shape, null);
+  }
+
+  /**
+   * Returns a filter to tiles that intersect {@code worldBounds} (specified in world web mercator coordinates) and
+   * {@code shape}, and where the predicate that {@code tileFilter} returns for that zoom level returns true.
+   */
+  public static TileExtents computeFromWorldBounds(int maxzoom, Envelope worldBounds, Geometry shape,
+    IntFunction<TilePredicate> tileFilter) {
     var mercator = shape == null ? null : GeoUtils.latLonToWorldCoords(shape);
-    for (int zoom = 0; zoom <= maxzoom; zoom++) {
-      int max = 1 << zoom;
-
-      var forZoom = new ForZoom(
-        zoom,
-        quantizeDown(worldBounds.getMinX(), max),
-        quantizeDown(worldBounds.getMinY(), max),
-        quantizeUp(worldBounds.getMaxX(), max),
-        quantizeUp(worldBounds.getMaxY(), max),
-        null
-      );
-
-      if (mercator != null) {
-        Geometry scaled = AffineTransformation.scaleInstance(1 << zoom, 1 << zoom).transform(mercator);
-        TiledGeometry.CoveredTiles covered;
-        try {
-          covered = TiledGeometry.getCoveredTiles(scaled, zoom, forZoom);
-        } catch (GeometryException e) {
-          throw new IllegalArgumentException("Invalid geometry: " + scaled);
-        }
-        forZoom = forZoom.withShape(covered);
-        LOGGER.info("prepareShapeForZoom z{} {}", zoom, covered);
+    var result = new TileExtents(maxzoom, worldBounds, mercator, tileFilter);
+    for (int zoom = 0; zoom <= Math.min(maxzoom, MAX_EAGER_ZOOM); zoom++) {
+      result.zoomExtents.set(zoom, result.computeForZoom(zoom));
+    }
+    return result;
+  }
+
+  private ForZoom computeForZoom(int zoom) {
+    int max = 1 << zoom;
+
+    var forZoom = new ForZoom(
+      zoom,
+      quantizeDown(worldBounds.getMinX(), max),
+      quantizeDown(worldBounds.getMinY(), max),
+      quantizeUp(worldBounds.getMaxX(), max),
+      quantizeUp(worldBounds.getMaxY(), max),
+      null
+    );
+
+    if (mercatorShape != null) {
+      Geometry scaled = AffineTransformation.scaleInstance(1 << zoom, 1 << zoom).transform(mercatorShape);
+      TiledGeometry.CoveredTiles covered;
+      try {
+        covered = TiledGeometry.getCoveredTiles(scaled, zoom, forZoom);
+      } catch (GeometryException e) {
+        throw new IllegalArgumentException("Invalid geometry: " + scaled);
       }
+      forZoom = forZoom.withShape(covered);
+      LOGGER.info("prepareShapeForZoom z{} {}", zoom, covered);
+    }
 
-      zoomExtents[zoom] = forZoom;
+    if (tileFilter != null) {
+      TilePredicate filter = tileFilter.apply(zoom);
+      TilePredicate shapeFilter = forZoom.shapeFilter();
+      forZoom = forZoom.withShape(shapeFilter == null ? filter : (x, y) -> shapeFilter.test(x, y) && filter.test(x, y));
     }
-    return new TileExtents(zoomExtents);
+    return forZoom;
   }
 
   public ForZoom getForZoom(int zoom) {
-    return zoomExtents[zoom];
+    ForZoom result = zoomExtents.get(zoom);
+    if (result == null) {
+      synchronized (this) {
+        result = zoomExtents.get(zoom);
+        if (result == null) {
+          result = computeForZoom(zoom);
+          zoomExtents.set(zoom, result);
+        }
+      }
+    }
+    return result;
   }
 
   public boolean test(int x, int y, int z) {
@@ -2,8 +2,10 @@ package com.onthegomap.planetiler.geo;
 
 import com.onthegomap.planetiler.archive.WriteableTileArchive;
 import java.util.function.IntFunction;
+import java.util.function.LongFunction;
 import java.util.function.ToDoubleBiFunction;
 import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 /**
  * Controls the sort order of {@link com.onthegomap.planetiler.collection.FeatureGroup}, which determines the ordering
@@ -11,17 +13,24 @@ import java.util.function.ToIntFunction;
  * {@link WriteableTileArchive.TileWriter}.
  */
 public enum TileOrder {
-  TMS(TileCoord::encoded, TileCoord::decode, TileCoord::progressOnLevel),
-  HILBERT(TileCoord::hilbertEncoded, TileCoord::hilbertDecode, TileCoord::hilbertProgressOnLevel);
+  TMS(TileCoord::encoded, TileCoord::decode, TileCoord::encodedLong, TileCoord::decodeLong,
+    TileCoord::progressOnLevel),
+  HILBERT(TileCoord::hilbertEncoded, TileCoord::hilbertDecode, TileCoord::hilbertEncodedLong,
+    TileCoord::hilbertDecodeLong, TileCoord::hilbertProgressOnLevel);
 
   private final ToIntFunction<TileCoord> encode;
   private final IntFunction<TileCoord> decode;
+  private final ToLongFunction<TileCoord> encodeLong;
+  private final LongFunction<TileCoord> decodeLong;
   private final ToDoubleBiFunction<TileCoord, TileExtents> progressOnLevel;
 
   private TileOrder(ToIntFunction<TileCoord> encode, IntFunction<TileCoord> decode,
+    ToLongFunction<TileCoord> encodeLong, LongFunction<TileCoord> decodeLong,
     ToDoubleBiFunction<TileCoord, TileExtents> progressOnLevel) {
     this.encode = encode;
     this.decode = decode;
+    this.encodeLong = encodeLong;
+    this.decodeLong = decodeLong;
     this.progressOnLevel = progressOnLevel;
   }
 
@@ -33,6 +42,16 @@ public enum TileOrder {
     return decode.apply(encoded);
   }
 
+  /** Same as {@link #encode(TileCoord)} but also supports tiles past z{@value TileCoord#MAX_INT_ENCODED_ZOOM}. */
+  public long encodeLong(TileCoord coord) {
+    return encodeLong.applyAsLong(coord);
+  }
+
+  /** Same as {@link #decode(int)} but also supports tiles past z{@value TileCoord#MAX_INT_ENCODED_ZOOM}. */
+  public TileCoord decodeLong(long encoded) {
+    return decodeLong.apply(encoded);
+  }
+
   public double progressOnLevel(TileCoord coord, TileExtents extents) {
     return progressOnLevel.applyAsDouble(coord, extents);
   }
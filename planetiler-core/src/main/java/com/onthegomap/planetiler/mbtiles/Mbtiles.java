@@ -52,6 +52,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
   public static final String COMPACT_DB = "compact";
   public static final String SKIP_INDEX_CREATION = "no_index";
   public static final String VACUUM_ANALYZE = "vacuum_analyze";
+  public static final String TILE_WRITE_OUT_OF_ORDER = "tile_write_out_of_order";
 
   public static final String LEGACY_COMPACT_DB = "compact_db";
   public static final String LEGACY_SKIP_INDEX_CREATION = "skip_mbtiles_index_creation";
@@ -96,7 +97,10 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
   private final boolean compactDb;
   private final boolean skipIndexCreation;
   private final boolean vacuumAnalyze;
+  private final boolean deferIndexCreation;
   private PreparedStatement getTileStatement = null;
+  private PreparedStatement deleteTileStatement = null;
+  private boolean appending = false;
 
   private final LongSupplier bytesWritten;
 
@@ -117,6 +121,11 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
       "mbtiles: vacuum analyze sqlite DB after writing",
       false
     );
+    this.deferIndexCreation = !skipIndexCreation && arguments.getBoolean(
+      TILE_WRITE_OUT_OF_ORDER,
+      "mbtiles: accept tiles out of order and create the index after writing",
+      false
+    );
     this.bytesWritten = bytesWritten;
   }
 
@@ -210,14 +219,44 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     return TileOrder.TMS;
   }
 
+  @Override
+  public boolean acceptsTilesOutOfOrder() {
+    // without indexes, inserting rows out of order doesn't need to rebalance a b-tree
+    return skipIndexCreation || deferIndexCreation;
+  }
+
+  @Override
+  public boolean supportsDelete() {
+    return true;
+  }
+
+  @Override
+  public void deleteTile(TileCoord coord) {
+    try {
+      PreparedStatement stmt = deleteTileStatement();
+      stmt.setInt(1, coord.x());
+      stmt.setInt(2, (1 << coord.z()) - 1 - coord.y());
+      stmt.setInt(3, coord.z());
+      stmt.executeUpdate();
+    } catch (SQLException throwables) {
+      throw new IllegalStateException("Could not delete tile", throwables);
+    }
+  }
+
   @Override
   public void initialize() {
-    if (skipIndexCreation) {
+    if (tablesExist()) {
+      // appending to an existing archive, replace tiles that get written again
+      LOGGER.info("Appending to existing mbtiles tables");
+      appending = true;
+    } else if (skipIndexCreation) {
       createTablesWithoutIndexes();
       if (LOGGER.isInfoEnabled()) {
         LOGGER.info("Skipping index creation. Add later by executing: {}",
           String.join(" ; ", getManualIndexCreationStatements()));
       }
+    } else if (deferIndexCreation) {
+      createTablesWithoutIndexes();
     } else {
       createTablesWithIndexes();
     }
@@ -225,6 +264,15 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
 
   @Override
   public void finish(TileArchiveMetadata tileArchiveMetadata) {
+    if (deferIndexCreation && !appending) {
+      // building the index once over all rows is cheaper than keeping it sorted through random inserts
+      execute(getManualIndexCreationStatements());
+    }
+    if (appending && compactDb) {
+      // drop tile data that no deleted or replaced tile refers to anymore
+      execute("DELETE FROM %s WHERE %s NOT IN (SELECT %s FROM %s)".formatted(
+        TILES_DATA_TABLE, TILES_DATA_COL_DATA_ID, TILES_SHALLOW_COL_DATA_ID, TILES_SHALLOW_TABLE));
+    }
     metadataTable().set(tileArchiveMetadata);
     if (vacuumAnalyze) {
       vacuumAnalyze();
@@ -371,6 +419,16 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     );
   }
 
+  private int maxTileDataId() {
+    try (Statement statement = connection.createStatement()) {
+      ResultSet rs = statement.executeQuery(
+        "select max(%s) from %s".formatted(TILES_DATA_COL_DATA_ID, TILES_DATA_TABLE));
+      return rs.next() ? rs.getInt(1) : 0;
+    } catch (SQLException throwables) {
+      throw new IllegalStateException("Could not read mbtiles tile data ids", throwables);
+    }
+  }
+
   /** Returns a writer that queues up inserts into the tile database(s) into large batches before executing them. */
   public WriteableTileArchive.TileWriter newTileWriter() {
     if (compactDb) {
@@ -409,6 +467,30 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     return getTileStatement;
   }
 
+  private PreparedStatement deleteTileStatement() {
+    if (deleteTileStatement == null) {
+      try {
+        deleteTileStatement = connection.prepareStatement("""
+          DELETE FROM %s
+          WHERE %s=? AND %s=? AND %s=?
+          """.formatted(compactDb ? TILES_SHALLOW_TABLE : TILES_TABLE, TILES_COL_X, TILES_COL_Y, TILES_COL_Z));
+      } catch (SQLException throwables) {
+        throw new IllegalStateException(throwables);
+      }
+    }
+    return deleteTileStatement;
+  }
+
+  private boolean tablesExist() {
+    try (Statement statement = connection.createStatement()) {
+      ResultSet rs = statement.executeQuery(
+        "select count(*) from sqlite_master where type='table' and name='%s'".formatted(METADATA_TABLE));
+      return rs.next() && rs.getInt(1) > 0;
+    } catch (SQLException throwables) {
+      throw new IllegalStateException("Could not read mbtiles tables", throwables);
+    }
+  }
+
   @Override
   public byte[] getTile(int x, int y, int z) {
     try {
@@ -564,17 +646,17 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private final PreparedStatement batchStatement;
     private final int batchLimit;
     private final String insertStmtTableName;
-    private final boolean insertStmtInsertIgnore;
+    private final String insertStmtConflictClause;
     private final String insertStmtValuesPlaceHolder;
     private final String insertStmtColumnsCsv;
     private long count = 0;
 
 
-    protected BatchedTableWriterBase(String tableName, List<String> columns, boolean insertIgnore) {
+    protected BatchedTableWriterBase(String tableName, List<String> columns, String conflictClause) {
       batchLimit = MAX_PARAMETERS_IN_PREPARED_STATEMENT / columns.size();
       batch = new ArrayList<>(batchLimit);
       insertStmtTableName = tableName;
-      insertStmtInsertIgnore = insertIgnore;
+      insertStmtConflictClause = conflictClause;
       insertStmtValuesPlaceHolder = columns.stream().map(c -> "?").collect(Collectors.joining(",", "(", ")"));
       insertStmtColumnsCsv = String.join(",", columns);
       batchStatement = createBatchInsertPreparedStatement(batchLimit);
@@ -595,7 +677,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private PreparedStatement createBatchInsertPreparedStatement(int size) {
 
       final String sql = "INSERT %s INTO %s (%s) VALUES %s;".formatted(
-        insertStmtInsertIgnore ? "OR IGNORE" : "",
+        insertStmtConflictClause,
         insertStmtTableName,
         insertStmtColumnsCsv,
         IntStream.range(0, size).mapToObj(i -> insertStmtValuesPlaceHolder).collect(Collectors.joining(", "))
@@ -649,7 +731,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private static final List<String> COLUMNS = List.of(TILES_COL_Z, TILES_COL_X, TILES_COL_Y, TILES_COL_DATA);
 
     BatchedTileTableWriter() {
-      super(TILES_TABLE, COLUMNS, false);
+      super(TILES_TABLE, COLUMNS, appending ? "OR REPLACE" : "");
     }
 
     @Override
@@ -675,7 +757,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
       List.of(TILES_SHALLOW_COL_Z, TILES_SHALLOW_COL_X, TILES_SHALLOW_COL_Y, TILES_SHALLOW_COL_DATA_ID);
 
     BatchedTileShallowTableWriter() {
-      super(TILES_SHALLOW_TABLE, COLUMNS, false);
+      super(TILES_SHALLOW_TABLE, COLUMNS, appending ? "OR REPLACE" : "");
     }
 
     @Override
@@ -701,7 +783,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private static final List<String> COLUMNS = List.of(TILES_DATA_COL_DATA_ID, TILES_DATA_COL_DATA);
 
     BatchedTileDataTableWriter() {
-      super(TILES_DATA_TABLE, COLUMNS, true);
+      super(TILES_DATA_TABLE, COLUMNS, "OR IGNORE");
     }
 
     @Override
@@ -737,7 +819,7 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
     private final BatchedTileDataTableWriter batchedTileDataTableWriter = new BatchedTileDataTableWriter();
     private final LongIntHashMap tileDataIdByHash = new LongIntHashMap(1_000);
 
-    private int tileDataIdCounter = 1;
+    private int tileDataIdCounter = appending ? maxTileDataId() + 1 : 1;
 
     @Override
     public void write(TileEncodingResult encodingResult) {
@@ -796,7 +878,8 @@ public final class Mbtiles implements WriteableTileArchive, ReadableTileArchive
             value);
         try (
           PreparedStatement statement = connection.prepareStatement(
-            "INSERT INTO " + METADATA_TABLE + " (" + METADATA_COL_NAME + "," + METADATA_COL_VALUE + ") VALUES(?, ?);")
+            "INSERT OR REPLACE INTO " + METADATA_TABLE + " (" + METADATA_COL_NAME + "," + METADATA_COL_VALUE +
+              ") VALUES(?, ?);")
         ) {
           statement.setString(1, name);
           statement.setString(2, value);
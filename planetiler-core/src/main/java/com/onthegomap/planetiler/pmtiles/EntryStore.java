@@ -0,0 +1,170 @@
+package com.onthegomap.planetiler.pmtiles;
+
+import com.onthegomap.planetiler.collection.AppendStore;
+import com.onthegomap.planetiler.collection.LongMinHeap;
+import com.onthegomap.planetiler.collection.Storage;
+import com.onthegomap.planetiler.util.DiskBacked;
+import com.onthegomap.planetiler.util.MemoryEstimator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * An append-only list of PMTiles directory entries stored as columns of primitives in {@link AppendStore AppendStores}
+ * instead of {@link Pmtiles.Entry} objects on the JVM heap.
+ * <p>
+ * Each entry takes 24 bytes in RAM, off-heap, or in a memory-mapped file depending on the {@link Storage} used, so a
+ * planet-scale archive with hundreds of millions of entries does not need to hold them all on the heap. Like the
+ * underlying stores, all entries must be added before any are read.
+ */
+@NotThreadSafe
+final class EntryStore implements Closeable, MemoryEstimator.HasEstimate, DiskBacked {
+
+  private static final int SORT_BLOCK_SIZE = 1 << 20;
+
+  private final Storage storage;
+  private final Storage.Params params;
+  private final AppendStore.Longs tileIds;
+  private final AppendStore.Longs offsets;
+  private final AppendStore.Ints lengths;
+  private final AppendStore.Ints runLengths;
+  private long lastTileId = Long.MIN_VALUE;
+  private boolean sorted = true;
+
+  EntryStore(Storage storage, Storage.Params params) {
+    this.storage = storage;
+    this.params = params;
+    this.tileIds = AppendStore.Longs.create(storage, params.resolve("tile_ids"));
+    this.offsets = AppendStore.Longs.create(storage, params.resolve("offsets"));
+    this.lengths = AppendStore.Ints.create(storage, params.resolve("lengths"));
+    this.runLengths = AppendStore.Ints.create(storage, params.resolve("run_lengths"));
+  }
+
+  /** Returns a new store in RAM containing {@code entries}. */
+  static EntryStore of(List<Pmtiles.Entry> entries) {
+    var result = new EntryStore(Storage.RAM, new Storage.Params(Path.of("."), false));
+    for (var entry : entries) {
+      result.add(entry);
+    }
+    return result;
+  }
+
+  void add(Pmtiles.Entry entry) {
+    add(entry.tileId(), entry.offset(), entry.length(), entry.runLength());
+  }
+
+  void add(long tileId, long offset, int length, int runLength) {
+    if (tileId < lastTileId) {
+      sorted = false;
+    }
+    lastTileId = tileId;
+    tileIds.appendLong(tileId);
+    offsets.appendLong(offset);
+    lengths.appendInt(length);
+    runLengths.appendInt(runLength);
+  }
+
+  long size() {
+    return tileIds.size();
+  }
+
+  /** Returns true if entries were added in ascending {@code tileId} order. */
+  boolean isSorted() {
+    return sorted;
+  }
+
+  long tileId(long index) {
+    return tileIds.getLong(index);
+  }
+
+  Pmtiles.Entry get(long index) {
+    return new Pmtiles.Entry(tileIds.getLong(index), offsets.getLong(index), lengths.getInt(index),
+      runLengths.getInt(index));
+  }
+
+  /** Returns a list of the entries from {@code start} (inclusive) to {@code end} (exclusive). */
+  List<Pmtiles.Entry> slice(long start, long end) {
+    List<Pmtiles.Entry> result = new ArrayList<>((int) (end - start));
+    for (long i = start; i < end; i++) {
+      result.add(get(i));
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new store with the same entries sorted by {@code tileId} and closes this one, or returns this store if it
+   * is already sorted.
+   * <p>
+   * Sorts fixed-size blocks of entries in memory, then does a k-way merge of the sorted blocks so that only one block
+   * needs to be on the heap at a time.
+   */
+  EntryStore sorted() throws IOException {
+    return sorted(SORT_BLOCK_SIZE);
+  }
+
+  EntryStore sorted(int blockSize) throws IOException {
+    if (sorted) {
+      return this;
+    }
+    long size = size();
+    int numBlocks = (int) ((size + blockSize - 1) / blockSize);
+    try (var blocks = new EntryStore(storage, params.resolve("blocks"))) {
+      Pmtiles.Entry[] block = new Pmtiles.Entry[(int) Math.min(size, blockSize)];
+      for (long start = 0; start < size; start += blockSize) {
+        int length = (int) Math.min(blockSize, size - start);
+        for (int i = 0; i < length; i++) {
+          block[i] = get(start + i);
+        }
+        Arrays.sort(block, 0, length);
+        for (int i = 0; i < length; i++) {
+          blocks.add(block[i]);
+        }
+      }
+      close();
+
+      var result = new EntryStore(storage, params.resolve("sorted"));
+      long[] positions = new long[numBlocks];
+      LongMinHeap heap = LongMinHeap.newArrayHeap(numBlocks, Integer::compare);
+      for (int i = 0; i < numBlocks; i++) {
+        positions[i] = (long) i * blockSize;
+        heap.push(i, blocks.tileId(positions[i]));
+      }
+      while (!heap.isEmpty()) {
+        int blockIdx = heap.peekId();
+        long position = positions[blockIdx]++;
+        result.add(blocks.get(position));
+        long blockEnd = Math.min(size, (blockIdx + 1L) * blockSize);
+        if (positions[blockIdx] < blockEnd) {
+          heap.updateHead(blocks.tileId(positions[blockIdx]));
+        } else {
+          heap.poll();
+        }
+      }
+      return result;
+    }
+  }
+
+  @Override
+  public long estimateMemoryUsageBytes() {
+    return tileIds.estimateMemoryUsageBytes() + offsets.estimateMemoryUsageBytes() +
+      lengths.estimateMemoryUsageBytes() + runLengths.estimateMemoryUsageBytes();
+  }
+
+  @Override
+  public long diskUsageBytes() {
+    return tileIds.diskUsageBytes() + offsets.diskUsageBytes() + lengths.diskUsageBytes() +
+      runLengths.diskUsageBytes();
+  }
+
+  @Override
+  public void close() throws IOException {
+    tileIds.close();
+    offsets.close();
+    lengths.close();
+    runLengths.close();
+  }
+}
@@ -4,41 +4,71 @@ import com.onthegomap.planetiler.archive.ReadableTileArchive;
 import com.onthegomap.planetiler.archive.Tile;
 import com.onthegomap.planetiler.archive.TileArchiveMetadata;
 import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.archive.TileCompressor;
 import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.util.ByteBufferUtil;
 import com.onthegomap.planetiler.util.CloseableIterator;
 import com.onthegomap.planetiler.util.Gzip;
+import com.onthegomap.planetiler.util.VarInt;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
+import javax.annotation.concurrent.ThreadSafe;
 import org.locationtech.jts.geom.Coordinate;
 
+/**
+ * Reads tiles and metadata from a PMTiles archive.
+ * <p>
+ * File-backed archives are memory-mapped so that {@link #getTile(int, int, int)} can be called from many threads at
+ * once without taking any locks. The root directory is decoded once when the archive is opened. Decoded leaf
+ * directories go into a bounded cache, so a lookup that hits the cache allocates nothing besides the returned tile
+ * data. Other {@link SeekableByteChannel} implementations fall back to synchronized reads.
+ * <p>
+ * Callers must stop reading tiles before calling {@link #close()}.
+ */
+@ThreadSafe
 public class ReadablePmtiles implements ReadableTileArchive {
-  private final SeekableByteChannel channel;
+  /** Default number of decoded leaf directories to keep in memory. */
+  public static final int DEFAULT_LEAF_DIRECTORY_CACHE_SIZE = 4_096;
+  private static final int MAX_DEPTH = 3;
+  private final DataSource source;
   private final Pmtiles.Header header;
+  private final Directory rootDirectory;
+  private final DirectoryCache leafDirectories;
 
   public ReadablePmtiles(SeekableByteChannel channel) throws IOException {
-    this.channel = channel;
+    this(channel, DEFAULT_LEAF_DIRECTORY_CACHE_SIZE);
+  }
 
+  /**
+   * Creates a reader for the PMTiles archive in {@code channel} that caches up to {@code leafDirectoryCacheSize}
+   * decoded leaf directories.
+   */
+  public ReadablePmtiles(SeekableByteChannel channel, int leafDirectoryCacheSize) throws IOException {
+    this.source = channel instanceof FileChannel fileChannel ? new MmapSource(fileChannel) : new ChannelSource(channel);
     this.header = Pmtiles.Header.fromBytes(getBytes(0, Pmtiles.HEADER_LEN));
+    this.rootDirectory = Directory.decode(decompressInternal(getBytes(header.rootDirOffset(),
+      (int) header.rootDirLength())));
+    this.leafDirectories = new DirectoryCache(leafDirectoryCacheSize);
   }
 
   public static ReadableTileArchive newReadFromFile(Path path) throws IOException {
     return new ReadablePmtiles(FileChannel.open(path, StandardOpenOption.READ));
   }
 
-  private synchronized byte[] getBytes(long start, int length) throws IOException {
-    channel.position(start);
-    var buf = ByteBuffer.allocate(length);
-    channel.read(buf);
-    return buf.array();
+  private byte[] getBytes(long start, int length) throws IOException {
+    return source.read(start, length);
   }
 
   /**
@@ -71,30 +101,17 @@ public class ReadablePmtiles implements ReadableTileArchive {
   @SuppressWarnings("java:S1168")
   public byte[] getTile(int x, int y, int z) {
     try {
-      var tileId = TileCoord.ofXYZ(x, y, z).hilbertEncoded();
-
-      long dirOffset = header.rootDirOffset();
-      int dirLength = (int) header.rootDirLength();
-
-      for (int depth = 0; depth <= 3; depth++) {
-        byte[] dirBytes = getBytes(dirOffset, dirLength);
-        if (header.internalCompression() == Pmtiles.Compression.GZIP) {
-          dirBytes = Gzip.gunzip(dirBytes);
-        }
-
-        var dir = Pmtiles.directoryFromBytes(dirBytes);
-        var entry = findTile(dir, tileId);
-        if (entry != null) {
-          if (entry.runLength() > 0) {
-            return getBytes(header.tileDataOffset() + entry.offset(), entry.length());
-          } else {
-            dirOffset = header.leafDirectoriesOffset() + entry.offset();
-            dirLength = entry.length();
-          }
-        } else {
+      long tileId = TileCoord.hilbertEncodeLong(x, y, z);
+      Directory dir = rootDirectory;
+      for (int depth = 0; depth <= MAX_DEPTH; depth++) {
+        int idx = dir.find(tileId);
+        if (idx < 0) {
           return null;
+        } else if (dir.runLengths[idx] > 0) {
+          return getBytes(header.tileDataOffset() + dir.offsets[idx], dir.lengths[idx]);
+        } else {
+          dir = getLeafDirectory(header.leafDirectoriesOffset() + dir.offsets[idx], dir.lengths[idx]);
         }
-
       }
     } catch (IOException e) {
       throw new IllegalStateException("Could not get tile", e);
@@ -103,15 +120,32 @@ public class ReadablePmtiles implements ReadableTileArchive {
     return null;
   }
 
+  private Directory getLeafDirectory(long offset, int length) throws IOException {
+    Directory dir = leafDirectories.get(offset);
+    if (dir == null) {
+      dir = Directory.decode(decompressInternal(getBytes(offset, length)));
+      leafDirectories.put(offset, dir);
+    }
+    return dir;
+  }
+
+  /** Decompresses a directory or metadata section using the archive's internal compression. */
+  private byte[] decompressInternal(byte[] bytes) throws IOException {
+    return switch (header.internalCompression()) {
+      case GZIP -> Gzip.gunzip(bytes);
+      case ZSTD -> TileCompressor.decompress(bytes, TileCompression.ZSTD);
+      case BROTLI -> TileCompressor.decompress(bytes, TileCompression.BROTLI);
+      case NONE, UNKNOWN -> bytes;
+    };
+  }
+
   public Pmtiles.Header getHeader() {
     return header;
   }
 
   public Pmtiles.JsonMetadata getJsonMetadata() throws IOException {
     var buf = getBytes(header.jsonMetadataOffset(), (int) header.jsonMetadataLength());
-    if (header.internalCompression() == Pmtiles.Compression.GZIP) {
-      buf = Gzip.gunzip(buf);
-    }
+    buf = decompressInternal(buf);
     return Pmtiles.JsonMetadata.fromBytes(buf);
   }
 
@@ -121,6 +155,8 @@ public class ReadablePmtiles implements ReadableTileArchive {
     TileCompression tileCompression = switch (header.tileCompression()) {
       case GZIP -> TileCompression.GZIP;
       case NONE -> TileCompression.NONE;
+      case ZSTD -> TileCompression.ZSTD;
+      case BROTLI -> TileCompression.BROTLI;
       case UNKNOWN -> TileCompression.UNKNOWN;
     };
 
@@ -159,20 +195,18 @@ public class ReadablePmtiles implements ReadableTileArchive {
   private List<Pmtiles.Entry> readDir(long offset, int length) {
     try {
       var buf = getBytes(offset, length);
-      if (header.internalCompression() == Pmtiles.Compression.GZIP) {
-        buf = Gzip.gunzip(buf);
-      }
+      buf = decompressInternal(buf);
       return Pmtiles.directoryFromBytes(buf);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
-  // Warning: this will only work on z15 or less pmtiles which planetiler creates
+  // Warning: this will only work on pmtiles up to PlanetilerConfig.MAX_MAXZOOM
   private Stream<TileCoord> getTileCoords(List<Pmtiles.Entry> dir) {
     return dir.stream().flatMap(entry -> entry.runLength() == 0 ?
-      getTileCoords(readDir(header.leafDirectoriesOffset() + entry.offset(), entry.length())) : IntStream
-        .range((int) entry.tileId(), (int) entry.tileId() + entry.runLength()).mapToObj(TileCoord::hilbertDecode));
+      getTileCoords(readDir(header.leafDirectoriesOffset() + entry.offset(), entry.length())) : LongStream
+        .range(entry.tileId(), entry.tileId() + entry.runLength()).mapToObj(TileCoord::hilbertDecodeLong));
   }
 
   private Stream<Tile> getTiles(List<Pmtiles.Entry> dir) {
@@ -183,7 +217,7 @@ public class ReadablePmtiles implements ReadableTileArchive {
         } else {
           var data = getBytes(header.tileDataOffset() + entry.offset(), entry.length());
           for (int i = 0; i < entry.runLength(); i++) {
-            next.accept(new Tile(TileCoord.hilbertDecode((int) (entry.tileId() + i)), data));
+            next.accept(new Tile(TileCoord.hilbertDecodeLong(entry.tileId() + i), data));
           }
         }
       } catch (IOException e) {
@@ -206,6 +240,191 @@ public class ReadablePmtiles implements ReadableTileArchive {
 
   @Override
   public void close() throws IOException {
-    channel.close();
+    source.close();
+  }
+
+  /** Random-access reads from the underlying archive. */
+  private interface DataSource extends Closeable {
+
+    byte[] read(long offset, int length) throws IOException;
+  }
+
+  /** Reads from a generic channel, which needs a lock because reads move its position. */
+  private record ChannelSource(SeekableByteChannel channel) implements DataSource {
+
+    @Override
+    public synchronized byte[] read(long offset, int length) throws IOException {
+      channel.position(offset);
+      var buf = ByteBuffer.allocate(length);
+      channel.read(buf);
+      return buf.array();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  /** Reads from a memory-mapped file using absolute gets that do not touch any shared buffer state. */
+  private static final class MmapSource implements DataSource {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+
+    MmapSource(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.segments = ByteBufferUtil.mapFile(channel, channel.size(), 1L << SEGMENT_BITS, false);
+    }
+
+    @Override
+    public byte[] read(long offset, int length) {
+      byte[] result = new byte[length];
+      int segment = (int) (offset >>> SEGMENT_BITS);
+      int position = (int) (offset & SEGMENT_MASK);
+      int copied = 0;
+      while (copied < length) {
+        var buffer = segments[segment++];
+        int n = Math.min(length - copied, buffer.capacity() - position);
+        buffer.get(position, result, copied, n);
+        copied += n;
+        position = 0;
+      }
+      return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+      ByteBufferUtil.free(segments);
+      channel.close();
+    }
+  }
+
+  /** A decoded directory stored as columns of primitives that can be searched without allocating. */
+  static final class Directory {
+    final long[] tileIds;
+    final long[] offsets;
+    final int[] lengths;
+    final int[] runLengths;
+
+    private Directory(int size) {
+      tileIds = new long[size];
+      offsets = new long[size];
+      lengths = new int[size];
+      runLengths = new int[size];
+    }
+
+    /** Same as {@link Pmtiles#directoryFromBytes(byte[])} but without creating an object per entry. */
+    static Directory decode(byte[] bytes) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes);
+      int numEntries = (int) VarInt.getVarLong(buffer);
+      Directory result = new Directory(numEntries);
+      long lastId = 0;
+      for (int i = 0; i < numEntries; i++) {
+        lastId += VarInt.getVarLong(buffer);
+        result.tileIds[i] = lastId;
+      }
+      for (int i = 0; i < numEntries; i++) {
+        result.runLengths[i] = (int) VarInt.getVarLong(buffer);
+      }
+      for (int i = 0; i < numEntries; i++) {
+        result.lengths[i] = (int) VarInt.getVarLong(buffer);
+      }
+      for (int i = 0; i < numEntries; i++) {
+        long tmp = VarInt.getVarLong(buffer);
+        if (i > 0 && tmp == 0) {
+          result.offsets[i] = result.offsets[i - 1] + result.lengths[i - 1];
+        } else {
+          result.offsets[i] = tmp - 1;
+        }
+      }
+      return result;
+    }
+
+    /** Returns the index of the entry for {@code tileId} using the same rules as {@link #findTile}, or -1. */
+    int find(long tileId) {
+      int m = 0;
+      int n = tileIds.length - 1;
+      while (m <= n) {
+        int k = (n + m) >>> 1;
+        long cmp = tileId - tileIds[k];
+        if (cmp > 0) {
+          m = k + 1;
+        } else if (cmp < 0) {
+          n = k - 1;
+        } else {
+          return k;
+        }
+      }
+      if (n >= 0 && (runLengths[n] == 0 || tileId - tileIds[n] < runLengths[n])) {
+        return n;
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * A bounded, lock-free cache of decoded directories keyed by their offset in the archive.
+   * <p>
+   * Slots are grouped into small sets by key hash. Lookups scan one set, and inserts replace the least-recently used
+   * slot in it. This gives approximate LRU eviction without locking or allocating on a hit. Concurrent inserts into
+   * the same set may overwrite each other, which only costs another decode later.
+   */
+  static final class DirectoryCache {
+    private static final int WAYS = 4;
+    private final AtomicReferenceArray<Slot> slots;
+    private final int setMask;
+
+    DirectoryCache(int capacity) {
+      int sets = Integer.highestOneBit(Math.max(1, capacity / WAYS));
+      this.setMask = sets - 1;
+      this.slots = new AtomicReferenceArray<>(sets * WAYS);
+    }
+
+    private int setStart(long key) {
+      // fibonacci hashing spreads nearby directory offsets across sets
+      return ((int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & setMask) * WAYS;
+    }
+
+    Directory get(long key) {
+      int start = setStart(key);
+      for (int i = start; i < start + WAYS; i++) {
+        Slot slot = slots.get(i);
+        if (slot != null && slot.key == key) {
+          slot.lastUsed = System.nanoTime();
+          return slot.directory;
+        }
+      }
+      return null;
+    }
+
+    void put(long key, Directory directory) {
+      int start = setStart(key);
+      int victim = start;
+      long oldest = Long.MAX_VALUE;
+      for (int i = start; i < start + WAYS; i++) {
+        Slot slot = slots.get(i);
+        if (slot == null) {
+          victim = i;
+          break;
+        } else if (slot.lastUsed < oldest) {
+          oldest = slot.lastUsed;
+          victim = i;
+        }
+      }
+      slots.set(victim, new Slot(key, directory));
+    }
+
+    private static final class Slot {
+      final long key;
+      final Directory directory;
+      volatile long lastUsed = System.nanoTime();
+
+      Slot(long key, Directory directory) {
+        this.key = key;
+        this.directory = directory;
+      }
+    }
   }
 }
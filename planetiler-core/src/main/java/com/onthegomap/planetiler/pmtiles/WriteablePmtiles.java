@@ -6,6 +6,7 @@ import com.onthegomap.planetiler.archive.TileArchiveMetadata;
 import com.onthegomap.planetiler.archive.TileEncodingResult;
 import com.onthegomap.planetiler.archive.WriteableTileArchive;
 import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.collection.Storage;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.TileCoord;
@@ -23,7 +24,6 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.OptionalLong;
@@ -42,8 +42,11 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   static final int INIT_SECTION = 16384;
   private static final Logger LOGGER = LoggerFactory.getLogger(WriteablePmtiles.class);
   final LongLongHashMap hashToOffset = Hppc.newLongLongHashMap();
-  final ArrayList<Pmtiles.Entry> entries = new ArrayList<>();
   private final SeekableByteChannel out;
+  private final Path entriesPath;
+  private EntryStore entries;
+  // the last entry is held back until the next tile is written since its run length may still grow
+  private Pmtiles.Entry lastEntry = null;
   private long currentOffset = 0;
   private long numUnhashedTiles = 0;
   private long numAddressedTiles = 0;
@@ -51,13 +54,16 @@ public final class WriteablePmtiles implements WriteableTileArchive {
 
   private final LongSupplier bytesWritten;
 
-  private WriteablePmtiles(SeekableByteChannel channel, LongSupplier bytesWritten) throws IOException {
+  private WriteablePmtiles(SeekableByteChannel channel, LongSupplier bytesWritten, Storage entryStorage,
+    Storage.Params entryParams) throws IOException {
     this.out = channel;
     out.write(ByteBuffer.allocate(INIT_SECTION));
     this.bytesWritten = bytesWritten;
+    this.entries = new EntryStore(entryStorage, entryParams);
+    this.entriesPath = entryStorage == Storage.MMAP ? entryParams.path() : null;
   }
 
-  private static Directories makeDirectoriesWithLeaves(List<Pmtiles.Entry> subEntries, int leafSize, int attemptNum)
+  private static Directories makeDirectoriesWithLeaves(EntryStore subEntries, int leafSize, int attemptNum)
     throws IOException {
     LOGGER.info("Building directories with {} entries per leaf, attempt {}...", leafSize, attemptNum);
     ArrayList<Pmtiles.Entry> rootEntries = new ArrayList<>();
@@ -65,15 +71,12 @@ public final class WriteablePmtiles implements WriteableTileArchive {
     int leavesLength = 0;
     int numLeaves = 0;
 
-    for (int i = 0; i < subEntries.size(); i += leafSize) {
+    for (long i = 0; i < subEntries.size(); i += leafSize) {
       numLeaves++;
-      int end = i + leafSize;
-      if (i + leafSize > subEntries.size()) {
-        end = subEntries.size();
-      }
-      byte[] leafBytes = Pmtiles.directoryToBytes(subEntries, i, end);
+      long end = Math.min(i + leafSize, subEntries.size());
+      byte[] leafBytes = Pmtiles.directoryToBytes(subEntries.slice(i, end));
       leafBytes = Gzip.gzip(leafBytes);
-      rootEntries.add(new Pmtiles.Entry(subEntries.get(i).tileId(), leavesLength, leafBytes.length, 0));
+      rootEntries.add(new Pmtiles.Entry(subEntries.tileId(i), leavesLength, leafBytes.length, 0));
       leavesOutputStream.add(leafBytes);
       leavesLength += leafBytes.length;
     }
@@ -89,15 +92,30 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   /**
    * Serialize all entries into bytes, choosing the # of leaf directories to ensure the header+root fits in 16 KB.
    *
-   * @param entries a sorted ObjectArrayList of all entries in the tileset.
+   * @param entries a sorted list of all entries in the tileset.
    * @return byte arrays of the root and all leaf directories, and the # of leaves.
    * @throws IOException if compression fails
    */
   static Directories makeDirectories(List<Pmtiles.Entry> entries) throws IOException {
+    try (var store = EntryStore.of(entries)) {
+      return makeDirectories(store);
+    }
+  }
+
+  /**
+   * Serialize all entries into bytes, choosing the # of leaf directories to ensure the header+root fits in 16 KB.
+   * <p>
+   * Only one leaf directory worth of entries is materialized on the heap at a time.
+   *
+   * @param entries a store of all entries in the tileset, sorted by tile ID.
+   * @return byte arrays of the root and all leaf directories, and the # of leaves.
+   * @throws IOException if compression fails
+   */
+  static Directories makeDirectories(EntryStore entries) throws IOException {
     int maxEntriesRootOnly = 16384;
     int attemptNum = 1;
     if (entries.size() < maxEntriesRootOnly) {
-      byte[] testBytes = Pmtiles.directoryToBytes(entries, 0, entries.size());
+      byte[] testBytes = Pmtiles.directoryToBytes(entries.slice(0, entries.size()));
       testBytes = Gzip.gzip(testBytes);
 
       if (testBytes.length < INIT_SECTION - Pmtiles.HEADER_LEN) {
@@ -118,14 +136,28 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   }
 
   public static WriteablePmtiles newWriteToFile(Path path) throws IOException {
+    return newWriteToFile(path, Storage.DIRECT, null);
+  }
+
+  /**
+   * Returns a new writer to {@code path} that stores directory entries for all tiles using {@code entryStorage} until
+   * the archive is finished.
+   * <p>
+   * When {@code entryStorage} is {@link Storage#MMAP}, temporary files are written to the directory at
+   * {@code entryTmpDir} and removed when the writer is closed.
+   */
+  public static WriteablePmtiles newWriteToFile(Path path, Storage entryStorage, Path entryTmpDir)
+    throws IOException {
     return new WriteablePmtiles(
       FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
-      () -> FileUtils.size(path)
+      () -> FileUtils.size(path),
+      entryStorage,
+      new Storage.Params(entryTmpDir == null ? Path.of(".") : entryTmpDir, false)
     );
   }
 
   public static WriteablePmtiles newWriteToMemory(SeekableInMemoryByteChannel bytes) throws IOException {
-    return new WriteablePmtiles(bytes, () -> 0);
+    return new WriteablePmtiles(bytes, () -> 0, Storage.RAM, new Storage.Params(Path.of("."), false));
   }
 
   @Override
@@ -138,14 +170,24 @@ public final class WriteablePmtiles implements WriteableTileArchive {
     return TileOrder.HILBERT;
   }
 
+  @Override
+  public boolean acceptsTilesOutOfOrder() {
+    // entries get sorted by tile ID in finish()
+    return true;
+  }
+
   @Override
   public void finish(TileArchiveMetadata tileArchiveMetadata) {
-    if (!isClustered) {
-      LOGGER.info("Tile data was not written in order, sorting entries...");
-      Collections.sort(entries);
-      LOGGER.info("Done sorting.");
+    if (lastEntry != null) {
+      entries.add(lastEntry);
+      lastEntry = null;
     }
     try {
+      if (!entries.isSorted()) {
+        LOGGER.info("Tile data was not written in order, sorting entries...");
+        entries = entries.sorted();
+        LOGGER.info("Done sorting.");
+      }
       Directories directories = makeDirectories(entries);
       // use treemap to ensure consistent ouput between runs
       var otherMetadata = new TreeMap<>(tileArchiveMetadata.toMap());
@@ -180,6 +222,8 @@ public final class WriteablePmtiles implements WriteableTileArchive {
       Pmtiles.Compression tileCompression = switch (tileArchiveMetadata.tileCompression()) {
         case GZIP -> Pmtiles.Compression.GZIP;
         case NONE -> Pmtiles.Compression.NONE;
+        case ZSTD -> Pmtiles.Compression.ZSTD;
+        case BROTLI -> Pmtiles.Compression.BROTLI;
         default -> Pmtiles.Compression.UNKNOWN;
       };
 
@@ -254,6 +298,10 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   @Override
   public void close() throws IOException {
     out.close();
+    entries.close();
+    if (entriesPath != null) {
+      FileUtils.delete(entriesPath);
+    }
   }
 
   public WriteableTileArchive.TileWriter newTileWriter() {
@@ -293,7 +341,6 @@ public final class WriteablePmtiles implements WriteableTileArchive {
   }
 
   private class DeduplicatingTileWriter implements TileWriter {
-    Pmtiles.Entry lastEntry = null;
 
     @Override
     public void write(TileEncodingResult encodingResult) {
@@ -304,9 +351,9 @@ public final class WriteablePmtiles implements WriteableTileArchive {
       var data = encodingResult.tileData();
       TileCoord coord = encodingResult.coord();
 
-      long tileId = coord.hilbertEncoded();
+      long tileId = coord.hilbertEncodedLong();
 
-      if (!entries.isEmpty()) {
+      if (lastEntry != null) {
         if (tileId < lastEntry.tileId()) {
           isClustered = false;
         } else if (tileId == lastEntry.tileId()) {
@@ -335,9 +382,10 @@ public final class WriteablePmtiles implements WriteableTileArchive {
         writeTileData = true;
       }
 
-      var newEntry = new Pmtiles.Entry(tileId, offset, data.length, 1);
-      entries.add(newEntry);
-      lastEntry = newEntry;
+      if (lastEntry != null) {
+        entries.add(lastEntry);
+      }
+      lastEntry = new Pmtiles.Entry(tileId, offset, data.length, 1);
 
       if (writeTileData) {
         try {
@@ -4,6 +4,7 @@ import com.onthegomap.planetiler.FeatureCollector;
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.collection.FeatureGroup;
 import com.onthegomap.planetiler.collection.SortableFeature;
+import com.onthegomap.planetiler.collection.SortableFeatureBlock;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.render.FeatureRenderer;
 import com.onthegomap.planetiler.stats.ProgressLoggers;
@@ -87,9 +88,12 @@ public class SourceFeatureProcessor<F extends SourceFeature> {
       .readFromTiny("source_paths", sourcePaths)
       .addWorker("read", readThreads, readPaths())
       .addBuffer("process_queue", 1000, 1)
-      .<SortableFeature>addWorker("process", processThreads, (prev, next) -> {
+      .<SortableFeatureBlock>addWorker("process", processThreads, (prev, next) -> {
         var featureCollectors = new FeatureCollector.Factory(config, stats);
-        try (FeatureRenderer renderer = newFeatureRenderer(writer, config, next)) {
+        try (
+          var blockWriter = SortableFeatureBlock.writer(next);
+          FeatureRenderer renderer = newFeatureRenderer(writer, config, blockWriter)
+        ) {
           for (SourceFeature sourceFeature : prev) {
             featuresRead.incrementAndGet();
             FeatureCollector features = featureCollectors.get(sourceFeature);
@@ -106,14 +110,14 @@ public class SourceFeatureProcessor<F extends SourceFeature> {
           }
         }
       })
-      // output large batches since each input may map to many tiny output features (i.e. slicing ocean tiles)
-      // which turns enqueueing into the bottleneck
-      .addBuffer("write_queue", 50_000, 1_000)
+      // hand off whole blocks of encoded features since each input may map to many tiny output features (i.e. slicing
+      // ocean tiles) which would turn enqueueing into the bottleneck
+      .addBuffer("write_queue", Math.max(10, processThreads * 2))
       .sinkTo("write", writeThreads, prev -> {
-        try (var threadLocalWriter = writer.writerForThread()) {
-          for (var item : prev) {
-            featuresWritten.incrementAndGet();
-            threadLocalWriter.accept(item);
+        try (var threadLocalWriter = writer.blockWriterForThread()) {
+          for (var block : prev) {
+            featuresWritten.addAndGet(block.size());
+            threadLocalWriter.accept(block);
           }
         }
       });
@@ -144,12 +148,12 @@ public class SourceFeatureProcessor<F extends SourceFeature> {
   private FeatureRenderer newFeatureRenderer(FeatureGroup writer, PlanetilerConfig config,
     Consumer<SortableFeature> next) {
     @SuppressWarnings("java:S2095") // closed by FeatureRenderer
-    var encoder = writer.newRenderedFeatureEncoder();
+    var featureWriter = writer.newRenderedFeatureWriter(next);
     return new FeatureRenderer(
       config,
-      rendered -> next.accept(encoder.apply(rendered)),
+      featureWriter,
       stats,
-      encoder
+      featureWriter
     );
   }
 
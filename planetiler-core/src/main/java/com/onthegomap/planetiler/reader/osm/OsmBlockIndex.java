@@ -0,0 +1,214 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Location and a summary of the contents of every data block in an {@code .osm.pbf} file, recorded the first time each
+ * block is decoded so that later passes can skip reading and decompressing blocks that cannot contain anything they
+ * need.
+ * <p>
+ * The index gets stored next to the input file, and is ignored once the size or modification time of the input file
+ * changes.
+ *
+ * @param fileSize     size of the input file when the index was built
+ * @param lastModified modification time of the input file in milliseconds when the index was built
+ * @param entries      summary of each block, ordered by offset
+ */
+public record OsmBlockIndex(long fileSize, long lastModified, List<Entry> entries) {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OsmBlockIndex.class);
+  private static final int MAGIC = 0x4f424958; // "OBIX"
+  private static final int VERSION = 1;
+
+  /** Returns the path that the index for {@code input} is stored at. */
+  public static Path pathFor(Path input) {
+    return input.resolveSibling(input.getFileName() + ".blockindex");
+  }
+
+  /**
+   * Returns the index stored next to {@code input}, or {@code null} if it is missing, unreadable, or out of date.
+   */
+  public static OsmBlockIndex readFor(Path input) {
+    Path path = pathFor(input);
+    if (!Files.exists(path)) {
+      return null;
+    }
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOGGER.warn("Ignoring {} with unrecognized format", path);
+        return null;
+      }
+      long fileSize = in.readLong();
+      long lastModified = in.readLong();
+      if (fileSize != Files.size(input) || lastModified != Files.getLastModifiedTime(input).toMillis()) {
+        LOGGER.info("Ignoring {} since {} changed", path.getFileName(), input.getFileName());
+        return null;
+      }
+      int count = in.readInt();
+      List<Entry> entries = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        entries.add(new Entry(in.readLong(), in.readInt(), in.readByte(), in.readLong(), in.readLong(),
+          in.readBoolean()));
+      }
+      return new OsmBlockIndex(fileSize, lastModified, entries);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read {}: {}", path, e.toString());
+      return null;
+    }
+  }
+
+  /** Writes this index next to {@code input}, logging a warning instead of failing if it can't. */
+  public void writeFor(Path input) {
+    Path path = pathFor(input);
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try {
+      try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(fileSize);
+        out.writeLong(lastModified);
+        out.writeInt(entries.size());
+        for (var entry : entries) {
+          out.writeLong(entry.offset);
+          out.writeInt(entry.length);
+          out.writeByte(entry.types);
+          out.writeLong(entry.minId);
+          out.writeLong(entry.maxId);
+          out.writeBoolean(entry.hasTags);
+        }
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to write OSM block index to {}: {}", path, e.toString());
+      try {
+        Files.deleteIfExists(tmp);
+      } catch (IOException ignored) {
+        // best effort
+      }
+    }
+  }
+
+  /** Returns the number of blocks where {@code filter} returns true. */
+  public long count(Predicate<Entry> filter) {
+    return entries.stream().filter(filter).count();
+  }
+
+  /**
+   * Summary of a single data block.
+   *
+   * @param offset  position of the blob data in the input file, just after its header
+   * @param length  size of the blob data in bytes
+   * @param types   bitmask of {@link OsmElement.Type} ordinals that appear in the block
+   * @param minId   lowest element ID in the block
+   * @param maxId   highest element ID in the block
+   * @param hasTags {@code true} if any element in the block has tags
+   */
+  public record Entry(long offset, int length, byte types, long minId, long maxId, boolean hasTags) {
+
+    /** Returns true if the block contains at least one element of {@code type}. */
+    public boolean contains(OsmElement.Type type) {
+      return (types & (1 << type.ordinal())) != 0;
+    }
+
+    /** Returns true if the block only contains nodes without any tags, which never produce features on their own. */
+    public boolean onlyUntaggedNodes() {
+      return !hasTags && types == (1 << OsmElement.Type.NODE.ordinal());
+    }
+  }
+
+  /**
+   * Collects entries for blocks as worker threads decode them in any order, and builds the index then passes it to
+   * {@code onComplete} once every block in the file has been recorded.
+   */
+  @ThreadSafe
+  static class Builder {
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final long fileSize;
+    private final long lastModified;
+    private final Consumer<OsmBlockIndex> onComplete;
+    private int expectedBlocks = -1;
+    private OsmBlockIndex result = null;
+
+    Builder(long fileSize, long lastModified, Consumer<OsmBlockIndex> onComplete) {
+      this.fileSize = fileSize;
+      this.lastModified = lastModified;
+      this.onComplete = onComplete;
+    }
+
+    /** Returns a summarizer that records an entry for the block at {@code offset} once it has seen every element. */
+    Summarizer summarizer(long offset, int length) {
+      return new Summarizer(offset, length);
+    }
+
+    /** Marks that the reader found {@code blocks} data blocks in the file. */
+    synchronized void setExpectedBlocks(int blocks) {
+      expectedBlocks = blocks;
+      tryFinish();
+    }
+
+    /** Returns the index if every block has been recorded, or {@code null} otherwise. */
+    synchronized OsmBlockIndex result() {
+      return result;
+    }
+
+    private synchronized void add(Entry entry) {
+      if (result == null && entries.putIfAbsent(entry.offset, entry) == null) {
+        tryFinish();
+      }
+    }
+
+    private void tryFinish() {
+      if (result == null && expectedBlocks >= 0 && entries.size() == expectedBlocks) {
+        List<Entry> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(Entry::offset));
+        result = new OsmBlockIndex(fileSize, lastModified, List.copyOf(sorted));
+        onComplete.accept(result);
+      }
+    }
+
+    /** Accumulates the summary of one block while its elements are iterated through. */
+    class Summarizer {
+
+      private final long offset;
+      private final int length;
+      private byte types = 0;
+      private long minId = Long.MAX_VALUE;
+      private long maxId = Long.MIN_VALUE;
+      private boolean hasTags = false;
+
+      private Summarizer(long offset, int length) {
+        this.offset = offset;
+        this.length = length;
+      }
+
+      void accept(OsmElement element) {
+        types |= (byte) (1 << element.type().ordinal());
+        minId = Math.min(minId, element.id());
+        maxId = Math.max(maxId, element.id());
+        hasTags |= !element.tags().isEmpty();
+      }
+
+      void finish() {
+        add(new Entry(offset, length, types, minId, maxId, hasTags));
+      }
+    }
+  }
+}
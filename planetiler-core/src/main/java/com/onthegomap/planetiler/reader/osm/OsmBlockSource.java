@@ -3,6 +3,7 @@ package com.onthegomap.planetiler.reader.osm;
 import java.io.Closeable;
 import java.util.Iterator;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * An osm.pbf input file that iterates through {@link Block Blocks} of raw bytes that can be decompressed/parsed in
@@ -13,6 +14,17 @@ public interface OsmBlockSource extends Closeable {
   /** Calls {@code consumer} for each block from the input file sequentially in a single thread. */
   void forEachBlock(Consumer<Block> consumer);
 
+  /**
+   * Calls {@code consumer} for each block from the input file, optionally skipping blocks where an
+   * {@link OsmBlockIndex} is available and {@code filter} returns false.
+   * <p>
+   * The default implementation ignores {@code filter} and emits every block, so consumers must still handle blocks
+   * that do not match.
+   */
+  default void forEachMatchingBlock(Predicate<OsmBlockIndex.Entry> filter, Consumer<Block> consumer) {
+    forEachBlock(consumer);
+  }
+
   @Override
   default void close() {}
 
@@ -0,0 +1,218 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.reader.FileFormatException;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Edits to OSM elements parsed from an <a href="https://wiki.openstreetmap.org/wiki/OsmChange">osmChange</a> file
+ * ({@code .osc} or gzipped {@code .osc.gz}) like the minutely, hourly, or daily replication diffs that
+ * <a href="https://planet.openstreetmap.org/replication/">planet.openstreetmap.org</a> publishes.
+ * <p>
+ * Changes are returned in the order they appear in the file, and when the same element is edited more than once the
+ * last change wins.
+ *
+ * @param changes each element that was created, modified, or deleted
+ */
+public record OsmChangeFile(List<Change> changes) {
+
+  /** What happened to an element. */
+  public enum Action {
+    CREATE,
+    MODIFY,
+    DELETE
+  }
+
+  /**
+   * A single edit to an OSM element.
+   *
+   * @param action  whether the element was created, modified, or deleted
+   * @param element the new version of the element, deleted elements may not include tags, members or locations
+   */
+  public record Change(Action action, OsmElement element) {}
+
+  /** Parses changes from an {@code .osc} file, or {@code .osc.gz} file if the name ends in {@code .gz}. */
+  public static OsmChangeFile read(Path path) {
+    try (
+      var fileStream = new BufferedInputStream(Files.newInputStream(path));
+      var stream = path.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(fileStream) : fileStream
+    ) {
+      return read(stream);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Parses changes from the uncompressed XML contents of an osmChange file. */
+  public static OsmChangeFile read(InputStream stream) {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      XMLStreamReader reader = factory.createXMLStreamReader(stream);
+      try {
+        return new Parser(reader).parse();
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new FileFormatException("Invalid osmChange file", e);
+    }
+  }
+
+  /** Walks the XML elements of an osmChange document, building one element at a time. */
+  private static class Parser {
+
+    private final XMLStreamReader reader;
+    private final List<Change> changes = new ArrayList<>();
+    private Action action = null;
+    private String type = null;
+    private long id;
+    private double lat;
+    private double lon;
+    private OsmElement.Info info;
+    private Map<String, Object> tags;
+    private LongArrayList nodes;
+    private List<OsmElement.Relation.Member> members;
+
+    Parser(XMLStreamReader reader) {
+      this.reader = reader;
+    }
+
+    OsmChangeFile parse() throws XMLStreamException {
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          startElement(reader.getLocalName());
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          endElement(reader.getLocalName());
+        }
+      }
+      return new OsmChangeFile(changes);
+    }
+
+    private void startElement(String name) {
+      switch (name) {
+        case "create" -> action = Action.CREATE;
+        case "modify" -> action = Action.MODIFY;
+        case "delete" -> action = Action.DELETE;
+        case "node", "way", "relation" -> {
+          if (action == null) {
+            throw new FileFormatException("<" + name + "> must be inside <create>, <modify>, or <delete>");
+          }
+          type = name;
+          id = parseLong("id");
+          String latString = reader.getAttributeValue(null, "lat");
+          String lonString = reader.getAttributeValue(null, "lon");
+          lat = latString == null ? Double.NaN : Double.parseDouble(latString);
+          lon = lonString == null ? Double.NaN : Double.parseDouble(lonString);
+          info = parseInfo();
+          tags = new HashMap<>();
+          nodes = new LongArrayList();
+          members = new ArrayList<>();
+        }
+        case "tag" -> {
+          if (tags != null) {
+            tags.put(reader.getAttributeValue(null, "k"), reader.getAttributeValue(null, "v"));
+          }
+        }
+        case "nd" -> {
+          if (nodes != null) {
+            nodes.add(parseLong("ref"));
+          }
+        }
+        case "member" -> {
+          if (members != null) {
+            members.add(new OsmElement.Relation.Member(
+              parseType(reader.getAttributeValue(null, "type")),
+              parseLong("ref"),
+              reader.getAttributeValue(null, "role")
+            ));
+          }
+        }
+        default -> {
+          // ignore <osmChange>, <bounds> and unrecognized elements
+        }
+      }
+    }
+
+    private void endElement(String name) {
+      switch (name) {
+        case "create", "modify", "delete" -> action = null;
+        case "node", "way", "relation" -> {
+          OsmElement element = switch (type) {
+            case "node" -> new OsmElement.Node(id, tags, lat, lon, info);
+            case "way" -> new OsmElement.Way(id, tags, nodes, info);
+            default -> new OsmElement.Relation(id, tags, members, info);
+          };
+          changes.add(new Change(action, element));
+          type = null;
+          tags = null;
+          nodes = null;
+          members = null;
+        }
+        default -> {
+          // nothing to do
+        }
+      }
+    }
+
+    private long parseLong(String attribute) {
+      String value = reader.getAttributeValue(null, attribute);
+      if (value == null) {
+        throw new FileFormatException("<" + reader.getLocalName() + "> missing " + attribute);
+      }
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        throw new FileFormatException("Invalid " + attribute + " " + value, e);
+      }
+    }
+
+    private OsmElement.Info parseInfo() {
+      String version = reader.getAttributeValue(null, "version");
+      if (version == null) {
+        return null;
+      }
+      String changeset = reader.getAttributeValue(null, "changeset");
+      String timestamp = reader.getAttributeValue(null, "timestamp");
+      String uid = reader.getAttributeValue(null, "uid");
+      try {
+        return new OsmElement.Info(
+          changeset == null ? 0 : Long.parseLong(changeset),
+          timestamp == null ? 0 : Instant.parse(timestamp).getEpochSecond(),
+          uid == null ? 0 : Integer.parseInt(uid),
+          Integer.parseInt(version),
+          reader.getAttributeValue(null, "user")
+        );
+      } catch (NumberFormatException | DateTimeParseException e) {
+        throw new FileFormatException("Invalid metadata on " + type + " " + id, e);
+      }
+    }
+
+    private static OsmElement.Type parseType(String type) {
+      return switch (type == null ? "" : type) {
+        case "node" -> OsmElement.Type.NODE;
+        case "way" -> OsmElement.Type.WAY;
+        case "relation" -> OsmElement.Type.RELATION;
+        default -> throw new FileFormatException("Invalid member type " + type);
+      };
+    }
+  }
+}
@@ -0,0 +1,400 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.procedures.IntIntProcedure;
+import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.collection.LongLongMap;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.GeometryException;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.geo.TileExtents;
+import com.onthegomap.planetiler.geo.TilePredicate;
+import com.onthegomap.planetiler.render.TiledGeometry;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.Format;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import org.locationtech.jts.geom.CoordinateList;
+import org.locationtech.jts.geom.CoordinateXY;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Puntal;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The tiles at each zoom level that need to be re-rendered after applying an {@link OsmChangeFile} to an
+ * {@link OsmElementStore}.
+ * <p>
+ * A tile is dirty when it touches the old or new geometry of a changed element, or of a way or relation that references
+ * a changed element, including super-relations that contain those relations. Closed ways and multipolygons count as
+ * polygons so that changes to fills and label positions inside of them get picked up, and the neighbors of each dirty
+ * tile are dirty too to account for feature buffers that extend into adjacent tiles.
+ * <p>
+ * Old geometries come from looking up the elements the changes touch, and what references them, in the store before
+ * the changes get applied to it. Those elements are also recorded as {@link #affectedElements() affected} so that they
+ * get re-rendered even if they don't render into a dirty tile anymore.
+ */
+public class OsmDirtyTiles implements IntFunction<TilePredicate> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OsmDirtyTiles.class);
+  private static final Format FORMAT = Format.defaultInstance();
+  // geometries whose bounding box covers fewer tiles than this mark the whole bounding box dirty without slicing
+  private static final int MAX_TILES_FROM_ENVELOPE = 4;
+
+  private final int minzoom;
+  private final int maxzoom;
+  private final TileExtents extents;
+  private final Roaring64Bitmap[] tiles;
+  private final Roaring64Bitmap affected = new Roaring64Bitmap();
+
+  OsmDirtyTiles(int minzoom, int maxzoom, TileExtents extents) {
+    this.minzoom = minzoom;
+    this.maxzoom = maxzoom;
+    this.extents = extents;
+    this.tiles = new Roaring64Bitmap[maxzoom + 1];
+    for (int z = minzoom; z <= maxzoom; z++) {
+      tiles[z] = new Roaring64Bitmap();
+    }
+  }
+
+  /**
+   * Returns the tiles that need to be re-rendered after applying {@code changes} to {@code store}.
+   *
+   * @param changes edits to apply to the store
+   * @param store   the elements that {@code changes} will be applied to, before applying them
+   * @param config  user-provided arguments to control the zoom range and bounds
+   * @param stats   to keep track of counters and timings
+   * @return the dirty tiles at each zoom level from {@link PlanetilerConfig#minzoom()} to
+   *         {@link PlanetilerConfig#maxzoomForRendering()}
+   */
+  public static OsmDirtyTiles compute(OsmChangeFile changes, OsmElementStore store, PlanetilerConfig config,
+    Stats stats) {
+    var timer = stats.startStage("osm_dirty_tiles");
+    OsmDirtyTiles result = new OsmDirtyTiles(config.minzoom(), config.maxzoomForRendering(),
+      config.bounds().tileExtents());
+
+    LongObjectHashMap<OsmChangeFile.Change> nodeChanges = Hppc.newLongObjectHashMap();
+    LongObjectHashMap<OsmChangeFile.Change> wayChanges = Hppc.newLongObjectHashMap();
+    LongObjectHashMap<OsmChangeFile.Change> relationChanges = Hppc.newLongObjectHashMap();
+    for (var change : changes.changes()) {
+      var element = change.element();
+      switch (element.type()) {
+        case NODE -> nodeChanges.put(element.id(), change);
+        case WAY -> wayChanges.put(element.id(), change);
+        case RELATION -> relationChanges.put(element.id(), change);
+        default -> {
+          // ignore
+        }
+      }
+    }
+
+    // find ways that changed or reference a changed node, and relations that changed or reference either of them
+    LongHashSet ways = new LongHashSet();
+    LongHashSet relations = new LongHashSet();
+    ways.addAll(wayChanges.keys());
+    relations.addAll(relationChanges.keys());
+    for (var cursor : nodeChanges.keys()) {
+      addParents(store, OsmElement.Type.NODE, cursor.value, ways, relations);
+    }
+    for (var cursor : ways) {
+      addParents(store, OsmElement.Type.WAY, cursor.value, null, relations);
+    }
+    // then follow relation members of changed relations down, and super-relations of every relation up
+    LongArrayList queue = new LongArrayList();
+    for (var cursor : relationChanges.values()) {
+      addRelationMembers(store.relation(cursor.value.element().id()), relations, queue);
+      if (cursor.value.action() != OsmChangeFile.Action.DELETE) {
+        addRelationMembers((OsmElement.Relation) cursor.value.element(), relations, queue);
+      }
+    }
+    for (int i = 0; i < queue.size(); i++) {
+      addRelationMembers(store.relation(queue.get(i)), relations, queue);
+    }
+    queue.clear();
+    for (var cursor : relations) {
+      queue.add(cursor.value);
+    }
+    for (int i = 0; i < queue.size(); i++) {
+      for (var parent : store.parents(OsmElement.Type.RELATION, queue.get(i))) {
+        long id = OsmElementStore.id(parent.value);
+        if (relations.add(id)) {
+          queue.add(id);
+        }
+      }
+    }
+
+    // the old and new members of those relations get re-rendered too since their relation info may have changed
+    LongHashSet memberWays = new LongHashSet();
+    LongHashSet memberNodes = new LongHashSet();
+    for (var cursor : relations) {
+      long id = cursor.value;
+      addMembers(store.relation(id), memberWays, memberNodes);
+      var change = relationChanges.get(id);
+      if (change != null && change.action() != OsmChangeFile.Action.DELETE) {
+        addMembers((OsmElement.Relation) change.element(), memberWays, memberNodes);
+      }
+    }
+    ways.addAll(memberWays);
+    memberNodes.addAll(nodeChanges.keys());
+
+    // then mark tiles touched by the old and new versions of everything affected as dirty
+    LongUnaryOperator oldLocation = store::nodeLocation;
+    LongLongHashMap newLocations = Hppc.newLongLongHashMap();
+    for (var cursor : nodeChanges.values()) {
+      var node = (OsmElement.Node) cursor.value.element();
+      newLocations.put(node.id(), cursor.value.action() == OsmChangeFile.Action.DELETE || Double.isNaN(node.lat()) ||
+        Double.isNaN(node.lon()) ? LongLongMap.MISSING_VALUE : node.encodedLocation());
+    }
+    LongUnaryOperator newLocation = id -> newLocations.containsKey(id) ? newLocations.get(id) : oldLocation
+      .applyAsLong(id);
+    LongFunction<LongArrayList> oldWayNodes = id -> {
+      var way = store.way(id);
+      return way == null ? null : way.nodes();
+    };
+    LongFunction<LongArrayList> newWayNodes = id -> {
+      var change = wayChanges.get(id);
+      return change == null ? oldWayNodes.apply(id) :
+        change.action() == OsmChangeFile.Action.DELETE ? null : ((OsmElement.Way) change.element()).nodes();
+    };
+
+    for (var cursor : memberNodes) {
+      result.addNode(cursor.value, oldLocation, newLocation);
+      result.affected.add(OsmElementStore.key(OsmElement.Type.NODE, cursor.value));
+    }
+    for (var cursor : ways) {
+      long id = cursor.value;
+      result.addWay(oldWayNodes.apply(id), oldLocation);
+      result.addWay(newWayNodes.apply(id), newLocation);
+      result.affected.add(OsmElementStore.key(OsmElement.Type.WAY, id));
+    }
+    for (var cursor : relations) {
+      long id = cursor.value;
+      // fill in the old and new areas of multipolygons so that tiles inside of them get re-rendered too
+      var oldRelation = store.relation(id);
+      result.addMultipolygon(oldRelation, oldWayNodes, oldLocation, stats);
+      var change = relationChanges.get(id);
+      if (change == null) {
+        result.addMultipolygon(oldRelation, newWayNodes, newLocation, stats);
+      } else if (change.action() != OsmChangeFile.Action.DELETE) {
+        result.addMultipolygon((OsmElement.Relation) change.element(), newWayNodes, newLocation, stats);
+      }
+      result.affected.add(OsmElementStore.key(OsmElement.Type.RELATION, id));
+    }
+
+    LOGGER.info("Found {} dirty tiles from {} changed nodes, {} ways, and {} relations",
+      FORMAT.integer(result.numTiles()), FORMAT.integer(nodeChanges.size()), FORMAT.integer(wayChanges.size()),
+      FORMAT.integer(relationChanges.size()));
+    timer.stop();
+    return result;
+  }
+
+  /** Adds the IDs of ways and relations that reference an element to {@code ways} and {@code relations}. */
+  private static void addParents(OsmElementStore store, OsmElement.Type type, long id, LongHashSet ways,
+    LongHashSet relations) {
+    for (var cursor : store.parents(type, id)) {
+      var parentType = OsmElementStore.type(cursor.value);
+      if (parentType == OsmElement.Type.WAY && ways != null) {
+        ways.add(OsmElementStore.id(cursor.value));
+      } else if (parentType == OsmElement.Type.RELATION) {
+        relations.add(OsmElementStore.id(cursor.value));
+      }
+    }
+  }
+
+  /** Adds the IDs of relations that {@code relation} contains, and haven't been seen yet, to {@code relations}. */
+  private static void addRelationMembers(OsmElement.Relation relation, LongHashSet relations, LongArrayList added) {
+    if (relation == null) {
+      return;
+    }
+    for (var member : relation.members()) {
+      if (member.type() == OsmElement.Type.RELATION && relations.add(member.ref())) {
+        added.add(member.ref());
+      }
+    }
+  }
+
+  private static void addMembers(OsmElement.Relation relation, LongHashSet ways, LongHashSet nodes) {
+    if (relation == null) {
+      return;
+    }
+    for (var member : relation.members()) {
+      if (member.type() == OsmElement.Type.WAY) {
+        ways.add(member.ref());
+      } else if (member.type() == OsmElement.Type.NODE) {
+        nodes.add(member.ref());
+      }
+    }
+  }
+
+  private void addNode(long id, LongUnaryOperator oldLocation, LongUnaryOperator newLocation) {
+    addLocation(oldLocation.applyAsLong(id));
+    addLocation(newLocation.applyAsLong(id));
+  }
+
+  private void addLocation(long encoded) {
+    if (encoded != LongLongMap.MISSING_VALUE) {
+      addGeometry(GeoUtils.JTS_FACTORY.createPoint(
+        new CoordinateXY(GeoUtils.decodeWorldX(encoded), GeoUtils.decodeWorldY(encoded))));
+    }
+  }
+
+  private void addWay(LongArrayList nodes, LongUnaryOperator locations) {
+    if (nodes == null || nodes.isEmpty()) {
+      return;
+    }
+    CoordinateList coords = new CoordinateList();
+    for (int i = 0; i < nodes.size(); i++) {
+      long encoded = locations.applyAsLong(nodes.get(i));
+      if (encoded != LongLongMap.MISSING_VALUE) {
+        coords.add(new CoordinateXY(GeoUtils.decodeWorldX(encoded), GeoUtils.decodeWorldY(encoded)), false);
+      }
+    }
+    boolean closed = nodes.size() > 3 && nodes.get(0) == nodes.get(nodes.size() - 1);
+    Geometry geometry;
+    if (coords.isEmpty()) {
+      return;
+    } else if (coords.size() == 1) {
+      geometry = GeoUtils.JTS_FACTORY.createPoint(coords.get(0));
+    } else if (closed && coords.size() >= 3) {
+      coords.closeRing();
+      geometry = GeoUtils.JTS_FACTORY.createPolygon(coords.toCoordinateArray());
+    } else {
+      geometry = GeoUtils.JTS_FACTORY.createLineString(coords.toCoordinateArray());
+    }
+    addGeometry(geometry);
+  }
+
+  private void addMultipolygon(OsmElement.Relation relation, LongFunction<LongArrayList> wayNodes,
+    LongUnaryOperator locations, Stats stats) {
+    if (relation == null || !OsmReader.isMultipolygon(relation)) {
+      return;
+    }
+    List<LongArrayList> rings = new ArrayList<>(relation.members().size());
+    for (var member : relation.members()) {
+      if (member.type() == OsmElement.Type.WAY) {
+        var nodes = wayNodes.apply(member.ref());
+        if (nodes != null && !nodes.isEmpty()) {
+          rings.add(nodes);
+        }
+      }
+    }
+    try {
+      addGeometry(OsmMultipolygon.build(rings, id -> {
+        long encoded = locations.applyAsLong(id);
+        if (encoded == LongLongMap.MISSING_VALUE) {
+          throw new IllegalArgumentException("Missing location for node: " + id);
+        }
+        return new CoordinateXY(GeoUtils.decodeWorldX(encoded), GeoUtils.decodeWorldY(encoded));
+      }, relation.id()));
+    } catch (GeometryException e) {
+      // the outlines of its member ways are already dirty
+      stats.dataError("osm_dirty_tiles_" + e.stat());
+    }
+  }
+
+  /** Marks every tile that {@code worldGeometry} touches, and their neighbors, as dirty at each zoom level. */
+  void addGeometry(Geometry worldGeometry) {
+    if (worldGeometry.isEmpty()) {
+      return;
+    }
+    Envelope envelope = worldGeometry.getEnvelopeInternal();
+    for (int z = minzoom; z <= maxzoom; z++) {
+      int scale = 1 << z;
+      int minX = (int) Math.floor(envelope.getMinX() * scale);
+      int minY = (int) Math.floor(envelope.getMinY() * scale);
+      int maxX = (int) Math.floor(envelope.getMaxX() * scale);
+      int maxY = (int) Math.floor(envelope.getMaxY() * scale);
+      if (worldGeometry instanceof Puntal || (maxX - minX + 1L) * (maxY - minY + 1L) <= MAX_TILES_FROM_ENVELOPE) {
+        addRange(z, minX, minY, maxX, maxY);
+      } else {
+        Geometry scaled = AffineTransformation.scaleInstance(scale, scale).transform(worldGeometry);
+        try {
+          for (TileCoord tile : TiledGeometry.getCoveredTiles(scaled, z, extents.getForZoom(z))) {
+            addRange(z, tile.x(), tile.y(), tile.x(), tile.y());
+          }
+        } catch (GeometryException e) {
+          // fall back to the bounding box for polygons too invalid to slice
+          e.log("Error getting dirty tiles for changed geometry, using its bounding box instead");
+          addRange(z, minX, minY, maxX, maxY);
+        }
+      }
+    }
+  }
+
+  private void addRange(int z, int minX, int minY, int maxX, int maxY) {
+    int max = (1 << z) - 1;
+    Roaring64Bitmap bitmap = tiles[z];
+    for (int x = Math.max(0, minX - 1); x <= Math.min(max, maxX + 1); x++) {
+      long start = ((long) x << z) + Math.max(0, minY - 1);
+      long end = ((long) x << z) + Math.min(max, maxY + 1);
+      bitmap.addRange(start, end + 1);
+    }
+  }
+
+  /** Returns a predicate that matches dirty tiles at {@code zoom}. */
+  @Override
+  public TilePredicate apply(int zoom) {
+    if (zoom < minzoom || zoom > maxzoom) {
+      return (x, y) -> false;
+    }
+    Roaring64Bitmap bitmap = tiles[zoom];
+    return (x, y) -> bitmap.contains(((long) x << zoom) + y);
+  }
+
+  /** Returns {@code true} if {@code tile} needs to be re-rendered. */
+  public boolean test(TileCoord tile) {
+    return apply(tile.z()).test(tile.x(), tile.y());
+  }
+
+  /** Returns the total number of dirty tiles across all zoom levels. */
+  public long numTiles() {
+    long result = 0;
+    for (int z = minzoom; z <= maxzoom; z++) {
+      result += tiles[z].getLongCardinality();
+    }
+    return result;
+  }
+
+  /** Returns the lowest zoom level with dirty tiles. */
+  int minzoom() {
+    return minzoom;
+  }
+
+  /** Returns the highest zoom level with dirty tiles. */
+  int maxzoom() {
+    return maxzoom;
+  }
+
+  /** Returns the {@link OsmElementStore} keys of elements that the changes affected, and need to be re-rendered. */
+  Roaring64Bitmap affectedElements() {
+    return affected;
+  }
+
+  /** Calls {@code consumer} with the x and y coordinates of each dirty tile at {@code zoom}, ordered by x then y. */
+  void forEachTile(int zoom, IntIntProcedure consumer) {
+    if (zoom >= minzoom && zoom <= maxzoom) {
+      long mask = (1L << zoom) - 1;
+      tiles[zoom].forEach(key -> consumer.apply((int) (key >>> zoom), (int) (key & mask)));
+    }
+  }
+
+  /** Calls {@code consumer} for each dirty tile, ordered by zoom level then x then y. */
+  public void forEachTile(Consumer<TileCoord> consumer) {
+    for (int z = minzoom; z <= maxzoom; z++) {
+      int zoom = z;
+      long mask = (1L << z) - 1;
+      tiles[z].forEach(key -> consumer.accept(TileCoord.ofXYZ((int) (key >>> zoom), (int) (key & mask), zoom)));
+    }
+  }
+}
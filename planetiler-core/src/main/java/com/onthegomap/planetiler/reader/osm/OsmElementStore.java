@@ -0,0 +1,902 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.onthegomap.planetiler.collection.DeltaBlockLongLongMap;
+import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.collection.LongLongMap;
+import com.onthegomap.planetiler.collection.SortedLongLongMultimap;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.stats.Counter;
+import com.onthegomap.planetiler.stats.ProgressLoggers;
+import com.onthegomap.planetiler.stats.Stats;
+import com.onthegomap.planetiler.util.FileUtils;
+import com.onthegomap.planetiler.util.Format;
+import com.onthegomap.planetiler.worker.WorkerPipeline;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.locationtech.jts.geom.Envelope;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory that keeps every OSM element from an {@code .osm.pbf} file, and the
+ * <a href="https://wiki.openstreetmap.org/wiki/OsmChange">osmChange</a> files applied to it since, so that
+ * {@link OsmDirtyTiles} and the re-render of the tiles it marks dirty can look up the elements they need by ID instead
+ * of reading the whole {@code .osm.pbf} file again.
+ * <p>
+ * The store is made of:
+ * <ul>
+ * <li>{@code nodes/}: an {@link OsmPass1Snapshot} with the location of every node</li>
+ * <li>{@code elements.data} and {@code elements.index}: tags of tagged nodes, node IDs and tags of ways, and members
+ * and tags of relations, with an index from each element to its offset in the data file</li>
+ * <li>{@code parents.index}: the ways that reference each node, and the relations that reference each element</li>
+ * <li>{@code render.index}: each element that rendered a feature during pass2, by the minimum zoom of its features and
+ * the smallest tile up to z14 that contains all of them</li>
+ * <li>{@code changes/}: a copy of each osmChange file applied to the store, with the new render index entries of every
+ * element it affected</li>
+ * </ul>
+ * Files from the initial import never change. Opening the store replays each diff in {@code changes/} into in-memory
+ * overlays on top of them, so it suits a stream of minutely, hourly, or daily diffs between full imports. A manifest
+ * with the size and modification time of the input file is written last so that a run that fails part way through
+ * never leaves a store that looks complete.
+ * <p>
+ * Re-rendering only covers elements processed by pass2, features that a profile emits from
+ * {@link com.onthegomap.planetiler.Profile#finish} do not get tracked.
+ */
+public class OsmElementStore implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OsmElementStore.class);
+  private static final Format FORMAT = Format.defaultInstance();
+  private static final int MAGIC = 0x4f455354; // "OEST"
+  private static final int VERSION = 1;
+  // elements are keyed by their type in the upper bits and ID in the lower bits
+  private static final int TYPE_SHIFT = 56;
+  private static final long ID_MASK = (1L << TYPE_SHIFT) - 1;
+  private static final OsmElement.Type[] TYPES = OsmElement.Type.values();
+  // render index keys are the minimum zoom, then the level and morton code of the smallest tile that contains
+  // everything an element rendered
+  private static final int MINZOOM_SHIFT = 56;
+  private static final int LEVEL_SHIFT = 48;
+  private static final int MAX_CELL_LEVEL = 14;
+  // render overlay value for elements that do not render anything anymore
+  private static final long NOT_RENDERED = -1;
+  private static final int BLOCK_SIZE = 1_000;
+
+  private final Path dir;
+  private final Path input;
+  private final DeltaBlockLongLongMap baseNodeLocations;
+  private final FileChannel elementData;
+  private final SortedLongLongMultimap elementIndex;
+  private final SortedLongLongMultimap parentIndex;
+  private final SortedLongLongMultimap renderIndex;
+  // latest change to each element from the diffs applied on top of the base files
+  private final LongObjectHashMap<OsmChangeFile.Change> changedElements = Hppc.newLongObjectHashMap();
+  private final LongLongHashMap changedNodeLocations = Hppc.newLongLongHashMap();
+  private final LongObjectHashMap<LongArrayList> addedParents = Hppc.newLongObjectHashMap();
+  private final LongLongHashMap changedRenderKeys = Hppc.newLongLongHashMap();
+  private int numChanges;
+
+  private OsmElementStore(Path dir, Path input, boolean madvise, int numChanges) throws IOException {
+    this.dir = dir;
+    this.input = input;
+    this.baseNodeLocations = nodeSnapshot(dir, input).openNodeLocations(madvise);
+    this.elementData = FileChannel.open(elementDataPath(dir), StandardOpenOption.READ);
+    this.elementIndex = SortedLongLongMultimap.open(elementIndexPath(dir), madvise);
+    this.parentIndex = SortedLongLongMultimap.open(parentIndexPath(dir), madvise);
+    this.renderIndex = SortedLongLongMultimap.open(renderIndexPath(dir), madvise);
+    for (int i = 0; i < numChanges; i++) {
+      Path changes = changeFile(dir, i, true);
+      apply(OsmChangeFile.read(Files.exists(changes) ? changes : changeFile(dir, i, false)));
+      try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(renderOverlayPath(dir, i))))) {
+        long pairs = Files.size(renderOverlayPath(dir, i)) / (2 * Long.BYTES);
+        for (long j = 0; j < pairs; j++) {
+          changedRenderKeys.put(in.readLong(), in.readLong());
+        }
+      }
+    }
+    this.numChanges = numChanges;
+  }
+
+  /**
+   * Returns the store that a {@link Builder} saved in {@code dir} for the OSM input file at {@code input}, with every
+   * change that was applied to it since.
+   *
+   * @throws IllegalArgumentException if there is no complete store for the current version of {@code input}
+   */
+  public static OsmElementStore open(Path dir, Path input, PlanetilerConfig config) {
+    int numChanges = readManifest(dir, input);
+    if (numChanges < 0 || !nodeSnapshot(dir, input).isComplete()) {
+      throw new IllegalArgumentException("No complete OSM element store for " + input.getFileName() + " in " + dir);
+    }
+    try {
+      var result = new OsmElementStore(dir, input, config.nodeMapMadvise(), numChanges);
+      LOGGER.info("Opened OSM element store in {} with {} changes applied", dir, numChanges);
+      return result;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns true if a complete store for the current version of {@code input} exists in {@code dir}. */
+  public static boolean isComplete(Path dir, Path input) {
+    return readManifest(dir, input) >= 0 && nodeSnapshot(dir, input).isComplete();
+  }
+
+  /**
+   * Returns a builder that clears out everything but the node locations of an old store in {@code dir}, then saves a
+   * new one for the OSM input file at {@code input}.
+   */
+  public static Builder newBuilder(Path dir, Path input, PlanetilerConfig config, Stats stats) {
+    return new Builder(dir, input, config, stats);
+  }
+
+  private static OsmPass1Snapshot nodeSnapshot(Path dir, Path input) {
+    return OsmPass1Snapshot.forInput(dir.resolve("nodes"), input);
+  }
+
+  private static Path manifestPath(Path dir) {
+    return dir.resolve("store.manifest");
+  }
+
+  private static Path elementDataPath(Path dir) {
+    return dir.resolve("elements.data");
+  }
+
+  private static Path elementIndexPath(Path dir) {
+    return dir.resolve("elements.index");
+  }
+
+  private static Path parentIndexPath(Path dir) {
+    return dir.resolve("parents.index");
+  }
+
+  private static Path renderIndexPath(Path dir) {
+    return dir.resolve("render.index");
+  }
+
+  private static Path changesDir(Path dir) {
+    return dir.resolve("changes");
+  }
+
+  private static Path changeFile(Path dir, int num, boolean gzip) {
+    return changesDir(dir).resolve("%06d.osc%s".formatted(num, gzip ? ".gz" : ""));
+  }
+
+  private static Path renderOverlayPath(Path dir, int num) {
+    return changesDir(dir).resolve("%06d.render".formatted(num));
+  }
+
+  /** Returns the number of changes applied to the store in {@code dir}, or -1 if it's missing or out of date. */
+  private static int readManifest(Path dir, Path input) {
+    Path manifest = manifestPath(dir);
+    if (!Files.exists(manifest)) {
+      return -1;
+    }
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOGGER.info("Ignoring OSM element store in {} with unrecognized format", dir);
+        return -1;
+      }
+      if (in.readLong() != Files.size(input) || in.readLong() != Files.getLastModifiedTime(input).toMillis()) {
+        LOGGER.info("Ignoring OSM element store in {} since {} changed", dir, input.getFileName());
+        return -1;
+      }
+      return in.readInt();
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read OSM element store manifest {}: {}", manifest, e.toString());
+      return -1;
+    }
+  }
+
+  private static void writeManifest(Path dir, Path input, int numChanges) throws IOException {
+    Path manifest = manifestPath(dir);
+    Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+    try (var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(Files.size(input));
+      out.writeLong(Files.getLastModifiedTime(input).toMillis());
+      out.writeInt(numChanges);
+    }
+    Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  static long key(OsmElement.Type type, long id) {
+    return ((long) type.ordinal() << TYPE_SHIFT) | id;
+  }
+
+  static OsmElement.Type type(long key) {
+    return TYPES[(int) (key >>> TYPE_SHIFT)];
+  }
+
+  static long id(long key) {
+    return key & ID_MASK;
+  }
+
+  /** Interleaves the bits of {@code x} and {@code y} into a morton code. */
+  private static long interleave(int x, int y) {
+    long result = 0;
+    for (int i = 0; i < 31; i++) {
+      result |= ((long) (x >>> i & 1) << (2 * i + 1)) | ((long) (y >>> i & 1) << (2 * i));
+    }
+    return result;
+  }
+
+  /** Returns the render index key for features with {@code minzoom} that fit inside of {@code worldBounds}. */
+  static long renderKey(int minzoom, Envelope worldBounds) {
+    int level = MAX_CELL_LEVEL;
+    int max = (1 << level) - 1;
+    int minX = Math.clamp((long) Math.floor(worldBounds.getMinX() * (1 << level)), 0, max);
+    int minY = Math.clamp((long) Math.floor(worldBounds.getMinY() * (1 << level)), 0, max);
+    int maxX = Math.clamp((long) Math.floor(worldBounds.getMaxX() * (1 << level)), 0, max);
+    int maxY = Math.clamp((long) Math.floor(worldBounds.getMaxY() * (1 << level)), 0, max);
+    while (minX != maxX || minY != maxY) {
+      level--;
+      minX >>>= 1;
+      minY >>>= 1;
+      maxX >>>= 1;
+      maxY >>>= 1;
+    }
+    return ((long) Math.max(0, minzoom) << MINZOOM_SHIFT) | ((long) level << LEVEL_SHIFT) | interleave(minX, minY);
+  }
+
+  /**
+   * Returns the sorted, non-overlapping {@code [start, end]} render index key ranges of elements that touch a tile in
+   * {@code dirtyTiles} at a zoom level where they render.
+   * <p>
+   * Elements only need to be checked against dirty tiles at their minimum zoom level, or the lowest dirty zoom level if
+   * that is higher, since dirty tiles at higher zoom levels are always inside of dirty tiles at the lower ones.
+   */
+  static long[] renderRanges(OsmDirtyTiles dirtyTiles) {
+    LongArrayList starts = new LongArrayList();
+    LongArrayList ends = new LongArrayList();
+    for (int minzoom = 0; minzoom <= dirtyTiles.maxzoom(); minzoom++) {
+      int z = Math.max(minzoom, dirtyTiles.minzoom());
+      long prefix = (long) minzoom << MINZOOM_SHIFT;
+      dirtyTiles.forEachTile(z, (x, y) -> {
+        long cell = interleave(x, y);
+        for (int level = 0; level <= MAX_CELL_LEVEL; level++) {
+          long levelPrefix = prefix | ((long) level << LEVEL_SHIFT);
+          if (level <= z) {
+            // elements in the cell at this level that contains the dirty tile
+            long parent = cell >>> (2 * (z - level));
+            starts.add(levelPrefix | parent);
+            ends.add(levelPrefix | parent);
+          } else {
+            // elements in any cell at this level inside of the dirty tile
+            int shift = 2 * (level - z);
+            starts.add(levelPrefix | (cell << shift));
+            ends.add(levelPrefix | (((cell + 1) << shift) - 1));
+          }
+        }
+      });
+    }
+    // the k-th smallest end is never before the k-th smallest start, so merge ranges by sorting each side separately
+    long[] sortedStarts = starts.toArray();
+    long[] sortedEnds = ends.toArray();
+    Arrays.sort(sortedStarts);
+    Arrays.sort(sortedEnds);
+    LongArrayList result = new LongArrayList();
+    int open = 0;
+    long start = 0;
+    for (int i = 0, j = 0; j < sortedEnds.length;) {
+      if (i < sortedStarts.length && sortedStarts[i] <= sortedEnds[j] + 1) {
+        if (open++ == 0) {
+          start = sortedStarts[i];
+        }
+        i++;
+      } else {
+        if (--open == 0) {
+          result.add(start, sortedEnds[j]);
+        }
+        j++;
+      }
+    }
+    return result.toArray();
+  }
+
+  private static boolean inRanges(long[] ranges, long key) {
+    int lo = 0;
+    int hi = ranges.length / 2;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (ranges[mid * 2 + 1] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo < ranges.length / 2 && ranges[lo * 2] <= key;
+  }
+
+  /** Calls {@code consumer} with the key of each node, way, or relation that {@code element} references. */
+  private static void forEachChild(OsmElement element, LongConsumer consumer) {
+    if (element instanceof OsmElement.Way way) {
+      for (var cursor : way.nodes()) {
+        consumer.accept(key(OsmElement.Type.NODE, cursor.value));
+      }
+    } else if (element instanceof OsmElement.Relation relation) {
+      for (var member : relation.members()) {
+        consumer.accept(key(member.type(), member.ref()));
+      }
+    }
+  }
+
+  private static boolean references(OsmElement parent, long childKey) {
+    boolean[] result = {false};
+    forEachChild(parent, key -> result[0] |= key == childKey);
+    return result[0];
+  }
+
+  static byte[] encode(OsmElement element) throws IOException {
+    try (var packer = MessagePack.newDefaultBufferPacker()) {
+      if (element instanceof OsmElement.Way way) {
+        var nodes = way.nodes();
+        packer.packArrayHeader(nodes.size());
+        long last = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+          packer.packLong(nodes.get(i) - last);
+          last = nodes.get(i);
+        }
+      } else if (element instanceof OsmElement.Relation relation) {
+        packer.packArrayHeader(relation.members().size());
+        for (var member : relation.members()) {
+          packer.packInt(member.type().ordinal());
+          packer.packLong(member.ref());
+          packer.packString(Objects.requireNonNullElse(member.role(), ""));
+        }
+      }
+      var tags = element.tags();
+      packer.packMapHeader(tags.size());
+      for (var entry : tags.entrySet()) {
+        packer.packString(entry.getKey());
+        packer.packString(String.valueOf(entry.getValue()));
+      }
+      var info = element.info();
+      if (info == null) {
+        packer.packNil();
+      } else {
+        packer.packArrayHeader(5);
+        packer.packLong(info.changeset());
+        packer.packLong(info.timestamp());
+        packer.packInt(info.userId());
+        packer.packInt(info.version());
+        if (info.user() == null) {
+          packer.packNil();
+        } else {
+          packer.packString(info.user());
+        }
+      }
+      return packer.toByteArray();
+    }
+  }
+
+  static OsmElement decode(OsmElement.Type type, long id, byte[] bytes, long encodedLocation) throws IOException {
+    try (var unpacker = MessagePack.newDefaultUnpacker(bytes)) {
+      LongArrayList nodes = null;
+      List<OsmElement.Relation.Member> members = null;
+      if (type == OsmElement.Type.WAY) {
+        int count = unpacker.unpackArrayHeader();
+        nodes = new LongArrayList(count);
+        long last = 0;
+        for (int i = 0; i < count; i++) {
+          last += unpacker.unpackLong();
+          nodes.add(last);
+        }
+      } else if (type == OsmElement.Type.RELATION) {
+        int count = unpacker.unpackArrayHeader();
+        members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          members.add(new OsmElement.Relation.Member(TYPES[unpacker.unpackInt()], unpacker.unpackLong(),
+            unpacker.unpackString()));
+        }
+      }
+      int numTags = unpacker.unpackMapHeader();
+      Map<String, Object> tags = HashMap.newHashMap(numTags);
+      for (int i = 0; i < numTags; i++) {
+        tags.put(unpacker.unpackString(), unpacker.unpackString());
+      }
+      OsmElement.Info info = null;
+      if (unpacker.getNextFormat() == MessageFormat.NIL) {
+        unpacker.unpackNil();
+      } else {
+        unpacker.unpackArrayHeader();
+        long changeset = unpacker.unpackLong();
+        long timestamp = unpacker.unpackLong();
+        int userId = unpacker.unpackInt();
+        int version = unpacker.unpackInt();
+        String user = null;
+        if (unpacker.getNextFormat() == MessageFormat.NIL) {
+          unpacker.unpackNil();
+        } else {
+          user = unpacker.unpackString();
+        }
+        info = new OsmElement.Info(changeset, timestamp, userId, version, user);
+      }
+      return switch (type) {
+        case NODE -> node(id, tags, encodedLocation, info);
+        case WAY -> new OsmElement.Way(id, tags, nodes, info);
+        case RELATION -> new OsmElement.Relation(id, tags, members, info);
+        case OTHER -> throw new IllegalArgumentException("Unexpected element type " + type);
+      };
+    }
+  }
+
+  private static OsmElement.Node node(long id, Map<String, Object> tags, long encodedLocation, OsmElement.Info info) {
+    return new OsmElement.Node(id, tags, GeoUtils.getWorldLat(GeoUtils.decodeWorldY(encodedLocation)),
+      GeoUtils.getWorldLon(GeoUtils.decodeWorldX(encodedLocation)), info);
+  }
+
+  /**
+   * Applies {@code changes} to the elements in this store.
+   * <p>
+   * Changes only live in memory until {@link #commit(Path, Rerender)} saves them.
+   */
+  public void apply(OsmChangeFile changes) {
+    for (var change : changes.changes()) {
+      var element = change.element();
+      if (element.type() == OsmElement.Type.OTHER) {
+        continue;
+      }
+      long key = key(element.type(), element.id());
+      changedElements.put(key, change);
+      boolean deleted = change.action() == OsmChangeFile.Action.DELETE;
+      if (element instanceof OsmElement.Node node) {
+        changedNodeLocations.put(node.id(), deleted || Double.isNaN(node.lat()) || Double.isNaN(node.lon()) ?
+          LongLongMap.MISSING_VALUE : node.encodedLocation());
+      } else if (!deleted) {
+        forEachChild(element, child -> {
+          LongArrayList parents = addedParents.get(child);
+          if (parents == null) {
+            addedParents.put(child, parents = new LongArrayList(1));
+          }
+          parents.add(key);
+        });
+      }
+    }
+  }
+
+  /** Returns the encoded location of node {@code id}, or {@link LongLongMap#MISSING_VALUE} if it doesn't exist. */
+  public long nodeLocation(long id) {
+    int index = changedNodeLocations.indexOf(id);
+    return changedNodeLocations.indexExists(index) ? changedNodeLocations.indexGet(index) : baseNodeLocations.get(id);
+  }
+
+  /**
+   * Returns a read-only view of {@link #nodeLocation(long)} for {@link OsmReader} to use that doesn't close this store
+   * when it gets closed.
+   */
+  public LongLongMap nodeLocations() {
+    return new LongLongMap() {
+      @Override
+      public Writer newWriter() {
+        throw new UnsupportedOperationException("OSM element store node locations are read-only");
+      }
+
+      @Override
+      public long get(long key) {
+        return nodeLocation(key);
+      }
+
+      @Override
+      public long[] multiGet(long[] key) {
+        long[] result = baseNodeLocations.multiGet(key);
+        if (!changedNodeLocations.isEmpty()) {
+          for (int i = 0; i < key.length; i++) {
+            int index = changedNodeLocations.indexOf(key[i]);
+            if (changedNodeLocations.indexExists(index)) {
+              result[i] = changedNodeLocations.indexGet(index);
+            }
+          }
+        }
+        return result;
+      }
+
+      @Override
+      public long diskUsageBytes() {
+        return baseNodeLocations.diskUsageBytes();
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  /** Returns the current version of node {@code id}, or {@code null} if it doesn't exist. */
+  public OsmElement.Node node(long id) {
+    return (OsmElement.Node) get(key(OsmElement.Type.NODE, id));
+  }
+
+  /** Returns the current version of way {@code id}, or {@code null} if it doesn't exist. */
+  public OsmElement.Way way(long id) {
+    return (OsmElement.Way) get(key(OsmElement.Type.WAY, id));
+  }
+
+  /** Returns the current version of relation {@code id}, or {@code null} if it doesn't exist. */
+  public OsmElement.Relation relation(long id) {
+    return (OsmElement.Relation) get(key(OsmElement.Type.RELATION, id));
+  }
+
+  /** Returns the current version of the element with {@code key}, or {@code null} if it doesn't exist. */
+  OsmElement get(long key) {
+    var change = changedElements.get(key);
+    if (change != null) {
+      return change.action() == OsmChangeFile.Action.DELETE ? null : change.element();
+    }
+    var type = type(key);
+    long id = id(key);
+    long location = type == OsmElement.Type.NODE ? baseNodeLocations.get(id) : LongLongMap.MISSING_VALUE;
+    LongArrayList offsets = elementIndex.get(key);
+    if (offsets.isEmpty()) {
+      // only tagged nodes get stored, untagged ones are just a location
+      return location == LongLongMap.MISSING_VALUE ? null : node(id, new HashMap<>(), location, null);
+    }
+    try {
+      long offset = offsets.get(0);
+      ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+      readFully(length, offset);
+      ByteBuffer data = ByteBuffer.allocate(length.getInt(0));
+      readFully(data, offset + Integer.BYTES);
+      return decode(type, id, data.array(), location);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (elementData.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of " + elementDataPath(dir) + " at " + position);
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of the ways and relations that reference the element with {@code type} and {@code id} in their
+   * current version.
+   */
+  public LongArrayList parents(OsmElement.Type type, long id) {
+    long key = key(type, id);
+    LongArrayList candidates = parentIndex.get(key);
+    LongArrayList added = addedParents.get(key);
+    if (added != null) {
+      candidates.addAll(added);
+    }
+    LongArrayList result = new LongArrayList(candidates.size());
+    LongHashSet seen = new LongHashSet(candidates.size());
+    for (var cursor : candidates) {
+      long parent = cursor.value;
+      if (seen.add(parent)) {
+        var change = changedElements.get(parent);
+        if (change == null ||
+          (change.action() != OsmChangeFile.Action.DELETE && references(change.element(), key))) {
+          result.add(parent);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the elements to process again in order to re-render {@code dirtyTiles} after the changes it was computed
+   * from have been {@link #apply(OsmChangeFile) applied}.
+   * <p>
+   * That's every element that rendered into a dirty tile at a zoom level where it shows up, and every element the
+   * changes affected. Member ways of multipolygons and the relations that contain each way get added as well so that
+   * pass2 has the geometries and relation memberships it needs to render those elements, but they don't get rendered
+   * themselves.
+   */
+  public Rerender rerender(OsmDirtyTiles dirtyTiles, Stats stats) {
+    var timer = stats.startStage("osm_store_select");
+    Roaring64Bitmap toRender = new Roaring64Bitmap();
+    long[] ranges = renderRanges(dirtyTiles);
+    for (int i = 0; i < ranges.length; i += 2) {
+      renderIndex.forEach(ranges[i], ranges[i + 1], (renderKey, key) -> {
+        // the latest diff that affected this element has its current render key
+        if (!changedRenderKeys.containsKey(key)) {
+          toRender.add(key);
+        }
+      });
+    }
+    for (var cursor : changedRenderKeys) {
+      if (cursor.value != NOT_RENDERED && inRanges(ranges, cursor.value)) {
+        toRender.add(cursor.key);
+      }
+    }
+    Roaring64Bitmap affected = dirtyTiles.affectedElements();
+    toRender.or(affected);
+
+    Roaring64Bitmap toProcess = new Roaring64Bitmap();
+    toProcess.or(toRender);
+    toRender.forEach(key -> {
+      var type = type(key);
+      if (type == OsmElement.Type.WAY || type == OsmElement.Type.NODE) {
+        for (var parent : parents(type, id(key))) {
+          if (type(parent.value) == OsmElement.Type.RELATION) {
+            toProcess.add(parent.value);
+          }
+        }
+      } else if (type == OsmElement.Type.RELATION && get(key) instanceof OsmElement.Relation relation &&
+        OsmReader.isMultipolygon(relation)) {
+        for (var member : relation.members()) {
+          if (member.type() == OsmElement.Type.WAY) {
+            toProcess.add(key(OsmElement.Type.WAY, member.ref()));
+          }
+        }
+      }
+    });
+    LOGGER.info("Re-rendering {} OSM elements and processing {} more they depend on",
+      FORMAT.integer(toRender.getLongCardinality()),
+      FORMAT.integer(toProcess.getLongCardinality() - toRender.getLongCardinality()));
+    timer.stop();
+    return new Rerender(toProcess.toArray(), toRender, affected);
+  }
+
+  /**
+   * Saves the changes applied to this store, and where the elements they affected rendered to after {@code rerender}.
+   *
+   * @param changesPath the osmChange file that was applied
+   * @param rerender    the elements that were re-rendered to apply it
+   */
+  public void commit(Path changesPath, Rerender rerender) {
+    int num = numChanges;
+    try {
+      FileUtils.createDirectory(changesDir(dir));
+      Files.copy(changesPath, changeFile(dir, num, changesPath.getFileName().toString().endsWith(".gz")),
+        StandardCopyOption.REPLACE_EXISTING);
+      try (
+        var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(renderOverlayPath(dir, num))))
+      ) {
+        var iterator = rerender.affected.getLongIterator();
+        while (iterator.hasNext()) {
+          long key = iterator.next();
+          long renderKey = rerender.renderKeys.getOrDefault(key, NOT_RENDERED);
+          out.writeLong(key);
+          out.writeLong(renderKey);
+          changedRenderKeys.put(key, renderKey);
+        }
+      }
+      writeManifest(dir, input, num + 1);
+      numChanges = num + 1;
+      LOGGER.info("Saved {} to OSM element store in {}", changesPath.getFileName(), dir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    baseNodeLocations.close();
+    elementData.close();
+    elementIndex.close();
+    parentIndex.close();
+    renderIndex.close();
+  }
+
+  /**
+   * Elements from {@link #rerender(OsmDirtyTiles, Stats)} to pass to {@link OsmReader} as its input, and
+   * {@link #test(OsmElement)} which of them to render.
+   */
+  public class Rerender implements Supplier<OsmBlockSource>, Predicate<OsmElement>,
+    OsmReader.RenderedElementListener {
+
+    private final long[] keys;
+    private final Roaring64Bitmap toRender;
+    private final Roaring64Bitmap affected;
+    private final LongLongHashMap renderKeys = Hppc.newLongLongHashMap();
+
+    private Rerender(long[] keys, Roaring64Bitmap toRender, Roaring64Bitmap affected) {
+      this.keys = keys;
+      this.toRender = toRender;
+      this.affected = affected;
+    }
+
+    /** Returns blocks of the current version of each element, ordered by type then ID like an osm.pbf file. */
+    @Override
+    public OsmBlockSource get() {
+      return next -> {
+        for (int start = 0; start < keys.length;) {
+          // don't mix element types in a block
+          var type = type(keys[start]);
+          int end = start + 1;
+          while (end < keys.length && end - start < BLOCK_SIZE && type(keys[end]) == type) {
+            end++;
+          }
+          long[] blockKeys = Arrays.copyOfRange(keys, start, end);
+          next.accept(() -> {
+            List<OsmElement> elements = new ArrayList<>(blockKeys.length);
+            for (long key : blockKeys) {
+              var element = OsmElementStore.this.get(key);
+              if (element != null) {
+                elements.add(element);
+              }
+            }
+            return elements;
+          });
+          start = end;
+        }
+      };
+    }
+
+    /** Returns true if {@code element} should be rendered, and not just processed for other elements to use. */
+    @Override
+    public boolean test(OsmElement element) {
+      return toRender.contains(key(element.type(), element.id()));
+    }
+
+    @Override
+    public void rendered(OsmElement element, int minzoom, Envelope worldBounds) {
+      long key = key(element.type(), element.id());
+      if (affected.contains(key)) {
+        long renderKey = renderKey(minzoom, worldBounds);
+        synchronized (renderKeys) {
+          renderKeys.put(key, renderKey);
+        }
+      }
+    }
+  }
+
+  /**
+   * Saves a new store from an {@code .osm.pbf} file: node locations through {@link #nodeSnapshot()} during pass1,
+   * other elements with {@link #writeElements(OsmBlockSource)}, and the render index as a
+   * {@link OsmReader.RenderedElementListener} during pass2.
+   */
+  public static class Builder implements OsmReader.RenderedElementListener {
+
+    private final Path dir;
+    private final Path input;
+    private final PlanetilerConfig config;
+    private final Stats stats;
+    private final SortedLongLongMultimap.Builder elementIndex;
+    private final SortedLongLongMultimap.Builder parentIndex;
+    private final SortedLongLongMultimap.Builder renderIndex;
+    private final SortedLongLongMultimap.Writer renderWriter;
+    private final FileChannel elementData;
+    private long elementDataSize = 0;
+
+    private Builder(Path dir, Path input, PlanetilerConfig config, Stats stats) {
+      this.dir = dir;
+      this.input = input;
+      this.config = config;
+      this.stats = stats;
+      FileUtils.delete(manifestPath(dir), elementDataPath(dir), elementIndexPath(dir), parentIndexPath(dir),
+        renderIndexPath(dir), changesDir(dir), tmpDir());
+      FileUtils.createDirectory(dir);
+      try {
+        elementData = FileChannel.open(elementDataPath(dir), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      elementIndex = SortedLongLongMultimap.newBuilder(elementIndexPath(dir), tmpDir().resolve("elements"), config,
+        stats);
+      parentIndex = SortedLongLongMultimap.newBuilder(parentIndexPath(dir), tmpDir().resolve("parents"), config,
+        stats);
+      renderIndex = SortedLongLongMultimap.newBuilder(renderIndexPath(dir), tmpDir().resolve("render"), config,
+        stats);
+      renderWriter = renderIndex.writerForThread();
+    }
+
+    private Path tmpDir() {
+      return dir.resolve("tmp");
+    }
+
+    /** Returns the snapshot that pass1 should store node locations in, or reuse them from if it's complete. */
+    public OsmPass1Snapshot nodeSnapshot() {
+      return OsmElementStore.nodeSnapshot(dir, input);
+    }
+
+    /** Stores every tagged node, way, and relation from {@code source}, and what references each element. */
+    public void writeElements(OsmBlockSource source) {
+      var timer = stats.startStage("osm_store");
+      int threads = Math.max(1, config.threads() - 1);
+      var written = Counter.newMultiThreadCounter();
+      var pipeline = WorkerPipeline.start("osm_store", stats)
+        .<OsmBlockSource.Block>fromGenerator("read",
+          next -> source.forEachMatchingBlock(entry -> !entry.onlyUntaggedNodes(), next))
+        .addBuffer("pbf_blocks", threads * 2)
+        .sinkTo("write", threads, prev -> {
+          var counter = written.counterForThread();
+          var buffer = new ByteArrayOutputStream();
+          var out = new DataOutputStream(buffer);
+          LongArrayList keys = new LongArrayList();
+          LongArrayList offsets = new LongArrayList();
+          try (var indexWriter = elementIndex.writerForThread(); var parentWriter = parentIndex.writerForThread()) {
+            for (var block : prev) {
+              buffer.reset();
+              keys.clear();
+              offsets.clear();
+              for (var element : block.decodeElements()) {
+                if (element.type() == OsmElement.Type.OTHER ||
+                  (element instanceof OsmElement.Node node && node.tags().isEmpty())) {
+                  continue;
+                }
+                long key = key(element.type(), element.id());
+                byte[] bytes = encode(element);
+                keys.add(key);
+                offsets.add(buffer.size());
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                forEachChild(element, child -> parentWriter.put(child, key));
+                counter.inc();
+              }
+              // write each block with one call so that offsets within it stay contiguous
+              long start = append(ByteBuffer.wrap(buffer.toByteArray()));
+              for (int i = 0; i < keys.size(); i++) {
+                indexWriter.put(keys.get(i), start + offsets.get(i));
+              }
+            }
+          }
+        });
+      pipeline.awaitAndLog(ProgressLoggers.create()
+        .addRateCounter("elements", written, true)
+        .addFileSize(elementDataPath(dir))
+        .newLine()
+        .addProcessStats()
+        .newLine()
+        .addPipelineStats(pipeline), config.logInterval());
+      timer.stop();
+    }
+
+    private synchronized long append(ByteBuffer data) throws IOException {
+      long start = elementDataSize;
+      while (data.hasRemaining()) {
+        elementDataSize += elementData.write(data, elementDataSize);
+      }
+      return start;
+    }
+
+    @Override
+    public void rendered(OsmElement element, int minzoom, Envelope worldBounds) {
+      long renderKey = renderKey(minzoom, worldBounds);
+      synchronized (renderWriter) {
+        renderWriter.put(renderKey, key(element.type(), element.id()));
+      }
+    }
+
+    /** Sorts the indexes, and marks the store complete once pass2 is done rendering. */
+    public void finish() {
+      try {
+        elementData.close();
+        renderWriter.close();
+        boolean madvise = config.nodeMapMadvise();
+        elementIndex.finish(madvise).close();
+        parentIndex.finish(madvise).close();
+        renderIndex.finish(madvise).close();
+        FileUtils.delete(tmpDir());
+        writeManifest(dir, input, 0);
+        LOGGER.info("Saved OSM element store to {}", dir);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
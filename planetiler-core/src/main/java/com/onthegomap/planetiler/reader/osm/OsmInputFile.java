@@ -10,10 +10,13 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import org.locationtech.jts.geom.Envelope;
 import org.slf4j.Logger;
@@ -30,17 +33,26 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
 
   private final Path path;
   private final boolean lazy;
+  private final boolean blockIndex;
+  private OsmBlockIndex index = null;
 
   /**
    * Creates a new OSM input file reader.
    *
-   * @param path      Path to the file
-   * @param lazyReads If {@code true}, defers reading the actual content of each block from disk until the block is
-   *                  decoded in a worker thread.
+   * @param path       Path to the file
+   * @param lazyReads  If {@code true}, defers reading the actual content of each block from disk until the block is
+   *                   decoded in a worker thread.
+   * @param blockIndex If {@code true}, records an {@link OsmBlockIndex} next to the file the first time every block
+   *                   gets decoded, and uses it on later reads to skip blocks that the caller does not need.
    */
-  public OsmInputFile(Path path, boolean lazyReads) {
+  public OsmInputFile(Path path, boolean lazyReads, boolean blockIndex) {
     this.path = path;
     lazy = lazyReads;
+    this.blockIndex = blockIndex;
+  }
+
+  public OsmInputFile(Path path, boolean lazyReads) {
+    this(path, lazyReads, false);
   }
 
   public OsmInputFile(Path path) {
@@ -122,6 +134,42 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
     }
   }
 
+  /** Returns the block index for this file if one has been recorded and is up to date, or {@code null} otherwise. */
+  public synchronized OsmBlockIndex getBlockIndex() {
+    if (blockIndex && index == null) {
+      index = OsmBlockIndex.readFor(path);
+    }
+    return index;
+  }
+
+  private synchronized void setBlockIndex(OsmBlockIndex result) {
+    index = result;
+    LOGGER.debug("Recorded block index for {} with {} blocks", path.getFileName(), result.entries().size());
+    result.writeFor(path);
+  }
+
+  private OsmBlockIndex.Builder newIndexBuilder() {
+    if (!blockIndex) {
+      return null;
+    }
+    try {
+      return new OsmBlockIndex.Builder(Files.size(path), Files.getLastModifiedTime(path).toMillis(),
+        this::setBlockIndex);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private List<OsmBlockIndex.Entry> filterEntries(OsmBlockIndex index, Predicate<OsmBlockIndex.Entry> filter) {
+    var entries = index.entries().stream().filter(filter).toList();
+    int skipped = index.entries().size() - entries.size();
+    if (skipped > 0) {
+      LOGGER.info("Skipping {} of {} blocks in {} using block index", skipped, index.entries().size(),
+        path.getFileName());
+    }
+    return entries;
+  }
+
   @Override
   public OsmBlockSource get() {
     return lazy ? new LazyReader() : new EagerReader();
@@ -148,20 +196,41 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
 
     @Override
     public void forEachBlock(Consumer<Block> consumer) {
+      forEachMatchingBlock(entry -> true, consumer);
+    }
+
+    @Override
+    public void forEachMatchingBlock(Predicate<OsmBlockIndex.Entry> filter, Consumer<Block> consumer) {
+      var index = getBlockIndex();
       try (FileChannel channel = openChannel()) {
+        if (index != null) {
+          for (var entry : filterEntries(index, filter)) {
+            consumer.accept(new EagerBlock(readBytes(channel, entry.offset(), entry.length())));
+          }
+          return;
+        }
+        var indexBuilder = newIndexBuilder();
+        int blocks = 0;
         final long size = channel.size();
         while (channel.position() < size) {
           BlobHeader header = readBlobHeader(channel);
+          long blockStartPosition = channel.position();
           byte[] blockBytes = readBytes(channel, header.getDatasize());
           String headerType = header.getType();
           if ("OSMData".equals(headerType)) {
-            consumer.accept(new EagerBlock(blockBytes));
+            Block block = new EagerBlock(blockBytes);
+            consumer.accept(indexBuilder == null ? block :
+              new SummarizingBlock(block, indexBuilder.summarizer(blockStartPosition, blockBytes.length)));
+            blocks++;
           } else if ("OSMHeader".equals(headerType)) {
             validateHeader(blockBytes);
           } else {
             LOGGER.warn("Unrecognized OSM PBF blob header type: {}", headerType);
           }
         }
+        if (indexBuilder != null) {
+          indexBuilder.setExpectedBlocks(blocks);
+        }
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -193,7 +262,21 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
 
     @Override
     public void forEachBlock(Consumer<Block> consumer) {
+      forEachMatchingBlock(entry -> true, consumer);
+    }
+
+    @Override
+    public void forEachMatchingBlock(Predicate<OsmBlockIndex.Entry> filter, Consumer<Block> consumer) {
+      var index = getBlockIndex();
+      if (index != null) {
+        for (var entry : filterEntries(index, filter)) {
+          consumer.accept(new LazyBlock(entry.offset(), entry.length(), lazyReadChannel));
+        }
+        return;
+      }
       try (FileChannel channel = openChannel()) {
+        var indexBuilder = newIndexBuilder();
+        int blocks = 0;
         final long size = channel.size();
         while (channel.position() < size) {
           BlobHeader header = readBlobHeader(channel);
@@ -201,7 +284,10 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
           String headerType = header.getType();
           long blockStartPosition = channel.position();
           if ("OSMData".equals(headerType)) {
-            consumer.accept(new LazyBlock(blockStartPosition, blockSize, lazyReadChannel));
+            Block block = new LazyBlock(blockStartPosition, blockSize, lazyReadChannel);
+            consumer.accept(indexBuilder == null ? block :
+              new SummarizingBlock(block, indexBuilder.summarizer(blockStartPosition, blockSize)));
+            blocks++;
           } else if ("OSMHeader".equals(headerType)) {
             validateHeader(readBytes(channel, blockStartPosition, blockSize));
           } else {
@@ -209,6 +295,9 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
           }
           channel.position(blockStartPosition + blockSize);
         }
+        if (indexBuilder != null) {
+          indexBuilder.setExpectedBlocks(blocks);
+        }
       } catch (IOException e) {
         throw new UncheckedIOException(e);
       }
@@ -238,6 +327,39 @@ public class OsmInputFile implements Bounds.Provider, Supplier<OsmBlockSource>,
     }
   }
 
+  /**
+   * A block that records its entry in the {@link OsmBlockIndex} being built once a worker has iterated through all of
+   * its elements.
+   */
+  private record SummarizingBlock(OsmBlockSource.Block block, OsmBlockIndex.Builder.Summarizer summarizer)
+    implements OsmBlockSource.Block {
+
+    @Override
+    public Iterable<OsmElement> decodeElements() {
+      Iterable<OsmElement> elements = block.decodeElements();
+      return () -> {
+        Iterator<OsmElement> iterator = elements.iterator();
+        return new Iterator<>() {
+          @Override
+          public boolean hasNext() {
+            boolean result = iterator.hasNext();
+            if (!result) {
+              summarizer.finish();
+            }
+            return result;
+          }
+
+          @Override
+          public OsmElement next() {
+            OsmElement element = iterator.next();
+            summarizer.accept(element);
+            return element;
+          }
+        };
+      };
+    }
+  }
+
   public Path getPath() {
     return path;
   }
@@ -26,12 +26,14 @@ import java.util.List;
 import java.util.Set;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryCollection;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.TopologyException;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
+import org.locationtech.jts.index.strtree.STRtree;
 
 /**
  * A utility to reconstruct <a href="https://wiki.openstreetmap.org/wiki/Relation:multipolygon">multipolygons</a> from
@@ -49,11 +51,13 @@ public class OsmMultipolygon {
    * Steps to reconstruct a polygon:
    * 1) connect ways with matching endpoints until closed rings are formed (discard unclosed rings)
    * 2) sort rings by area descending
-   * 3) process rings in order to find out which is the direct parent containing each ring
+   * 3) find the direct parent containing each ring among the larger rings whose bounding box covers it
    * 4) iterate from outermost to innermost ring, creating a polygon with holes for each outer/inner ring pair
    */
 
   private static final double MIN_CLOSE_RING_GAP = 0.1 / GeoUtils.WORLD_CIRCUMFERENCE_METERS;
+  // below this many rings, checking every larger ring is cheaper than building a spatial index
+  private static final int MIN_RINGS_TO_INDEX = 16;
   private static final Comparator<Ring> BY_AREA_DESCENDING = Comparator.comparingDouble(ring -> -ring.area);
 
   /** A closed linestring that tracks parent and child rings relationships. */
@@ -64,6 +68,7 @@ public class OsmMultipolygon {
     private Ring containedBy = null;
     // use linked hash set to ensure same input always produces same output
     private final Set<Ring> holes = new LinkedHashSet<>();
+    private PreparedPolygon prepared = null;
 
     private Ring(Polygon geom) {
       this.geom = geom;
@@ -77,6 +82,14 @@ public class OsmMultipolygon {
       );
     }
 
+    /** Returns this ring prepared for repeated containment tests, built the first time it is needed. */
+    private PreparedPolygon prepared() {
+      if (prepared == null) {
+        prepared = new PreparedPolygon(geom);
+      }
+      return prepared;
+    }
+
     /** Returns true if this is an outermost ring and alternate false/true as you work inwards. */
     public boolean isHole() {
       int containedCounter = 0;
@@ -238,26 +251,56 @@ public class OsmMultipolygon {
     if (numPolygons == 1) {
       return shells;
     }
+    // the direct parent of each ring is the smallest ring that contains it, since the rings are sorted by area
+    // descending that is the containing ring with the highest index
+    List<List<Ring>> children = new ArrayList<>(numPolygons);
+    for (int i = 0; i < numPolygons; i++) {
+      children.add(null);
+    }
+    STRtree index = numPolygons > MIN_RINGS_TO_INDEX ? buildIndex(polygons) : null;
+    List<Integer> candidates = new ArrayList<>();
+    for (int j = 1; j < numPolygons; j++) {
+      Ring inner = polygons.get(j);
+      Envelope envelope = inner.geom.getEnvelopeInternal();
+      candidates.clear();
+      if (index == null) {
+        for (int i = 0; i < j; i++) {
+          candidates.add(i);
+        }
+      } else {
+        for (Object item : index.query(envelope)) {
+          int i = (Integer) item;
+          if (i < j) {
+            candidates.add(i);
+          }
+        }
+      }
+      int parent = -1;
+      for (int i : candidates) {
+        Ring outer = polygons.get(i);
+        // test every candidate, not just until the first match, so invalid rings fail the same way regardless of order
+        if (outer.geom.getEnvelopeInternal().covers(envelope) && outer.prepared().contains(inner.geom)) {
+          parent = Math.max(parent, i);
+        }
+      }
+      if (parent >= 0) {
+        if (children.get(parent) == null) {
+          children.set(parent, new ArrayList<>());
+        }
+        children.get(parent).add(inner);
+      }
+    }
+    // then link up parents and children from the outermost ring inwards
     for (int i = 0; i < numPolygons; i++) {
       Ring outer = polygons.get(i);
-      if (i < numPolygons - 1) {
-        PreparedPolygon prepared = new PreparedPolygon(outer.geom);
-        // since the rings are sorted by area descending, the inner loop is only smaller rings
-        for (int j = i + 1; j < numPolygons; j++) {
-          Ring inner = polygons.get(j);
-          if (prepared.contains(inner.geom)) {
-            // keep searching until we find the smallest ring that contains this one
-            // that one is the direct parent
-            if (inner.containedBy != null) {
-              inner.containedBy.holes.remove(inner);
-              shells.remove(inner);
-            }
-            inner.containedBy = outer;
-            if (inner.isHole()) {
-              outer.holes.add(inner);
-            } else {
-              shells.add(inner);
-            }
+      List<Ring> innerRings = children.get(i);
+      if (innerRings != null) {
+        for (Ring inner : innerRings) {
+          inner.containedBy = outer;
+          if (inner.isHole()) {
+            outer.holes.add(inner);
+          } else {
+            shells.add(inner);
           }
         }
       }
@@ -268,6 +311,15 @@ public class OsmMultipolygon {
     return shells;
   }
 
+  private static STRtree buildIndex(List<Ring> polygons) {
+    STRtree index = new STRtree();
+    for (int i = 0; i < polygons.size(); i++) {
+      index.insert(polygons.get(i).geom.getEnvelopeInternal(), i);
+    }
+    index.build();
+    return index;
+  }
+
   private static boolean tryClose(LongArrayList segment, OsmReader.NodeLocationProvider nodeCache,
     double minGap) {
     int size = segment.size();
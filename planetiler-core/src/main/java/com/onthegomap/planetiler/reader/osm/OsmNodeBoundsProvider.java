@@ -40,7 +40,8 @@ public class OsmNodeBoundsProvider implements Bounds.Provider {
     List<Envelope> envelopes = new CopyOnWriteArrayList<>();
 
     var pipeline = WorkerPipeline.start("osm_bounds", stats)
-      .fromGenerator("read", file.get()::forEachBlock)
+      .<OsmBlockSource.Block>fromGenerator("read",
+        next -> file.get().forEachMatchingBlock(entry -> entry.contains(OsmElement.Type.NODE), next))
       .addBuffer("pbf_blocks", parseThreads * 2)
       .sinkTo("process", parseThreads, blocks -> {
         var envelope = new Envelope();
@@ -0,0 +1,128 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import com.onthegomap.planetiler.collection.DeltaBlockLongLongMap;
+import com.onthegomap.planetiler.collection.LongLongMap;
+import com.onthegomap.planetiler.collection.Storage;
+import com.onthegomap.planetiler.util.FileUtils;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A directory that keeps the node locations {@link OsmReader#pass1} stores around between runs, so that later runs on
+ * the same input file can skip reading and storing nodes again.
+ * <p>
+ * Node locations don't depend on the profile, so a snapshot stays valid across profile changes as long as the size and
+ * modification time of the input file stay the same. Everything else pass1 produces - like relation info and relation
+ * members - comes from the profile so {@link OsmReader#pass1FromSnapshot} recomputes it.
+ * <p>
+ * Node locations are always stored using {@link LongLongMap.Type#DELTA_BLOCK} with {@link Storage#MMAP} storage, and a
+ * manifest is written last so that a run that fails part way through never leaves a snapshot that looks complete.
+ */
+public class OsmPass1Snapshot {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OsmPass1Snapshot.class);
+  private static final int MAGIC = 0x4f503153; // "OP1S"
+  private static final int VERSION = 1;
+  private final Path dir;
+  private final Path input;
+
+  private OsmPass1Snapshot(Path dir, Path input) {
+    this.dir = dir;
+    this.input = input;
+  }
+
+  /** Returns the snapshot in {@code dir} for the OSM input file at {@code input}. */
+  public static OsmPass1Snapshot forInput(Path dir, Path input) {
+    return new OsmPass1Snapshot(dir, input);
+  }
+
+  private Path manifestPath() {
+    return dir.resolve("pass1.manifest");
+  }
+
+  private Path nodesPath() {
+    return dir.resolve("nodes.db");
+  }
+
+  private Path nodeIndexPath() {
+    return dir.resolve("nodes.index");
+  }
+
+  /** Returns true if a previous run saved a snapshot for the current version of the input file. */
+  public boolean isComplete() {
+    Path manifest = manifestPath();
+    if (!Files.exists(manifest)) {
+      return false;
+    }
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        LOGGER.info("Ignoring OSM pass1 snapshot in {} with unrecognized format", dir);
+        return false;
+      }
+      if (in.readLong() != Files.size(input) || in.readLong() != Files.getLastModifiedTime(input).toMillis()) {
+        LOGGER.info("Ignoring OSM pass1 snapshot in {} since {} changed", dir, input.getFileName());
+        return false;
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Unable to read OSM pass1 snapshot manifest {}: {}", manifest, e.toString());
+      return false;
+    }
+  }
+
+  /** Clears out any old snapshot and returns a new empty node location map to save into this snapshot. */
+  public DeltaBlockLongLongMap createNodeLocations(boolean madvise) {
+    FileUtils.delete(dir);
+    FileUtils.createDirectory(dir);
+    return (DeltaBlockLongLongMap) LongLongMap.from(LongLongMap.Type.DELTA_BLOCK, Storage.MMAP,
+      new Storage.Params(nodesPath(), madvise));
+  }
+
+  /** Returns the node locations that {@link #save(LongLongMap)} stored in this snapshot. */
+  public DeltaBlockLongLongMap openNodeLocations(boolean madvise) {
+    try {
+      return DeltaBlockLongLongMap.open(nodesPath(), nodeIndexPath(), madvise);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Saves {@code nodeLocations} and marks the snapshot complete once pass1 has finished storing them.
+   *
+   * @throws IllegalArgumentException if {@code nodeLocations} did not come from {@link #createNodeLocations(boolean)}
+   */
+  public void save(LongLongMap nodeLocations) {
+    if (!(nodeLocations instanceof DeltaBlockLongLongMap deltaBlock)) {
+      throw new IllegalArgumentException("Can only save node locations from createNodeLocations, got " + nodeLocations);
+    }
+    Path manifest = manifestPath();
+    Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+    try {
+      deltaBlock.saveIndex(nodeIndexPath());
+      try (var out = new DataOutputStream(Files.newOutputStream(tmp))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(Files.size(input));
+        out.writeLong(Files.getLastModifiedTime(input).toMillis());
+      }
+      Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      LOGGER.info("Saved OSM pass1 snapshot to {}", dir);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Returns the directory this snapshot is stored in. */
+  public Path dir() {
+    return dir;
+  }
+}
@@ -5,6 +5,7 @@ import static com.onthegomap.planetiler.worker.Worker.joinFutures;
 
 import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongLongHashMap;
 import com.carrotsearch.hppc.LongObjectHashMap;
 import com.carrotsearch.hppc.ObjectIntHashMap;
 import com.onthegomap.planetiler.FeatureCollector;
@@ -13,7 +14,9 @@ import com.onthegomap.planetiler.collection.FeatureGroup;
 import com.onthegomap.planetiler.collection.Hppc;
 import com.onthegomap.planetiler.collection.LongLongMap;
 import com.onthegomap.planetiler.collection.LongLongMultimap;
+import com.onthegomap.planetiler.collection.OrderedRunsWriter;
 import com.onthegomap.planetiler.collection.SortableFeature;
+import com.onthegomap.planetiler.collection.SortableFeatureBlock;
 import com.onthegomap.planetiler.collection.Storage;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.GeoUtils;
@@ -35,18 +38,22 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateList;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.CoordinateXY;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.geom.MultiPolygon;
@@ -71,6 +78,8 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
   private static final int ROLE_SHIFT = 64 - ROLE_BITS;
   private static final int ROLE_MASK = (1 << ROLE_BITS) - 1;
   private static final long NOT_ROLE_MASK = (1L << ROLE_SHIFT) - 1L;
+  private static final LongLongMap.Writer NOOP_WRITER = (key, value) -> {
+  };
   private final OsmBlockSource osmBlockSource;
   private final Stats stats;
   private final LongLongMap nodeLocationDb;
@@ -97,6 +106,12 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
   private final IntObjectHashMap<String> roleIdsReverse = new IntObjectHashMap<>();
   private final AtomicLong roleSizes = new AtomicLong(0);
   private final OsmPhaser pass1Phaser = new OsmPhaser(0);
+  // IDs of nodes that pass1 needs to store locations for, or null to store every node
+  private Roaring64Bitmap nodesToStore = null;
+  // concatenates node locations that pass1 workers write in parallel when nodeLocationDb needs sequential writes
+  private OrderedRunsWriter orderedNodeWriter = null;
+  // true when nodeLocationDb already holds node locations from an earlier run so pass1 doesn't need to store them
+  private boolean nodeLocationsStored = false;
 
   /**
    * Constructs a new {@code OsmReader} from an {@code osmSourceProvider} that will use {@code nodeLocationDb} as a
@@ -148,6 +163,35 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
    */
   public void pass1(PlanetilerConfig config) {
     var timer = stats.startStage("osm_pass1");
+    runPass1(config);
+    timer.stop();
+  }
+
+  /**
+   * Alternative to {@link #pass1(PlanetilerConfig)} when {@code nodeLocationDb} already contains every node location
+   * from an {@link OsmPass1Snapshot} of the same input file.
+   * <p>
+   * Still passes every way and relation to the profile to preprocess, but skips storing node locations and - with an
+   * {@link OsmBlockIndex} - skips reading blocks that only contain untagged nodes.
+   *
+   * @param config user-provided arguments to control the number of threads, and log interval
+   */
+  public void pass1FromSnapshot(PlanetilerConfig config) {
+    var timer = stats.startStage("osm_pass1");
+    nodeLocationsStored = true;
+    runPass1(config);
+    timer.stop();
+  }
+
+  private void forEachPass1Block(Consumer<OsmBlockSource.Block> next) {
+    if (nodeLocationsStored) {
+      osmBlockSource.forEachMatchingBlock(entry -> !entry.onlyUntaggedNodes(), next);
+    } else {
+      osmBlockSource.forEachBlock(next);
+    }
+  }
+
+  private void runPass1(PlanetilerConfig config) {
     var pipeline = WorkerPipeline.start("osm_pass1", stats);
     CompletableFuture<?> done;
 
@@ -163,18 +207,35 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
       .newLine();
     int threads = config.threads();
 
-    if (nodeLocationDb instanceof LongLongMap.ParallelWrites) {
-      // If the node location writer supports parallel writes, then parse, process, and write node locations from worker threads
+    if (nodeLocationsStored || nodeLocationDb instanceof LongLongMap.ParallelWrites) {
+      // If the node location writer supports parallel writes, or there are no node locations to write, then parse,
+      // process, and write node locations from worker threads
+      int parseThreads = Math.max(1, threads < 8 ? threads : (threads - 1));
+      pass1Phaser.registerWorkers(parseThreads);
+      var parallelPipeline = pipeline
+        .fromGenerator("read", this::forEachPass1Block)
+        .addBuffer("pbf_blocks", parseThreads * 2)
+        .sinkTo("process", parseThreads, this::processPass1Blocks);
+      loggers.addPipelineStats(parallelPipeline);
+      done = parallelPipeline.done();
+    } else if (nodeLocationDb instanceof LongLongMap.SequentialWrites sequentialWrites) {
+      // If the node location writer only supports sequential writes, then number each block as it is read and have
+      // worker threads buffer the nodes from each block into a run that gets written once all blocks before it have
+      // been written, so node locations still arrive in the order they appear in the input file
       int parseThreads = Math.max(1, threads < 8 ? threads : (threads - 1));
       pass1Phaser.registerWorkers(parseThreads);
+      orderedNodeWriter = new OrderedRunsWriter(sequentialWrites, parseThreads * 4);
       var parallelPipeline = pipeline
-        .fromGenerator("read", osmBlockSource::forEachBlock)
+        .<SequencedBlock>fromGenerator("read", next -> {
+          long[] sequence = {0};
+          osmBlockSource.forEachBlock(block -> next.accept(new SequencedBlock(sequence[0]++, block)));
+        })
         .addBuffer("pbf_blocks", parseThreads * 2)
         .sinkTo("process", parseThreads, this::processPass1Blocks);
       loggers.addPipelineStats(parallelPipeline);
       done = parallelPipeline.done();
     } else {
-      // If the node location writer requires sequential writes, then the reader hands off the block to workers
+      // If the node location writer requires writes from a single thread, then the reader hands off the block to workers
       // and a handle that the result will go on to the single-threaded writer, and the writer emits new nodes when
       // they are ready
       int parseThreads = Math.max(1, threads < 8 ? threads : (threads - 2));
@@ -222,20 +283,107 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
     }
 
     loggers.awaitAndLog(done, config.logInterval());
+    if (orderedNodeWriter != null) {
+      orderedNodeWriter.finish();
+    }
 
     LOGGER.debug("Processed " + FORMAT.integer(PASS1_BLOCKS.get()) + " blocks:");
     pass1Phaser.printSummary();
+  }
+
+  /**
+   * Scans relations then ways before {@link #pass1(PlanetilerConfig)} to record the IDs of nodes that pass2 will need
+   * locations for, so that pass1 can skip storing the rest.
+   * <p>
+   * Keeps nodes from ways where {@link Profile#caresAboutOsmWay(OsmElement.Way)} returns true, or that belong to a
+   * relation where {@link Profile#caresAboutOsmRelation(OsmElement.Relation)} returns true. Relations get scanned first
+   * since they come after ways in the input file. With an {@link OsmBlockIndex} each scan only reads blocks that
+   * contain relations or ways.
+   *
+   * @param config user-provided arguments to control the number of threads, and log interval
+   */
+  public void prefilterNodes(PlanetilerConfig config) {
+    var timer = stats.startStage("osm_node_filter");
+    int threads = Math.max(1, config.threads() - 1);
+    Roaring64Bitmap waysToKeep = new Roaring64Bitmap();
+    Roaring64Bitmap nodesToKeep = new Roaring64Bitmap();
+    var relationsScanned = Counter.newMultiThreadCounter();
+    var waysScanned = Counter.newMultiThreadCounter();
+    Supplier<ProgressLoggers> loggers = () -> ProgressLoggers.create()
+      .addRateCounter("rels", relationsScanned, true)
+      .addRateCounter("ways", waysScanned, true)
+      .newLine()
+      .addProcessStats()
+      .newLine();
+
+    var relationPipeline = WorkerPipeline.start("osm_node_filter", stats)
+      .<OsmBlockSource.Block>fromGenerator("read",
+        next -> osmBlockSource.forEachMatchingBlock(entry -> entry.contains(OsmElement.Type.RELATION), next))
+      .addBuffer("pbf_blocks", threads * 2)
+      .sinkToConsumer("relations", threads, block -> {
+        var counter = relationsScanned.counterForThread();
+        Roaring64Bitmap ways = new Roaring64Bitmap();
+        for (var element : block.decodeElements()) {
+          if (element instanceof OsmElement.Relation relation) {
+            counter.inc();
+            if (profile.caresAboutOsmRelation(relation)) {
+              for (var member : relation.members()) {
+                if (member.type() == OsmElement.Type.WAY) {
+                  ways.addLong(member.ref());
+                }
+              }
+            }
+          }
+        }
+        synchronized (waysToKeep) {
+          waysToKeep.or(ways);
+        }
+      });
+    relationPipeline.awaitAndLog(loggers.get().addPipelineStats(relationPipeline), config.logInterval());
+
+    var wayPipeline = WorkerPipeline.start("osm_node_filter", stats)
+      .<OsmBlockSource.Block>fromGenerator("read",
+        next -> osmBlockSource.forEachMatchingBlock(entry -> entry.contains(OsmElement.Type.WAY), next))
+      .addBuffer("pbf_blocks", threads * 2)
+      .sinkToConsumer("ways", threads, block -> {
+        var counter = waysScanned.counterForThread();
+        Roaring64Bitmap nodes = new Roaring64Bitmap();
+        for (var element : block.decodeElements()) {
+          if (element instanceof OsmElement.Way way) {
+            counter.inc();
+            if (waysToKeep.contains(way.id()) || profile.caresAboutOsmWay(way)) {
+              var wayNodes = way.nodes();
+              for (int i = 0; i < wayNodes.size(); i++) {
+                nodes.addLong(wayNodes.get(i));
+              }
+            }
+          }
+        }
+        synchronized (nodesToKeep) {
+          nodesToKeep.or(nodes);
+        }
+      });
+    wayPipeline.awaitAndLog(loggers.get().addPipelineStats(wayPipeline), config.logInterval());
+
+    nodesToKeep.runOptimize();
+    nodesToStore = nodesToKeep;
+    LOGGER.info("Storing locations for {} nodes referenced by {} relation member ways and other ways the profile uses",
+      FORMAT.integer(nodesToKeep.getLongCardinality()), FORMAT.integer(waysToKeep.getLongCardinality()));
     timer.stop();
   }
 
   void processPass1Blocks(Iterable<? extends Iterable<? extends OsmElement>> blocks) {
     // may be called by multiple threads so need to synchronize access to any shared data structures
     try (
-      var nodeWriter = nodeLocationDb.newWriter();
+      var nodeWriter = nodeLocationsStored ? NOOP_WRITER : nodeLocationDb.newWriter();
       var phases = pass1Phaser.forWorker()
         .whenWorkerFinishes(OsmPhaser.Phase.NODES, nodeWriter::close)
     ) {
       for (var block : blocks) {
+        // write nodes from numbered blocks into a run that gets concatenated with the others in block order
+        OrderedRunsWriter.Run run = block instanceof SequencedBlock sequenced ?
+          orderedNodeWriter.newRun(sequenced.sequence()) : null;
+        LongLongMap.Writer blockNodeWriter = run != null ? run : nodeWriter;
         for (OsmElement element : block) {
           if (element.id() < 0) {
             throw new IllegalArgumentException("Negative OSM element IDs not supported: " + element);
@@ -247,9 +395,14 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
             } catch (Exception e) {
               LOGGER.error("Error preprocessing OSM node " + node.id(), e);
             }
-            // TODO allow limiting node storage to only ones that profile cares about
-            nodeWriter.put(node.id(), node.encodedLocation());
+            if (!nodeLocationsStored && (nodesToStore == null || nodesToStore.contains(node.id()))) {
+              blockNodeWriter.put(node.id(), node.encodedLocation());
+            }
           } else if (element instanceof OsmElement.Way way) {
+            // other workers may be waiting on this run, so hand it off before waiting on them
+            if (run != null) {
+              run.close();
+            }
             phases.arriveAndWaitForOthers(OsmPhaser.Phase.WAYS);
             try {
               profile.preprocessOsmWay(way);
@@ -257,6 +410,9 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
               LOGGER.error("Error preprocessing OSM way " + way.id(), e);
             }
           } else if (element instanceof OsmElement.Relation relation) {
+            if (run != null) {
+              run.close();
+            }
             phases.arrive(OsmPhaser.Phase.RELATIONS);
             try {
               List<OsmRelationInfo> infos = profile.preprocessOsmRelation(relation);
@@ -290,12 +446,24 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
             }
           }
         }
+        if (run != null) {
+          run.close();
+        }
         PASS1_BLOCKS.inc();
       }
     }
   }
 
-  private static boolean isMultipolygon(OsmElement.Relation relation) {
+  /** A block from the input file numbered by its position in the file. */
+  private record SequencedBlock(long sequence, OsmBlockSource.Block block) implements Iterable<OsmElement> {
+
+    @Override
+    public Iterator<OsmElement> iterator() {
+      return block.decodeElements().iterator();
+    }
+  }
+
+  static boolean isMultipolygon(OsmElement.Relation relation) {
     return relation.hasTag("type", "multipolygon", "boundary", "land_area") &&
       relation.members().stream().anyMatch(m -> m.type() == OsmElement.Type.WAY);
   }
@@ -307,6 +475,23 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
    * @param config user-provided arguments to control the number of threads, and log interval
    */
   public void pass2(FeatureGroup writer, PlanetilerConfig config) {
+    pass2(writer, config, element -> true, null);
+  }
+
+  /**
+   * Alternative to {@link #pass2(FeatureGroup, PlanetilerConfig)} that only renders elements where {@code shouldRender}
+   * returns true, and reports what each of them rendered to {@code listener}.
+   * <p>
+   * Elements that {@code shouldRender} rejects still provide relation memberships and multipolygon member ways for the
+   * ones it accepts.
+   *
+   * @param writer       consumer that will store finished features
+   * @param config       user-provided arguments to control the number of threads, and log interval
+   * @param shouldRender returns true for elements that should be rendered
+   * @param listener     receives the bounds and minimum zoom of features rendered from each element, or {@code null}
+   */
+  public void pass2(FeatureGroup writer, PlanetilerConfig config, Predicate<OsmElement> shouldRender,
+    RenderedElementListener listener) {
     var timer = stats.startStage("osm_pass2");
     int writeThreads = config.featureWriteThreads();
     int processThreads = config.featureProcessThreads();
@@ -325,27 +510,45 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
     // items to threads that are done reading blocks
     Distributor<OsmElement.Relation> relationDistributor = Distributor.createWithCapacity(1_000);
 
+    // nodes without tags only become features if the profile wants them, so skip blocks of those when possible
+    Predicate<OsmBlockIndex.Entry> blockFilter = profile.caresAboutUntaggedOsmNodes() ? entry -> true :
+      entry -> !entry.onlyUntaggedNodes();
     var pipeline = WorkerPipeline.start("osm_pass2", stats)
-      .fromGenerator("read", osmBlockSource::forEachBlock)
+      .<OsmBlockSource.Block>fromGenerator("read", next -> osmBlockSource.forEachMatchingBlock(blockFilter, next))
       .addBuffer("pbf_blocks", Math.max(10, processThreads / 2))
-      .<SortableFeature>addWorker("process", processThreads, (prev, next) -> {
+      .<SortableFeatureBlock>addWorker("process", processThreads, (prev, next) -> {
         // avoid contention trying to get the thread-local counters by getting them once when thread starts
         Counter blocks = blocksProcessed.counterForThread();
         Counter rels = relationsProcessed.counterForThread();
 
         var featureCollectors = new FeatureCollector.Factory(config, stats);
         final NodeLocationProvider nodeLocations = newNodeLocationProvider();
-        try (var renderer = createFeatureRenderer(writer, config, next)) {
+        try (
+          var blockWriter = SortableFeatureBlock.writer(next);
+          var renderer = createFeatureRenderer(writer, config, blockWriter)
+        ) {
           var phaser = pass2Phaser.forWorker();
           var relationHandler = relationDistributor.forThread(relation -> {
             var feature = processRelationPass2(relation, nodeLocations);
-            if (feature != null) {
-              render(featureCollectors, renderer, relation, feature);
+            if (feature != null && shouldRender.test(relation)) {
+              render(featureCollectors, renderer, relation, feature, listener);
             }
             rels.inc();
           });
+          List<OsmElement> elements = new ArrayList<>();
+          List<LongArrayList> wayNodes = new ArrayList<>();
           for (var block : prev) {
+            elements.clear();
+            wayNodes.clear();
             for (var element : block.decodeElements()) {
+              elements.add(element);
+              if (element instanceof OsmElement.Way way && !way.tags().isEmpty() && profile.caresAboutOsmWay(way)) {
+                wayNodes.add(way.nodes());
+              }
+            }
+            // look up all node locations the ways in this block need at once instead of one at a time
+            nodeLocations.prefetchWays(wayNodes);
+            for (var element : elements) {
               SourceFeature feature = null;
               if (element instanceof OsmElement.Node node) {
                 phaser.arrive(OsmPhaser.Phase.NODES);
@@ -359,8 +562,8 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
               }
               // render features specified by profile and hand them off to next step that will
               // write them intermediate storage
-              if (feature != null) {
-                render(featureCollectors, renderer, element, feature);
+              if (feature != null && shouldRender.test(element)) {
+                render(featureCollectors, renderer, element, feature, listener);
               }
             }
             blocks.inc();
@@ -371,12 +574,13 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
           // do work for other threads that are still processing blocks of relations
           relationHandler.close();
         }
-      }).addBuffer("feature_queue", 50_000, 1_000)
-      // FeatureGroup writes need to be single-threaded
+      }).addBuffer("feature_queue", Math.max(10, processThreads * 2))
+      // FeatureGroup writes need to be single-threaded, so hand off whole blocks of encoded features to keep the queue
+      // from becoming a bottleneck
       .sinkTo("write", writeThreads, prev -> {
-        try (var writerForThread = writer.writerForThread()) {
-          for (var item : prev) {
-            writerForThread.accept(item);
+        try (var writerForThread = writer.blockWriterForThread()) {
+          for (var block : prev) {
+            writerForThread.accept(block);
           }
         }
       });
@@ -432,6 +636,8 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
         .add(path, storage, 9 * nodes, "sparsearray node location cache");
       case SORTED_TABLE -> check.addMemory(300_000_000L, "sortedtable node location in-memory index")
         .add(path, storage, 12 * nodes, "sortedtable node location cache");
+      case DELTA_BLOCK -> check.addMemory(nodes / 16, "deltablock node location in-memory index")
+        .add(path, storage, 6 * nodes, "deltablock node location cache");
       case ARRAY -> check.add(path, storage, 8 * maxNodeId,
         "array node location cache (switch to sparsearray to reduce size)");
     };
@@ -465,12 +671,21 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
   }
 
   private void render(FeatureCollector.Factory featureCollectors, FeatureRenderer renderer, OsmElement element,
-    SourceFeature feature) {
+    SourceFeature feature, RenderedElementListener listener) {
     FeatureCollector features = featureCollectors.get(feature);
     try {
       profile.processFeature(feature, features);
+      int minzoom = Integer.MAX_VALUE;
+      Envelope bounds = listener == null ? null : new Envelope();
       for (FeatureCollector.Feature renderable : features) {
         renderer.accept(renderable);
+        if (bounds != null) {
+          minzoom = Math.min(minzoom, renderable.getMinZoom());
+          bounds.expandToInclude(renderable.getGeometry().getEnvelopeInternal());
+        }
+      }
+      if (bounds != null && !bounds.isNull()) {
+        listener.rendered(element, minzoom, bounds);
       }
     } catch (Exception e) {
       String type = element.getClass().getSimpleName();
@@ -481,12 +696,12 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
   private FeatureRenderer createFeatureRenderer(FeatureGroup writer, PlanetilerConfig config,
     Consumer<SortableFeature> next) {
     @SuppressWarnings("java:S2095") // closed by FeatureRenderer
-    var encoder = writer.newRenderedFeatureEncoder();
+    var featureWriter = writer.newRenderedFeatureWriter(next);
     return new FeatureRenderer(
       config,
-      rendered -> next.accept(encoder.apply(rendered)),
+      featureWriter,
       stats,
-      encoder
+      featureWriter
     );
   }
 
@@ -546,6 +761,7 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
   public long estimateMemoryUsageBytes() {
     long size = 0;
     size += waysInMultipolygon == null ? 0 : waysInMultipolygon.serializedSizeInBytes();
+    size += nodesToStore == null ? 0 : nodesToStore.serializedSizeInBytes();
     // multipolygonWayGeometries is reported separately
     size += estimateSize(wayToRelations);
     size += estimateSize(relationInfo);
@@ -564,6 +780,7 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
     }
     wayToRelations = null;
     waysInMultipolygon = null;
+    nodesToStore = null;
     relationInfo = null;
     nodeLocationDb.close();
     roleIds.release();
@@ -575,8 +792,28 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
     return new NodeDbLocationProvider();
   }
 
+  /** Receives what {@link #pass2(FeatureGroup, PlanetilerConfig, Predicate, RenderedElementListener)} renders. */
+  @FunctionalInterface
+  public interface RenderedElementListener {
+
+    /**
+     * Called from worker threads after {@code element} renders into at least one feature.
+     *
+     * @param element     the element that was rendered
+     * @param minzoom     the lowest minimum zoom of features rendered from {@code element}
+     * @param worldBounds envelope of the geometries of those features in world web mercator coordinates
+     */
+    void rendered(OsmElement element, int minzoom, Envelope worldBounds);
+  }
+
   public interface NodeLocationProvider {
 
+    /**
+     * Hints that geometries of ways made of {@code ways} node IDs will be requested soon, so implementations can look
+     * up all of their node locations in one batch.
+     */
+    default void prefetchWays(List<LongArrayList> ways) {}
+
     default CoordinateSequence getWayGeometry(LongArrayList nodeIds) {
       CoordinateList coordList = new CoordinateList();
       for (var cursor : nodeIds) {
@@ -813,6 +1050,7 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
           }
         }
       }
+      nodeLocations.prefetchWays(rings);
       return OsmMultipolygon.build(rings, nodeLocations, id());
     }
 
@@ -824,12 +1062,56 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
 
   /**
    * A thin layer on top of {@link LongLongMap} that decodes node locations stored as {@code long} values.
+   * <p>
+   * Node locations requested through {@link #prefetchWays(List)} get fetched using a single sorted
+   * {@link LongLongMap#multiGet(long[])} call and cached until the next batch.
    */
   private class NodeDbLocationProvider implements NodeLocationProvider {
 
+    private final LongLongHashMap batch = Hppc.newLongLongHashMap();
+
+    @Override
+    public void prefetchWays(List<LongArrayList> ways) {
+      batch.clear();
+      int count = 0;
+      for (var way : ways) {
+        count += way.size();
+      }
+      if (count == 0) {
+        return;
+      }
+      long[] ids = new long[count];
+      int idx = 0;
+      for (var way : ways) {
+        System.arraycopy(way.buffer, 0, ids, idx, way.size());
+        idx += way.size();
+      }
+      Arrays.sort(ids);
+      int unique = 0;
+      for (long id : ids) {
+        if (unique == 0 || ids[unique - 1] != id) {
+          ids[unique++] = id;
+        }
+      }
+      if (unique < count) {
+        ids = Arrays.copyOf(ids, unique);
+      }
+      long[] encoded = nodeLocationDb.multiGet(ids);
+      for (int i = 0; i < unique; i++) {
+        if (encoded[i] != LongLongMap.MISSING_VALUE) {
+          batch.put(ids[i], encoded[i]);
+        }
+      }
+    }
+
+    private long getEncoded(long id) {
+      long encoded = batch.getOrDefault(id, LongLongMap.MISSING_VALUE);
+      return encoded != LongLongMap.MISSING_VALUE ? encoded : nodeLocationDb.get(id);
+    }
+
     @Override
     public Coordinate getCoordinate(long id) {
-      long encoded = nodeLocationDb.get(id);
+      long encoded = getEncoded(id);
       if (encoded == LongLongMap.MISSING_VALUE) {
         throw new IllegalArgumentException("Missing location for node: " + id);
       }
@@ -842,7 +1124,7 @@ public class OsmReader implements Closeable, MemoryEstimator.HasEstimate {
       CoordinateSequence seq = new PackedCoordinateSequence.Double(nodeIds.size(), 2, 0);
 
       for (int i = 0; i < num; i++) {
-        long encoded = nodeLocationDb.get(nodeIds.get(i));
+        long encoded = getEncoded(nodeIds.get(i));
         if (encoded == LongLongMap.MISSING_VALUE) {
           throw new IllegalArgumentException("Missing location for node: " + nodeIds.get(i));
         }
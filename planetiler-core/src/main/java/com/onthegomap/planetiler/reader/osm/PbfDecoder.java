@@ -2,16 +2,16 @@
 // See NOTICE.md here or copying.txt from https://github.com/openstreetmap/osmosis/blob/master/package/copying.txt for details.
 package com.onthegomap.planetiler.reader.osm;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.LongArrayList;
-import com.google.common.collect.Iterators;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.onthegomap.planetiler.reader.FileFormatException;
-import crosby.binary.Fileformat;
 import crosby.binary.Osmformat;
-import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -19,7 +19,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.function.IntUnaryOperator;
+import java.util.Set;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import net.jpountz.lz4.LZ4Exception;
@@ -28,67 +28,163 @@ import net.jpountz.lz4.LZ4FastDecompressor;
 import org.locationtech.jts.geom.Envelope;
 
 /**
- * Converts PBF block data into decoded entities. This class was adapted from Osmosis to expose an iterator over blocks
- * to give more control over the parallelism.
+ * Converts PBF block data into decoded entities. This class was originally adapted from Osmosis to expose an iterator
+ * over blocks to give more control over the parallelism.
+ * <p>
+ * Instead of materializing the generated {@link Osmformat.PrimitiveBlock} object graph, this reads the protobuf wire
+ * format directly from the decompressed block while iterating through elements, and exposes tags through a map that
+ * only decodes strings from the block's string table when they are accessed.
  *
- * @author Brett Henderson
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">OSM PBF Format</a>
  */
 public class PbfDecoder implements Iterable<OsmElement> {
 
-  private final Osmformat.PrimitiveBlock block;
-  private final PbfFieldDecoder fieldDecoder;
-
-  private PbfDecoder(byte[] rawBlob) throws IOException {
-    byte[] data = readBlobContent(rawBlob);
-    block = Osmformat.PrimitiveBlock.parseFrom(data);
-    fieldDecoder = new PbfFieldDecoder(block);
-  }
-
-  private PbfDecoder(ByteBuffer rawBlob) throws IOException {
-    byte[] data = readBlobContent(rawBlob);
-    block = Osmformat.PrimitiveBlock.parseFrom(data);
-    fieldDecoder = new PbfFieldDecoder(block);
-  }
-
-  private static byte[] readBlobContent(ByteBuffer input) throws IOException {
-    return readBlobContent(Fileformat.Blob.parseFrom(input));
-
+  private static final int VARINT = 0;
+  private static final int FIXED64 = 1;
+  private static final int LENGTH_DELIMITED = 2;
+  private static final int FIXED32 = 5;
+
+  // Blob
+  private static final int BLOB_RAW = 1 << 3 | LENGTH_DELIMITED;
+  private static final int BLOB_RAW_SIZE = 2 << 3 | VARINT;
+  private static final int BLOB_ZLIB_DATA = 3 << 3 | LENGTH_DELIMITED;
+  private static final int BLOB_LZ4_DATA = 6 << 3 | LENGTH_DELIMITED;
+  // PrimitiveBlock
+  private static final int BLOCK_STRINGTABLE = 1 << 3 | LENGTH_DELIMITED;
+  private static final int BLOCK_PRIMITIVEGROUP = 2 << 3 | LENGTH_DELIMITED;
+  private static final int BLOCK_GRANULARITY = 17 << 3 | VARINT;
+  private static final int BLOCK_LAT_OFFSET = 19 << 3 | VARINT;
+  private static final int BLOCK_LON_OFFSET = 20 << 3 | VARINT;
+  // StringTable
+  private static final int STRINGTABLE_S = 1 << 3 | LENGTH_DELIMITED;
+  // PrimitiveGroup
+  private static final int GROUP_NODES = 1 << 3 | LENGTH_DELIMITED;
+  private static final int GROUP_DENSE = 2 << 3 | LENGTH_DELIMITED;
+  private static final int GROUP_WAYS = 3 << 3 | LENGTH_DELIMITED;
+  private static final int GROUP_RELATIONS = 4 << 3 | LENGTH_DELIMITED;
+  // fields shared by Node, Way, and Relation
+  private static final int ELEMENT_ID = 1 << 3 | VARINT;
+  private static final int ELEMENT_KEYS = 2 << 3 | LENGTH_DELIMITED;
+  private static final int ELEMENT_VALS = 3 << 3 | LENGTH_DELIMITED;
+  private static final int ELEMENT_INFO = 4 << 3 | LENGTH_DELIMITED;
+  // Node
+  private static final int NODE_LAT = 8 << 3 | VARINT;
+  private static final int NODE_LON = 9 << 3 | VARINT;
+  // Way
+  private static final int WAY_REFS = 8 << 3 | LENGTH_DELIMITED;
+  // Relation
+  private static final int RELATION_ROLES_SID = 8 << 3 | LENGTH_DELIMITED;
+  private static final int RELATION_MEMIDS = 9 << 3 | LENGTH_DELIMITED;
+  private static final int RELATION_TYPES = 10 << 3 | LENGTH_DELIMITED;
+  // Info
+  private static final int INFO_VERSION = 1 << 3 | VARINT;
+  private static final int INFO_TIMESTAMP = 2 << 3 | VARINT;
+  private static final int INFO_CHANGESET = 3 << 3 | VARINT;
+  private static final int INFO_UID = 4 << 3 | VARINT;
+  private static final int INFO_USER_SID = 5 << 3 | VARINT;
+  // DenseNodes
+  private static final int DENSE_ID = 1 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_INFO = 5 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_LAT = 8 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_LON = 9 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_KEYS_VALS = 10 << 3 | LENGTH_DELIMITED;
+  // DenseInfo
+  private static final int DENSE_INFO_VERSION = 1 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_INFO_TIMESTAMP = 2 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_INFO_CHANGESET = 3 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_INFO_UID = 4 << 3 | LENGTH_DELIMITED;
+  private static final int DENSE_INFO_USER_SID = 5 << 3 | LENGTH_DELIMITED;
+
+  private static final LZ4FastDecompressor LZ4 = LZ4Factory.fastestInstance().fastDecompressor();
+  // inflaters hold native memory, so reuse one per worker thread instead of creating one for every block
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+  private static final Cursor EMPTY = new Cursor(new byte[0], 0, 0);
+
+  private final byte[] data;
+  private final StringTable strings;
+  private final int[] groupStarts;
+  private final int[] groupEnds;
+  private final long granularity;
+  private final long latOffset;
+  private final long lonOffset;
+
+  private PbfDecoder(byte[] data) {
+    this.data = data;
+    var cursor = new Cursor(data, 0, data.length);
+    StringTable stringTable = null;
+    IntArrayList starts = new IntArrayList();
+    IntArrayList ends = new IntArrayList();
+    long blockGranularity = 100;
+    long blockLatOffset = 0;
+    long blockLonOffset = 0;
+    while (cursor.hasRemaining()) {
+      int tag = cursor.readTag();
+      switch (tag) {
+        case BLOCK_STRINGTABLE -> stringTable = new StringTable(cursor.readMessage());
+        case BLOCK_PRIMITIVEGROUP -> {
+          var group = cursor.readMessage();
+          starts.add(group.pos);
+          ends.add(group.limit);
+        }
+        case BLOCK_GRANULARITY -> blockGranularity = cursor.readVarint();
+        case BLOCK_LAT_OFFSET -> blockLatOffset = cursor.readVarint();
+        case BLOCK_LON_OFFSET -> blockLonOffset = cursor.readVarint();
+        default -> cursor.skip(tag);
+      }
+    }
+    this.strings = stringTable == null ? new StringTable(EMPTY) : stringTable;
+    this.groupStarts = starts.toArray();
+    this.groupEnds = ends.toArray();
+    this.granularity = blockGranularity;
+    this.latOffset = blockLatOffset;
+    this.lonOffset = blockLonOffset;
   }
 
-  private static byte[] readBlobContent(byte[] input) throws IOException {
-    return readBlobContent(Fileformat.Blob.parseFrom(input));
-  }
+  /** Returns the decompressed contents of a {@code Blob} message. */
+  private static byte[] readBlobContent(ByteBuffer input) {
+    ByteBuffer blob = input.duplicate();
+    ByteBuffer raw = null;
+    ByteBuffer zlib = null;
+    ByteBuffer lz4 = null;
+    int rawSize = -1;
+    while (blob.hasRemaining()) {
+      int tag = (int) readVarint(blob);
+      switch (tag) {
+        case BLOB_RAW -> raw = readBytes(blob);
+        case BLOB_RAW_SIZE -> rawSize = (int) readVarint(blob);
+        case BLOB_ZLIB_DATA -> zlib = readBytes(blob);
+        case BLOB_LZ4_DATA -> lz4 = readBytes(blob);
+        default -> skip(blob, tag);
+      }
+    }
 
-  private static byte[] readBlobContent(Fileformat.Blob blob) {
     byte[] blobData;
-
-    if (blob.hasRaw()) {
-      blobData = blob.getRaw().toByteArray();
-    } else if (blob.hasZlibData()) {
-      Inflater inflater = new Inflater();
-      inflater.setInput(blob.getZlibData().toByteArray());
-      blobData = new byte[blob.getRawSize()];
+    if (raw != null) {
+      blobData = new byte[raw.remaining()];
+      raw.get(blobData);
+    } else if (zlib != null) {
+      blobData = new byte[checkRawSize(rawSize)];
+      Inflater inflater = INFLATER.get();
       try {
+        inflater.setInput(zlib);
         inflater.inflate(blobData);
+        if (!inflater.finished()) {
+          throw new FileFormatException("PBF blob contains incomplete compressed data.");
+        }
       } catch (DataFormatException e) {
         throw new FileFormatException("Unable to decompress PBF blob.", e);
+      } finally {
+        inflater.reset();
       }
-      if (!inflater.finished()) {
-        throw new FileFormatException("PBF blob contains incomplete compressed data.");
-      }
-      inflater.end();
-    } else if (blob.hasLz4Data()) {
-      final int decompressedLength = blob.getRawSize();
-      LZ4Factory factory = LZ4Factory.fastestInstance();
-      LZ4FastDecompressor decompressor = factory.fastDecompressor();
-      blobData = new byte[decompressedLength];
+    } else if (lz4 != null) {
+      blobData = new byte[checkRawSize(rawSize)];
       try {
         int compressedBytesRead =
-          decompressor.decompress(blob.getLz4Data().toByteArray(), 0, blobData, 0, decompressedLength);
-        int compressedBytesExpected = blob.getLz4Data().size();
+          LZ4.decompress(lz4, lz4.position(), ByteBuffer.wrap(blobData), 0, blobData.length);
+        int compressedBytesExpected = lz4.remaining();
         if (compressedBytesRead != compressedBytesExpected) {
           throw new FileFormatException("Unable to decompress PBF blob. read %d compressed bytes but expected %d"
-            .formatted(decompressedLength, compressedBytesExpected));
+            .formatted(compressedBytesRead, compressedBytesExpected));
         }
       } catch (LZ4Exception e) {
         throw new FileFormatException("Unable to decompress PBF blob.", e);
@@ -100,28 +196,61 @@ public class PbfDecoder implements Iterable<OsmElement> {
     return blobData;
   }
 
-  /** Decompresses and parses a block of primitive OSM elements. */
-  public static Iterable<OsmElement> decode(byte[] raw) {
-    try {
-      return new PbfDecoder(raw);
-    } catch (IOException e) {
-      throw new UncheckedIOException("Unable to process PBF blob", e);
+  private static int checkRawSize(int rawSize) {
+    if (rawSize < 0) {
+      throw new FileFormatException("PBF blob is missing raw_size");
+    }
+    return rawSize;
+  }
+
+  private static long readVarint(ByteBuffer buffer) {
+    long result = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      result |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return result;
+      }
+    }
+    throw new FileFormatException("Malformed varint in PBF blob");
+  }
+
+  private static ByteBuffer readBytes(ByteBuffer buffer) {
+    int length = (int) readVarint(buffer);
+    ByteBuffer result = buffer.slice(buffer.position(), length);
+    buffer.position(buffer.position() + length);
+    return result;
+  }
+
+  private static void skip(ByteBuffer buffer, int tag) {
+    switch (tag & 7) {
+      case VARINT -> readVarint(buffer);
+      case FIXED64 -> buffer.position(buffer.position() + 8);
+      case LENGTH_DELIMITED -> readBytes(buffer);
+      case FIXED32 -> buffer.position(buffer.position() + 4);
+      default -> throw new FileFormatException("Unsupported protobuf wire type " + (tag & 7));
     }
   }
 
   /** Decompresses and parses a block of primitive OSM elements. */
+  public static Iterable<OsmElement> decode(byte[] raw) {
+    return decode(ByteBuffer.wrap(raw));
+  }
+
+  /**
+   * Decompresses and parses a block of primitive OSM elements.
+   * <p>
+   * Decompression happens immediately so {@code raw} can be released once this returns, but elements are parsed lazily
+   * as the result is iterated.
+   */
   public static Iterable<OsmElement> decode(ByteBuffer raw) {
-    try {
-      return new PbfDecoder(raw);
-    } catch (IOException e) {
-      throw new UncheckedIOException("Unable to process PBF blob", e);
-    }
+    return new PbfDecoder(readBlobContent(raw));
   }
 
   /** Decompresses and parses a header block of an OSM input file. */
   public static OsmHeader decodeHeader(byte[] raw) {
     try {
-      byte[] data = readBlobContent(raw);
+      byte[] data = readBlobContent(ByteBuffer.wrap(raw));
       Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
       Osmformat.HeaderBBox bbox = header.getBbox();
       Envelope bounds = new Envelope(
@@ -140,215 +269,274 @@ public class PbfDecoder implements Iterable<OsmElement> {
         header.getOsmosisReplicationSequenceNumber(),
         header.getOsmosisReplicationBaseUrl()
       );
-    } catch (IOException e) {
+    } catch (InvalidProtocolBufferException e) {
       throw new UncheckedIOException("Unable to decode PBF header", e);
     }
   }
 
   @Override
   public Iterator<OsmElement> iterator() {
-    return Iterators.concat(new PrimitiveGroupIterator());
+    return new ElementIterator();
   }
 
-  private Map<String, Object> buildTags(int num, IntUnaryOperator key, IntUnaryOperator value) {
-    if (num > 0) {
-      Map<String, Object> tags = HashMap.newHashMap(num);
-      for (int i = 0; i < num; i++) {
-        String k = fieldDecoder.decodeString(key.applyAsInt(i));
-        String v = fieldDecoder.decodeString(value.applyAsInt(i));
-        tags.put(k, v);
-      }
-      return tags;
-    }
-    return Collections.emptyMap();
+  private double decodeLatitude(long raw) {
+    return (latOffset + granularity * raw) / 1e9;
   }
 
-  private OsmElement.Info parseInfo(Osmformat.Info info) {
-    return info == null ? null : new OsmElement.Info(
-      info.getChangeset(),
-      info.getTimestamp(),
-      info.getUid(),
-      info.getVersion(),
-      fieldDecoder.decodeString(info.getUserSid())
-    );
+  private double decodeLongitude(long raw) {
+    return (lonOffset + granularity * raw) / 1e9;
   }
 
-  private class PrimitiveGroupIterator implements Iterator<Iterator<OsmElement>> {
-    private int i = 0;
-
-    @Override
-    public boolean hasNext() {
-      return i < block.getPrimitivegroupCount();
+  private Map<String, Object> buildTags(Cursor keys, Cursor values) {
+    if (!keys.hasRemaining()) {
+      return Collections.emptyMap();
     }
-
-    @Override
-    public Iterator<OsmElement> next() {
-      if (!hasNext()) {
-        throw new NoSuchElementException();
-      }
-      try {
-        var primitiveGroup = Osmformat.PrimitiveGroup.parseFrom(block.getPrimitivegroup(i++));
-        return Iterators.concat(
-          new DenseNodeIterator(primitiveGroup.getDense()),
-          new NodeIterator(primitiveGroup.getNodesList()),
-          new WayIterator(primitiveGroup.getWaysList()),
-          new RelationIterator(primitiveGroup.getRelationsList())
-        );
-      } catch (InvalidProtocolBufferException e) {
-        throw new FileFormatException("Unable to parse primitive group", e);
-      }
+    int[] keyValues = new int[keys.countVarints() * 2];
+    for (int i = 0; i < keyValues.length; i += 2) {
+      keyValues[i] = keys.readVarint32();
+      keyValues[i + 1] = values.readVarint32();
     }
+    return new LazyTags(strings, keyValues);
   }
 
-  private class NodeIterator implements Iterator<OsmElement.Node> {
-
-    private final List<Osmformat.Node> nodes;
-    int i;
-
-    public NodeIterator(List<Osmformat.Node> nodes) {
-      this.nodes = nodes;
-      i = 0;
-    }
-
-    @Override
-    public boolean hasNext() {
-      return i < nodes.size();
+  private OsmElement.Info parseInfo(Cursor info) {
+    int version = -1;
+    long timestamp = 0;
+    long changeset = 0;
+    int uid = 0;
+    int userSid = 0;
+    while (info.hasRemaining()) {
+      int tag = info.readTag();
+      switch (tag) {
+        case INFO_VERSION -> version = info.readVarint32();
+        case INFO_TIMESTAMP -> timestamp = info.readVarint();
+        case INFO_CHANGESET -> changeset = info.readVarint();
+        case INFO_UID -> uid = info.readVarint32();
+        case INFO_USER_SID -> userSid = info.readVarint32();
+        default -> info.skip(tag);
+      }
     }
+    return new OsmElement.Info(changeset, timestamp, uid, version, strings.get(userSid));
+  }
 
-    @Override
-    public OsmElement.Node next() {
-      if (!hasNext()) {
-        throw new NoSuchElementException();
+  private OsmElement.Node parseNode(Cursor node) {
+    long id = 0;
+    long lat = 0;
+    long lon = 0;
+    Cursor keys = EMPTY;
+    Cursor values = EMPTY;
+    Cursor info = EMPTY;
+    while (node.hasRemaining()) {
+      int tag = node.readTag();
+      switch (tag) {
+        case ELEMENT_ID -> id = node.readSignedVarint();
+        case ELEMENT_KEYS -> keys = node.readMessage();
+        case ELEMENT_VALS -> values = node.readMessage();
+        case ELEMENT_INFO -> info = node.readMessage();
+        case NODE_LAT -> lat = node.readSignedVarint();
+        case NODE_LON -> lon = node.readSignedVarint();
+        default -> node.skip(tag);
       }
-      var node = nodes.get(i++);
-      return new OsmElement.Node(
-        node.getId(),
-        buildTags(node.getKeysCount(), node::getKeys, node::getVals),
-        fieldDecoder.decodeLatitude(node.getLat()),
-        fieldDecoder.decodeLongitude(node.getLon()),
-        parseInfo(node.getInfo())
-      );
     }
+    return new OsmElement.Node(
+      id,
+      buildTags(keys, values),
+      decodeLatitude(lat),
+      decodeLongitude(lon),
+      parseInfo(info)
+    );
   }
 
-  private class RelationIterator implements Iterator<OsmElement.Relation> {
-
-    private final List<Osmformat.Relation> relations;
-    int i;
-
-    public RelationIterator(List<Osmformat.Relation> relations) {
-      this.relations = relations;
-      i = 0;
+  private OsmElement.Way parseWay(Cursor way) {
+    long id = 0;
+    Cursor keys = EMPTY;
+    Cursor values = EMPTY;
+    Cursor info = EMPTY;
+    Cursor refs = EMPTY;
+    while (way.hasRemaining()) {
+      int tag = way.readTag();
+      switch (tag) {
+        case ELEMENT_ID -> id = way.readVarint();
+        case ELEMENT_KEYS -> keys = way.readMessage();
+        case ELEMENT_VALS -> values = way.readMessage();
+        case ELEMENT_INFO -> info = way.readMessage();
+        case WAY_REFS -> refs = way.readMessage();
+        default -> way.skip(tag);
+      }
     }
-
-    @Override
-    public boolean hasNext() {
-      return i < relations.size();
+    // Build up the list of way nodes for the way. The node ids are
+    // delta encoded meaning that each id is stored as a delta against
+    // the previous one.
+    int numNodes = refs.countVarints();
+    LongArrayList wayNodesList = new LongArrayList(numNodes);
+    wayNodesList.elementsCount = numNodes;
+    long[] wayNodes = wayNodesList.buffer;
+    long nodeId = 0;
+    for (int j = 0; j < numNodes; j++) {
+      nodeId += refs.readSignedVarint();
+      wayNodes[j] = nodeId;
     }
+    return new OsmElement.Way(
+      id,
+      buildTags(keys, values),
+      wayNodesList,
+      parseInfo(info)
+    );
+  }
 
-    @Override
-    public OsmElement.Relation next() {
-      if (!hasNext()) {
-        throw new NoSuchElementException();
-      }
-      var relation = relations.get(i++);
-      int num = relation.getMemidsCount();
-
-      List<OsmElement.Relation.Member> members = new ArrayList<>(num);
-
-      long memberId = 0;
-      for (int j = 0; j < num; j++) {
-        memberId += relation.getMemids(j);
-        var memberType = switch (relation.getTypes(j)) {
-          case WAY -> OsmElement.Type.WAY;
-          case NODE -> OsmElement.Type.NODE;
-          case RELATION -> OsmElement.Type.RELATION;
-        };
-        members.add(new OsmElement.Relation.Member(
-          memberType,
-          memberId,
-          fieldDecoder.decodeString(relation.getRolesSid(j))
-        ));
+  private OsmElement.Relation parseRelation(Cursor relation) {
+    long id = 0;
+    Cursor keys = EMPTY;
+    Cursor values = EMPTY;
+    Cursor info = EMPTY;
+    Cursor roles = EMPTY;
+    Cursor memberIds = EMPTY;
+    Cursor types = EMPTY;
+    while (relation.hasRemaining()) {
+      int tag = relation.readTag();
+      switch (tag) {
+        case ELEMENT_ID -> id = relation.readVarint();
+        case ELEMENT_KEYS -> keys = relation.readMessage();
+        case ELEMENT_VALS -> values = relation.readMessage();
+        case ELEMENT_INFO -> info = relation.readMessage();
+        case RELATION_ROLES_SID -> roles = relation.readMessage();
+        case RELATION_MEMIDS -> memberIds = relation.readMessage();
+        case RELATION_TYPES -> types = relation.readMessage();
+        default -> relation.skip(tag);
       }
-
-      // Add the bound object to the results.
-      return new OsmElement.Relation(
-        relation.getId(),
-        buildTags(relation.getKeysCount(), relation::getKeys, relation::getVals),
-        members,
-        parseInfo(relation.getInfo())
-      );
     }
+    int num = memberIds.countVarints();
+    List<OsmElement.Relation.Member> members = new ArrayList<>(num);
+    long memberId = 0;
+    for (int j = 0; j < num; j++) {
+      memberId += memberIds.readSignedVarint();
+      var memberType = switch (types.readVarint32()) {
+        case 0 -> OsmElement.Type.NODE;
+        case 1 -> OsmElement.Type.WAY;
+        case 2 -> OsmElement.Type.RELATION;
+        default -> throw new FileFormatException("Unrecognized relation member type in relation " + id);
+      };
+      members.add(new OsmElement.Relation.Member(memberType, memberId, strings.get(roles.readVarint32())));
+    }
+    return new OsmElement.Relation(
+      id,
+      buildTags(keys, values),
+      members,
+      parseInfo(info)
+    );
   }
 
-  private class WayIterator implements Iterator<OsmElement.Way> {
-
-    private final List<Osmformat.Way> ways;
-    int i;
-
-    public WayIterator(List<Osmformat.Way> ways) {
-      this.ways = ways;
-      i = 0;
+  /** Iterates through elements in each primitive group of the block, in the order they appear. */
+  private class ElementIterator implements Iterator<OsmElement> {
+
+    private int groupIndex = 0;
+    private Cursor group = EMPTY;
+    private DenseNodeIterator dense = null;
+    private OsmElement next = null;
+
+    private OsmElement computeNext() {
+      while (true) {
+        if (dense != null) {
+          if (dense.hasNext()) {
+            return dense.next();
+          }
+          dense = null;
+        }
+        if (group.hasRemaining()) {
+          int tag = group.readTag();
+          switch (tag) {
+            case GROUP_NODES -> {
+              return parseNode(group.readMessage());
+            }
+            case GROUP_DENSE -> dense = new DenseNodeIterator(group.readMessage());
+            case GROUP_WAYS -> {
+              return parseWay(group.readMessage());
+            }
+            case GROUP_RELATIONS -> {
+              return parseRelation(group.readMessage());
+            }
+            default -> group.skip(tag);
+          }
+        } else if (groupIndex < groupStarts.length) {
+          group = new Cursor(data, groupStarts[groupIndex], groupEnds[groupIndex]);
+          groupIndex++;
+        } else {
+          return null;
+        }
+      }
     }
 
     @Override
     public boolean hasNext() {
-      return i < ways.size();
+      if (next == null) {
+        next = computeNext();
+      }
+      return next != null;
     }
 
     @Override
-    public OsmElement.Way next() {
+    public OsmElement next() {
       if (!hasNext()) {
         throw new NoSuchElementException();
       }
-      var way = ways.get(i++);
-      // Build up the list of way nodes for the way. The node ids are
-      // delta encoded meaning that each id is stored as a delta against
-      // the previous one.
-      long nodeId = 0;
-      int numNodes = way.getRefsCount();
-      LongArrayList wayNodesList = new LongArrayList(numNodes);
-      wayNodesList.elementsCount = numNodes;
-      long[] wayNodes = wayNodesList.buffer;
-      for (int j = 0; j < numNodes; j++) {
-        long nodeIdOffset = way.getRefs(j);
-        nodeId += nodeIdOffset;
-        wayNodes[j] = nodeId;
-      }
-
-      return new OsmElement.Way(
-        way.getId(),
-        buildTags(way.getKeysCount(), way::getKeys, way::getVals),
-        wayNodesList,
-        parseInfo(way.getInfo())
-      );
+      OsmElement result = next;
+      next = null;
+      return result;
     }
   }
 
+  /** Iterates through nodes in a {@code DenseNodes} message where each field is packed and delta-encoded. */
   private class DenseNodeIterator implements Iterator<OsmElement.Node> {
 
-    final Osmformat.DenseNodes nodes;
-    final Osmformat.DenseInfo denseInfo;
+    private Cursor ids = EMPTY;
+    private Cursor lats = EMPTY;
+    private Cursor lons = EMPTY;
+    private Cursor keysVals = EMPTY;
+    private Cursor versions = EMPTY;
+    private Cursor timestamps = EMPTY;
+    private Cursor changesets = EMPTY;
+    private Cursor uids = EMPTY;
+    private Cursor userSids = EMPTY;
+    private final IntArrayList tagBuffer = new IntArrayList();
     long nodeId = 0;
     long latitude = 0;
     long longitude = 0;
-    int i = 0;
-    int kvIndex = 0;
     // info
     long timestamp = 0;
     long changeset = 0;
     int uid = 0;
     int userSid = 0;
 
-    public DenseNodeIterator(Osmformat.DenseNodes nodes) {
-      this.nodes = nodes;
-      this.denseInfo = nodes.getDenseinfo();
+    DenseNodeIterator(Cursor nodes) {
+      while (nodes.hasRemaining()) {
+        int tag = nodes.readTag();
+        switch (tag) {
+          case DENSE_ID -> ids = nodes.readMessage();
+          case DENSE_LAT -> lats = nodes.readMessage();
+          case DENSE_LON -> lons = nodes.readMessage();
+          case DENSE_KEYS_VALS -> keysVals = nodes.readMessage();
+          case DENSE_INFO -> {
+            var info = nodes.readMessage();
+            while (info.hasRemaining()) {
+              int infoTag = info.readTag();
+              switch (infoTag) {
+                case DENSE_INFO_VERSION -> versions = info.readMessage();
+                case DENSE_INFO_TIMESTAMP -> timestamps = info.readMessage();
+                case DENSE_INFO_CHANGESET -> changesets = info.readMessage();
+                case DENSE_INFO_UID -> uids = info.readMessage();
+                case DENSE_INFO_USER_SID -> userSids = info.readMessage();
+                default -> info.skip(infoTag);
+              }
+            }
+          }
+          default -> nodes.skip(tag);
+        }
+      }
     }
 
-
     @Override
     public boolean hasNext() {
-      return i < nodes.getIdCount();
+      return ids.hasRemaining();
     }
 
     @Override
@@ -357,53 +545,237 @@ public class PbfDecoder implements Iterable<OsmElement> {
         throw new NoSuchElementException();
       }
       // Delta decode node fields.
-      nodeId += nodes.getId(i);
-      latitude += nodes.getLat(i);
-      longitude += nodes.getLon(i);
-      int version = 0;
-
-      if (denseInfo != null) {
-        version = denseInfo.getVersionCount() > i ? denseInfo.getVersion(i) : 0;
-        timestamp += denseInfo.getTimestampCount() > i ? denseInfo.getTimestamp(i) : 0;
-        changeset += denseInfo.getChangesetCount() > i ? denseInfo.getChangeset(i) : 0;
-        uid += denseInfo.getUidCount() > i ? denseInfo.getUid(i) : 0;
-        userSid += denseInfo.getUserSidCount() > i ? denseInfo.getUserSid(i) : 0;
-      }
-
-      i++;
+      nodeId += ids.readSignedVarint();
+      latitude += lats.readSignedVarint();
+      longitude += lons.readSignedVarint();
+      int version = versions.hasRemaining() ? versions.readVarint32() : 0;
+      timestamp += timestamps.hasRemaining() ? timestamps.readSignedVarint() : 0;
+      changeset += changesets.hasRemaining() ? changesets.readSignedVarint() : 0;
+      uid += uids.hasRemaining() ? (int) uids.readSignedVarint() : 0;
+      userSid += userSids.hasRemaining() ? (int) userSids.readSignedVarint() : 0;
 
       // Build the tags. The key and value string indexes are sequential
       // in the same PBF array. Each set of tags is delimited by an index
       // with a value of 0.
-      Map<String, Object> tags = null;
-      while (kvIndex < nodes.getKeysValsCount()) {
-        int keyIndex = nodes.getKeysVals(kvIndex++);
+      tagBuffer.elementsCount = 0;
+      while (keysVals.hasRemaining()) {
+        int keyIndex = keysVals.readVarint32();
         if (keyIndex == 0) {
           break;
         }
-        int valueIndex = nodes.getKeysVals(kvIndex++);
-
-        if (tags == null) {
-          // divide by 2 as key&value, multiply by 2 because of the better approximation
-          tags = HashMap.newHashMap(Math.max(3, 2 * (nodes.getKeysValsCount() / 2) / nodes.getKeysValsCount()));
-        }
-
-        tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+        tagBuffer.add(keyIndex, keysVals.readVarint32());
       }
 
       return new OsmElement.Node(
         nodeId,
-        tags == null ? Collections.emptyMap() : tags,
-        ((double) latitude) / 10000000,
-        ((double) longitude) / 10000000,
-        denseInfo == null ? null : new OsmElement.Info(
+        tagBuffer.isEmpty() ? Collections.emptyMap() : new LazyTags(strings, tagBuffer.toArray()),
+        decodeLatitude(latitude),
+        decodeLongitude(longitude),
+        new OsmElement.Info(
           changeset,
           timestamp,
           uid,
           version,
-          fieldDecoder.decodeString(userSid)
+          strings.get(userSid)
         )
       );
     }
   }
+
+  /** Reads protobuf wire-format values from a range of a byte array. */
+  private static final class Cursor {
+
+    private final byte[] buffer;
+    private final int limit;
+    private int pos;
+
+    Cursor(byte[] buffer, int pos, int limit) {
+      this.buffer = buffer;
+      this.pos = pos;
+      this.limit = limit;
+    }
+
+    boolean hasRemaining() {
+      return pos < limit;
+    }
+
+    int readTag() {
+      return readVarint32();
+    }
+
+    long readVarint() {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = buffer[pos++];
+        result |= (long) (b & 0x7f) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+      throw new FileFormatException("Malformed varint in PBF block");
+    }
+
+    int readVarint32() {
+      return (int) readVarint();
+    }
+
+    long readSignedVarint() {
+      long value = readVarint();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    /** Returns a cursor over the next length-delimited value and advances past it. */
+    Cursor readMessage() {
+      int length = readVarint32();
+      int end = pos + length;
+      if (length < 0 || end > limit) {
+        throw new FileFormatException("Length-delimited field extends past the end of its message");
+      }
+      Cursor result = new Cursor(buffer, pos, end);
+      pos = end;
+      return result;
+    }
+
+    /** Returns the number of varints remaining in a packed repeated field without consuming them. */
+    int countVarints() {
+      int count = 0;
+      for (int i = pos; i < limit; i++) {
+        if (buffer[i] >= 0) {
+          count++;
+        }
+      }
+      return count;
+    }
+
+    void skip(int tag) {
+      switch (tag & 7) {
+        case VARINT -> readVarint();
+        case FIXED64 -> pos += 8;
+        case LENGTH_DELIMITED -> readMessage();
+        case FIXED32 -> pos += 4;
+        default -> throw new FileFormatException("Unsupported protobuf wire type " + (tag & 7));
+      }
+    }
+  }
+
+  /**
+   * Strings from the string table of a block, each decoded to a {@link String} the first time it gets used.
+   * <p>
+   * Holds a copy of just the string table bytes so that tags retained after iterating through a block don't keep the
+   * rest of the decompressed block in memory.
+   */
+  private static final class StringTable {
+
+    private final byte[] bytes;
+    private final int[] starts;
+    private final int[] lengths;
+    // racy caching is fine here since strings are immutable and safely published
+    private final String[] decoded;
+
+    StringTable(Cursor table) {
+      int offset = table.pos;
+      bytes = new byte[table.limit - offset];
+      System.arraycopy(table.buffer, offset, bytes, 0, bytes.length);
+      IntArrayList startList = new IntArrayList();
+      IntArrayList lengthList = new IntArrayList();
+      while (table.hasRemaining()) {
+        int tag = table.readTag();
+        if (tag == STRINGTABLE_S) {
+          var string = table.readMessage();
+          startList.add(string.pos - offset);
+          lengthList.add(string.limit - string.pos);
+        } else {
+          table.skip(tag);
+        }
+      }
+      starts = startList.toArray();
+      lengths = lengthList.toArray();
+      decoded = new String[starts.length];
+    }
+
+    String get(int index) {
+      String result = decoded[index];
+      if (result == null) {
+        result = new String(bytes, starts[index], lengths[index], StandardCharsets.UTF_8);
+        decoded[index] = result;
+      }
+      return result;
+    }
+  }
+
+  /**
+   * A tag map that looks up keys and values by their index in the block's string table, and only copies them into a
+   * {@link HashMap} when iterated over or modified.
+   */
+  private static final class LazyTags extends AbstractMap<String, Object> {
+
+    private final StringTable strings;
+    // alternating key and value string indexes
+    private final int[] keyValues;
+    private Map<String, Object> materialized = null;
+
+    LazyTags(StringTable strings, int[] keyValues) {
+      this.strings = strings;
+      this.keyValues = keyValues;
+    }
+
+    private Map<String, Object> materialize() {
+      if (materialized == null) {
+        Map<String, Object> result = HashMap.newHashMap(keyValues.length / 2);
+        for (int i = 0; i < keyValues.length; i += 2) {
+          result.put(strings.get(keyValues[i]), strings.get(keyValues[i + 1]));
+        }
+        materialized = result;
+      }
+      return materialized;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < keyValues.length; i += 2) {
+        if (strings.get(keyValues[i]).equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public Object get(Object key) {
+      if (materialized != null) {
+        return materialized.get(key);
+      }
+      int index = indexOf(key);
+      return index < 0 ? null : strings.get(keyValues[index + 1]);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return materialized != null ? materialized.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+      return materialized != null ? materialized.size() : keyValues.length / 2;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return size() == 0;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+      return materialize().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+      return materialize().remove(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return materialize().entrySet();
+    }
+  }
 }
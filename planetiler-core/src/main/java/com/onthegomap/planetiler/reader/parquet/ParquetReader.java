@@ -6,6 +6,7 @@ import com.onthegomap.planetiler.FeatureCollector;
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.collection.FeatureGroup;
 import com.onthegomap.planetiler.collection.SortableFeature;
+import com.onthegomap.planetiler.collection.SortableFeatureBlock;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.reader.SourceFeature;
 import com.onthegomap.planetiler.render.FeatureRenderer;
@@ -117,11 +118,14 @@ public class ParquetReader {
 
     var pipeline = WorkerPipeline.start(sourceName, stats)
       .readFromTiny("blocks", inputBlocks)
-      .<SortableFeature>addWorker("process", processThreads, (prev, next) -> {
+      .<SortableFeatureBlock>addWorker("process", processThreads, (prev, next) -> {
         var blocks = blocksRead.counterForThread();
         var elements = featuresRead.counterForThread();
         var featureCollectors = new FeatureCollector.Factory(config, stats);
-        try (FeatureRenderer renderer = newFeatureRenderer(writer, config, next)) {
+        try (
+          var blockWriter = SortableFeatureBlock.writer(next);
+          FeatureRenderer renderer = newFeatureRenderer(writer, config, blockWriter)
+        ) {
           var consumer = distributor.forThread(sourceFeature -> {
             FeatureCollector features = featureCollectors.get(sourceFeature);
             try {
@@ -146,13 +150,13 @@ public class ParquetReader {
           consumer.close();
         }
       })
-      .addBuffer("write_queue", 50_000, 1_000)
+      .addBuffer("write_queue", Math.max(10, processThreads * 2))
       .sinkTo("write", writeThreads, prev -> {
         var features = featuresWritten.counterForThread();
-        try (var threadLocalWriter = writer.writerForThread()) {
-          for (var item : prev) {
-            features.inc();
-            threadLocalWriter.accept(item);
+        try (var threadLocalWriter = writer.blockWriterForThread()) {
+          for (var block : prev) {
+            features.incBy(block.size());
+            threadLocalWriter.accept(block);
           }
         }
       });
@@ -212,12 +216,12 @@ public class ParquetReader {
   private FeatureRenderer newFeatureRenderer(FeatureGroup writer, PlanetilerConfig config,
     Consumer<SortableFeature> next) {
     @SuppressWarnings("java:S2095") // closed by FeatureRenderer
-    var encoder = writer.newRenderedFeatureEncoder();
+    var featureWriter = writer.newRenderedFeatureWriter(next);
     return new FeatureRenderer(
       config,
-      rendered -> next.accept(encoder.apply(rendered)),
+      featureWriter,
       stats,
-      encoder
+      featureWriter
     );
   }
 }
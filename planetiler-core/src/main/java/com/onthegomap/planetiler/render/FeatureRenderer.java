@@ -68,6 +68,9 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
       LOGGER.warn("Empty geometry {}", feature);
       return;
     }
+    // with --simplify-progressive, simplify each zoom from the one above it instead of from the original geometry
+    ProgressiveSimplifier simplifier = config.simplifyProgressive() && !(geometry instanceof Puntal) &&
+      !feature.hasLinearRanges() ? new ProgressiveSimplifier(geometry) : null;
     // geometries are filtered by min size after processing before they are emitted, but do cheap pre-filtering here
     // to avoid processing features that won't emit anything
     for (int zoom = feature.getMaxZoom(); zoom >= feature.getMinZoom(); zoom--) {
@@ -77,7 +80,7 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
         double length = simpleLineLength * scale * 256;
         for (var range : feature.getLinearRangesAtZoom(zoom)) {
           if (minSize > 0 && length * (range.end() - range.start()) > minSize) {
-            accept(zoom, range.geom(), range.attrs(), feature);
+            accept(zoom, range.geom(), range.attrs(), feature, null);
           }
         }
       } else {
@@ -92,19 +95,25 @@ public class FeatureRenderer implements Consumer<FeatureCollector.Feature>, Clos
             continue;
           }
         }
-        accept(zoom, geometry, feature.getAttrsAtZoom(zoom), feature);
+        accept(zoom, geometry, feature.getAttrsAtZoom(zoom), feature, simplifier);
       }
     }
   }
 
-  private void accept(int zoom, Geometry geom, Map<String, Object> attrs, FeatureCollector.Feature feature) {
+  private void accept(int zoom, Geometry geom, Map<String, Object> attrs, FeatureCollector.Feature feature,
+    ProgressiveSimplifier simplifier) {
     double scale = 1 << zoom;
-    geom = AffineTransformation.scaleInstance(scale, scale).transform(geom);
     GeometryPipeline pipeline = feature.getScaledGeometryTransformAtZoom(zoom);
-    if (pipeline != null) {
-      geom = pipeline.apply(geom);
-    } else if (!(geom instanceof Puntal)) {
-      geom = GeometryPipeline.defaultSimplify(feature).apply(zoom).apply(geom);
+    if (pipeline == null && simplifier != null) {
+      geom = simplifier.simplify(zoom, feature.getPixelToleranceAtZoom(zoom) / 256d,
+        feature.getSimplifyMethodAtZoom(zoom));
+    } else {
+      geom = AffineTransformation.scaleInstance(scale, scale).transform(geom);
+      if (pipeline != null) {
+        geom = pipeline.apply(geom);
+      } else if (!(geom instanceof Puntal)) {
+        geom = GeometryPipeline.defaultSimplify(feature).apply(zoom).apply(geom);
+      }
     }
 
     renderGeometry(zoom, geom, attrs, feature);
@@ -0,0 +1,72 @@
+package com.onthegomap.planetiler.render;
+
+import com.onthegomap.planetiler.geo.DouglasPeuckerSimplifier;
+import com.onthegomap.planetiler.geo.SimplifyMethod;
+import com.onthegomap.planetiler.geo.VWSimplifier;
+import javax.annotation.concurrent.NotThreadSafe;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+/**
+ * Simplifies a line or polygon at each zoom level, from the highest zoom down, starting from the geometry that was
+ * already simplified at the previous zoom instead of from the full-resolution original.
+ * <p>
+ * Douglas Peucker leaves every input vertex within {@code tolerance} of the output. Simplifying an already simplified
+ * geometry adds the two errors, so this tracks how far the last output may be from the original, scales it down to the
+ * next zoom, and uses only the remaining part of the tolerance at that zoom. Every original vertex stays within the
+ * same pixel tolerance as simplifying from scratch, but lower zooms only have to look at the handful of vertices that
+ * survived the zoom above instead of the hundreds of thousands in a long coastline or admin boundary.
+ * <p>
+ * Visvalingam Whyatt tolerances limit area instead of displacement so errors don't add up the same way, and zooms that
+ * use it are simplified from the original geometry.
+ */
+@NotThreadSafe
+final class ProgressiveSimplifier {
+
+  private final Geometry original;
+  private Geometry previous = null;
+  private int previousZoom;
+  private double previousError;
+
+  ProgressiveSimplifier(Geometry original) {
+    this.original = original;
+  }
+
+  /**
+   * Returns the original geometry scaled to world coordinates at {@code zoom} and simplified using {@code method} with
+   * {@code tolerance} (in units of tiles at that zoom).
+   * <p>
+   * Zooms must be requested in descending order to reuse the result from the previous one.
+   */
+  Geometry simplify(int zoom, double tolerance, SimplifyMethod method) {
+    if (method != SimplifyMethod.RETAIN_IMPORTANT_POINTS) {
+      Geometry scaled = scale(original, 1 << zoom);
+      var simplifier = new VWSimplifier().setTolerance(tolerance * tolerance);
+      if (method == SimplifyMethod.RETAIN_WEIGHTED_EFFECTIVE_AREAS) {
+        simplifier.setWeight(0.7);
+      }
+      return simplifier.transform(scaled);
+    }
+    if (previous != null && previousZoom > zoom) {
+      double shrink = 1d / (1 << (previousZoom - zoom));
+      double carriedError = previousError * shrink;
+      double remaining = tolerance - carriedError;
+      if (remaining >= 0) {
+        return remember(zoom, tolerance, DouglasPeuckerSimplifier.simplify(scale(previous, shrink), remaining));
+      }
+    }
+    // first zoom, or the tolerance shrank too much to build on the previous one
+    return remember(zoom, tolerance, DouglasPeuckerSimplifier.simplify(scale(original, 1 << zoom), tolerance));
+  }
+
+  private Geometry remember(int zoom, double error, Geometry result) {
+    previous = result;
+    previousZoom = zoom;
+    previousError = error;
+    return result;
+  }
+
+  private static Geometry scale(Geometry geom, double scale) {
+    return AffineTransformation.scaleInstance(scale, scale).transform(geom);
+  }
+}
@@ -41,6 +41,79 @@ public class ByteBufferUtil {
     Madvise.posixMadvise(buffer, value.value);
   }
 
+  /**
+   * Give a hint to the system how a range of a mapped memory segment will be used so the OS can optimize performance.
+   *
+   * @param buffer The mapped memory segment.
+   * @param offset Byte offset of the start of the range within {@code buffer}
+   * @param length Number of bytes in the range
+   * @param value  The advice to use.
+   * @throws IOException If an error occurs or madvise not available on this system
+   */
+  public static void posixMadvise(ByteBuffer buffer, int offset, int length, Madvice value) throws IOException {
+    Madvise.posixMadvise(buffer, offset, length, value.value);
+  }
+
+  /**
+   * Hint to the system that bytes at {@code byteOffsets} in a file mapped using {@link #mapFile} will be read soon so
+   * it can start loading them from disk in the background.
+   * <p>
+   * Offsets within a page of each other are merged into a single {@link Madvice#WILLNEED} call, so callers should pass
+   * offsets in ascending order when possible. Negative offsets, and offsets that fall past the end of the file or in
+   * unmapped segments are ignored.
+   *
+   * @param segments     The mapped segments returned from {@link #mapFile}
+   * @param segmentBits  log2 of the number of bytes in each segment
+   * @param byteOffsets  Byte offsets of the start of each item that will be read
+   * @param count        Number of items from {@code byteOffsets} to use
+   * @param bytesPerItem Number of bytes that will be read at each offset
+   * @throws IOException If an error occurs or madvise not available on this system
+   */
+  public static void willNeed(ByteBuffer[] segments, int segmentBits, long[] byteOffsets, int count,
+    int bytesPerItem) throws IOException {
+    long gap = Math.max(Madvise.pageSize, bytesPerItem);
+    long start = -1;
+    long end = -1;
+    for (int i = 0; i < count; i++) {
+      long offset = byteOffsets[i];
+      if (offset < 0) {
+        continue;
+      }
+      if (start >= 0 && offset >= start && offset <= end + gap) {
+        end = Math.max(end, offset + bytesPerItem);
+      } else {
+        if (start >= 0) {
+          willNeed(segments, segmentBits, start, end);
+        }
+        start = offset;
+        end = offset + bytesPerItem;
+      }
+    }
+    if (start >= 0) {
+      willNeed(segments, segmentBits, start, end);
+    }
+  }
+
+  private static void willNeed(ByteBuffer[] segments, int segmentBits, long start, long end) throws IOException {
+    long segmentBytes = 1L << segmentBits;
+    while (start < end) {
+      int idx = (int) (start >>> segmentBits);
+      if (idx >= segments.length) {
+        return;
+      }
+      long segmentEnd = Math.min(end, (idx + 1L) * segmentBytes);
+      ByteBuffer segment = segments[idx];
+      if (segment != null) {
+        int offset = (int) (start & (segmentBytes - 1));
+        int length = (int) Math.min(segmentEnd - start, segment.capacity() - (long) offset);
+        if (length > 0) {
+          posixMadvise(segment, offset, length, Madvice.WILLNEED);
+        }
+      }
+      start = segmentEnd;
+    }
+  }
+
   /**
    * Attempt to force-unmap a list of memory-mapped file segments, so it can safely be deleted.
    * <p>
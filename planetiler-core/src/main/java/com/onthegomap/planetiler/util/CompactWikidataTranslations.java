@@ -0,0 +1,390 @@
+package com.onthegomap.planetiler.util;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.ObjectIntHashMap;
+import com.carrotsearch.hppc.ObjectLongHashMap;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.onthegomap.planetiler.collection.Hppc;
+import com.onthegomap.planetiler.stats.Timer;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Wikidata name translations stored in a compact binary file that is memory-mapped instead of loaded onto the heap.
+ * <p>
+ * {@link #load(Path, Predicate)} converts the JSON cache that {@link Wikidata#fetch} writes into a {@code .bin} file
+ * next to it the first time it runs, or whenever the JSON is newer. The file contains:
+ * <ul>
+ * <li>a pool of every distinct translated name, each stored once as a 2-byte length and UTF-8 bytes</li>
+ * <li>QIDs sorted ascending, with the index of the first translation for each one</li>
+ * <li>translations, each packed into a long with the language ID in the upper 16 bits and the offset of the name in
+ * the pool in the lower 48 bits</li>
+ * <li>the list of language codes</li>
+ * </ul>
+ * Lookups binary search the QIDs and only decode names for languages that {@code careAboutLanguage} accepts, so the
+ * only allocations are for the translations that get returned.
+ */
+public class CompactWikidataTranslations implements Translations.TranslationProvider {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CompactWikidataTranslations.class);
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final int MAGIC = 0x50545744; // "PTWD"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 64;
+  private static final int SEGMENT_BITS = 30;
+  private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+  // names are stored with a 2-byte length, and this keeps them from straddling a mapped segment
+  private static final int MAX_NAME_BYTES = Short.MAX_VALUE;
+  private static final long POOL_OFFSET_MASK = (1L << 48) - 1;
+  private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_NAME_BYTES]);
+
+  private final MappedByteBuffer[] segments;
+  private final long numItems;
+  private final long qidsOffset;
+  private final long startsOffset;
+  private final long translationsOffset;
+  private final String[] languages;
+  private final boolean[] wantLanguage;
+
+  private CompactWikidataTranslations(MappedByteBuffer[] segments, Predicate<String> careAboutLanguage) {
+    this.segments = segments;
+    this.numItems = getLong(16);
+    this.qidsOffset = getLong(24);
+    this.startsOffset = getLong(32);
+    this.translationsOffset = getLong(40);
+    long languagesOffset = getLong(48);
+    int numLanguages = (int) getLong(languagesOffset);
+    this.languages = new String[numLanguages];
+    this.wantLanguage = new boolean[numLanguages];
+    for (int i = 0; i < numLanguages; i++) {
+      languages[i] = readName(HEADER_BYTES + getLong(languagesOffset + (i + 1L) * Long.BYTES));
+      wantLanguage[i] = careAboutLanguage.test(languages[i]);
+    }
+  }
+
+  /**
+   * Returns translations from the compact version of the JSON wikidata cache at {@code jsonPath}, converting it first
+   * if the compact file is missing or older than the JSON.
+   *
+   * @param jsonPath          cache file written by {@link Wikidata#fetch}
+   * @param careAboutLanguage returns {@code true} for language codes to return translations for
+   * @return the translations, or a provider that never returns any translations if {@code jsonPath} does not exist
+   * @throws UncheckedIOException if an error occurs reading or writing the files
+   */
+  public static Translations.TranslationProvider load(Path jsonPath, Predicate<String> careAboutLanguage) {
+    if (!Files.exists(jsonPath)) {
+      LOGGER.info("no wikidata translations found, run with --fetch-wikidata to download");
+      return tags -> null;
+    }
+    Path compactPath = jsonPath.resolveSibling(jsonPath.getFileName() + ".bin");
+    try {
+      if (!Files.exists(compactPath) ||
+        Files.getLastModifiedTime(compactPath).compareTo(Files.getLastModifiedTime(jsonPath)) < 0 ||
+        !isCurrentVersion(compactPath)) {
+        convert(jsonPath, compactPath);
+      }
+      return open(compactPath, careAboutLanguage);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Memory-maps a file written by {@link #convert(Path, Path)}. */
+  public static CompactWikidataTranslations open(Path path, Predicate<String> careAboutLanguage) throws IOException {
+    if (!isCurrentVersion(path)) {
+      throw new IOException(path + " is not a compact wikidata translations file version " + VERSION);
+    }
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var segments = ByteBufferUtil.mapFile(channel, channel.size(), 1L << SEGMENT_BITS, false);
+      var result = new CompactWikidataTranslations(segments, careAboutLanguage);
+      LOGGER.info("mapped {} wikidata translations from {}", result.numItems, path.toAbsolutePath());
+      return result;
+    }
+  }
+
+  private static boolean isCurrentVersion(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(8);
+      return channel.read(header, 0) == 8 && header.getInt(0) == MAGIC && header.getInt(4) == VERSION;
+    }
+  }
+
+  /**
+   * Converts the JSON wikidata cache at {@code jsonPath} where each line is an array of QID, map from language to name,
+   * and optional update time, into the compact format at {@code output}.
+   * <p>
+   * When the same QID appears more than once, later names replace earlier ones in the same language.
+   */
+  public static void convert(Path jsonPath, Path output) throws IOException {
+    Timer timer = Timer.start();
+    Path tmp = output.resolveSibling(output.getFileName() + ".tmp");
+    ObjectIntHashMap<String> languageIds = Hppc.newObjectIntHashMap();
+    LongArrayList languageOffsets = new LongArrayList();
+    ObjectLongHashMap<String> nameOffsets = new ObjectLongHashMap<>();
+    LongArrayList lineQids = new LongArrayList();
+    IntArrayList lineStarts = new IntArrayList();
+    LongArrayList lineTranslations = new LongArrayList();
+    try (
+      BufferedReader reader = Files.newBufferedReader(jsonPath);
+      var channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE)
+    ) {
+      var out = new PoolWriter(channel);
+      out.write(new byte[HEADER_BYTES]);
+
+      // 1) write the pool of distinct names while reading
+      String line;
+      while ((line = reader.readLine()) != null) {
+        JsonNode node = objectMapper.readTree(line);
+        lineQids.add(Long.parseLong(node.get(0).asText()));
+        lineStarts.add(lineTranslations.size());
+        var fields = node.get(1).fields();
+        while (fields.hasNext()) {
+          var entry = fields.next();
+          String language = entry.getKey();
+          String nameString = entry.getValue().asText();
+          byte[] name = nameString.getBytes(StandardCharsets.UTF_8);
+          byte[] languageBytes = language.getBytes(StandardCharsets.UTF_8);
+          if (name.length > MAX_NAME_BYTES || languageBytes.length > MAX_NAME_BYTES) {
+            continue;
+          }
+          int languageId = languageIds.getOrDefault(language, -1);
+          if (languageId < 0) {
+            if (languageOffsets.size() > 0xFFFF) {
+              continue;
+            }
+            languageIds.put(language, languageId = languageOffsets.size());
+            languageOffsets.add(out.writeName(languageBytes));
+          }
+          long nameOffset = nameOffsets.getOrDefault(nameString, -1);
+          if (nameOffset < 0) {
+            nameOffset = out.writeName(name);
+            nameOffsets.put(nameString, nameOffset);
+          }
+          lineTranslations.add(((long) languageId << 48) | nameOffset);
+        }
+      }
+      lineStarts.add(lineTranslations.size());
+      nameOffsets.release();
+
+      // 2) then QIDs sorted ascending, merging duplicates so later lines win
+      // sort by QID then line number packed into a long to avoid boxing
+      int numLines = lineQids.size();
+      long[] sortKeys = new long[numLines];
+      for (int i = 0; i < numLines; i++) {
+        long qid = lineQids.get(i);
+        if (qid <= 0 || qid > Integer.MAX_VALUE) {
+          throw new IOException("Unexpected wikidata QID " + qid + " in " + jsonPath);
+        }
+        sortKeys[i] = (qid << 32) | i;
+      }
+      Arrays.sort(sortKeys);
+      int[] order = new int[numLines];
+      for (int i = 0; i < numLines; i++) {
+        order[i] = (int) sortKeys[i];
+      }
+      LongArrayList qids = new LongArrayList(numLines);
+      LongArrayList starts = new LongArrayList(numLines + 1);
+      LongArrayList translations = new LongArrayList(lineTranslations.size());
+      for (int i = 0; i < numLines;) {
+        long qid = lineQids.get(order[i]);
+        int end = i;
+        while (end < numLines && lineQids.get(order[end]) == qid) {
+          end++;
+        }
+        qids.add(qid);
+        starts.add(translations.size());
+        if (end - i == 1) {
+          for (int j = lineStarts.get(order[i]); j < lineStarts.get(order[i] + 1); j++) {
+            translations.add(lineTranslations.get(j));
+          }
+        } else {
+          Map<Integer, Long> merged = new HashMap<>();
+          for (int k = i; k < end; k++) {
+            for (int j = lineStarts.get(order[k]); j < lineStarts.get(order[k] + 1); j++) {
+              long translation = lineTranslations.get(j);
+              merged.put((int) (translation >>> 48), translation);
+            }
+          }
+          merged.values().stream().sorted().forEach(translations::add);
+        }
+        i = end;
+      }
+      starts.add(translations.size());
+
+      long qidsOffset = out.align();
+      for (int i = 0; i < qids.size(); i++) {
+        out.writeLong(qids.get(i));
+      }
+      long startsOffset = out.position();
+      for (int i = 0; i < starts.size(); i++) {
+        out.writeLong(starts.get(i));
+      }
+      long translationsOffset = out.position();
+      for (int i = 0; i < translations.size(); i++) {
+        out.writeLong(translations.get(i));
+      }
+      long languagesOffset = out.position();
+      out.writeLong(languageOffsets.size());
+      for (int i = 0; i < languageOffsets.size(); i++) {
+        out.writeLong(languageOffsets.get(i));
+      }
+      out.flush();
+
+      ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putLong(translations.size())
+        .putLong(qids.size())
+        .putLong(qidsOffset)
+        .putLong(startsOffset)
+        .putLong(translationsOffset)
+        .putLong(languagesOffset)
+        .flip();
+      channel.write(header, 0);
+      LOGGER.info("converted {} wikidata translations for {} items in {} languages from {} to {} in {}",
+        translations.size(), qids.size(), languageOffsets.size(), jsonPath, output, timer.stop());
+    }
+    Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** Returns the translations for {@code qid} in languages this provider cares about, or null if there are none. */
+  public Map<String, String> get(long qid) {
+    long lo = 0;
+    long hi = numItems - 1;
+    while (lo <= hi) {
+      long mid = (lo + hi) >>> 1;
+      long value = getLong(qidsOffset + mid * Long.BYTES);
+      if (value < qid) {
+        lo = mid + 1;
+      } else if (value > qid) {
+        hi = mid - 1;
+      } else {
+        return decode(mid);
+      }
+    }
+    return null;
+  }
+
+  private Map<String, String> decode(long item) {
+    long start = getLong(startsOffset + item * Long.BYTES);
+    long end = getLong(startsOffset + (item + 1) * Long.BYTES);
+    Map<String, String> result = null;
+    for (long i = start; i < end; i++) {
+      long translation = getLong(translationsOffset + i * Long.BYTES);
+      int language = (int) (translation >>> 48);
+      if (wantLanguage[language]) {
+        if (result == null) {
+          result = new HashMap<>();
+        }
+        result.put(languages[language], readName(HEADER_BYTES + (translation & POOL_OFFSET_MASK)));
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Map<String, String> getNameTranslations(Map<String, Object> tags) {
+    long qid = parseQid(tags.get("wikidata"));
+    return qid > 0 ? get(qid) : null;
+  }
+
+  /** Returns the numeric ID from a wikidata ID like {@code Q123}, or 0 if it is not valid, without allocating. */
+  static long parseQid(Object qid) {
+    if (!(qid instanceof String string) || string.length() < 2 || string.length() > 19 || string.charAt(0) != 'Q') {
+      return 0;
+    }
+    long result = 0;
+    for (int i = 1; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c < '0' || c > '9') {
+        return 0;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  private ByteBuffer segment(long offset) {
+    return segments[(int) (offset >>> SEGMENT_BITS)];
+  }
+
+  private long getLong(long offset) {
+    return segment(offset).getLong((int) (offset & SEGMENT_MASK));
+  }
+
+  private int getInt(long offset) {
+    return segment(offset).getInt((int) (offset & SEGMENT_MASK));
+  }
+
+  private short getShort(long offset) {
+    return segment(offset).getShort((int) (offset & SEGMENT_MASK));
+  }
+
+  private String readName(long offset) {
+    int length = getShort(offset) & 0xFFFF;
+    byte[] scratch = SCRATCH.get();
+    segment(offset).get((int) ((offset + Short.BYTES) & SEGMENT_MASK), scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.UTF_8);
+  }
+
+  /** Writes big-endian values to a file while tracking the offset so that nothing straddles a mapped segment. */
+  private static class PoolWriter extends DataOutputStream {
+
+    private final long[] position;
+
+    PoolWriter(FileChannel channel) {
+      this(channel, new long[1]);
+    }
+
+    private PoolWriter(FileChannel channel, long[] position) {
+      super(new CountingOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16),
+        bytes -> position[0] += bytes));
+      this.position = position;
+    }
+
+    long position() {
+      return position[0];
+    }
+
+    /** Pads to the next multiple of 8 bytes so longs never cross a segment boundary, and returns the new offset. */
+    long align() throws IOException {
+      while (position() % Long.BYTES != 0) {
+        write(0);
+      }
+      return position();
+    }
+
+    /** Writes {@code name} with its length, and returns its offset relative to the start of the name pool. */
+    long writeName(byte[] name) throws IOException {
+      long segmentRemaining = (1L << SEGMENT_BITS) - (position() & SEGMENT_MASK);
+      if (Short.BYTES + name.length > segmentRemaining) {
+        write(new byte[(int) segmentRemaining]);
+      }
+      long offset = position() - HEADER_BYTES;
+      writeShort(name.length);
+      write(name);
+      return offset;
+    }
+  }
+}
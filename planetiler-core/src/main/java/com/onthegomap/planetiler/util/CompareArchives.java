@@ -6,6 +6,7 @@ import com.onthegomap.planetiler.archive.Tile;
 import com.onthegomap.planetiler.archive.TileArchiveConfig;
 import com.onthegomap.planetiler.archive.TileArchives;
 import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.archive.TileCompressor;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.GeometryException;
@@ -123,6 +124,8 @@ public class CompareArchives {
   private Result getResult(PlanetilerConfig config) {
     final TileCompression compression2;
     final TileCompression compression1;
+    final byte[] dictionary1;
+    final byte[] dictionary2;
     compareArchive("format", input1.format(), input2.format());
     try (
       var reader1 = TileArchives.newReader(input1, config);
@@ -138,6 +141,8 @@ public class CompareArchives {
       }
       compression1 = metadata1 == null ? TileCompression.UNKNOWN : metadata1.tileCompression();
       compression2 = metadata2 == null ? TileCompression.UNKNOWN : metadata2.tileCompression();
+      dictionary1 = TileCompressor.dictionary(metadata1);
+      dictionary2 = TileCompressor.dictionary(metadata2);
       if (!compareArchive("tile compression", compression1, compression2)) {
         LOGGER.warn("Will compare decompressed tile contents instead");
       }
@@ -179,7 +184,7 @@ public class CompareArchives {
                 next.accept(new Diff(tile1, tile2));
                 tile1 = supplier1.get();
                 tile2 = supplier2.get();
-              } else if (order.encode(tile1.coord()) < order.encode(tile2.coord())) {
+              } else if (order.encodeLong(tile1.coord()) < order.encodeLong(tile2.coord())) {
                 next.accept(new Diff(tile1, null));
                 tile1 = supplier1.get();
               } else {
@@ -209,13 +214,13 @@ public class CompareArchives {
               diffs.incrementAndGet();
               compareTiles(
                 a.coord(),
-                decode(decompress(a.bytes(), compression1)),
-                decode(decompress(b.bytes(), compression2))
+                decode(decompress(a.bytes(), compression1, dictionary1)),
+                decode(decompress(b.bytes(), compression2, dictionary2))
               );
             }
           } else { // different compression
-            var decompressed1 = decompress(a.bytes(), compression1);
-            var decompressed2 = decompress(b.bytes(), compression2);
+            var decompressed1 = decompress(a.bytes(), compression1, dictionary1);
+            var decompressed2 = decompress(b.bytes(), compression2, dictionary2);
             if (!Arrays.equals(decompressed1, decompressed2)) {
               recordTileDiff(a.coord(), "different decompressed contents");
               diffs.incrementAndGet();
@@ -425,12 +430,11 @@ public class CompareArchives {
     return true;
   }
 
-  private byte[] decompress(byte[] bytes, TileCompression tileCompression) throws IOException {
-    return switch (tileCompression) {
-      case GZIP -> Gzip.gunzip(bytes);
-      case NONE -> bytes;
-      case UNKNOWN -> throw new FatalComparisonFailure("Unknown compression");
-    };
+  private byte[] decompress(byte[] bytes, TileCompression tileCompression, byte[] dictionary) throws IOException {
+    if (tileCompression == TileCompression.UNKNOWN) {
+      throw new FatalComparisonFailure("Unknown compression");
+    }
+    return TileCompressor.decompress(bytes, tileCompression, dictionary);
   }
 
   private VectorTileProto.Tile decode(byte[] decompressedTile) throws IOException {
@@ -3,14 +3,21 @@ package com.onthegomap.planetiler.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 public class Gzip {
 
   public static byte[] gzip(byte[] in) throws IOException {
+    return gzip(in, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /** Compresses {@code in} using deflate {@code level} from 0-9 or {@link Deflater#DEFAULT_COMPRESSION}. */
+  public static byte[] gzip(byte[] in, int level) throws IOException {
     var bos = new ByteArrayOutputStream(in.length);
-    try (var gzipOS = new GZIPOutputStream(bos)) {
+    try (var gzipOS = new LeveledGzipOutputStream(bos, level)) {
       gzipOS.write(in);
     }
     return bos.toByteArray();
@@ -21,4 +28,12 @@ public class Gzip {
       return is.readAllBytes();
     }
   }
+
+  private static class LeveledGzipOutputStream extends GZIPOutputStream {
+
+    LeveledGzipOutputStream(OutputStream out, int level) throws IOException {
+      super(out);
+      def.setLevel(level);
+    }
+  }
 }
@@ -125,4 +125,59 @@ public class Hilbert {
 
     return ((interleave(i1) << 1) | interleave(i0)) >>> (32 - 2 * level);
   }
+
+  /**
+   * Returns the hilbert index at {@code level} for an x/y coordinate, supporting levels deeper than 15 where the index
+   * no longer fits in a signed int.
+   */
+  public static long hilbertXYToLongIndex(int level, int x, int y) {
+    if (level <= 16) {
+      return Integer.toUnsignedLong(hilbertXYToIndex(level, x, y));
+    }
+    long result = 0;
+    for (long s = 1L << (level - 1); s > 0; s >>>= 1) {
+      int rx = (x & s) > 0 ? 1 : 0;
+      int ry = (y & s) > 0 ? 1 : 0;
+      result += s * s * ((3 * rx) ^ ry);
+      if (ry == 0) {
+        if (rx == 1) {
+          x = (int) (s - 1 - x);
+          y = (int) (s - 1 - y);
+        }
+        int t = x;
+        x = y;
+        y = t;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Same as {@link #hilbertPositionToXY(int, int)} but supports levels deeper than 15 where the position no longer fits
+   * in a signed int.
+   */
+  public static long hilbertPositionToXY(int level, long pos) {
+    if (level <= 16) {
+      return hilbertPositionToXY(level, (int) pos);
+    }
+    long x = 0, y = 0;
+    long t = pos;
+    for (long s = 1; s < (1L << level); s <<= 1) {
+      long rx = 1 & (t >>> 1);
+      long ry = 1 & (t ^ rx);
+      if (ry == 0) {
+        if (rx == 1) {
+          x = s - 1 - x;
+          y = s - 1 - y;
+        }
+        long tmp = x;
+        x = y;
+        y = tmp;
+      }
+      x += s * rx;
+      y += s * ry;
+      t >>>= 2;
+    }
+    return (x << 32) | y;
+  }
 }
@@ -70,14 +70,26 @@ class Madvise {
    * @see <a href="https://man7.org/linux/man-pages/man2/madvise.2.html">madvise(2) — Linux manual page</a>
    */
   static void posixMadvise(ByteBuffer buffer, int value) throws IOException {
+    posixMadvise(buffer, 0, buffer.capacity(), value);
+  }
+
+  /**
+   * Give a hint to the system how a range of a mapped memory segment will be used so the OS can optimize performance.
+   *
+   * @param buffer The mapped memory segment.
+   * @param offset Byte offset of the start of the range within {@code buffer}
+   * @param length Number of bytes in the range
+   * @param value  The advice to use.
+   * @throws IOException If an error occurs or madvise not available on this system
+   */
+  static void posixMadvise(ByteBuffer buffer, int offset, int length, int value) throws IOException {
     if (pageSize <= 0) {
       throw new IOException("madvise failed, pagesize not available");
     }
-    final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer);
-    final int capacity = buffer.capacity();
+    final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer) + offset;
 
     long alignedAddress = alignedAddress(address);
-    long alignedSize = alignedSize(alignedAddress, capacity);
+    long alignedSize = alignedSize(alignedAddress, (int) (address - alignedAddress) + length);
     try {
       int val = nativeC.posix_madvise(alignedAddress, alignedSize, value);
       if (val != 0) {
@@ -0,0 +1,255 @@
+package com.onthegomap.planetiler.util;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_ABSENT;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.onthegomap.planetiler.archive.ReadableTileArchive;
+import com.onthegomap.planetiler.archive.TileArchiveConfig;
+import com.onthegomap.planetiler.archive.TileArchiveMetadata;
+import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.archive.TileCompressor;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.files.ReadableFilesArchive;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.pmtiles.ReadablePmtiles;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import javax.annotation.concurrent.ThreadSafe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A minimal HTTP server for previewing a tile archive locally while developing a profile.
+ * <p>
+ * Serves {@code /{z}/{x}/{y}.pbf} with the compressed bytes exactly as they are stored in the archive, with a
+ * {@code Content-Encoding} header that matches the archive's tile compression, and a TileJSON document built from the
+ * archive metadata at {@code /tiles.json}. Each request runs on its own virtual thread, and recently requested tiles
+ * are kept in an in-memory LRU cache bounded by total bytes.
+ * <p>
+ * HTTP clients can't decode tiles compressed with a zstd dictionary from {@link TileCompressor#ZSTD_DICTIONARY_KEY},
+ * so those get decompressed before they are cached and sent without a {@code Content-Encoding} header.
+ * <p>
+ * To run:
+ *
+ * <pre>{@code
+ * java -jar planetiler.jar serve --input=output.pmtiles [--port=8080] [--bind=localhost] [--cache_mb=256]
+ * }</pre>
+ */
+@ThreadSafe
+public class TileServer implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TileServer.class);
+  private static final Pattern TILE_PATH = Pattern.compile("^/(\\d{1,2})/(\\d{1,9})/(\\d{1,9})\\.(pbf|mvt)$");
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+    .registerModules(new Jdk8Module())
+    .setSerializationInclusion(NON_ABSENT);
+  // approximate per-entry overhead so that cached missing tiles still count against the limit
+  private static final int CACHE_ENTRY_OVERHEAD_BYTES = 64;
+  private static final byte[] MISSING = new byte[0];
+
+  private final ReadableTileArchive archive;
+  private final TileArchiveMetadata metadata;
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Cache<Long, byte[]> cache;
+  private final boolean threadSafeReads;
+  private final String contentEncoding;
+  private final String contentType;
+  private final byte[] zstdDictionary;
+
+  /**
+   * Creates a server for {@code archive} bound to {@code address} that caches up to {@code cacheBytes} of tile data.
+   * Call {@link #start()} to begin accepting requests.
+   */
+  public TileServer(ReadableTileArchive archive, InetSocketAddress address, long cacheBytes) throws IOException {
+    this.archive = archive;
+    this.metadata = archive.metadata();
+    this.threadSafeReads = archive instanceof ReadablePmtiles || archive instanceof ReadableFilesArchive;
+    this.zstdDictionary = metadata != null && metadata.tileCompression() == TileCompression.ZSTD ?
+      TileCompressor.dictionary(metadata) : null;
+    this.contentEncoding = metadata == null || metadata.tileCompression() == null || zstdDictionary != null ? null :
+      switch (metadata.tileCompression()) {
+        case GZIP -> "gzip";
+        case ZSTD -> "zstd";
+        case BROTLI -> "br";
+        case NONE, UNKNOWN -> null;
+      };
+    this.contentType = metadata != null && TileArchiveMetadata.MVT_FORMAT.equals(metadata.format()) ?
+      "application/vnd.mapbox-vector-tile" : "application/octet-stream";
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(cacheBytes)
+      .weigher((Long key, byte[] value) -> value.length + CACHE_ENTRY_OVERHEAD_BYTES)
+      .build();
+    this.server = HttpServer.create(address, 0);
+    this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  public static void main(String... args) throws IOException, InterruptedException {
+    var arguments = Arguments.fromArgsOrConfigFile(args);
+    var config = PlanetilerConfig.from(arguments);
+    var input = TileArchiveConfig.from(arguments.getString("input", "archive to serve"));
+    var bind = arguments.getString("bind", "address to listen on", "localhost");
+    int port = arguments.getInteger("port", "port to listen on", 8080);
+    long cacheBytes = arguments.getLong("cache_mb", "megabytes of tile data to cache in memory", 256) << 20;
+    try (
+      var archive = TileArchives.newReader(input, config);
+      var server = new TileServer(archive, new InetSocketAddress(bind, port), cacheBytes)
+    ) {
+      server.start();
+      LOGGER.info("Serving {} at http://{}:{}/tiles.json", input.uri(), bind, server.port());
+      Thread.currentThread().join();
+    }
+  }
+
+  /** Starts accepting requests in the background. */
+  public TileServer start() {
+    server.start();
+    return this;
+  }
+
+  /** Returns the port this server is listening on, useful when it was created with port 0. */
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      String path = exchange.getRequestURI().getPath();
+      if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+        send(exchange, 405, null, null);
+      } else if ("/".equals(path) || "/tiles.json".equals(path)) {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        send(exchange, 200, tileJson(exchange).getBytes(StandardCharsets.UTF_8), null);
+      } else {
+        var matcher = TILE_PATH.matcher(path);
+        if (!matcher.matches()) {
+          send(exchange, 404, null, null);
+          return;
+        }
+        int z = Integer.parseInt(matcher.group(1));
+        int x = Integer.parseInt(matcher.group(2));
+        int y = Integer.parseInt(matcher.group(3));
+        if (z > PlanetilerConfig.MAX_MAXZOOM || x >= (1 << z) || y >= (1 << z)) {
+          send(exchange, 404, null, null);
+          return;
+        }
+        byte[] data = getTile(x, y, z);
+        if (data == MISSING) {
+          send(exchange, 204, null, null);
+        } else {
+          exchange.getResponseHeaders().set("Content-Type", contentType);
+          send(exchange, 200, data, contentEncoding);
+        }
+      }
+    } catch (RuntimeException e) {
+      LOGGER.warn("Error handling {}", exchange.getRequestURI(), e);
+    }
+  }
+
+  private byte[] getTile(int x, int y, int z) {
+    long key = TileCoord.encodeLong(x, y, z);
+    byte[] result = cache.getIfPresent(key);
+    if (result == null) {
+      if (threadSafeReads) {
+        result = archive.getTile(x, y, z);
+      } else {
+        synchronized (archive) {
+          result = archive.getTile(x, y, z);
+        }
+      }
+      if (result == null) {
+        result = MISSING;
+      } else if (zstdDictionary != null) {
+        try {
+          result = TileCompressor.decompress(result, TileCompression.ZSTD, zstdDictionary);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body, String encoding) throws IOException {
+    var headers = exchange.getResponseHeaders();
+    headers.set("Access-Control-Allow-Origin", "*");
+    if (encoding != null) {
+      headers.set("Content-Encoding", encoding);
+    }
+    boolean head = "HEAD".equals(exchange.getRequestMethod());
+    if (body == null || body.length == 0 || head) {
+      exchange.sendResponseHeaders(status, -1);
+    } else {
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+  private String tileJson(HttpExchange exchange) {
+    String host = exchange.getRequestHeaders().getFirst("Host");
+    if (host == null) {
+      host = "localhost:" + port();
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("tilejson", "3.0.0");
+    result.put("tiles", List.of("http://" + host + "/{z}/{x}/{y}.pbf"));
+    if (metadata != null) {
+      putIfNotNull(result, "name", metadata.name());
+      putIfNotNull(result, "description", metadata.description());
+      putIfNotNull(result, "attribution", metadata.attribution());
+      putIfNotNull(result, "version", metadata.version());
+      putIfNotNull(result, "minzoom", metadata.minzoom());
+      putIfNotNull(result, "maxzoom", metadata.maxzoom());
+      var bounds = metadata.bounds();
+      if (bounds != null) {
+        result.put("bounds", List.of(bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY()));
+      }
+      var center = metadata.center();
+      if (center != null) {
+        result.put("center", Double.isNaN(center.getZ()) ? List.of(center.x, center.y) :
+          List.of(center.x, center.y, center.getZ()));
+      }
+      putIfNotNull(result, "vector_layers", metadata.vectorLayers());
+    }
+    try {
+      return MAPPER.writeValueAsString(result);
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void putIfNotNull(Map<String, Object> map, String key, Object value) {
+    if (value != null) {
+      map.put(key, value);
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.close();
+  }
+}
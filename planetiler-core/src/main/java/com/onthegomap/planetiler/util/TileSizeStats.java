@@ -12,6 +12,8 @@ import com.onthegomap.planetiler.VectorTile;
 import com.onthegomap.planetiler.archive.Tile;
 import com.onthegomap.planetiler.archive.TileArchiveConfig;
 import com.onthegomap.planetiler.archive.TileArchives;
+import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.archive.TileCompressor;
 import com.onthegomap.planetiler.config.Arguments;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.TileCoord;
@@ -23,6 +25,7 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -37,8 +40,8 @@ import vector_tile.VectorTileProto;
 /**
  * Utilities for extracting tile and layer size summaries from encoded vector tiles.
  * <p>
- * {@link #computeTileStats(VectorTileProto.Tile)} extracts statistics about each layer in a tile and
- * {@link TsvSerializer} formats them as row of a TSV file to write.
+ * {@link #computeTileStats(byte[])} extracts statistics about each layer in an encoded tile and {@link TsvSerializer}
+ * formats them as row of a TSV file to write.
  * <p>
  * To generate a tsv.gz file with stats for each tile, you can add {@code --output-layerstats} option when generating an
  * archive, or run the following an existing archive:
@@ -52,6 +55,20 @@ import vector_tile.VectorTileProto;
 public class TileSizeStats {
 
   private static final int BATCH_SIZE = 1_000;
+  // protobuf field numbers and wire types from vector_tile.proto
+  private static final int WIRE_TYPE_VARINT = 0;
+  private static final int WIRE_TYPE_FIXED64 = 1;
+  private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+  private static final int WIRE_TYPE_FIXED32 = 5;
+  private static final int TILE_LAYERS = 3;
+  private static final int LAYER_NAME = 1;
+  private static final int LAYER_FEATURES = 2;
+  private static final int LAYER_KEYS = 3;
+  private static final int LAYER_VALUES = 4;
+  private static final int FEATURE_GEOMETRY = 4;
+  // geometry commands from the vector tile spec
+  private static final int MOVE_TO = 1;
+  private static final int CLOSE_PATH = 7;
   private static final CsvSchema SCHEMA = new CsvMapper()
     .schemaFor(OutputRow.class)
     .withoutHeader()
@@ -63,7 +80,7 @@ public class TileSizeStats {
     return archive.resolveSibling(archive.getFileName() + ".layerstats.tsv.gz");
   }
 
-  public static void main(String... args) {
+  public static void main(String... args) throws IOException {
     var arguments = Arguments.fromArgsOrConfigFile(args);
     var config = PlanetilerConfig.from(arguments);
     var stats = Stats.inMemory();
@@ -78,6 +95,14 @@ public class TileSizeStats {
     var output = localPath == null ?
       arguments.file("output", "output file") :
       arguments.file("output", "output file", getDefaultLayerstatsPath(localPath));
+    TileCompression compression;
+    byte[] dictionary;
+    try (var reader = TileArchives.newReader(input, config)) {
+      var metadata = reader.metadata();
+      compression = metadata == null || metadata.tileCompression() == TileCompression.UNKNOWN ? TileCompression.GZIP :
+        metadata.tileCompression();
+      dictionary = TileCompressor.dictionary(metadata);
+    }
     var counter = new AtomicLong(0);
     var timer = stats.startStage("tilestats");
     record Batch(List<Tile> tiles, CompletableFuture<List<String>> stats) {}
@@ -114,7 +139,6 @@ public class TileSizeStats {
       .sinkTo("process", config.featureProcessThreads(), prev -> {
         byte[] zipped = null;
         byte[] unzipped;
-        VectorTileProto.Tile decoded;
         List<LayerStats> layerStats = null;
 
         var updater = tileStats.threadLocalUpdater();
@@ -124,9 +148,8 @@ public class TileSizeStats {
           for (var tile : batch.tiles) {
             if (!Arrays.equals(zipped, tile.bytes())) {
               zipped = tile.bytes();
-              unzipped = Gzip.gunzip(tile.bytes());
-              decoded = VectorTileProto.Tile.parseFrom(unzipped);
-              layerStats = computeTileStats(decoded);
+              unzipped = TileCompressor.decompress(tile.bytes(), compression, dictionary);
+              layerStats = computeTileStats(unzipped);
             }
             updater.recordTile(tile.coord(), zipped.length, layerStats);
             lines.addAll(layerStatsSerializer.formatOutputRows(tile.coord(), zipped.length, layerStats));
@@ -166,7 +189,7 @@ public class TileSizeStats {
     // is called billions of times from multiple threads, so we generate a new instance per serializing thread
     ObjectWriter writer = new CsvMapper().writer(SCHEMA);
     return (tileCoord, archivedBytes, layerStats) -> {
-      int hilbert = tileCoord.hilbertEncoded();
+      long hilbert = tileCoord.hilbertEncodedLong();
       List<String> result = new ArrayList<>(layerStats.size());
       for (var layer : layerStats) {
         result.add(writer.writeValueAsString(new OutputRow(
@@ -238,6 +261,148 @@ public class TileSizeStats {
     return result;
   }
 
+  /**
+   * Returns the size and statistics for each layer in an uncompressed {@code encoded} vector tile by scanning the
+   * protobuf wire format directly, without parsing it into a {@link VectorTileProto.Tile}.
+   */
+  public static List<LayerStats> computeTileStats(byte[] encoded) {
+    if (encoded == null) {
+      return List.of();
+    }
+    List<LayerStats> result = new ArrayList<>();
+    var tile = new ProtoReader(encoded, 0, encoded.length);
+    while (tile.hasNext()) {
+      int tag = tile.readTag();
+      if (tag == ((TILE_LAYERS << 3) | WIRE_TYPE_LENGTH_DELIMITED)) {
+        int length = tile.readLength();
+        result.add(computeLayerStats(encoded, tile.pos, length));
+        tile.pos += length;
+      } else {
+        tile.skipField(tag);
+      }
+    }
+    result.sort(Comparator.naturalOrder());
+    return result;
+  }
+
+  private static LayerStats computeLayerStats(byte[] encoded, int offset, int length) {
+    var layer = new ProtoReader(encoded, offset, offset + length);
+    String name = "";
+    int features = 0, geometries = 0, attrSize = 0, keys = 0, values = 0;
+    while (layer.hasNext()) {
+      int tag = layer.readTag();
+      if ((tag & 0x7) != WIRE_TYPE_LENGTH_DELIMITED) {
+        layer.skipField(tag);
+        continue;
+      }
+      int fieldLength = layer.readLength();
+      switch (tag >>> 3) {
+        case LAYER_NAME -> name = new String(encoded, layer.pos, fieldLength, StandardCharsets.UTF_8);
+        case LAYER_FEATURES -> {
+          features++;
+          geometries += countGeometries(encoded, layer.pos, layer.pos + fieldLength);
+        }
+        case LAYER_KEYS -> {
+          keys++;
+          attrSize += fieldLength;
+        }
+        case LAYER_VALUES -> {
+          values++;
+          attrSize += fieldLength;
+        }
+        default -> {
+          // ignore unknown fields
+        }
+      }
+      layer.pos += fieldLength;
+    }
+    return new LayerStats(name, length, features, geometries, attrSize, keys, values);
+  }
+
+  /** Same as {@link VectorTile#countGeometries(VectorTileProto.Tile.Feature)} but over an encoded feature. */
+  private static int countGeometries(byte[] encoded, int start, int end) {
+    int result = 0;
+    var feature = new ProtoReader(encoded, start, end);
+    while (feature.hasNext()) {
+      int tag = feature.readTag();
+      if (tag != ((FEATURE_GEOMETRY << 3) | WIRE_TYPE_LENGTH_DELIMITED)) {
+        feature.skipField(tag);
+        continue;
+      }
+      var commands = new ProtoReader(encoded, feature.pos, feature.pos + feature.readLength());
+      feature.pos = commands.end;
+      while (commands.hasNext()) {
+        int commandInt = (int) commands.readVarint();
+        int command = commandInt & ((1 << 3) - 1);
+        int count = commandInt >> 3;
+        if (command == MOVE_TO) {
+          result += count;
+        }
+        if (command != CLOSE_PATH) {
+          for (int i = 0; i < count * 2 && commands.hasNext(); i++) {
+            commands.readVarint();
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /** Minimal cursor over a range of protobuf wire-format bytes. */
+  private static class ProtoReader {
+
+    private final byte[] buf;
+    private final int end;
+    private int pos;
+
+    ProtoReader(byte[] buf, int start, int end) {
+      this.buf = buf;
+      this.pos = start;
+      this.end = end;
+    }
+
+    boolean hasNext() {
+      return pos < end;
+    }
+
+    long readVarint() {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (pos >= end) {
+          throw new IllegalArgumentException("Truncated varint at " + pos);
+        }
+        byte b = buf[pos++];
+        result |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return result;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint at " + pos);
+    }
+
+    int readTag() {
+      return (int) readVarint();
+    }
+
+    int readLength() {
+      long length = readVarint();
+      if (length < 0 || pos + length > end) {
+        throw new IllegalArgumentException("Invalid length " + length + " at " + pos);
+      }
+      return (int) length;
+    }
+
+    void skipField(int tag) {
+      switch (tag & 0x7) {
+        case WIRE_TYPE_VARINT -> readVarint();
+        case WIRE_TYPE_FIXED64 -> pos += 8;
+        case WIRE_TYPE_LENGTH_DELIMITED -> pos += readLength();
+        case WIRE_TYPE_FIXED32 -> pos += 4;
+        default -> throw new IllegalArgumentException("Unsupported wire type " + (tag & 0x7) + " at " + pos);
+      }
+    }
+  }
+
   @FunctionalInterface
   public interface TsvSerializer {
 
@@ -266,7 +431,7 @@ public class TileSizeStats {
     int z,
     int x,
     int y,
-    int hilbert,
+    long hilbert,
     int archivedTileBytes,
     String layer,
     int layerBytes,
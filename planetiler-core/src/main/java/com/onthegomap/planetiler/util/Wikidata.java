@@ -16,6 +16,7 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.collection.Hppc;
 import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.reader.osm.OsmBlockIndex;
 import com.onthegomap.planetiler.reader.osm.OsmBlockSource;
 import com.onthegomap.planetiler.reader.osm.OsmElement;
 import com.onthegomap.planetiler.reader.osm.OsmInputFile;
@@ -140,8 +141,10 @@ public class Wikidata {
       fetcher.loadExisting(oldMappings);
 
       String pbfParsePrefix = "pbfwikidata";
+      // elements without tags can't have a wikidata tag, so skip blocks without any tags when possible
       var pipeline = WorkerPipeline.start("wikidata", stats)
-        .fromGenerator("pbf", osmSource::forEachBlock)
+        .<OsmBlockSource.Block>fromGenerator("pbf",
+          next -> osmSource.forEachMatchingBlock(OsmBlockIndex.Entry::hasTags, next))
         .addBuffer("pbf_blocks", processThreads * 2)
         .addWorker("filter", processThreads, fetcher::filter)
         .addBuffer("fetch_queue", 1_000_000, 100)
@@ -2132,6 +2132,8 @@ class PlanetilerTests {
     "--compress-temp",
     "--osm-parse-node-bounds",
     "--output-format=pmtiles",
+    "--output-format=pmtiles --tile-write-out-of-order --process-threads=2 --threads=4",
+    "--skip-mbtiles-index-creation --tile-write-out-of-order --process-threads=2 --threads=4",
     "--output-format=csv",
     "--output-format=tsv",
     "--output-format=proto",
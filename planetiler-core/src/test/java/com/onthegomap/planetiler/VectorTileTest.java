@@ -31,6 +31,7 @@ import com.google.common.primitives.Ints;
 import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.GeometryException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
@@ -704,6 +705,46 @@ class VectorTileTest {
     assertArrayEquals(VectorTile.encodeGeometry(rectangle(min, max)).commands(), geom.commands());
   }
 
+  @Test
+  void testEncodeMatchesProtobufSerialization() {
+    Map<String, Object> attrs = new HashMap<>();
+    attrs.put("string", "value");
+    attrs.put("unicode", "caf\u00e9 \u6771\u4eac \ud83d\ude00");
+    attrs.put("empty", "");
+    attrs.put("int", 1);
+    attrs.put("negative_int", -123_456);
+    attrs.put("long", Long.MAX_VALUE);
+    attrs.put("negative_long", Long.MIN_VALUE);
+    attrs.put("float", 1.5f);
+    attrs.put("double", -2.25d);
+    attrs.put("nan", Double.NaN);
+    attrs.put("true", true);
+    attrs.put("false", false);
+    attrs.put("other", List.of(1, 2));
+    attrs.put("long_key_" + "x".repeat(200), "y".repeat(300));
+    VectorTile tile = new VectorTile()
+      .addLayerFeatures("points", List.of(
+        new VectorTile.Feature("points", 1, VectorTile.encodeGeometry(newPoint(3, 6)), attrs),
+        new VectorTile.Feature("points", VectorTile.NO_FEATURE_ID, VectorTile.encodeGeometry(newPoint(1, 2)), Map.of()),
+        new VectorTile.Feature("points", -1, VectorTile.encodeGeometry(newPoint(-5, 300)), Map.of("string", "value"))
+      ))
+      .addLayerFeatures("lines", List.of(
+        new VectorTile.Feature("lines", Long.MAX_VALUE,
+          VectorTile.encodeGeometry(newLineString(IntStream.range(0, 2_000).mapToDouble(i -> i % 300).toArray())),
+          Map.of("name", "line"))
+      ))
+      .addLayerFeatures("polygons", List.of(
+        new VectorTile.Feature("polygons", 3, VectorTile.encodeGeometry(rectangle(0, 256)), Map.of("a", 1L)),
+        new VectorTile.Feature("polygons", 4, VectorTile.encodeFill(4), Map.of("a", 2L))
+      ));
+
+    var hex = HexFormat.of();
+    assertEquals(hex.formatHex(tile.toProto().toByteArray()), hex.formatHex(tile.encode()));
+    // buffer is reused between calls
+    assertEquals(hex.formatHex(tile.toProto().toByteArray()), hex.formatHex(tile.encode()));
+    assertEquals(0, new VectorTile().encode().length);
+  }
+
   private static void assertArrayEquals(int[] a, int[] b) {
     assertEquals(
       IntStream.of(a).boxed().toList(),
@@ -0,0 +1,99 @@
+package com.onthegomap.planetiler.archive;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.Profile;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class TileCompressorTest {
+
+  private static final byte[] DATA = "abcdefabcdefabcdefabcdef".repeat(10).getBytes(UTF_8);
+
+  private static TileArchiveMetadata newMetadata() {
+    return new TileArchiveMetadata(new Profile.NullProfile(), PlanetilerConfig.from(Arguments.of(Map.of())));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "NONE, -1",
+    "GZIP, -1",
+    "GZIP, 1",
+    "GZIP, 9",
+    "ZSTD, -1",
+    "ZSTD, 1",
+    "ZSTD, 19",
+    "BROTLI, -1",
+    "BROTLI, 11",
+  })
+  void testRoundTrip(TileCompression compression, int level) throws IOException {
+    var compressor = new TileCompressor(compression, level, false);
+    byte[] compressed = compressor.compress(DATA);
+    assertArrayEquals(DATA, TileCompressor.decompress(compressed, compression));
+    assertNull(compressor.dictionary());
+  }
+
+  private static List<byte[]> samples() {
+    List<byte[]> samples = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      samples.add(("{\"name\":\"road " + i + "\",\"class\":\"primary\",\"id\":" + (i * 31L) + "}").getBytes(UTF_8));
+    }
+    return samples;
+  }
+
+  @Test
+  void testTrainZstdDictionary() throws IOException {
+    var compressor = new TileCompressor(TileCompression.ZSTD, TileCompressor.DEFAULT_LEVEL, true);
+    assertTrue(compressor.trainsDictionary());
+    compressor.trainDictionary(samples().iterator());
+    byte[] dictionary = compressor.dictionary();
+    assertNotNull(dictionary);
+    byte[] input = "{\"name\":\"road x\",\"class\":\"primary\",\"id\":1}".getBytes(UTF_8);
+    byte[] output = compressor.compress(input);
+
+    var metadata = compressor.addToMetadata(newMetadata());
+    assertArrayEquals(dictionary, TileCompressor.dictionary(metadata));
+    assertArrayEquals(input, TileCompressor.decompress(output, TileCompression.ZSTD, dictionary));
+  }
+
+  @Test
+  void testZstdDictionaryIsReproducible() throws IOException {
+    var compressor1 = new TileCompressor(TileCompression.ZSTD, TileCompressor.DEFAULT_LEVEL, true);
+    var compressor2 = new TileCompressor(TileCompression.ZSTD, TileCompressor.DEFAULT_LEVEL, true);
+    compressor1.trainDictionary(samples().iterator());
+    compressor2.trainDictionary(samples().iterator());
+    assertArrayEquals(compressor1.dictionary(), compressor2.dictionary());
+    assertArrayEquals(compressor1.compress(DATA), compressor2.compress(DATA));
+  }
+
+  @Test
+  void testNoDictionaryWithoutSamples() throws IOException {
+    var compressor = new TileCompressor(TileCompression.ZSTD, TileCompressor.DEFAULT_LEVEL, true);
+    compressor.trainDictionary(List.<byte[]>of().iterator());
+    assertNull(compressor.dictionary());
+    assertArrayEquals(DATA, TileCompressor.decompress(compressor.compress(DATA), TileCompression.ZSTD));
+  }
+
+  @Test
+  void testDictionaryIgnoredForOtherCompression() throws IOException {
+    var compressor = new TileCompressor(TileCompression.GZIP, TileCompressor.DEFAULT_LEVEL, true);
+    assertFalse(compressor.trainsDictionary());
+    compressor.compress(DATA);
+    assertNull(compressor.dictionary());
+    var metadata = newMetadata();
+    assertEquals(metadata, compressor.addToMetadata(metadata));
+  }
+}
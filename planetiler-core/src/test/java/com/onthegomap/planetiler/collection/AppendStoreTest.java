@@ -79,6 +79,17 @@ abstract class AppendStoreTest {
       assertEquals(value, store.getLong(0));
     }
 
+    @Test
+    void prefetchThenRead() {
+      for (int i = 0; i < 9; i++) {
+        store.appendLong(i + 1);
+      }
+      store.prefetch(new long[]{-1, 0, 3, 4, 8, 9, 100}, 6);
+      for (int i = 0; i < 9; i++) {
+        assertEquals(i + 1, store.getLong(i));
+      }
+    }
+
   }
 
   static class RamIntTest extends IntsTest {
@@ -102,14 +102,15 @@ class FeatureGroupTest {
   }
 
 
-  private Map<Integer, Map<String, List<Feature>>> getFeaturesParallel() {
+  private Map<Integer, Map<String, List<Feature>>> getFeaturesInRanges() {
     Map<Integer, Map<String, List<Feature>>> map = new TreeMap<>();
-    var reader = features.parallelIterator(2);
-    for (FeatureGroup.TileFeatures tile : reader.result()) {
-      for (var feature : VectorTile.decode(tile.getVectorTile().encode())) {
-        map.computeIfAbsent(tile.tileCoord().encoded(), (i) -> new TreeMap<>())
-          .computeIfAbsent(feature.layer(), l -> new ArrayList<>())
-          .add(new Feature(feature.tags(), decodeSilently(feature.geometry())));
+    for (var range : features.tileRanges(2)) {
+      for (FeatureGroup.TileFeatures tile : range) {
+        for (var feature : VectorTile.decode(tile.getVectorTile().encode())) {
+          map.computeIfAbsent(tile.tileCoord().encoded(), (i) -> new TreeMap<>())
+            .computeIfAbsent(feature.layer(), l -> new ArrayList<>())
+            .add(new Feature(feature.tags(), decodeSilently(feature.geometry())));
+        }
       }
     }
     return map;
@@ -174,7 +175,121 @@ class FeatureGroupTest {
         "layer4", List.of(
           new Feature(Map.of("a", 1.5d, "b", "string"), newPoint(5, 6))
         )
-      )))), getFeaturesParallel());
+      )))), getFeaturesInRanges());
+  }
+
+  @Test
+  void testReadTileRanges() {
+    for (int tile = 0; tile < 50; tile++) {
+      for (int i = 0; i <= tile % 3; i++) {
+        put(tile, "layer" + i, Map.of("a", i), newPoint(tile, i));
+      }
+    }
+    sorter.sort();
+    List<TileCoord> expected = new ArrayList<>();
+    List<Long> expectedCounts = new ArrayList<>();
+    for (var tile : features) {
+      expected.add(tile.tileCoord());
+      expectedCounts.add(tile.getNumFeaturesToEmit());
+    }
+    var ranges = features.tileRanges(4);
+    assertEquals(4, ranges.size());
+    List<TileCoord> actual = new ArrayList<>();
+    List<Long> actualCounts = new ArrayList<>();
+    for (var range : ranges) {
+      for (var tile : range) {
+        actual.add(tile.tileCoord());
+        actualCounts.add(tile.getNumFeaturesToEmit());
+      }
+    }
+    assertEquals(expected, actual);
+    assertEquals(expectedCounts, actualCounts);
+  }
+
+  private static List<String> tileContents(Iterable<FeatureGroup.TileFeatures> tiles) {
+    List<String> result = new ArrayList<>();
+    for (var tile : tiles) {
+      for (var feature : VectorTile.decode(tile.getVectorTile().encode())) {
+        result.add(tile.tileCoord() + " " + feature.layer() + " " + feature.tags() + " " +
+          decodeSilently(feature.geometry()));
+      }
+    }
+    return result;
+  }
+
+  @ParameterizedTest
+  @CsvSource({"TMS", "HILBERT"})
+  void testFillRuns(TileOrder order) throws IOException {
+    var expectedSorter = FeatureSort.newInMemory();
+    var expectedFeatures = new FeatureGroup(expectedSorter, order, new Profile.NullProfile(), config, Stats.inMemory());
+    features = new FeatureGroup(sorter, order, new Profile.NullProfile(), config, Stats.inMemory());
+    List<RenderedFeature> rendered = new ArrayList<>();
+    for (int z = 0; z <= 5; z++) {
+      // like FeatureRenderer, use the same feature for every tile filled at a zoom level
+      var fill = new VectorTile.Feature("water", 1, VectorTile.encodeGeometry(newPoint(1, 2)), Map.of("z", z));
+      for (int x = 0; x < (1 << z); x++) {
+        for (int y = 0; y < (1 << z); y++) {
+          rendered.add(new RenderedFeature(TileCoord.ofXYZ(x, y, z), fill, 1, Optional.empty()));
+        }
+      }
+      var point = TileCoord.ofXYZ(0, 0, z);
+      rendered.add(new RenderedFeature(point,
+        new VectorTile.Feature("water", 2, VectorTile.encodeGeometry(newPoint(3, 4)), Map.of("above", true)), 2,
+        Optional.empty()));
+      rendered.add(new RenderedFeature(point,
+        new VectorTile.Feature("water", 3, VectorTile.encodeGeometry(newPoint(5, 6)), Map.of("below", true)), 0,
+        Optional.empty()));
+    }
+
+    try (
+      var writer = features.writerForThread();
+      var runWriter = features.newRenderedFeatureWriter(writer);
+      var expectedWriter = expectedFeatures.writerForThread();
+      var encoder = expectedFeatures.newRenderedFeatureEncoder()
+    ) {
+      for (var feature : rendered) {
+        runWriter.accept(feature);
+        expectedWriter.accept(encoder.apply(feature));
+      }
+    }
+
+    var expected = tileContents(expectedFeatures);
+    assertEquals(expected, tileContents(features));
+    List<FeatureGroup.TileFeatures> fromRanges = new ArrayList<>();
+    long recordsRead = 0;
+    for (var range : features.tileRanges(8)) {
+      for (var tile : range) {
+        fromRanges.add(tile);
+        recordsRead += tile.getNumRecordsRead();
+      }
+    }
+    assertEquals(expected, tileContents(fromRanges));
+    assertEquals(sorter.numFeaturesWritten(), recordsRead);
+
+    // a slice of tiles starting partway through fill runs
+    long from = order.encode(TileCoord.ofXYZ(1, 1, 5));
+    long to = from + 100;
+    List<FeatureGroup.TileFeatures> expectedSlice = new ArrayList<>();
+    for (var tile : expectedFeatures) {
+      long id = order.encode(tile.tileCoord());
+      if (id >= from && id < to) {
+        expectedSlice.add(tile);
+      }
+    }
+    assertEquals(100, expectedSlice.size());
+    assertEquals(tileContents(expectedSlice), tileContents(features.tiles(from, to)));
+
+    // several slices at once read each fill run they start in once
+    long[] ranges = {from, from + 10, from + 50, from + 60, from + 90, to + 1_000};
+    List<FeatureGroup.TileFeatures> expectedSlices = new ArrayList<>();
+    for (var tile : expectedFeatures) {
+      if (FeatureSort.inRanges(ranges, order.encode(tile.tileCoord()))) {
+        expectedSlices.add(tile);
+      }
+    }
+    assertEquals(tileContents(expectedSlices), tileContents(features.tiles(ranges)));
+    assertTrue(sorter.numFeaturesWritten() * 10 < expectedSorter.numFeaturesWritten(),
+      sorter.numFeaturesWritten() + " records");
   }
 
   @Test
@@ -428,6 +543,76 @@ class FeatureGroupTest {
     );
   }
 
+  @ParameterizedTest
+  @CsvSource({
+    "0,0,-2,true,   0,0,-1,false",
+    "0,0,1,false,   0,0,2,false",
+    "0,0,-1,false,  0,0,1,false",
+    "0,0,-1,false,  0,0,-1,true",
+    "0,1,-4194304,false,  1,0,-4194304,false",
+    "0,0,4194303,true,  0,1,-4194304,false",
+    "5726623060,255,4194303,true,  5726623061,0,-4194304,false",
+  })
+  void testEncodeWideKeyOrdering(
+    long tileA, byte layerA, int sortKeyA, boolean hasGroupA,
+    long tileB, byte layerB, int sortKeyB, boolean hasGroupB
+  ) {
+    byte[] valueA = new byte[3];
+    byte[] valueB = new byte[3];
+    FeatureGroup.encodeWideValuePrefix(sortKeyA, hasGroupA, valueA);
+    FeatureGroup.encodeWideValuePrefix(sortKeyB, hasGroupB, valueB);
+    var a = new SortableFeature(FeatureGroup.encodeWideKey(tileA, layerA), valueA);
+    var b = new SortableFeature(FeatureGroup.encodeWideKey(tileB, layerB), valueB);
+    assertTrue(a.compareTo(b) < 0);
+
+    assertEquals(tileA, FeatureGroup.extractTileFromWideKey(a.key()));
+    assertEquals(layerA, FeatureGroup.extractLayerIdFromWideKey(a.key()));
+    assertEquals(sortKeyA, FeatureGroup.extractSortKeyFromWideValue(valueA));
+    assertEquals(hasGroupA, FeatureGroup.extractHasGroupFromWideValue(valueA));
+  }
+
+  @Test
+  void testWideKeysPastZ15() throws IOException {
+    var deepConfig = PlanetilerConfig.from(com.onthegomap.planetiler.config.Arguments.of("maxzoom", "17"));
+    var deepSorter = FeatureSort.newInMemory();
+    var deepFeatures =
+      new FeatureGroup(deepSorter, TileOrder.HILBERT, new Profile.NullProfile(), deepConfig, Stats.inMemory());
+    var encoder = deepFeatures.newRenderedFeatureEncoder();
+    var tileA = TileCoord.ofXYZ((1 << 17) - 1, (1 << 17) - 1, 17);
+    var tileB = TileCoord.ofXYZ(1, 2, 16);
+    try (var writer = deepFeatures.writerForThread()) {
+      for (var feature : List.of(
+        new RenderedFeature(tileA, new VectorTile.Feature("layer", 1, VectorTile.encodeGeometry(newPoint(1, 2)),
+          Map.of("id", 1)), 2, Optional.empty()),
+        new RenderedFeature(tileA, new VectorTile.Feature("layer", 2, VectorTile.encodeGeometry(newPoint(3, 4)),
+          Map.of("id", 2)), 1, Optional.of(new RenderedFeature.Group(1, 1))),
+        new RenderedFeature(tileA, new VectorTile.Feature("layer", 3, VectorTile.encodeGeometry(newPoint(5, 6)),
+          Map.of("id", 3)), 0, Optional.of(new RenderedFeature.Group(1, 1))),
+        new RenderedFeature(tileB, new VectorTile.Feature("layer", 4, VectorTile.encodeGeometry(newPoint(7, 8)),
+          Map.of("id", 4)), 0, Optional.empty())
+      )) {
+        writer.accept(encoder.apply(feature));
+      }
+    }
+    deepSorter.sort();
+    var iter = deepFeatures.iterator();
+
+    var first = iter.next();
+    assertEquals(tileB, first.tileCoord());
+    assertEquals(List.of(4L), ids(first));
+
+    var second = iter.next();
+    assertEquals(tileA, second.tileCoord());
+    assertEquals(3, second.getNumFeaturesProcessed());
+    // sorted by sort key, and only one feature from the group with limit=1
+    assertEquals(List.of(3L, 1L), ids(second));
+    assertFalse(iter.hasNext());
+  }
+
+  private static List<Long> ids(FeatureGroup.TileFeatures tile) {
+    return VectorTile.decode(tile.getVectorTile().encode()).stream().map(VectorTile.Feature::id).toList();
+  }
+
   @ParameterizedTest(name = "{0}")
   @ArgumentsSource(SameFeatureGroupTestArgs.class)
   void testHasSameContents(String testName, boolean expectSame, PuTileArgs args0, PuTileArgs args1) {
@@ -1,12 +1,16 @@
 package com.onthegomap.planetiler.collection;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Stream;
@@ -28,7 +32,11 @@ class FeatureSortTest {
 
 
   private FeatureSort newSorter(int workers, int chunkSizeLimit, boolean gzip, boolean mmap) {
-    return new ExternalMergeSort(tmpDir, workers, chunkSizeLimit, gzip, mmap, true, true, config,
+    return newSorter(workers, chunkSizeLimit, gzip, mmap, false);
+  }
+
+  private FeatureSort newSorter(int workers, int chunkSizeLimit, boolean gzip, boolean mmap, boolean offHeap) {
+    return new ExternalMergeSort(tmpDir, workers, chunkSizeLimit, gzip, mmap, true, true, offHeap, config,
       Stats.inMemory());
   }
 
@@ -110,6 +118,32 @@ class FeatureSortTest {
       sorter.toList());
   }
 
+  @ParameterizedTest
+  @CsvSource({
+    "false,false,false",
+    "false,true,false",
+    "true,false,false",
+    "true,true,false",
+    "false,false,true",
+    "false,true,true",
+    "true,false,true",
+    "true,true,true",
+  })
+  void testManyItems(boolean gzip, boolean mmap, boolean offHeap) {
+    List<SortableFeature> sorted = new ArrayList<>();
+    List<SortableFeature> shuffled = new ArrayList<>();
+    for (int i = 0; i < 10_000; i++) {
+      shuffled.add(newEntry(i));
+      sorted.add(newEntry(i));
+    }
+    Collections.shuffle(shuffled, new Random(0));
+    FeatureSort sorter = newSorter(2, 20_000, gzip, mmap, offHeap);
+    var writer = sorter.writerForThread();
+    shuffled.forEach(writer);
+    sorter.sort();
+    assertEquals(sorted, sorter.toList());
+  }
+
   @ParameterizedTest
   @CsvSource({
     "false,false",
@@ -117,7 +151,105 @@ class FeatureSortTest {
     "true,false",
     "true,true",
   })
-  void testManyItems(boolean gzip, boolean mmap) {
+  void testOffHeapSortBreaksTiesByValue(boolean gzip, boolean mmap) {
+    List<SortableFeature> expected = new ArrayList<>();
+    for (int key = 0; key < 50; key++) {
+      for (int i = 0; i < 50; i++) {
+        byte[] value = new byte[1 + (i % 13)];
+        value[0] = (byte) (i * 37);
+        value[value.length - 1] = (byte) (255 - i);
+        expected.add(new SortableFeature(key - 25, value));
+      }
+    }
+    List<SortableFeature> shuffled = new ArrayList<>(expected);
+    Collections.shuffle(shuffled, new Random(0));
+    expected.sort(SortableFeature::compareTo);
+    FeatureSort sorter = newSorter(2, 1_000_000, gzip, mmap, true);
+    var writer = sorter.writerForThread();
+    shuffled.forEach(writer);
+    sorter.sort();
+    assertEquals(expected, sorter.toList());
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "false,false,false",
+    "false,true,false",
+    "true,false,false",
+    "true,true,false",
+    "false,false,true",
+    "false,true,true",
+    "true,false,true",
+    "true,true,true",
+  })
+  void testReadKeyRanges(boolean gzip, boolean mmap, boolean offHeap) {
+    List<SortableFeature> shuffled = new ArrayList<>();
+    for (int i = 0; i < 50_000; i++) {
+      shuffled.add(new SortableFeature(i / 3, new byte[]{(byte) i, (byte) (i >> 8)}));
+    }
+    Collections.shuffle(shuffled, new Random(0));
+    FeatureSort sorter = newSorter(2, 500_000, gzip, mmap, offHeap);
+    var writer = sorter.writerForThread();
+    shuffled.forEach(writer);
+    sorter.sort();
+    List<SortableFeature> expected = sorter.toList();
+
+    long[] splitKeys = sorter.splitKeys(4);
+    assertTrue(splitKeys.length > 0);
+    List<SortableFeature> actual = new ArrayList<>();
+    long from = Long.MIN_VALUE;
+    for (int i = 0; i <= splitKeys.length; i++) {
+      long to = i < splitKeys.length ? splitKeys[i] : Long.MAX_VALUE;
+      sorter.iterator(from, to).forEachRemaining(actual::add);
+      from = to;
+    }
+    assertEquals(expected, actual);
+
+    assertEquals(
+      expected.stream().filter(d -> d.key() >= 10_000 && d.key() < 10_010).toList(),
+      iterate(sorter.iterator(10_000, 10_010))
+    );
+    assertEquals(List.of(), iterate(sorter.iterator(100_000, 200_000)));
+    assertEquals(List.of(), iterate(sorter.iterator(5, 5)));
+
+    long[] ranges = {10, 12, 5_000, 5_003, 9_000, 9_001, 16_660, 100_000};
+    assertEquals(
+      expected.stream().filter(d -> FeatureSort.inRanges(ranges, d.key())).toList(),
+      iterate(sorter.iterator(ranges))
+    );
+    assertEquals(List.of(), iterate(sorter.iterator(new long[]{100_000, 200_000})));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "false,false",
+    "true,false",
+    "false,true",
+    "true,true",
+  })
+  void testCompressedChunksUseLessDisk(boolean mmap, boolean offHeap) {
+    long[] diskUsage = new long[2];
+    for (int i = 0; i < 2; i++) {
+      FeatureSort sorter = newSorter(2, 500_000, i == 1, mmap, offHeap);
+      var writer = sorter.writerForThread();
+      for (int key = 0; key < 20_000; key++) {
+        writer.accept(new SortableFeature(key * 3L, new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+      }
+      sorter.sort();
+      diskUsage[i] = sorter.diskUsageBytes();
+      assertEquals(20_000, sorter.toList().size());
+    }
+    assertTrue(diskUsage[1] * 3 < diskUsage[0], "compressed=" + diskUsage[1] + " uncompressed=" + diskUsage[0]);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "false,false",
+    "false,true",
+    "true,false",
+    "true,true",
+  })
+  void testWriteBlocks(boolean gzip, boolean mmap) throws IOException {
     List<SortableFeature> sorted = new ArrayList<>();
     List<SortableFeature> shuffled = new ArrayList<>();
     for (int i = 0; i < 10_000; i++) {
@@ -126,9 +258,39 @@ class FeatureSortTest {
     }
     Collections.shuffle(shuffled, new Random(0));
     FeatureSort sorter = newSorter(2, 20_000, gzip, mmap);
-    var writer = sorter.writerForThread();
-    shuffled.forEach(writer);
+    try (var writer = sorter.blockWriterForThread()) {
+      try (var blocks = SortableFeatureBlock.writer(1_000, writer)) {
+        shuffled.forEach(blocks);
+      }
+    }
+    assertEquals(10_000, sorter.numFeaturesWritten());
     sorter.sort();
     assertEquals(sorted, sorter.toList());
   }
+
+  @Test
+  void testWriteBlocksInMemory() throws IOException {
+    FeatureSort sorter = FeatureSort.newInMemory();
+    try (var writer = sorter.blockWriterForThread(); var blocks = SortableFeatureBlock.writer(writer)) {
+      blocks.accept(newEntry(2));
+      blocks.accept(newEntry(1));
+    }
+    sorter.sort();
+    assertEquals(List.of(newEntry(1), newEntry(2)), sorter.toList());
+  }
+
+  @Test
+  void testSplitKeysSkipsDuplicates() {
+    assertArrayEquals(new long[]{}, FeatureSort.quantiles(new long[]{}, 4));
+    assertArrayEquals(new long[]{}, FeatureSort.quantiles(new long[]{1, 1, 1, 1}, 4));
+    assertArrayEquals(new long[]{2}, FeatureSort.quantiles(new long[]{1, 1, 2, 2}, 4));
+    assertArrayEquals(new long[]{2, 3, 4}, FeatureSort.quantiles(new long[]{1, 2, 3, 4}, 4));
+    assertArrayEquals(new long[]{2, 3, 4}, FeatureSort.quantiles(new long[]{1, 2, 3, 4}, 10));
+  }
+
+  private static List<SortableFeature> iterate(Iterator<SortableFeature> iterator) {
+    List<SortableFeature> result = new ArrayList<>();
+    iterator.forEachRemaining(result::add);
+    return result;
+  }
 }
@@ -2,12 +2,15 @@ package com.onthegomap.planetiler.collection;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.reader.osm.OsmReader;
 import com.onthegomap.planetiler.util.Format;
 import com.onthegomap.planetiler.util.ResourceUsage;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -127,6 +130,66 @@ public abstract class LongLongMapTest {
     }
   }
 
+  public static class DeltaBlockTest extends LongLongMapTest {
+
+    @Override
+    protected LongLongMap.SequentialWrites createSequentialWriter(Path path) {
+      return new DeltaBlockLongLongMap(new AppendStoreRam.Longs(false));
+    }
+
+    @Test
+    void testRoundTripsValuesAcrossBlocks() {
+      long[] values = {
+        0, 1, -1, Long.MAX_VALUE, Long.MIN_VALUE + 1, Long.MAX_VALUE - 1, 0xFFFFFFFFL, 0x7FFFFFFF_80000000L,
+        GeoUtils.encodeFlatLocation(7.4, 43.7),
+        GeoUtils.encodeFlatLocation(-180, 85),
+        GeoUtils.encodeFlatLocation(180, -85)
+      };
+      int n = DeltaBlockLongLongMap.BLOCK_SIZE * 3 + 7;
+      long[] keys = new long[n];
+      long[] expected = new long[n];
+      long key = 0;
+      for (int i = 0; i < n; i++) {
+        key += i % 7 == 0 ? 1_000_000_000L : 1 + i % 3;
+        keys[i] = key;
+        expected[i] = values[i % values.length] ^ ((long) (i / values.length) << 8);
+      }
+      try (var map = new DeltaBlockLongLongMap(new AppendStoreRam.Longs(false))) {
+        for (int i = 0; i < n; i++) {
+          map.put(keys[i], expected[i]);
+        }
+        for (int i = n - 1; i >= 0; i--) {
+          assertEquals(expected[i], map.get(keys[i]), "key " + keys[i]);
+          assertEquals(Long.MIN_VALUE, map.get(keys[i] + 1_000_000), "key " + (keys[i] + 1_000_000));
+        }
+        assertEquals(Long.MIN_VALUE, map.get(-1));
+        assertEquals(Long.MIN_VALUE, map.get(Long.MAX_VALUE));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Test
+    void testSaveAndReopen(@TempDir Path path) throws IOException {
+      Path data = path.resolve("nodes.db");
+      Path index = path.resolve("nodes.index");
+      int n = DeltaBlockLongLongMap.BLOCK_SIZE * 2 + 3;
+      try (var map = new DeltaBlockLongLongMap(new AppendStoreMmap.Longs(data, false))) {
+        for (int i = 0; i < n; i++) {
+          map.put(i * 2L, i * 3L);
+        }
+        map.saveIndex(index);
+      }
+      try (var map = DeltaBlockLongLongMap.open(data, index, false)) {
+        for (int i = 0; i < n; i++) {
+          assertEquals(i * 3L, map.get(i * 2L));
+          assertEquals(Long.MIN_VALUE, map.get(i * 2L + 1));
+        }
+        assertThrows(IllegalStateException.class, () -> map.newWriter().put(n * 2L, 1));
+      }
+    }
+  }
+
   static class AllTest {
 
     @Test
@@ -142,7 +205,10 @@ public abstract class LongLongMapTest {
             );
           var sizeDescription = variant + " " + Format.defaultInstance().storage(usage);
           // sanity check to ensure that the estimate size is between 60 and 100GB for a 70GB input file
-          if (type != LongLongMap.Type.NOOP) {
+          if (type == LongLongMap.Type.DELTA_BLOCK) {
+            assertTrue(usage > 30_000_000_000L, sizeDescription);
+            assertTrue(usage < 60_000_000_000L, sizeDescription);
+          } else if (type != LongLongMap.Type.NOOP) {
             assertTrue(usage > 60_000_000_000L, sizeDescription);
             assertTrue(usage < 100_000_000_000L, sizeDescription);
           }
@@ -0,0 +1,77 @@
+package com.onthegomap.planetiler.collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class OrderedRunsWriterTest {
+
+  private final SortedTableLongLongMap map = new SortedTableLongLongMap(
+    new AppendStore.SmallLongs(i -> new AppendStoreRam.Ints(false)),
+    new AppendStoreRam.Longs(false)
+  );
+
+  @Test
+  void testWritesRunsInSequenceOrder() {
+    var writer = new OrderedRunsWriter(map, 10);
+    var run1 = writer.newRun(1);
+    var run0 = writer.newRun(0);
+    var run2 = writer.newRun(2);
+    run2.put(5, 6);
+    run2.close();
+    run1.put(3, 4);
+    run1.close();
+    assertEquals(0, writer.runsWritten());
+    assertThrows(IllegalStateException.class, writer::finish);
+    run0.put(1, 2);
+    run0.close();
+    assertEquals(3, writer.runsWritten());
+    writer.finish();
+    assertEquals(2, map.get(1));
+    assertEquals(4, map.get(3));
+    assertEquals(6, map.get(5));
+  }
+
+  @Test
+  @Timeout(10)
+  void testWriteFromManyThreads() throws Exception {
+    int runs = 1_000;
+    int perRun = 100;
+    var writer = new OrderedRunsWriter(map, 4);
+    AtomicLong nextRun = new AtomicLong(0);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        futures.add(executor.submit(() -> {
+          long sequence;
+          while ((sequence = nextRun.getAndIncrement()) < runs) {
+            try (var run = writer.newRun(sequence)) {
+              for (int i = 0; i < perRun; i++) {
+                long key = sequence * perRun + i;
+                run.put(key, key * 2);
+              }
+            }
+          }
+        }));
+      }
+      for (var future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    writer.finish();
+    for (long key = 0; key < runs * perRun; key++) {
+      assertEquals(key * 2, map.get(key));
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.onthegomap.planetiler.collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SortableFeatureBlockTest {
+
+  private static List<SortableFeature> decode(List<SortableFeatureBlock> blocks) {
+    List<SortableFeature> result = new ArrayList<>();
+    for (var block : blocks) {
+      block.forEach(result::add);
+    }
+    return result;
+  }
+
+  @Test
+  void testEmpty() throws IOException {
+    List<SortableFeatureBlock> blocks = new ArrayList<>();
+    SortableFeatureBlock.writer(blocks::add).close();
+    assertEquals(List.of(), blocks);
+  }
+
+  @Test
+  void testFillsBlocks() throws IOException {
+    List<SortableFeatureBlock> blocks = new ArrayList<>();
+    List<SortableFeature> expected = new ArrayList<>();
+    try (var writer = SortableFeatureBlock.writer(100, blocks::add)) {
+      for (int i = 0; i < 20; i++) {
+        var feature = new SortableFeature(Long.MIN_VALUE + i * 1_000L, new byte[]{(byte) i, 2, 3});
+        expected.add(feature);
+        writer.accept(feature);
+      }
+      // 6 entries of 15 bytes fit in each block
+      assertEquals(3, blocks.size());
+    }
+    assertEquals(4, blocks.size());
+    assertEquals(List.of(6, 6, 6, 2), blocks.stream().map(SortableFeatureBlock::size).toList());
+    assertEquals(90, blocks.getFirst().bytes());
+    assertEquals(expected, decode(blocks));
+  }
+
+  @Test
+  void testFeatureBiggerThanBlock() throws IOException {
+    List<SortableFeatureBlock> blocks = new ArrayList<>();
+    var small = new SortableFeature(1, new byte[]{1});
+    var big = new SortableFeature(2, new byte[200]);
+    try (var writer = SortableFeatureBlock.writer(100, blocks::add)) {
+      writer.accept(small);
+      writer.accept(big);
+      writer.accept(small);
+    }
+    assertEquals(List.of(1, 1, 1), blocks.stream().map(SortableFeatureBlock::size).toList());
+    assertEquals(List.of(small, big, small), decode(blocks));
+  }
+}
@@ -0,0 +1,63 @@
+package com.onthegomap.planetiler.collection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.stats.Stats;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SortedLongLongMultimapTest {
+
+  @TempDir
+  Path tmpDir;
+
+  private final PlanetilerConfig config = PlanetilerConfig.from(Arguments.of("threads", "2"));
+
+  @Test
+  void testEmpty() {
+    var builder = SortedLongLongMultimap.newBuilder(tmpDir.resolve("map"), tmpDir.resolve("tmp"), config,
+      Stats.inMemory());
+    try (var map = builder.finish(false)) {
+      assertEquals(0, map.size());
+      assertEquals(LongArrayList.from(), map.get(1));
+    }
+  }
+
+  @Test
+  void testSortsAndDeduplicatesPairsFromManyWriters() {
+    var builder = SortedLongLongMultimap.newBuilder(tmpDir.resolve("map"), tmpDir.resolve("tmp"), config,
+      Stats.inMemory());
+    try (var a = builder.writerForThread(); var b = builder.writerForThread()) {
+      a.put(5, 50);
+      b.put(1, 10);
+      a.put(3, 31);
+      b.put(3, 30);
+      a.put(1, 10);
+    }
+    try (var map = builder.finish(false)) {
+      assertFalse(Files.exists(tmpDir.resolve("tmp")));
+      assertEquals(4, map.size());
+      assertEquals(LongArrayList.from(10), map.get(1));
+      assertEquals(LongArrayList.from(), map.get(2));
+      assertEquals(LongArrayList.from(30, 31), map.get(3));
+      assertEquals(LongArrayList.from(50), map.get(5));
+      assertEquals(LongArrayList.from(), map.get(6));
+
+      List<String> pairs = new ArrayList<>();
+      map.forEach(2, 5, (k, v) -> pairs.add(k + "=" + v));
+      assertEquals(List.of("3=30", "3=31", "5=50"), pairs);
+    }
+
+    try (var reopened = SortedLongLongMultimap.open(tmpDir.resolve("map"), false)) {
+      assertEquals(LongArrayList.from(30, 31), reopened.get(3));
+    }
+  }
+}
@@ -17,6 +17,7 @@ import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LinearRing;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.geom.util.AffineTransformation;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
@@ -424,6 +425,44 @@ class GeoUtilsTest {
     assertFalse(Orientation.isCCWArea(result.getCoordinates()));
   }
 
+  @Test
+  void testSnapAndFixSimplePolygonOnGrid() throws GeometryException {
+    var stats = Stats.inMemory();
+    var result = GeoUtils.snapAndFixPolygon(newPolygon(
+      rectangleCoordList(0.001, 0.999),
+      List.of(
+        rectangleCoordList(0.251, 0.499),
+        // collapses to a point on the grid
+        rectangleCoordList(0.76, 0.77)
+      )
+    ), stats, "test");
+    assertTrue(result.isValid());
+    assertSameNormalizedFeature(newPolygon(
+      rectangleCoordList(0, 1),
+      List.of(rectangleCoordList(0.25, 0.5))
+    ), result);
+    var polygon = (Polygon) result;
+    assertFalse(Orientation.isCCWArea(polygon.getExteriorRing().getCoordinates()));
+    assertTrue(Orientation.isCCWArea(polygon.getInteriorRingN(0).getCoordinates()));
+    assertEquals(1L, stats.dataErrors().get("test_snap_fast"));
+    assertNull(stats.dataErrors().get("test_snap_fast_fallback"));
+  }
+
+  @Test
+  void testSnapAndFixFallsBackOnSelfIntersection() throws GeometryException {
+    var stats = Stats.inMemory();
+    var result = GeoUtils.snapAndFixPolygon(newPolygon(
+      0, 0,
+      1, 1,
+      1, 0,
+      0, 1,
+      0, 0
+    ), stats, "test");
+    assertTrue(result.isValid());
+    assertEquals(1L, stats.dataErrors().get("test_snap_fast_fallback"));
+    assertNull(stats.dataErrors().get("test_snap_fast"));
+  }
+
   @ParameterizedTest
   @CsvSource({
     "1,0,0",
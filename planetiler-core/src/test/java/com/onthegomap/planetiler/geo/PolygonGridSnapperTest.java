@@ -0,0 +1,222 @@
+package com.onthegomap.planetiler.geo;
+
+import static com.onthegomap.planetiler.TestUtils.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.locationtech.jts.precision.GeometryPrecisionReducer;
+
+class PolygonGridSnapperTest {
+
+  private static final PrecisionModel GRID = new PrecisionModel(1);
+
+  private static Geometry assertSameAsPrecisionReducer(Geometry input) {
+    assertTrue(input.isValid());
+    Geometry snapped = PolygonGridSnapper.snap(input, GRID);
+    assertNotNull(snapped, () -> "fell back on " + input);
+    assertTrue(snapped.isValid(), () -> "invalid " + snapped);
+    assertEquals(GeometryPrecisionReducer.reduce(input, GRID).norm(), snapped.norm());
+    return snapped;
+  }
+
+  private static void assertFallsBack(Geometry input) {
+    // the fast path runs before input gets validated, so some of these are invalid to begin with
+    assertNull(PolygonGridSnapper.snap(input, GRID));
+  }
+
+  @Test
+  void testPolygonWithHoles() {
+    var result = (Polygon) assertSameAsPrecisionReducer(newPolygon(
+      rectangleCoordList(0.2, 0.1, 20.3, 9.8),
+      List.of(
+        rectangleCoordList(2.1, 2.2, 7.9, 5.1),
+        rectangleCoordList(11.6, 2.4, 17.8, 7.3)
+      )
+    ));
+    assertFalse(Orientation.isCCWArea(result.getExteriorRing().getCoordinates()));
+    assertTrue(Orientation.isCCWArea(result.getInteriorRingN(0).getCoordinates()));
+    assertTrue(Orientation.isCCWArea(result.getInteriorRingN(1).getCoordinates()));
+  }
+
+  @Test
+  void testConcaveRingWhereNonNeighborsOverlapButDontTouch() {
+    assertSameAsPrecisionReducer(newPolygon(
+      0, 0,
+      10, 2,
+      10, 10,
+      5, 2,
+      0, 10,
+      0, 0
+    ));
+  }
+
+  @Test
+  void testMultiPolygonPartsStackedVertically() {
+    assertSameAsPrecisionReducer(newMultiPolygon(
+      rectangle(0.1, 0.2, 4.2, 3.9),
+      rectangle(0.3, 10.1, 3.8, 14.4)
+    ));
+  }
+
+  @Test
+  void testIslandInsideLakeHole() {
+    assertSameAsPrecisionReducer(newMultiPolygon(
+      newPolygon(
+        rectangleCoordList(0.1, 0.2, 20.3, 19.8),
+        List.of(rectangleCoordList(4.8, 5.1, 15.2, 14.9))
+      ),
+      rectangle(8.1, 7.9, 12.2, 12.4)
+    ));
+  }
+
+  @Test
+  void testDropsPartsThatCollapse() {
+    assertSameAsPrecisionReducer(newMultiPolygon(
+      rectangle(0.1, 0.1, 5.2, 5.3),
+      rectangle(8.1, 8.1, 8.2, 8.2)
+    ));
+    assertSameAsPrecisionReducer(newPolygon(
+      rectangleCoordList(0.1, 0.1, 5.2, 5.3),
+      List.of(rectangleCoordList(2.1, 2.1, 2.2, 2.2))
+    ));
+  }
+
+  @Test
+  void testKeepsStraightRunsAlongRing() {
+    Geometry snapped = PolygonGridSnapper.snap(newPolygon(
+      0, 0,
+      5.1, 0.2,
+      10, 0,
+      10, 10,
+      0, 10,
+      0, 0
+    ), GRID);
+    assertNotNull(snapped);
+    assertTrue(snapped.isValid());
+    assertEquals(100, snapped.getArea(), 1e-9);
+  }
+
+  @Test
+  void testHoleOutsideShell() {
+    assertFallsBack(newPolygon(
+      rectangleCoordList(0.1, 0.1, 10.2, 10.2),
+      List.of(rectangleCoordList(20.1, 20.1, 25.2, 25.2))
+    ));
+  }
+
+  @Test
+  void testNestedHoles() {
+    assertFallsBack(newPolygon(
+      rectangleCoordList(0.1, 0.1, 20.2, 20.2),
+      List.of(
+        rectangleCoordList(2.1, 2.1, 18.2, 18.2),
+        rectangleCoordList(5.1, 5.1, 15.2, 15.2)
+      )
+    ));
+  }
+
+  @Test
+  void testShellInsideAnotherShell() {
+    assertFallsBack(newMultiPolygon(
+      rectangle(0.1, 0.1, 20.2, 20.2),
+      rectangle(5.1, 5.1, 15.2, 15.2)
+    ));
+  }
+
+  @Test
+  void testSpikeThatDoublesBackAfterRounding() {
+    // 5.1,9.8 -> 0.2,10.1 -> 4.9,10.2 rounds to A -> B -> A
+    assertFallsBack(newPolygon(
+      5, 0,
+      10, 0,
+      10, 10,
+      5.1, 9.8,
+      0.2, 10.1,
+      4.9, 10.2,
+      5, 0
+    ));
+    // 5.2,9.6 -> 0.1,10.3 -> 3.1,9.7 rounds to a spike that comes back part of the way
+    assertFallsBack(newPolygon(
+      5, 0,
+      10, 0,
+      10, 10,
+      5.2, 9.6,
+      0.1, 10.3,
+      3.1, 9.7,
+      5, 0
+    ));
+  }
+
+  @Test
+  void testRingsTouchingAtVertexAfterRounding() {
+    assertFallsBack(newMultiPolygon(
+      rectangle(0.1, 0.1, 5.2, 5.2),
+      rectangle(5.4, 5.4, 10, 10)
+    ));
+  }
+
+  @Test
+  void testHoleTouchingShellAfterRounding() {
+    assertFallsBack(newPolygon(
+      rectangleCoordList(0, 0, 10, 10),
+      List.of(newCoordinateList(
+        0.3, 5,
+        5, 2,
+        5, 8,
+        0.3, 5
+      ))
+    ));
+  }
+
+  @Test
+  void testRingTouchingItselfAfterRounding() {
+    assertFallsBack(newPolygon(
+      0, 0,
+      10, 0,
+      10, 10,
+      5, 0.3,
+      0, 10,
+      0, 0
+    ));
+  }
+
+  @Test
+  void testMultiPolygonPartsOverlapAfterRounding() {
+    // the edges line up after rounding
+    assertFallsBack(newMultiPolygon(
+      rectangle(0, 0, 5.4, 5),
+      rectangle(5.45, 0, 10, 5)
+    ));
+    // 5.2,1.6 is below the 0,0 -> 10,3.4 edge but 5,2 is above 0,0 -> 10,3
+    assertFallsBack(newMultiPolygon(
+      newPolygon(
+        0, 0,
+        10, 3.4,
+        0, 5,
+        0, 0
+      ),
+      newPolygon(
+        5.2, 1.6,
+        3, -1,
+        8, 0,
+        5.2, 1.6
+      )
+    ));
+  }
+
+  @Test
+  void testUnsupportedInputs() {
+    assertNull(PolygonGridSnapper.snap(newLineString(0.1, 0.1, 5.2, 5.2), GRID));
+    assertNull(PolygonGridSnapper.snap(rectangle(0.1, 5.2), new PrecisionModel()));
+    assertNull(PolygonGridSnapper.snap(rectangle(0.1, 1e9), GRID));
+  }
+}
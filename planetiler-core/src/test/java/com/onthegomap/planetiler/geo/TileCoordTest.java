@@ -1,8 +1,11 @@
 package com.onthegomap.planetiler.geo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.List;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -143,4 +146,58 @@ class TileCoordTest {
       -85.0511287798066, 0
     ), TileCoord.ofXYZ(1, 1, 1).getEnvelope());
   }
+
+  @ParameterizedTest
+  @CsvSource({
+    "0,0,0,0",
+    "32767,32767,15,1431622997",
+    "0,65535,16,1431655765",
+    "65535,0,16,5726623060",
+    "0,131071,17,5726623061",
+    "131071,0,17,22906492244"
+  })
+  void testTileCoordEncodeLong(int x, int y, int z, long i) {
+    assertEquals(i, TileCoord.ofXYZ(x, y, z).encodedLong());
+    assertEquals(i, TileCoord.encodeLong(x, y, z));
+    assertEquals(TileCoord.ofXYZ(x, y, z), TileCoord.decodeLong(i));
+    assertEquals(i, TileOrder.TMS.encodeLong(TileCoord.decodeLong(i)));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "3,0,2,20",
+    "0,0,16,1431655765",
+    "0,0,17,5726623061"
+  })
+  void testTileCoordHilbertLong(int x, int y, int z, long i) {
+    assertEquals(i, TileCoord.ofXYZ(x, y, z).hilbertEncodedLong());
+    assertEquals(TileCoord.ofXYZ(x, y, z), TileCoord.hilbertDecodeLong(i));
+    assertEquals(i, TileOrder.HILBERT.encodeLong(TileOrder.HILBERT.decodeLong(i)));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "16",
+    "17"
+  })
+  void testDeepZoomRoundTrip(int z) {
+    int max = (1 << z) - 1;
+    var parent = TileCoord.ofXYZ(max / 2, max / 2, z - 1);
+    for (var coord : List.of(
+      TileCoord.ofXYZ(0, 0, z),
+      TileCoord.ofXYZ(max, max, z),
+      TileCoord.ofXYZ(max / 3, max / 7, z),
+      TileCoord.ofXYZ(max, 0, z)
+    )) {
+      assertEquals(coord, TileCoord.decodeLong(coord.encodedLong()));
+      assertEquals(coord, TileCoord.hilbertDecodeLong(coord.hilbertEncodedLong()));
+      assertEquals(coord.hashCode(), TileCoord.decodeLong(coord.encodedLong()).hashCode());
+      assertTrue(coord.encodedLong() > parent.encodedLong());
+      assertTrue(coord.hilbertEncodedLong() > parent.hilbertEncodedLong());
+      assertTrue(coord.compareTo(parent) > 0);
+      assertTrue(parent.compareTo(coord) < 0);
+    }
+    assertNotEquals(TileCoord.ofXYZ(0, 0, z), TileCoord.ofXYZ(0, 1, z));
+    assertTrue(TileCoord.ofXYZ(0, 1, z).compareTo(TileCoord.ofXYZ(0, 0, z)) < 0);
+  }
 }
@@ -84,4 +84,13 @@ class TileExtentsTest {
     // inside bounds, outside shape
     assertFalse(extents.test((1 << 13) + 3, (1 << 13) + 3, 14));
   }
+
+  @Test
+  void testTileFilter() {
+    TileExtents extents = TileExtents.computeFromWorldBounds(14, GeoUtils.WORLD_BOUNDS, null,
+      z -> (x, y) -> z == 14 && x == 3 && y == 4);
+    assertTrue(extents.test(3, 4, 14));
+    assertFalse(extents.test(4, 4, 14));
+    assertFalse(extents.test(0, 0, 0));
+  }
 }
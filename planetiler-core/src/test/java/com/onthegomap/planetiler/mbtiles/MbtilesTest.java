@@ -145,6 +145,84 @@ class MbtilesTest {
     }
   }
 
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void testCreatesIndexAfterWritingOutOfOrder(boolean compactDb) throws IOException, SQLException {
+    try (Mbtiles db = Mbtiles.newInMemoryDatabase(Arguments.of(
+      "compact", Boolean.toString(compactDb),
+      "tile_write_out_of_order", "true"
+    ))) {
+      assertTrue(db.acceptsTilesOutOfOrder());
+      db.initialize();
+      String indexName = compactDb ? "tiles_shallow_index" : "tile_index";
+      assertFalse(hasIndex(db, indexName));
+      try (var writer = db.newTileWriter()) {
+        for (int i = 9; i >= 0; i--) {
+          writer.write(new TileEncodingResult(TileCoord.ofXYZ(i, i, 14), new byte[]{(byte) i}, OptionalLong.of(i)));
+        }
+      }
+      db.finish(metadataWithJson(TileArchiveMetadata.TileArchiveMetadataJson.create(List.of())));
+      assertTrue(hasIndex(db, indexName));
+      assertEquals(10, TestUtils.getTiles(db).size());
+      assertArrayEquals(new byte[]{3}, db.getTile(3, 3, 14));
+    }
+  }
+
+  @Test
+  void testDoesNotAcceptTilesOutOfOrderByDefault() throws IOException {
+    try (Mbtiles db = Mbtiles.newInMemoryDatabase(false)) {
+      assertFalse(db.acceptsTilesOutOfOrder());
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {true, false})
+  void testDeleteAndReplaceTilesWhenAppending(boolean compactDb, @TempDir Path tmpDir)
+    throws IOException, SQLException {
+    Path path = tmpDir.resolve("archive.mbtiles");
+    var options = Arguments.of("compact", Boolean.toString(compactDb));
+    var metadata = metadataWithJson(TileArchiveMetadata.TileArchiveMetadataJson.create(List.of()));
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, options)) {
+      db.initialize();
+      try (var writer = db.newTileWriter()) {
+        for (int i = 0; i < 3; i++) {
+          writer.write(new TileEncodingResult(TileCoord.ofXYZ(i, i, 14), new byte[]{(byte) i}, OptionalLong.of(i)));
+        }
+      }
+      db.finish(metadata);
+    }
+    try (Mbtiles db = Mbtiles.newWriteToFileDatabase(path, options)) {
+      assertTrue(db.supportsDelete());
+      db.deleteTile(TileCoord.ofXYZ(0, 0, 14));
+      db.deleteTile(TileCoord.ofXYZ(5, 5, 14));
+      db.initialize();
+      try (var writer = db.newTileWriter()) {
+        writer.write(new TileEncodingResult(TileCoord.ofXYZ(1, 1, 14), new byte[]{10}, OptionalLong.of(10)));
+        writer.write(new TileEncodingResult(TileCoord.ofXYZ(3, 3, 14), new byte[]{11}, OptionalLong.of(11)));
+      }
+      db.finish(metadata);
+    }
+    try (Mbtiles db = Mbtiles.newReadOnlyDatabase(path)) {
+      assertEquals(Set.of(
+        new Tile(TileCoord.ofXYZ(1, 1, 14), new byte[]{10}),
+        new Tile(TileCoord.ofXYZ(2, 2, 14), new byte[]{2}),
+        new Tile(TileCoord.ofXYZ(3, 3, 14), new byte[]{11})
+      ), TestUtils.getTiles(db));
+      if (compactDb) {
+        assertEquals(3, TestUtils.getTilesDataCount(db));
+      }
+      assertEquals(metadata, db.metadata());
+    }
+  }
+
+  private static boolean hasIndex(Mbtiles db, String name) throws SQLException {
+    try (Statement statement = db.connection().createStatement()) {
+      var rs = statement.executeQuery("select count(*) from sqlite_master where type='index' and name='" + name + "'");
+      rs.next();
+      return rs.getInt(1) > 0;
+    }
+  }
+
   @Test
   void testRoundTripMetadata() throws IOException {
     roundTripMetadata(metadataWithJson(
@@ -0,0 +1,73 @@
+package com.onthegomap.planetiler.pmtiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.collection.Storage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class EntryStoreTest {
+
+  @TempDir
+  Path tmpDir;
+
+  @ParameterizedTest
+  @CsvSource({
+    "RAM",
+    "DIRECT",
+    "MMAP",
+  })
+  void testAddAndGet(Storage storage) throws IOException {
+    try (var store = new EntryStore(storage, new Storage.Params(tmpDir, false))) {
+      store.add(1, 2, 3, 4);
+      store.add(new Pmtiles.Entry(5, 6, 7, 8));
+      assertEquals(2, store.size());
+      assertTrue(store.isSorted());
+      assertEquals(new Pmtiles.Entry(1, 2, 3, 4), store.get(0));
+      assertEquals(5, store.tileId(1));
+      assertEquals(List.of(new Pmtiles.Entry(5, 6, 7, 8)), store.slice(1, 2));
+      assertSame(store, store.sorted());
+    }
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "RAM, 1, 1",
+    "RAM, 10, 3",
+    "RAM, 1000, 7",
+    "RAM, 1000, 1000",
+    "RAM, 1000, 2000",
+    "MMAP, 1000, 7",
+    "DIRECT, 1000, 7",
+  })
+  void testSortUnsortedEntries(Storage storage, int count, int blockSize) throws IOException {
+    Random random = new Random(0);
+    List<Pmtiles.Entry> entries = new ArrayList<>();
+    try (var store = new EntryStore(storage, new Storage.Params(tmpDir, false))) {
+      for (int i = 0; i < count; i++) {
+        var entry = new Pmtiles.Entry(random.nextInt(count / 2 + 1), i, i + 1, 1);
+        entries.add(entry);
+        store.add(entry);
+      }
+      // stable sort, so entries with the same tile ID stay in insertion order
+      entries.sort(Comparator.naturalOrder());
+      if (count > 1) {
+        assertFalse(store.isSorted());
+      }
+      try (var sorted = store.sorted(blockSize)) {
+        assertTrue(sorted.isSorted());
+        assertEquals(entries, sorted.slice(0, sorted.size()));
+      }
+    }
+  }
+}
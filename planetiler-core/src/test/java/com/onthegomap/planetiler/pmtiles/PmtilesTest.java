@@ -17,6 +17,8 @@ import com.onthegomap.planetiler.util.SeekableInMemoryByteChannel;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,7 +27,9 @@ import java.util.OptionalLong;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.locationtech.jts.geom.Coordinate;
@@ -413,4 +417,57 @@ class PmtilesTest {
       }
     }
   }
+
+  @Test
+  void testReadLeafDirectoriesConcurrentlyFromFile(@TempDir Path tempDir) throws IOException {
+    Path path = tempDir.resolve("output.pmtiles");
+    int entries = 20_000;
+    try (var out = WriteablePmtiles.newWriteToFile(path)) {
+      out.initialize();
+      try (var writer = out.newTileWriter()) {
+        for (int i = 0; i < entries; i++) {
+          writer.write(new TileEncodingResult(TileCoord.hilbertDecode(i), ByteBuffer.allocate(4).putInt(i).array(),
+            OptionalLong.empty()));
+        }
+      }
+      out.finish(new TileArchiveMetadata(new Profile.NullProfile(), PlanetilerConfig.defaults()));
+    }
+
+    // use a tiny leaf directory cache to exercise eviction under contention
+    try (var reader = new ReadablePmtiles(FileChannel.open(path, StandardOpenOption.READ), 4)) {
+      assertTrue(reader.getHeader().leafDirectoriesLength() > 0);
+      IntStream.range(0, entries * 4).parallel().forEach(n -> {
+        int i = (int) ((n * 7919L) % entries);
+        var coord = TileCoord.hilbertDecode(i);
+        assertArrayEquals(ByteBuffer.allocate(4).putInt(i).array(), reader.getTile(coord.x(), coord.y(), coord.z()),
+          "tileCoord=%s did not match".formatted(coord));
+      });
+      assertNull(reader.getTile(0, 0, 14));
+    }
+  }
+
+  @Test
+  void testDirectoryCacheEvictsLeastRecentlyUsed() {
+    var cache = new ReadablePmtiles.DirectoryCache(4);
+    var dirs = new ArrayList<ReadablePmtiles.Directory>();
+    for (int i = 0; i < 5; i++) {
+      dirs.add(ReadablePmtiles.Directory.decode(Pmtiles.directoryToBytes(List.of(new Pmtiles.Entry(i, 0, 1, 1)))));
+    }
+    for (int i = 0; i < 4; i++) {
+      cache.put(i, dirs.get(i));
+    }
+    for (int i = 0; i < 4; i++) {
+      assertSame(dirs.get(i), cache.get(i));
+    }
+    // touch everything except 1, then insert a new entry
+    cache.get(0);
+    cache.get(2);
+    cache.get(3);
+    cache.put(4, dirs.get(4));
+    assertSame(dirs.get(4), cache.get(4));
+    assertNull(cache.get(1));
+    assertSame(dirs.get(0), cache.get(0));
+    assertEquals(0, cache.get(0).find(0));
+    assertEquals(-1, cache.get(0).find(1));
+  }
 }
@@ -0,0 +1,101 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.reader.FileFormatException;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OsmChangeFileTest {
+
+  private static final String CHANGES = """
+    <?xml version="1.0" encoding="UTF-8"?>
+    <osmChange version="0.6" generator="test">
+      <create>
+        <node id="1" version="1" timestamp="2024-01-02T03:04:05Z" uid="2" user="u" changeset="3" lat="1.5" lon="2.5">
+          <tag k="amenity" v="cafe"/>
+        </node>
+      </create>
+      <modify>
+        <way id="2" version="4" timestamp="2024-01-02T03:04:05Z" uid="2" user="u" changeset="3">
+          <nd ref="1"/>
+          <nd ref="5"/>
+          <tag k="highway" v="primary"/>
+        </way>
+        <relation id="3" version="2" timestamp="2024-01-02T03:04:05Z" uid="2" user="u" changeset="3">
+          <member type="way" ref="2" role="outer"/>
+          <member type="node" ref="1" role="label"/>
+          <tag k="type" v="multipolygon"/>
+        </relation>
+      </modify>
+      <delete>
+        <node id="4" version="3" timestamp="2024-01-02T03:04:05Z" uid="2" user="u" changeset="3"/>
+      </delete>
+    </osmChange>
+    """;
+
+  private static OsmChangeFile parse(String xml) {
+    return OsmChangeFile.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  void testParseChanges() {
+    var info = new OsmElement.Info(3, 1704164645, 2, 1, "u");
+    List<OsmChangeFile.Change> changes = parse(CHANGES).changes();
+    assertEquals(4, changes.size());
+
+    assertEquals(OsmChangeFile.Action.CREATE, changes.get(0).action());
+    var node = (OsmElement.Node) changes.get(0).element();
+    assertEquals(1, node.id());
+    assertEquals(1.5, node.lat());
+    assertEquals(2.5, node.lon());
+    assertEquals(Map.of("amenity", "cafe"), node.tags());
+    assertEquals(info, node.info());
+
+    assertEquals(OsmChangeFile.Action.MODIFY, changes.get(1).action());
+    var way = (OsmElement.Way) changes.get(1).element();
+    assertEquals(LongArrayList.from(1, 5), way.nodes());
+    assertEquals(Map.of("highway", "primary"), way.tags());
+
+    assertEquals(OsmChangeFile.Action.MODIFY, changes.get(2).action());
+    var relation = (OsmElement.Relation) changes.get(2).element();
+    assertEquals(List.of(
+      new OsmElement.Relation.Member(OsmElement.Type.WAY, 2, "outer"),
+      new OsmElement.Relation.Member(OsmElement.Type.NODE, 1, "label")
+    ), relation.members());
+
+    assertEquals(OsmChangeFile.Action.DELETE, changes.get(3).action());
+    var deleted = (OsmElement.Node) changes.get(3).element();
+    assertEquals(4, deleted.id());
+    assertTrue(Double.isNaN(deleted.lat()));
+    assertTrue(deleted.tags().isEmpty());
+  }
+
+  @Test
+  void testReadGzippedFile(@TempDir Path tmpDir) throws IOException {
+    Path path = tmpDir.resolve("changes.osc.gz");
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(path))) {
+      out.write(CHANGES.getBytes(StandardCharsets.UTF_8));
+    }
+    assertEquals(parse(CHANGES), OsmChangeFile.read(path));
+  }
+
+  @Test
+  void testInvalidChanges() {
+    assertThrows(FileFormatException.class, () -> parse("<osmChange><node id=\"1\"/></osmChange>"));
+    assertThrows(FileFormatException.class, () -> parse("<osmChange><create><node/></create></osmChange>"));
+    assertThrows(FileFormatException.class, () -> parse("<osmChange><create>"));
+  }
+}
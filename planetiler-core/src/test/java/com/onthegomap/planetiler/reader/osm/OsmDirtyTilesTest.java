@@ -0,0 +1,214 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Coordinate;
+
+class OsmDirtyTilesTest {
+
+  private static final int Z = 14;
+  private final PlanetilerConfig config = PlanetilerConfig.from(Arguments.of(
+    "minzoom", "14",
+    "maxzoom", "14",
+    "threads", "2"
+  ));
+
+  private static TileCoord tileAt(double lat, double lon) {
+    return TileCoord.aroundLngLat(lon, lat, Z);
+  }
+
+  private static OsmElement.Node node(long id, double lat, double lon) {
+    return new OsmElement.Node(id, Map.of(), lat, lon, null);
+  }
+
+  @TempDir
+  Path tmpDir;
+
+  private OsmDirtyTiles compute(List<OsmElement> base, OsmChangeFile.Change... changes) throws IOException {
+    try (var store = OsmElementStoreTest.storeOf(tmpDir, config, base)) {
+      return OsmDirtyTiles.compute(new OsmChangeFile(List.of(changes)), store, config, Stats.inMemory());
+    }
+  }
+
+  private static List<TileCoord> tiles(OsmDirtyTiles dirtyTiles) {
+    List<TileCoord> result = new ArrayList<>();
+    dirtyTiles.forEachTile(result::add);
+    return result;
+  }
+
+  @Test
+  void testMovedNodeMarksOldAndNewLocationAndNeighborsDirty() throws IOException {
+    var dirty = compute(
+      List.of(node(1, 10, 10), node(2, 20, 20)),
+      new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY, node(1, 11, 11))
+    );
+    TileCoord oldTile = tileAt(10, 10);
+    TileCoord newTile = tileAt(11, 11);
+    assertEquals(18, dirty.numTiles());
+    assertTrue(dirty.test(oldTile));
+    assertTrue(dirty.test(TileCoord.ofXYZ(oldTile.x() + 1, oldTile.y() - 1, Z)));
+    assertTrue(dirty.test(newTile));
+    assertFalse(dirty.test(TileCoord.ofXYZ(newTile.x() + 2, newTile.y(), Z)));
+    assertFalse(dirty.test(tileAt(20, 20)));
+    assertFalse(dirty.apply(Z - 1).test(oldTile.x() / 2, oldTile.y() / 2));
+    assertEquals(18, tiles(dirty).size());
+    assertTrue(tiles(dirty).contains(newTile));
+  }
+
+  @Test
+  void testMovedNodeMarksWaysThatReferenceItDirty() throws IOException {
+    double lat = 10;
+    double lon = 10;
+    double dx = 360d / (1 << Z);
+    var dirty = compute(
+      List.of(
+        node(1, lat, lon),
+        node(2, lat, lon + dx * 10),
+        node(3, lat, lon + dx * 20),
+        new OsmElement.Way(4, Map.of("highway", "primary"), LongArrayList.from(1, 2), null),
+        new OsmElement.Way(5, Map.of("highway", "primary"), LongArrayList.from(3, 3), null)
+      ),
+      new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY, node(1, lat, lon - dx))
+    );
+    assertTrue(dirty.test(tileAt(lat, lon + dx * 5)));
+    assertTrue(dirty.test(tileAt(lat, lon + dx * 10)));
+    assertFalse(dirty.test(tileAt(lat, lon + dx * 20)));
+  }
+
+  @Test
+  void testRecordsAffectedElements() throws IOException {
+    var dirty = compute(
+      List.of(
+        node(1, 10, 10),
+        node(2, 10, 11),
+        node(3, 20, 20),
+        new OsmElement.Way(4, Map.of("highway", "primary"), LongArrayList.from(1, 2), null),
+        new OsmElement.Way(5, Map.of("highway", "primary"), LongArrayList.from(3, 3), null),
+        new OsmElement.Relation(6, Map.of("type", "route"), List.of(
+          new OsmElement.Relation.Member(OsmElement.Type.WAY, 4, "")
+        ), null)
+      ),
+      new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY, node(1, 10, 9))
+    );
+    var affected = dirty.affectedElements();
+    assertTrue(affected.contains(OsmElementStore.key(OsmElement.Type.NODE, 1)));
+    assertTrue(affected.contains(OsmElementStore.key(OsmElement.Type.WAY, 4)));
+    assertTrue(affected.contains(OsmElementStore.key(OsmElement.Type.RELATION, 6)));
+    assertFalse(affected.contains(OsmElementStore.key(OsmElement.Type.WAY, 5)));
+    assertFalse(affected.contains(OsmElementStore.key(OsmElement.Type.NODE, 3)));
+  }
+
+  @Test
+  void testDeletedWayAndRelationMembers() throws IOException {
+    double dx = 360d / (1 << Z);
+    var dirty = compute(
+      List.of(
+        node(1, 0, 0),
+        node(2, 0, dx * 10),
+        node(3, 0, dx * 30),
+        node(4, 0, dx * 40),
+        new OsmElement.Way(5, Map.of(), LongArrayList.from(1, 2), null),
+        new OsmElement.Way(6, Map.of(), LongArrayList.from(3, 4), null),
+        new OsmElement.Relation(7, Map.of("type", "route"), List.of(
+          new OsmElement.Relation.Member(OsmElement.Type.WAY, 6, "")
+        ), null)
+      ),
+      new OsmChangeFile.Change(OsmChangeFile.Action.DELETE, new OsmElement.Way(5, Map.of(), new LongArrayList(), null)),
+      new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY, new OsmElement.Relation(7, Map.of("type", "route"),
+        List.of(), null))
+    );
+    assertTrue(dirty.test(tileAt(0, dx * 5)));
+    assertTrue(dirty.test(tileAt(0, dx * 35)));
+    assertFalse(dirty.test(tileAt(0, dx * 20)));
+  }
+
+  @Test
+  void testDeletedMultipolygonMarksInteriorDirty() throws IOException {
+    double size = 360d / (1 << Z) * 10;
+    var relation = new OsmElement.Relation(7, Map.of("type", "multipolygon"), List.of(
+      new OsmElement.Relation.Member(OsmElement.Type.WAY, 5, "outer"),
+      new OsmElement.Relation.Member(OsmElement.Type.WAY, 6, "outer")
+    ), null);
+    var dirty = compute(
+      List.of(
+        node(1, 0, 0),
+        node(2, 0, size),
+        node(3, size, size),
+        node(4, size, 0),
+        // neither way is closed on its own
+        new OsmElement.Way(5, Map.of(), LongArrayList.from(1, 2, 3), null),
+        new OsmElement.Way(6, Map.of(), LongArrayList.from(3, 4, 1), null),
+        relation
+      ),
+      new OsmChangeFile.Change(OsmChangeFile.Action.DELETE, relation)
+    );
+    assertTrue(dirty.test(tileAt(size / 2, size / 2)));
+    assertTrue(dirty.test(tileAt(0, size / 2)));
+    assertFalse(dirty.test(tileAt(size * 2, size * 2)));
+  }
+
+  @Test
+  void testSuperRelationChanges() throws IOException {
+    double dx = 360d / (1 << Z);
+    var superRelation = new OsmElement.Relation(8, Map.of("type", "superroute"), List.of(
+      new OsmElement.Relation.Member(OsmElement.Type.RELATION, 7, "")
+    ), null);
+    List<OsmElement> base = List.of(
+      node(1, 0, 0),
+      node(2, 0, dx * 10),
+      node(3, 0, dx * 30),
+      node(4, 0, dx * 40),
+      new OsmElement.Way(5, Map.of(), LongArrayList.from(1, 2), null),
+      new OsmElement.Way(6, Map.of(), LongArrayList.from(3, 4), null),
+      new OsmElement.Relation(7, Map.of("type", "route"), List.of(
+        new OsmElement.Relation.Member(OsmElement.Type.WAY, 5, "")
+      ), null),
+      superRelation
+    );
+
+    // deleting the super-relation affects the ways of the relations it contains
+    var dirty = compute(base, new OsmChangeFile.Change(OsmChangeFile.Action.DELETE, superRelation));
+    assertTrue(dirty.test(tileAt(0, dx * 5)));
+    assertFalse(dirty.test(tileAt(0, dx * 35)));
+    assertTrue(dirty.affectedElements().contains(OsmElementStore.key(OsmElement.Type.RELATION, 7)));
+    assertTrue(dirty.affectedElements().contains(OsmElementStore.key(OsmElement.Type.WAY, 5)));
+
+    // and changing a way in one of those relations affects the super-relation
+    dirty = compute(base, new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY,
+      new OsmElement.Way(5, Map.of(), LongArrayList.from(1, 2, 3), null)));
+    assertTrue(dirty.affectedElements().contains(OsmElementStore.key(OsmElement.Type.RELATION, 7)));
+    assertTrue(dirty.affectedElements().contains(OsmElementStore.key(OsmElement.Type.RELATION, 8)));
+    assertTrue(dirty.test(tileAt(0, dx * 20)));
+    assertFalse(dirty.affectedElements().contains(OsmElementStore.key(OsmElement.Type.WAY, 6)));
+  }
+
+  @Test
+  void testClosedWayMarksInteriorDirty() {
+    var dirty = new OsmDirtyTiles(Z, Z, config.bounds().tileExtents());
+    double size = 360d / (1 << Z) * 10;
+    dirty.addGeometry(GeoUtils.latLonToWorldCoords(GeoUtils.JTS_FACTORY.createPolygon(new Coordinate[]{
+      new Coordinate(0, 0),
+      new Coordinate(size, 0),
+      new Coordinate(size, size),
+      new Coordinate(0, size),
+      new Coordinate(0, 0)
+    })));
+    assertTrue(dirty.test(tileAt(size / 2, size / 2)));
+    assertFalse(dirty.test(tileAt(size * 2, size * 2)));
+  }
+}
@@ -0,0 +1,288 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.stats.Stats;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.locationtech.jts.geom.Envelope;
+
+class OsmElementStoreTest {
+
+  private final PlanetilerConfig config = PlanetilerConfig.from(Arguments.of(
+    "minzoom", "14",
+    "maxzoom", "14",
+    "threads", "2"
+  ));
+
+  @TempDir
+  Path tmpDir;
+
+  /**
+   * Saves a store in {@code tmpDir} with {@code elements}, where every tagged way rendered at {@code minzoom} 0 over
+   * the bounds of its nodes.
+   */
+  static OsmElementStore storeOf(Path tmpDir, PlanetilerConfig config, List<OsmElement> elements) throws IOException {
+    Path input = tmpDir.resolve("input.osm.pbf");
+    Files.write(input, new byte[]{1, 2, 3});
+    Path dir = tmpDir.resolve("store");
+    var builder = OsmElementStore.newBuilder(dir, input, config, Stats.inMemory());
+    Map<Long, OsmElement.Node> nodes = new TreeMap<>();
+    for (var element : elements) {
+      if (element instanceof OsmElement.Node node) {
+        nodes.put(node.id(), node);
+      }
+    }
+    try (var nodeLocations = builder.nodeSnapshot().createNodeLocations(false)) {
+      for (var node : nodes.values()) {
+        nodeLocations.put(node.id(), node.encodedLocation());
+      }
+      builder.nodeSnapshot().save(nodeLocations);
+    }
+    builder.writeElements(next -> next.accept(OsmBlockSource.Block.of(elements)));
+    for (var element : elements) {
+      if (element instanceof OsmElement.Way way && !way.tags().isEmpty()) {
+        Envelope envelope = new Envelope();
+        for (var cursor : way.nodes()) {
+          var node = nodes.get(cursor.value);
+          envelope.expandToInclude(GeoUtils.getWorldX(node.lon()), GeoUtils.getWorldY(node.lat()));
+        }
+        builder.rendered(way, 0, envelope);
+      }
+    }
+    builder.finish();
+    return OsmElementStore.open(dir, input, config);
+  }
+
+  private OsmElementStore storeOf(OsmElement... elements) throws IOException {
+    return storeOf(tmpDir, config, List.of(elements));
+  }
+
+  private static OsmChangeFile changes(OsmChangeFile.Change... changes) {
+    return new OsmChangeFile(List.of(changes));
+  }
+
+  private static List<Long> ids(LongArrayList keys) {
+    List<Long> result = new ArrayList<>();
+    for (var cursor : keys) {
+      result.add(OsmElementStore.id(cursor.value));
+    }
+    return result;
+  }
+
+  private static List<OsmElement> elements(OsmElementStore.Rerender rerender) {
+    List<OsmElement> result = new ArrayList<>();
+    rerender.get().forEachBlock(block -> block.decodeElements().forEach(result::add));
+    return result;
+  }
+
+  @Test
+  void testRoundTripElements() throws IOException {
+    var info = new OsmElement.Info(3, 1704164645, 2, 1, "u");
+    try (var store = storeOf(
+      new OsmElement.Node(1, Map.of("amenity", "cafe"), 1.5, 2.5, info),
+      new OsmElement.Node(2, Map.of(), 3.5, 4.5, null),
+      new OsmElement.Way(3, Map.of("highway", "primary"), LongArrayList.from(1, 2), info),
+      new OsmElement.Relation(4, Map.of("type", "route"), List.of(
+        new OsmElement.Relation.Member(OsmElement.Type.WAY, 3, "forward"),
+        new OsmElement.Relation.Member(OsmElement.Type.NODE, 1, "stop")
+      ), null)
+    )) {
+      var node = store.node(1);
+      assertEquals(Map.of("amenity", "cafe"), node.tags());
+      assertEquals(1.5, node.lat(), 1e-5);
+      assertEquals(2.5, node.lon(), 1e-5);
+      assertEquals(info, node.info());
+
+      var untagged = store.node(2);
+      assertEquals(Map.of(), untagged.tags());
+      assertEquals(3.5, untagged.lat(), 1e-5);
+      assertEquals(4.5, untagged.lon(), 1e-5);
+
+      var way = store.way(3);
+      assertEquals(Map.of("highway", "primary"), way.tags());
+      assertEquals(LongArrayList.from(1, 2), way.nodes());
+      assertEquals(info, way.info());
+
+      var relation = store.relation(4);
+      assertEquals(Map.of("type", "route"), relation.tags());
+      assertEquals(List.of(
+        new OsmElement.Relation.Member(OsmElement.Type.WAY, 3, "forward"),
+        new OsmElement.Relation.Member(OsmElement.Type.NODE, 1, "stop")
+      ), relation.members());
+
+      assertNull(store.node(5));
+      assertNull(store.way(1));
+      assertNull(store.relation(3));
+    }
+  }
+
+  @Test
+  void testParents() throws IOException {
+    try (var store = storeOf(
+      new OsmElement.Node(1, Map.of(), 0, 0, null),
+      new OsmElement.Node(2, Map.of(), 0, 1, null),
+      new OsmElement.Way(3, Map.of(), LongArrayList.from(1, 2), null),
+      new OsmElement.Relation(4, Map.of(), List.of(
+        new OsmElement.Relation.Member(OsmElement.Type.WAY, 3, "")
+      ), null)
+    )) {
+      assertEquals(List.of(3L), ids(store.parents(OsmElement.Type.NODE, 1)));
+      assertEquals(List.of(4L), ids(store.parents(OsmElement.Type.WAY, 3)));
+      assertEquals(List.of(), ids(store.parents(OsmElement.Type.RELATION, 4)));
+
+      store.apply(changes(
+        new OsmChangeFile.Change(OsmChangeFile.Action.CREATE,
+          new OsmElement.Way(5, Map.of(), LongArrayList.from(1), null)),
+        new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY,
+          new OsmElement.Way(3, Map.of(), LongArrayList.from(2), null)),
+        new OsmChangeFile.Change(OsmChangeFile.Action.DELETE,
+          new OsmElement.Relation(4, Map.of(), List.of(), null))
+      ));
+      assertEquals(List.of(5L), ids(store.parents(OsmElement.Type.NODE, 1)));
+      assertEquals(List.of(3L), ids(store.parents(OsmElement.Type.NODE, 2)));
+      assertEquals(List.of(), ids(store.parents(OsmElement.Type.WAY, 3)));
+      assertNull(store.relation(4));
+    }
+  }
+
+  @Test
+  void testRerenderElementsInDirtyTiles() throws IOException {
+    double d = 1e-4;
+    try (var store = storeOf(
+      new OsmElement.Node(1, Map.of(), 10, 10, null),
+      new OsmElement.Node(2, Map.of(), 10, 10 + d, null),
+      new OsmElement.Node(3, Map.of(), 10 + d, 10, null),
+      new OsmElement.Node(4, Map.of(), 10 + d, 10 + d, null),
+      new OsmElement.Node(5, Map.of(), 20, 20, null),
+      new OsmElement.Node(6, Map.of(), 20, 20 + d, null),
+      new OsmElement.Way(7, Map.of("highway", "primary"), LongArrayList.from(1, 2), null),
+      new OsmElement.Way(8, Map.of("highway", "primary"), LongArrayList.from(3, 4), null),
+      new OsmElement.Way(9, Map.of("highway", "primary"), LongArrayList.from(5, 6), null),
+      new OsmElement.Relation(10, Map.of("type", "route"), List.of(
+        new OsmElement.Relation.Member(OsmElement.Type.WAY, 8, "")
+      ), null)
+    )) {
+      var changes = changes(new OsmChangeFile.Change(OsmChangeFile.Action.MODIFY,
+        new OsmElement.Node(1, Map.of(), 10, 10 - d, null)));
+      var dirtyTiles = OsmDirtyTiles.compute(changes, store, config, Stats.inMemory());
+      store.apply(changes);
+      var rerender = store.rerender(dirtyTiles, Stats.inMemory());
+
+      // way 7 changed, way 8 rendered into a dirty tile, and way 9 is far away
+      assertTrue(rerender.test(store.way(7)));
+      assertTrue(rerender.test(store.way(8)));
+      assertFalse(rerender.test(store.way(9)));
+      // relation 10 only gets processed so that way 8 knows it's a member
+      assertFalse(rerender.test(store.relation(10)));
+
+      List<String> processed = elements(rerender).stream().map(e -> e.type() + " " + e.id()).toList();
+      assertEquals(List.of("NODE 1", "WAY 7", "WAY 8", "RELATION 10"), processed);
+      assertEquals(10 - d, ((OsmElement.Node) elements(rerender).getFirst()).lon(), 1e-6);
+    }
+  }
+
+  @Test
+  void testCommitAndReopen() throws IOException {
+    Path input = tmpDir.resolve("input.osm.pbf");
+    Path osc = tmpDir.resolve("changes.osc");
+    Files.writeString(osc, """
+      <?xml version="1.0" encoding="UTF-8"?>
+      <osmChange version="0.6" generator="test">
+        <modify>
+          <node id="1" version="2" lat="1.5" lon="2.5"/>
+          <way id="3" version="2">
+            <nd ref="2"/>
+            <nd ref="1"/>
+            <tag k="highway" v="secondary"/>
+          </way>
+        </modify>
+      </osmChange>
+      """, StandardCharsets.UTF_8);
+    try (var store = storeOf(
+      new OsmElement.Node(1, Map.of(), 1, 2, null),
+      new OsmElement.Node(2, Map.of(), 1, 3, null),
+      new OsmElement.Way(3, Map.of("highway", "primary"), LongArrayList.from(1, 2), null)
+    )) {
+      var changes = OsmChangeFile.read(osc);
+      var dirtyTiles = OsmDirtyTiles.compute(changes, store, config, Stats.inMemory());
+      store.apply(changes);
+      var rerender = store.rerender(dirtyTiles, Stats.inMemory());
+      var way = store.way(3);
+      assertTrue(rerender.test(way));
+      Envelope moved = new Envelope(GeoUtils.getWorldX(40), GeoUtils.getWorldX(40), GeoUtils.getWorldY(40),
+        GeoUtils.getWorldY(40));
+      rerender.rendered(way, 0, moved);
+      store.commit(osc, rerender);
+    }
+
+    try (var store = OsmElementStore.open(tmpDir.resolve("store"), input, config)) {
+      assertEquals(Map.of("highway", "secondary"), store.way(3).tags());
+      assertEquals(LongArrayList.from(2, 1), store.way(3).nodes());
+      assertEquals(1.5, store.node(1).lat(), 1e-5);
+      assertEquals(List.of(3L), ids(store.parents(OsmElement.Type.NODE, 1)));
+
+      // way 3 now renders around its new render key instead of where it was in the base store
+      var dirtyTiles = new OsmDirtyTiles(14, 14, config.bounds().tileExtents());
+      dirtyTiles.addGeometry(GeoUtils.point(GeoUtils.getWorldX(40), GeoUtils.getWorldY(40)));
+      var rerender = store.rerender(dirtyTiles, Stats.inMemory());
+      assertTrue(rerender.test(store.way(3)));
+      dirtyTiles = new OsmDirtyTiles(14, 14, config.bounds().tileExtents());
+      dirtyTiles.addGeometry(GeoUtils.point(GeoUtils.getWorldX(2.5), GeoUtils.getWorldY(1)));
+      rerender = store.rerender(dirtyTiles, Stats.inMemory());
+      assertFalse(rerender.test(store.way(3)));
+    }
+
+    Files.write(input, new byte[]{1, 2, 3, 4});
+    assertFalse(OsmElementStore.isComplete(tmpDir.resolve("store"), input));
+    assertThrows(IllegalArgumentException.class,
+      () -> OsmElementStore.open(tmpDir.resolve("store"), input, config));
+  }
+
+  @Test
+  void testRenderKeyUsesSmallestCellThatContainsBounds() {
+    double cell = 1d / (1 << 14);
+    long small = OsmElementStore.renderKey(5, new Envelope(cell * 3.1, cell * 3.2, cell * 7.1, cell * 7.2));
+    long large = OsmElementStore.renderKey(5, new Envelope(0, 1, 0, 1));
+    assertEquals(5, small >>> 56);
+    assertEquals(14, (small >>> 48) & 0xff);
+    assertEquals(0, (large >>> 48) & 0xff);
+    assertTrue(small > large);
+
+    var dirtyTiles = new OsmDirtyTiles(14, 14, config.bounds().tileExtents());
+    dirtyTiles.addGeometry(GeoUtils.point(cell * 3.5, cell * 7.5));
+    long[] ranges = OsmElementStore.renderRanges(dirtyTiles);
+    assertTrue(contains(ranges, small));
+    assertTrue(contains(ranges, large));
+    assertFalse(contains(ranges,
+      OsmElementStore.renderKey(5, new Envelope(cell * 100.1, cell * 100.2, cell * 7.1, cell * 7.2))));
+    for (int i = 2; i < ranges.length; i += 2) {
+      assertTrue(ranges[i] > ranges[i - 1] + 1, "ranges should be sorted and merged");
+    }
+  }
+
+  private static boolean contains(long[] ranges, long key) {
+    for (int i = 0; i < ranges.length; i += 2) {
+      if (ranges[i] <= key && key <= ranges[i + 1]) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -1,12 +1,19 @@
 package com.onthegomap.planetiler.reader.osm;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.carrotsearch.hppc.LongArrayList;
 import com.onthegomap.planetiler.TestUtils;
 import com.onthegomap.planetiler.stats.Stats;
 import com.onthegomap.planetiler.worker.WorkerPipeline;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
@@ -14,6 +21,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.locationtech.jts.geom.Envelope;
@@ -166,4 +174,104 @@ class OsmInputFileTest {
       }
     }
   }
+
+  @Test
+  void testDecodedTagsAreMutable() {
+    AtomicReference<OsmElement.Way> way = new AtomicReference<>();
+    try (var osmReader = new OsmInputFile(path).get()) {
+      osmReader.forEachBlock(block -> {
+        for (var elem : block.decodeElements()) {
+          if (elem instanceof OsmElement.Way w && w.id() == expectedWay.id()) {
+            way.set(w);
+          }
+        }
+      });
+    }
+    var tags = way.get().tags();
+    assertEquals("primary", tags.get("highway"));
+    assertNull(tags.get("railway"));
+    assertEquals(expectedWay.tags(), tags);
+    assertEquals(expectedWay.tags().hashCode(), tags.hashCode());
+
+    tags.put("railway", "rail");
+    tags.remove("highway");
+    assertEquals("rail", tags.get("railway"));
+    assertNull(tags.get("highway"));
+    assertEquals(6, tags.size());
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  @Timeout(30)
+  void testRecordAndUseBlockIndex(boolean lazy, @TempDir Path tempDir) throws IOException {
+    Path copy = tempDir.resolve("monaco.osm.pbf");
+    Files.copy(path, copy);
+    var file = new OsmInputFile(copy, lazy, true);
+    assertNull(file.getBlockIndex());
+
+    AtomicInteger elements = new AtomicInteger(0);
+    AtomicInteger ways = new AtomicInteger(0);
+    AtomicInteger blocks = new AtomicInteger(0);
+    try (var osmReader = file.get()) {
+      osmReader.forEachBlock(block -> {
+        blocks.incrementAndGet();
+        // index entries are recorded once every element in a block has been read
+        for (var ignored : block.decodeElements()) {
+          elements.incrementAndGet();
+        }
+      });
+    }
+    var index = file.getBlockIndex();
+    assertNotNull(index);
+    assertTrue(Files.exists(OsmBlockIndex.pathFor(copy)));
+    assertEquals(blocks.get(), index.entries().size());
+    assertEquals(25_423 + 4_106 + 243, elements.get());
+    assertEquals(index, new OsmInputFile(copy, lazy, true).getBlockIndex());
+
+    blocks.set(0);
+    try (var osmReader = file.get()) {
+      osmReader.forEachMatchingBlock(entry -> entry.contains(OsmElement.Type.WAY), block -> {
+        blocks.incrementAndGet();
+        for (var elem : block.decodeElements()) {
+          if (elem instanceof OsmElement.Way) {
+            ways.incrementAndGet();
+          }
+        }
+      });
+    }
+    assertEquals(4_106, ways.get());
+    assertEquals(index.count(entry -> entry.contains(OsmElement.Type.WAY)), blocks.get());
+
+    Files.setLastModifiedTime(copy, FileTime.from(Instant.now().plusSeconds(60)));
+    assertNull(OsmBlockIndex.readFor(copy));
+  }
+
+  @Test
+  void testBlockIndexBuilder() {
+    AtomicReference<OsmBlockIndex> result = new AtomicReference<>();
+    var builder = new OsmBlockIndex.Builder(100, 1, result::set);
+    var second = builder.summarizer(50, 10);
+    second.accept(new OsmElement.Node(5, 1, 2));
+    second.accept(new OsmElement.Way(3, Map.of("highway", "primary"), LongArrayList.from(5)));
+    second.finish();
+    var first = builder.summarizer(10, 20);
+    first.accept(new OsmElement.Node(2, 1, 2));
+    first.accept(new OsmElement.Node(1, 1, 2));
+    assertNull(builder.result());
+    first.finish();
+    assertNull(builder.result());
+    builder.setExpectedBlocks(2);
+
+    var expected = new OsmBlockIndex(100, 1, List.of(
+      new OsmBlockIndex.Entry(10, 20, (byte) (1 << OsmElement.Type.NODE.ordinal()), 1, 2, false),
+      new OsmBlockIndex.Entry(50, 10,
+        (byte) ((1 << OsmElement.Type.NODE.ordinal()) | (1 << OsmElement.Type.WAY.ordinal())), 3, 5, true)
+    ));
+    assertEquals(expected, builder.result());
+    assertEquals(expected, result.get());
+    assertTrue(expected.entries().get(0).onlyUntaggedNodes());
+    assertFalse(expected.entries().get(1).onlyUntaggedNodes());
+    assertTrue(expected.entries().get(1).contains(OsmElement.Type.WAY));
+    assertFalse(expected.entries().get(1).contains(OsmElement.Type.RELATION));
+  }
 }
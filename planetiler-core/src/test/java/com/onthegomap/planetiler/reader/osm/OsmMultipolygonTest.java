@@ -35,6 +35,7 @@ import org.junit.jupiter.api.TestFactory;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateXY;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygon;
 
 /**
  * This class is ported to Java from https://github.com/omniscale/imposm3/blob/master/geom/multipolygon_test.go
@@ -274,6 +275,25 @@ class OsmMultipolygonTest {
     );
   }
 
+  @Test
+  void testManyNestedRings() throws GeometryException {
+    // enough rings to use the spatial index: a grid of lakes with islands in them
+    List<List<Node>> ways = new ArrayList<>();
+    List<List<Coordinate>> lakes = new ArrayList<>();
+    List<Polygon> polygons = new ArrayList<>();
+    ways.add(rectangleNodes(0, 100));
+    for (int x = 0; x < 20; x++) {
+      for (int y = 0; y < 20; y++) {
+        ways.add(rectangleNodes(x * 5 + 1, y * 5 + 1, x * 5 + 4, y * 5 + 4));
+        ways.add(rectangleNodes(x * 5 + 2, y * 5 + 2, x * 5 + 3, y * 5 + 3));
+        lakes.add(rectangleCoordList(x * 5 + 1, y * 5 + 1, x * 5 + 4, y * 5 + 4));
+        polygons.add(rectangle(x * 5 + 2, y * 5 + 2, x * 5 + 3, y * 5 + 3));
+      }
+    }
+    polygons.addFirst(newPolygon(rectangleCoordList(0, 100), lakes));
+    testBuildMultipolygon(ways, newMultiPolygon(polygons.toArray(Polygon[]::new)));
+  }
+
   @Test
   void testTouchingPolygonsWithHole() throws GeometryException {
     testBuildMultipolygon(
@@ -0,0 +1,55 @@
+package com.onthegomap.planetiler.reader.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OsmPass1SnapshotTest {
+
+  @TempDir
+  Path tmpDir;
+
+  @Test
+  void testSaveAndReuse() throws IOException {
+    Path input = tmpDir.resolve("input.osm.pbf");
+    Files.write(input, new byte[]{1, 2, 3});
+    var snapshot = OsmPass1Snapshot.forInput(tmpDir.resolve("snapshot"), input);
+    assertFalse(snapshot.isComplete());
+
+    try (var nodes = snapshot.createNodeLocations(false)) {
+      nodes.put(1, 10);
+      nodes.put(5, 50);
+      assertFalse(snapshot.isComplete());
+      snapshot.save(nodes);
+    }
+    assertTrue(snapshot.isComplete());
+    assertTrue(OsmPass1Snapshot.forInput(tmpDir.resolve("snapshot"), input).isComplete());
+
+    try (var nodes = snapshot.openNodeLocations(false)) {
+      assertEquals(10, nodes.get(1));
+      assertEquals(50, nodes.get(5));
+      assertEquals(Long.MIN_VALUE, nodes.get(3));
+    }
+  }
+
+  @Test
+  void testIgnoresSnapshotWhenInputChanges() throws IOException {
+    Path input = tmpDir.resolve("input.osm.pbf");
+    Files.write(input, new byte[]{1, 2, 3});
+    var snapshot = OsmPass1Snapshot.forInput(tmpDir.resolve("snapshot"), input);
+    try (var nodes = snapshot.createNodeLocations(false)) {
+      nodes.put(1, 10);
+      snapshot.save(nodes);
+    }
+    assertTrue(snapshot.isComplete());
+
+    Files.write(input, new byte[]{1, 2, 3, 4});
+    assertFalse(snapshot.isComplete());
+  }
+}
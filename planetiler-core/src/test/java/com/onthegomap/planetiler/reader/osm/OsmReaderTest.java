@@ -7,10 +7,12 @@ import com.onthegomap.planetiler.Profile;
 import com.onthegomap.planetiler.TestUtils;
 import com.onthegomap.planetiler.collection.LongLongMap;
 import com.onthegomap.planetiler.collection.LongLongMultimap;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
 import com.onthegomap.planetiler.geo.GeoUtils;
 import com.onthegomap.planetiler.geo.GeometryException;
 import com.onthegomap.planetiler.reader.SourceFeature;
 import com.onthegomap.planetiler.stats.Stats;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -703,6 +705,80 @@ class OsmReaderTest {
     assertEquals(List.of(), feature.relationInfo(TestRelInfo.class));
   }
 
+  @Test
+  void testFilterNodesToWaysProfileCaresAbout() {
+    var nodes = List.of(node(1, 0.5, 0.5), node(2, 0.5, 0.75), node(3, 0.75, 0.75), node(4, 0.75, 0.5), node(5, 0, 0));
+    var road = new OsmElement.Way(10);
+    road.nodes().add(1, 2);
+    road.setTag("highway", "primary");
+    var building = new OsmElement.Way(11);
+    building.nodes().add(3, 2);
+    building.setTag("building", "yes");
+    var outer = new OsmElement.Way(12);
+    outer.nodes().add(4, 2);
+    var relation = new OsmElement.Relation(20);
+    relation.setTag("type", "multipolygon");
+    relation.members().add(new OsmElement.Relation.Member(OsmElement.Type.WAY, 12, "outer"));
+    var ignoredRelation = new OsmElement.Relation(21);
+    ignoredRelation.members().add(new OsmElement.Relation.Member(OsmElement.Type.WAY, 11, "outer"));
+    List<OsmElement> elements = new ArrayList<>(nodes);
+    elements.addAll(List.of(road, building, outer, relation, ignoredRelation));
+
+    OsmBlockSource source = next -> next.accept(OsmBlockSource.Block.of(elements));
+    OsmReader reader = new OsmReader("osm", () -> source, nodeMap, multipolygons, new Profile.NullProfile() {
+      @Override
+      public boolean caresAboutOsmWay(OsmElement.Way way) {
+        return way.hasTag("highway");
+      }
+
+      @Override
+      public boolean caresAboutOsmRelation(OsmElement.Relation relation) {
+        return relation.hasTag("type", "multipolygon");
+      }
+    }, stats);
+    reader.prefilterNodes(PlanetilerConfig.defaults());
+    processPass1Block(reader, elements);
+
+    var nodeCache = reader.newNodeLocationProvider();
+    assertNotEquals(LongLongMap.MISSING_VALUE, nodeMap.get(1));
+    assertNotEquals(LongLongMap.MISSING_VALUE, nodeMap.get(2));
+    assertEquals(LongLongMap.MISSING_VALUE, nodeMap.get(3));
+    assertNotEquals(LongLongMap.MISSING_VALUE, nodeMap.get(4));
+    assertEquals(LongLongMap.MISSING_VALUE, nodeMap.get(5));
+    assertTrue(reader.processWayPass2(road, nodeCache).canBeLine());
+  }
+
+  @Test
+  void testPass1FromSnapshotReusesStoredNodeLocations() {
+    record TestRelInfo(long id) implements OsmRelationInfo {}
+    var node1 = node(1, 0.5, 0.5);
+    var node2 = node(2, 0.75, 0.75);
+    try (var writer = nodeMap.newWriter()) {
+      writer.put(node1.id(), node1.encodedLocation());
+      writer.put(node2.id(), node2.encodedLocation());
+    }
+    var way = new OsmElement.Way(3);
+    way.nodes().add(node1.id(), node2.id());
+    way.setTag("highway", "primary");
+    var relation = new OsmElement.Relation(4);
+    relation.members().add(new OsmElement.Relation.Member(OsmElement.Type.WAY, 3, "rolename"));
+    var elements = List.of(node1, node2, way, relation);
+
+    OsmBlockSource source = next -> next.accept(OsmBlockSource.Block.of(elements));
+    OsmReader reader = new OsmReader("osm", () -> source, nodeMap, multipolygons, new Profile.NullProfile() {
+      @Override
+      public List<OsmRelationInfo> preprocessOsmRelation(OsmElement.Relation relation) {
+        return List.of(new TestRelInfo(relation.id()));
+      }
+    }, stats);
+    reader.pass1FromSnapshot(PlanetilerConfig.defaults());
+
+    SourceFeature feature = reader.processWayPass2(way, reader.newNodeLocationProvider());
+    assertTrue(feature.canBeLine());
+    assertEquals(List.of(new OsmReader.RelationMember<>("rolename", new TestRelInfo(4))),
+      feature.relationInfo(TestRelInfo.class));
+  }
+
   private OsmReader newOsmReader() {
     return new OsmReader("osm", () -> osmSource, nodeMap, multipolygons, profile, stats);
   }
@@ -355,6 +355,23 @@ class FeatureRendererTest {
     ), renderGeometry(feature));
   }
 
+  @Test
+  void testSimplifyLineProgressive() {
+    double[] coords = new double[200];
+    for (int i = 0; i < coords.length; i += 2) {
+      coords[i] = 0.5 + i * Z14_WIDTH / 20;
+      coords[i + 1] = 0.5 + (i % 4 == 0 ? 0 : Z14_PX * 3);
+    }
+    Geometry line = newLineString(coords);
+    var expected = renderGeometry(lineFeature(line).setZoomRange(10, 14).setBufferPixels(8));
+    config = PlanetilerConfig.from(Arguments.of("simplify_progressive", "true"));
+    var actual = renderGeometry(lineFeature(line).setZoomRange(10, 14).setBufferPixels(8));
+    assertEquals(expected.keySet(), actual.keySet());
+    // nothing to simplify at z14 so the output is exactly the same
+    var z14 = TileCoord.ofXYZ(Z14_TILES / 2, Z14_TILES / 2, 14);
+    assertEquals(expected.get(z14), actual.get(z14));
+  }
+
   @Test
   void testSplitLineFeatureTouchingNeighboringTile() {
     double z14hypot = Math.sqrt(Z14_WIDTH * Z14_WIDTH);
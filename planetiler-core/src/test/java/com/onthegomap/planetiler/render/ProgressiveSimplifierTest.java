@@ -0,0 +1,100 @@
+package com.onthegomap.planetiler.render;
+
+import static com.onthegomap.planetiler.TestUtils.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.geo.GeoUtils;
+import com.onthegomap.planetiler.geo.SimplifyMethod;
+import com.onthegomap.planetiler.geo.VWSimplifier;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateXY;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Polygonal;
+import org.locationtech.jts.geom.util.AffineTransformation;
+import org.locationtech.jts.util.GeometricShapeFactory;
+
+class ProgressiveSimplifierTest {
+
+  private static final double TOLERANCE = 0.1 / 256;
+
+  private static Geometry wigglyLine() {
+    Random random = new Random(0);
+    double[] coords = new double[2_000 * 2];
+    for (int i = 0; i < coords.length; i += 2) {
+      coords[i] = 0.5 + i * 1e-7;
+      coords[i + 1] = 0.5 + random.nextDouble() * 1e-5;
+    }
+    return newLineString(coords);
+  }
+
+  private static Geometry circle() {
+    var shapeFactory = new GeometricShapeFactory(GeoUtils.JTS_FACTORY);
+    shapeFactory.setNumPoints(2_000);
+    shapeFactory.setCentre(new CoordinateXY(0.5, 0.5));
+    shapeFactory.setSize(1e-3);
+    return shapeFactory.createCircle();
+  }
+
+  private static Geometry scale(Geometry geom, int zoom) {
+    return AffineTransformation.scaleInstance(1 << zoom, 1 << zoom).transform(geom);
+  }
+
+  private static void assertWithinTolerance(Geometry original, Geometry simplified, double tolerance) {
+    Geometry target = simplified instanceof Polygonal ? simplified.getBoundary() : simplified;
+    for (Coordinate coord : original.getCoordinates()) {
+      double distance = target.distance(GeoUtils.JTS_FACTORY.createPoint(coord));
+      assertTrue(distance <= tolerance * (1 + 1e-9), () -> "vertex " + coord + " is " + distance + " away");
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void testStaysWithinToleranceOfOriginal(boolean polygon) {
+    Geometry original = polygon ? circle() : wigglyLine();
+    var simplifier = new ProgressiveSimplifier(original);
+    int lastPoints = Integer.MAX_VALUE;
+    for (int zoom = 14; zoom >= 0; zoom--) {
+      Geometry result = simplifier.simplify(zoom, TOLERANCE, SimplifyMethod.RETAIN_IMPORTANT_POINTS);
+      assertWithinTolerance(scale(original, zoom), result, TOLERANCE);
+      assertTrue(result.getNumPoints() <= lastPoints);
+      lastPoints = result.getNumPoints();
+    }
+    assertTrue(lastPoints < original.getNumPoints());
+  }
+
+  @Test
+  void testSkippedZoomsAndLargerToleranceAtMaxZoom() {
+    Geometry original = wigglyLine();
+    var simplifier = new ProgressiveSimplifier(original);
+    for (int zoom : new int[]{14, 13, 10, 9, 4}) {
+      double tolerance = zoom == 14 ? 256d / 4096 / 256 : TOLERANCE;
+      Geometry result = simplifier.simplify(zoom, tolerance, SimplifyMethod.RETAIN_IMPORTANT_POINTS);
+      assertWithinTolerance(scale(original, zoom), result, tolerance);
+    }
+  }
+
+  @Test
+  void testSimplifiesFromOriginalWhenToleranceShrinks() {
+    Geometry original = wigglyLine();
+    var simplifier = new ProgressiveSimplifier(original);
+    simplifier.simplify(14, 10 * TOLERANCE, SimplifyMethod.RETAIN_IMPORTANT_POINTS);
+    Geometry result = simplifier.simplify(13, TOLERANCE, SimplifyMethod.RETAIN_IMPORTANT_POINTS);
+    assertWithinTolerance(scale(original, 13), result, TOLERANCE);
+  }
+
+  @Test
+  void testVisvalingamWhyattUsesOriginalGeometry() {
+    Geometry original = wigglyLine();
+    var simplifier = new ProgressiveSimplifier(original);
+    simplifier.simplify(14, TOLERANCE, SimplifyMethod.RETAIN_IMPORTANT_POINTS);
+    assertEquals(
+      new VWSimplifier().setTolerance(TOLERANCE * TOLERANCE).transform(scale(original, 13)),
+      simplifier.simplify(13, TOLERANCE, SimplifyMethod.RETAIN_EFFECTIVE_AREAS)
+    );
+  }
+}
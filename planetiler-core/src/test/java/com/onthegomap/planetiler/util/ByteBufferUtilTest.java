@@ -93,6 +93,30 @@ class ByteBufferUtilTest {
     ByteBufferUtil.free(buffers);
   }
 
+  @Test
+  void testWillNeedAcrossSegments(@TempDir Path dir) throws IOException {
+    String osName = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+    String data = "test!";
+    var path = dir.resolve("file");
+    Files.writeString(path, data, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    var channel = FileChannel.open(path, StandardOpenOption.READ);
+    MappedByteBuffer[] buffers = ByteBufferUtil.mapFile(channel, 5, 2, true, i -> i != 1);
+    try {
+      ByteBufferUtil.willNeed(buffers, 1, new long[]{-1, 0, 1, 3, 4, 10}, 6, 1);
+    } catch (IOException e) {
+      if (osName.startsWith("mac") || osName.startsWith("linux")) {
+        throw e;
+      } else {
+        System.out.println("madvise failed, but the system may not support it");
+      }
+    }
+
+    assertEquals("te", readString(buffers[0]));
+    assertEquals("!", readString(buffers[2]));
+
+    ByteBufferUtil.free(buffers);
+  }
+
   @Test
   void testMapFileFilterOutSegment(@TempDir Path dir) throws IOException {
     String data = "test!";
@@ -0,0 +1,113 @@
+package com.onthegomap.planetiler.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+class CompactWikidataTranslationsTest {
+
+  @TempDir
+  Path tmpDir;
+
+  private Path writeJson(String contents) throws IOException {
+    Path path = tmpDir.resolve("wikidata_names.json");
+    Files.writeString(path, contents);
+    return path;
+  }
+
+  @Test
+  void testConvertAndLookup() throws IOException {
+    Path json = writeJson("""
+      ["3",{"en":"three","de":"drei"},0]
+      ["1",{"en":"one","es":"uno"},0]
+      ["2",{"es":"uno"}]
+      ["1",{"en":"one again"},0]
+      """);
+    Path bin = tmpDir.resolve("wikidata_names.json.bin");
+    CompactWikidataTranslations.convert(json, bin);
+    var translations = CompactWikidataTranslations.open(bin, lang -> true);
+
+    assertEquals(Map.of("en", "one again", "es", "uno"), translations.get(1));
+    assertEquals(Map.of("es", "uno"), translations.get(2));
+    assertEquals(Map.of("en", "three", "de", "drei"), translations.get(3));
+    assertNull(translations.get(0));
+    assertNull(translations.get(4));
+    assertEquals(Map.of("en", "three", "de", "drei"), translations.getNameTranslations(Map.of("wikidata", "Q3")));
+    assertNull(translations.getNameTranslations(Map.of("wikidata", "Qgarbage")));
+    assertNull(translations.getNameTranslations(Map.of()));
+  }
+
+  @Test
+  void testOnlyReturnsLanguagesToKeep() throws IOException {
+    Path json = writeJson("""
+      ["1",{"en":"one","es":"uno"},0]
+      ["2",{"de":"zwei"},0]
+      """);
+    var translations = CompactWikidataTranslations.load(json, Set.of("en", "es")::contains);
+    assertEquals(Map.of("en", "one", "es", "uno"), translations.getNameTranslations(Map.of("wikidata", "Q1")));
+    assertNull(translations.getNameTranslations(Map.of("wikidata", "Q2")));
+
+    translations = CompactWikidataTranslations.load(json, "es"::equals);
+    assertEquals(Map.of("es", "uno"), translations.getNameTranslations(Map.of("wikidata", "Q1")));
+  }
+
+  @Test
+  void testLoadReconvertsWhenJsonChanges() throws IOException {
+    Path json = writeJson("""
+      ["1",{"en":"one"},0]
+      """);
+    Path bin = tmpDir.resolve("wikidata_names.json.bin");
+    assertEquals(Map.of("en", "one"),
+      CompactWikidataTranslations.load(json, lang -> true).getNameTranslations(Map.of("wikidata", "Q1")));
+    assertTrue(Files.exists(bin));
+
+    writeJson("""
+      ["1",{"en":"uno"},0]
+      """);
+    Files.setLastModifiedTime(json,
+      FileTime.fromMillis(Files.getLastModifiedTime(bin).toMillis() + 1_000));
+    assertEquals(Map.of("en", "uno"),
+      CompactWikidataTranslations.load(json, lang -> true).getNameTranslations(Map.of("wikidata", "Q1")));
+  }
+
+  @Test
+  void testMissingJson() {
+    var translations = CompactWikidataTranslations.load(tmpDir.resolve("missing.json"), lang -> true);
+    assertNull(translations.getNameTranslations(Map.of("wikidata", "Q1")));
+  }
+
+  @Test
+  void testOpenInvalidFile() throws IOException {
+    Path path = tmpDir.resolve("invalid.bin");
+    Files.writeString(path, "not a compact translations file");
+    assertThrows(IOException.class, () -> CompactWikidataTranslations.open(path, lang -> true));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "Q1, 1",
+    "Q123, 123",
+    "Q123456789012345678, 123456789012345678",
+    "Q1234567890123456789, 0",
+    "Q, 0",
+    "1, 0",
+    "Qgarbage, 0",
+    "Q12a, 0",
+    "q12, 0",
+  })
+  void testParseQid(String input, long expected) {
+    assertEquals(expected, CompactWikidataTranslations.parseQid(input));
+  }
+}
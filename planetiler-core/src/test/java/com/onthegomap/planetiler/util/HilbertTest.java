@@ -56,4 +56,23 @@ class HilbertTest {
     assertEquals(x, Hilbert.extractX(decoded));
     assertEquals(y, Hilbert.extractY(decoded));
   }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 5, 15, 16, 17, 20})
+  void testLongRoundTrip(int level) {
+    long max = 1L << (2 * level);
+    long step = Math.max(1, max / 1000);
+    for (long i = 0; i < max; i += step) {
+      long decoded = Hilbert.hilbertPositionToXY(level, i);
+      int x = Hilbert.extractX(decoded);
+      int y = Hilbert.extractY(decoded);
+      long reEncoded = Hilbert.hilbertXYToLongIndex(level, x, y);
+      if (reEncoded != i) {
+        fail("x=" + x + ", y=" + y + " index=" + i + " re-encoded=" + reEncoded);
+      }
+      if (level <= 16) {
+        assertEquals(Integer.toUnsignedLong(Hilbert.hilbertXYToIndex(level, x, y)), reEncoded);
+      }
+    }
+  }
 }
@@ -0,0 +1,117 @@
+package com.onthegomap.planetiler.util;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.onthegomap.planetiler.Profile;
+import com.onthegomap.planetiler.archive.TileArchiveMetadata;
+import com.onthegomap.planetiler.archive.TileCompression;
+import com.onthegomap.planetiler.archive.TileCompressor;
+import com.onthegomap.planetiler.archive.TileEncodingResult;
+import com.onthegomap.planetiler.config.Arguments;
+import com.onthegomap.planetiler.config.PlanetilerConfig;
+import com.onthegomap.planetiler.geo.TileCoord;
+import com.onthegomap.planetiler.pmtiles.ReadablePmtiles;
+import com.onthegomap.planetiler.pmtiles.WriteablePmtiles;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TileServerTest {
+
+  @TempDir
+  Path tempDir;
+  private Path path;
+  private byte[] tile;
+
+  @BeforeEach
+  void writeArchive() throws IOException {
+    tile = Gzip.gzip(new byte[]{0xa, 0x2});
+    path = tempDir.resolve("output.pmtiles");
+    try (var archive = WriteablePmtiles.newWriteToFile(path)) {
+      archive.initialize();
+      try (var writer = archive.newTileWriter()) {
+        writer.write(new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), tile, OptionalLong.empty()));
+        writer.write(new TileEncodingResult(TileCoord.ofXYZ(1, 0, 1), tile, OptionalLong.empty()));
+      }
+      archive.finish(new TileArchiveMetadata(new Profile.NullProfile(), PlanetilerConfig.defaults()));
+    }
+  }
+
+  private static HttpResponse<byte[]> get(HttpClient client, TileServer server, String path) throws Exception {
+    return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build(),
+      HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  @Test
+  void testServeTilesAndTileJson() throws Exception {
+    try (
+      var archive = ReadablePmtiles.newReadFromFile(path);
+      var server = new TileServer(archive, new InetSocketAddress("localhost", 0), 1 << 20).start();
+      var client = HttpClient.newHttpClient()
+    ) {
+      for (int i = 0; i < 2; i++) {
+        var response = get(client, server, "/0/0/0.pbf");
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        assertArrayEquals(tile, response.body());
+      }
+      assertEquals(200, get(client, server, "/1/1/0.pbf").statusCode());
+      assertEquals(204, get(client, server, "/1/0/0.pbf").statusCode());
+      assertEquals(404, get(client, server, "/1/2/0.pbf").statusCode());
+      assertEquals(404, get(client, server, "/not/a/tile").statusCode());
+
+      var tileJson = get(client, server, "/tiles.json");
+      assertEquals(200, tileJson.statusCode());
+      String body = new String(tileJson.body());
+      assertTrue(body.contains("\"tilejson\":\"3.0.0\""), body);
+      assertTrue(body.contains("/{z}/{x}/{y}.pbf"), body);
+    }
+  }
+
+  @Test
+  void testDecompressesTilesThatUseZstdDictionary() throws Exception {
+    var config = PlanetilerConfig.from(Arguments.of(Map.of("tile_compression", "zstd")));
+    var compressor = new TileCompressor(TileCompression.ZSTD, TileCompressor.DEFAULT_LEVEL, true);
+    List<byte[]> samples = new ArrayList<>();
+    for (int i = 0; i < 20_000; i++) {
+      samples.add(("{\"name\":\"road " + i + "\",\"class\":\"primary\",\"id\":" + (i * 31L) + "}").getBytes(UTF_8));
+    }
+    compressor.trainDictionary(samples.iterator());
+    byte[] raw = "{\"name\":\"road x\",\"class\":\"primary\",\"id\":1}".getBytes(UTF_8);
+    Path dictionaryPath = tempDir.resolve("dictionary.pmtiles");
+    try (var archive = WriteablePmtiles.newWriteToFile(dictionaryPath)) {
+      archive.initialize();
+      try (var writer = archive.newTileWriter()) {
+        writer.write(new TileEncodingResult(TileCoord.ofXYZ(0, 0, 0), compressor.compress(raw), OptionalLong.empty()));
+      }
+      archive.finish(compressor.addToMetadata(new TileArchiveMetadata(new Profile.NullProfile(), config)));
+    }
+    try (
+      var archive = ReadablePmtiles.newReadFromFile(dictionaryPath);
+      var server = new TileServer(archive, new InetSocketAddress("localhost", 0), 1 << 20).start();
+      var client = HttpClient.newHttpClient()
+    ) {
+      for (int i = 0; i < 2; i++) {
+        var response = get(client, server, "/0/0/0.pbf");
+        assertEquals(200, response.statusCode());
+        assertFalse(response.headers().firstValue("Content-Encoding").isPresent());
+        assertArrayEquals(raw, response.body());
+      }
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package com.onthegomap.planetiler.util;
 
+import static com.onthegomap.planetiler.TestUtils.newMultiPoint;
 import static com.onthegomap.planetiler.TestUtils.newPoint;
+import static com.onthegomap.planetiler.TestUtils.rectangle;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import com.onthegomap.planetiler.VectorTile;
@@ -17,6 +19,26 @@ class TileSizeStatsTest {
     assertEquals(0, stats.size());
   }
 
+  @Test
+  void computeStatsEmptyEncoded() {
+    var stats = TileSizeStats.computeTileStats(new VectorTile().encode());
+    assertEquals(0, stats.size());
+  }
+
+  @Test
+  void computeStatsFromEncodedTileMatchesProto() {
+    var tile = new VectorTile()
+      .addLayerFeatures("b", List.of(
+        new VectorTile.Feature("b", 1, VectorTile.encodeGeometry(newPoint(0, 0)), Map.of())
+      ))
+      .addLayerFeatures("a", List.of(
+        new VectorTile.Feature("a", 1, VectorTile.encodeGeometry(newMultiPoint(newPoint(0, 0), newPoint(1, 1))),
+          Map.of("key1", "value1", "key2", 2)),
+        new VectorTile.Feature("a", 2, VectorTile.encodeGeometry(rectangle(0, 10)), Map.of("key1", 2, "key2", 3.5))
+      ));
+    assertEquals(TileSizeStats.computeTileStats(tile.toProto()), TileSizeStats.computeTileStats(tile.encode()));
+  }
+
   @Test
   void computeStatsOneFeature() throws IOException {
     var stats = TileSizeStats.computeTileStats(new VectorTile()